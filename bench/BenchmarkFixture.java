@@ -0,0 +1,112 @@
+import cycling.CyclingPortal;
+
+import java.time.LocalTime;
+
+/**
+ * A portal filled with a race of a given size, for the benchmarks in
+ * {@link PortalBenchmark} to run against.
+ * <p>
+ * The race is generated by {@link RaceGenerator}, so its riders finish in
+ * realistic bunches, and every rider has a result in every stage. The
+ * checkpoints of each result can be worked out again at any time, so a
+ * result can be deleted and registered again exactly as it was.
+ * </p>
+ *
+ * @author Joey Griffiths and Alexander Cairns
+ *
+ */
+public class BenchmarkFixture {
+
+	/**
+	 * The portal holding the race.
+	 */
+	private final CyclingPortal portal = new CyclingPortal();
+
+	/**
+	 * The race generated into the portal.
+	 */
+	private final RaceGenerator.GeneratedRace race;
+
+	/**
+	 * BenchmarkFixture class constructor.<br>
+	 * Generates a race whose stages all have the same number of segments.
+	 *
+	 * @param noOfStages The number of stages in the race.
+	 * @param noOfRiders The number of riders in the race.
+	 * @param noOfSegments The number of segments in each stage.
+	 * @param seed The seed the race is generated from.
+	 * @throws Exception If the portal rejects any part of the race, which
+	 *                   would be a bug in the generator.
+	 *
+	 */
+	public BenchmarkFixture(int noOfStages, int noOfRiders, int noOfSegments, long seed) throws Exception {
+		this(RaceGenerator.Profile.custom(noOfStages, noOfRiders, noOfSegments), seed);
+	}
+
+	/**
+	 * BenchmarkFixture class constructor.<br>
+	 * Generates a race of the given profile.
+	 *
+	 * @param profile The shape of the race.
+	 * @param seed The seed the race is generated from.
+	 * @throws Exception If the portal rejects any part of the race, which
+	 *                   would be a bug in the generator.
+	 *
+	 */
+	public BenchmarkFixture(RaceGenerator.Profile profile, long seed) throws Exception {
+		race = new RaceGenerator(seed).generate(portal, profile);
+	}
+
+	/**
+	 * Method to work out the checkpoints of a rider's result in a stage,
+	 * which are the same every time for the same seed.
+	 *
+	 * @param stage The position of the stage in the race.
+	 * @param rider The position of the rider in the race.
+	 * @return The times the rider reached each checkpoint in the stage.
+	 *
+	 */
+	public LocalTime[] getCheckpoints(int stage, int rider) {
+		return race.getCheckpoints(stage, rider);
+	}
+
+	/**
+	 * Public getter method to return the portal holding the race.
+	 *
+	 * @return The CyclingPortal object.
+	 *
+	 */
+	public CyclingPortal getPortal() {
+		return portal;
+	}
+
+	/**
+	 * Public getter method to return the ID of the race.
+	 *
+	 * @return The ID of the race.
+	 *
+	 */
+	public int getRaceId() {
+		return race.getRaceId();
+	}
+
+	/**
+	 * Public getter method to return the IDs of the race's stages.
+	 *
+	 * @return The IDs of the stages, in order.
+	 *
+	 */
+	public int[] getStageIds() {
+		return race.getStageIds();
+	}
+
+	/**
+	 * Public getter method to return the IDs of the riders in the race.
+	 *
+	 * @return The IDs of the riders.
+	 *
+	 */
+	public int[] getRiderIds() {
+		return race.getRiderIds();
+	}
+}
@@ -0,0 +1,375 @@
+import cycling.CyclingPortal;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Locale;
+
+/**
+ * A benchmark suite timing the queries and mutations of
+ * {@link CyclingPortal} over races of different sizes.
+ * <p>
+ * Every benchmark is run against a {@link BenchmarkFixture} for each
+ * combination of the number of stages, riders and segments asked for. Each
+ * benchmark is run for a number of warmup iterations, whose timings are
+ * thrown away, then a number of measured iterations, and its throughput
+ * (operations per second) and allocation rate (bytes allocated per
+ * operation, and megabytes per second) are reported with the spread
+ * between iterations.
+ * </p>
+ * <p>
+ * Queries are timed with the portal's caches cold: before each operation,
+ * and outside the time measured, one rider's result is deleted and
+ * registered again in one of the race's stages, as it would be on race day
+ * when results keep arriving.
+ * </p>
+ * <p>
+ * Usage: {@code java -cp <classes> PortalBenchmark [option value]...}
+ * with the options
+ * {@code -stages 1,21,100 -riders 20,1000,50000 -segments 0,4,12}
+ * for the sizes of race, {@code -bench name,...} to run only some of the
+ * benchmarks, {@code -warmup 3 -iterations 5} for the number of iterations,
+ * {@code -time 500} for the length of each iteration in milliseconds,
+ * {@code -maxResults 2000000} to skip races with more results than this,
+ * and {@code -seed 1}. Giving {@code -profile grandTour,massParticipation}
+ * runs the benchmarks against races generated with those
+ * {@link RaceGenerator} profiles instead of the sizes of race.
+ * </p>
+ *
+ * @author Joey Griffiths and Alexander Cairns
+ *
+ */
+public class PortalBenchmark {
+
+	/**
+	 * A single benchmark, run against one fixture.
+	 */
+	interface Benchmark {
+
+		/**
+		 * Prepares an operation, outside the time measured.
+		 *
+		 * @param op The number of the operation, counting from 0.
+		 * @throws Exception If the portal rejects the preparation.
+		 */
+		default void prepare(int op) throws Exception {
+		}
+
+		/**
+		 * Runs an operation, which is timed.
+		 *
+		 * @param op The number of the operation, counting from 0.
+		 * @return A value computed by the operation, so that it cannot be
+		 * optimised away.
+		 * @throws Exception If the portal rejects the operation.
+		 */
+		int run(int op) throws Exception;
+	}
+
+	/**
+	 * The names of every benchmark, in the order they are run.
+	 */
+	static final String[] BENCHMARKS = {
+		"getRidersRankInStage",
+		"getRidersGeneralClassificationRank",
+		"getRidersPointsInRace",
+		"getRidersMountainPointsInRace",
+		"registerRiderResultsInStage",
+		"saveCyclingPortal",
+		"loadCyclingPortal"
+	};
+
+	/**
+	 * Receives the value computed by every operation, so that the JIT
+	 * compiler cannot remove an operation whose result is unused.
+	 */
+	static volatile int sink;
+
+	/**
+	 * The bean reporting the number of bytes allocated by the current
+	 * thread.
+	 */
+	private static final com.sun.management.ThreadMXBean THREADS =
+			(com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+	/**
+	 * Runs the benchmark suite.
+	 *
+	 * @param args The options described in the class documentation.
+	 * @throws Exception If a fixture cannot be built, or an operation is
+	 *                   rejected by the portal.
+	 */
+	public static void main(String[] args) throws Exception {
+		int[] stages = {1, 21, 100};
+		int[] riders = {20, 1000, 50000};
+		int[] segments = {0, 4, 12};
+		String[] benchmarks = BENCHMARKS;
+		int warmup = 3;
+		int iterations = 5;
+		long time = 500;
+		long maxResults = 2_000_000;
+		long seed = 1;
+		String[] profiles = null;
+		for (int i=0; i+1<args.length; i+=2) {
+			String value = args[i+1];
+			switch (args[i]) {
+				case "-stages": stages = parseInts(value); break;
+				case "-riders": riders = parseInts(value); break;
+				case "-segments": segments = parseInts(value); break;
+				case "-bench": benchmarks = value.split(","); break;
+				case "-warmup": warmup = Integer.parseInt(value); break;
+				case "-iterations": iterations = Integer.parseInt(value); break;
+				case "-time": time = Long.parseLong(value); break;
+				case "-maxResults": maxResults = Long.parseLong(value); break;
+				case "-seed": seed = Long.parseLong(value); break;
+				case "-profile": profiles = value.split(","); break;
+				default: throw new IllegalArgumentException("Unknown option " + args[i]);
+			}
+		}
+
+		System.out.printf("%-36s %6s %7s %8s %14s %12s %14s %10s%n", "Benchmark", "stages", "riders",
+				"segments", "ops/s", "error", "B/op", "MB/s");
+		if (profiles != null) {
+			for (String profile : profiles) {
+				BenchmarkFixture fixture = new BenchmarkFixture(profile(profile), seed);
+				for (String name : benchmarks) {
+					report(name, fixture.getStageIds().length, fixture.getRiderIds().length, profile,
+							measure(create(name, fixture), warmup, iterations, time));
+				}
+			}
+			return;
+		}
+		for (int noOfStages : stages) {
+			for (int noOfRiders : riders) {
+				for (int noOfSegments : segments) {
+					if ((long) noOfStages * noOfRiders > maxResults) {
+						System.out.printf("%-36s %6d %7d %8d   skipped: more than %d results%n", "*",
+								noOfStages, noOfRiders, noOfSegments, maxResults);
+						continue;
+					}
+					BenchmarkFixture fixture = new BenchmarkFixture(noOfStages, noOfRiders, noOfSegments, seed);
+					for (String name : benchmarks) {
+						report(name, noOfStages, noOfRiders, Integer.toString(noOfSegments),
+								measure(create(name, fixture), warmup, iterations, time));
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Prints the result of a benchmark as a row of the table.
+	 *
+	 * @param name The name of the benchmark.
+	 * @param noOfStages The number of stages in the race.
+	 * @param noOfRiders The number of riders in the race.
+	 * @param segments The number of segments in each stage, or the name of
+	 *                 the profile the race was generated with.
+	 * @param result The result returned by {@link #measure}.
+	 */
+	private static void report(String name, int noOfStages, int noOfRiders, String segments, double[] result) {
+		System.out.printf(Locale.ROOT, "%-36s %6d %7d %8s %14.1f %12.1f %14.0f %10.1f%n", name, noOfStages,
+				noOfRiders, segments, result[0], result[1], result[2], result[0] * result[2] / (1024 * 1024));
+	}
+
+	/**
+	 * Finds a race generator profile by name.
+	 *
+	 * @param name The name of the profile, grandTour or massParticipation.
+	 * @return The profile.
+	 */
+	private static RaceGenerator.Profile profile(String name) {
+		switch (name) {
+			case "grandTour": return RaceGenerator.Profile.grandTour();
+			case "massParticipation": return RaceGenerator.Profile.massParticipation();
+			default: throw new IllegalArgumentException("Unknown profile " + name);
+		}
+	}
+
+	/**
+	 * Creates a benchmark by name.
+	 *
+	 * @param name The name of the benchmark, from {@link #BENCHMARKS}.
+	 * @param fixture The fixture the benchmark runs against.
+	 * @return The benchmark.
+	 * @throws Exception If a temporary file cannot be created.
+	 */
+	static Benchmark create(String name, BenchmarkFixture fixture) throws Exception {
+		CyclingPortal portal = fixture.getPortal();
+		int raceId = fixture.getRaceId();
+		int[] stageIds = fixture.getStageIds();
+		switch (name) {
+			case "getRidersRankInStage":
+				return new ColdQuery(fixture, op -> portal.getRidersRankInStage(stageIds[op % stageIds.length]).length);
+			case "getRidersGeneralClassificationRank":
+				return new ColdQuery(fixture, op -> portal.getRidersGeneralClassificationRank(raceId).length);
+			case "getRidersPointsInRace":
+				return new ColdQuery(fixture, op -> portal.getRidersPointsInRace(raceId).length);
+			case "getRidersMountainPointsInRace":
+				return new ColdQuery(fixture, op -> portal.getRidersMountainPointsInRace(raceId).length);
+			case "registerRiderResultsInStage":
+				return new Benchmark() {
+					@Override
+					public void prepare(int op) throws Exception {
+						int stage = op % stageIds.length;
+						portal.deleteRiderResultsInStage(stageIds[stage], fixture.getRiderIds()[rider(fixture, op)]);
+					}
+
+					@Override
+					public int run(int op) throws Exception {
+						int stage = op % stageIds.length;
+						int rider = rider(fixture, op);
+						portal.registerRiderResultsInStage(stageIds[stage], fixture.getRiderIds()[rider],
+								fixture.getCheckpoints(stage, rider));
+						return rider;
+					}
+				};
+			case "saveCyclingPortal": {
+				File file = File.createTempFile("portal", ".ser");
+				file.deleteOnExit();
+				return op -> {
+					portal.saveCyclingPortal(file.getPath());
+					return (int) file.length();
+				};
+			}
+			case "loadCyclingPortal": {
+				File file = File.createTempFile("portal", ".ser");
+				file.deleteOnExit();
+				portal.saveCyclingPortal(file.getPath());
+				CyclingPortal loaded = new CyclingPortal();
+				return op -> {
+					loaded.loadCyclingPortal(file.getPath());
+					return loaded.getRaceIds().length;
+				};
+			}
+			default:
+				throw new IllegalArgumentException("Unknown benchmark " + name);
+		}
+	}
+
+	/**
+	 * Runs a benchmark for a number of warmup and measured iterations.
+	 *
+	 * @param benchmark The benchmark to be run.
+	 * @param warmup The number of iterations whose timings are thrown away.
+	 * @param iterations The number of iterations measured.
+	 * @param time The length of each iteration, in milliseconds. Each
+	 *             iteration runs at least one operation, however long it
+	 *             takes.
+	 * @return The mean operations per second, the standard deviation of the
+	 * operations per second between iterations, and the mean bytes
+	 * allocated per operation.
+	 * @throws Exception If an operation is rejected by the portal.
+	 */
+	static double[] measure(Benchmark benchmark, int warmup, int iterations, long time) throws Exception {
+		double[] throughput = new double[iterations];
+		long totalOps = 0;
+		long totalBytes = 0;
+		int op = 0;
+		for (int iteration=-warmup; iteration<iterations; iteration++) {
+			long ops = 0;
+			long nanos = 0;
+			long bytes = 0;
+			long end = System.nanoTime() + time * 1_000_000;
+			do {
+				benchmark.prepare(op);
+				// Only the operation itself is timed, not its preparation
+				long allocatedBefore = THREADS.getCurrentThreadAllocatedBytes();
+				long start = System.nanoTime();
+				sink ^= benchmark.run(op);
+				nanos += System.nanoTime() - start;
+				bytes += THREADS.getCurrentThreadAllocatedBytes() - allocatedBefore;
+				ops++;
+				op++;
+			} while (System.nanoTime() < end);
+			if (iteration >= 0) {
+				throughput[iteration] = ops * 1e9 / nanos;
+				totalOps += ops;
+				totalBytes += bytes;
+			}
+		}
+
+		double mean = 0;
+		for (double value : throughput) {
+			mean += value / iterations;
+		}
+		double variance = 0;
+		for (double value : throughput) {
+			variance += (value - mean) * (value - mean) / Math.max(1, iterations - 1);
+		}
+		return new double[] {mean, Math.sqrt(variance), totalOps == 0 ? 0 : (double) totalBytes / totalOps};
+	}
+
+	/**
+	 * Chooses the rider whose result is replaced by an operation, cycling
+	 * through every rider.
+	 *
+	 * @param fixture The fixture the benchmark runs against.
+	 * @param op The number of the operation.
+	 * @return The position of the rider in the race.
+	 */
+	static int rider(BenchmarkFixture fixture, int op) {
+		return (op / fixture.getStageIds().length) % fixture.getRiderIds().length;
+	}
+
+	/**
+	 * Parses a comma-separated list of integers.
+	 *
+	 * @param value The list.
+	 * @return The integers in the list.
+	 */
+	private static int[] parseInts(String value) {
+		ArrayList<Integer> parsed = new ArrayList<>();
+		for (String part : value.split(",")) {
+			parsed.add(Integer.parseInt(part.trim()));
+		}
+		int[] ints = new int[parsed.size()];
+		for (int i=0; i<ints.length; i++) {
+			ints[i] = parsed.get(i);
+		}
+		return ints;
+	}
+
+	/**
+	 * A benchmark of a query, run with the portal's caches cold by replacing
+	 * one rider's result in one stage before each operation.
+	 */
+	static final class ColdQuery implements Benchmark {
+
+		/**
+		 * The fixture the query runs against.
+		 */
+		private final BenchmarkFixture fixture;
+
+		/**
+		 * The query being timed.
+		 */
+		private final Benchmark query;
+
+		/**
+		 * ColdQuery class constructor.
+		 *
+		 * @param fixture The fixture the query runs against.
+		 * @param query The query being timed.
+		 */
+		ColdQuery(BenchmarkFixture fixture, Benchmark query) {
+			this.fixture = fixture;
+			this.query = query;
+		}
+
+		@Override
+		public void prepare(int op) throws Exception {
+			int stage = op % fixture.getStageIds().length;
+			int rider = rider(fixture, op);
+			CyclingPortal portal = fixture.getPortal();
+			portal.deleteRiderResultsInStage(fixture.getStageIds()[stage], fixture.getRiderIds()[rider]);
+			portal.registerRiderResultsInStage(fixture.getStageIds()[stage], fixture.getRiderIds()[rider],
+					fixture.getCheckpoints(stage, rider));
+		}
+
+		@Override
+		public int run(int op) throws Exception {
+			return query.run(op);
+		}
+	}
+}
@@ -0,0 +1,613 @@
+import cycling.CyclingPortal;
+import cycling.CyclingPortalInterface;
+import cycling.SegmentType;
+import cycling.StageType;
+
+import java.io.File;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.SplittableRandom;
+
+/**
+ * A generator of realistic races, built through the public
+ * {@link CyclingPortalInterface}, for benchmarking, soak testing and
+ * measuring the size of saved portals.
+ * <p>
+ * Everything generated depends only on the seed, so the same seed always
+ * gives the same race, with the same IDs when generated into an empty
+ * portal. Riders cross the finish in groups, as they do in a real race:
+ * within a group each rider finishes less than a second behind the rider in
+ * front, so the whole group is one bunch, and the groups are separated by
+ * gaps of more than a second. How big the groups are and how far apart
+ * depends on the type of stage, from a single bunch sprint on a flat stage
+ * to riders finishing alone in a time trial.
+ * </p>
+ * <p>
+ * Running this class generates a race and prints its size, the number and
+ * size of the bunches in each stage, and the size of the saved portal.
+ * Usage: {@code java -cp <classes> RaceGenerator [grandTour|massParticipation] [seed]}
+ * </p>
+ *
+ * @author Joey Griffiths and Alexander Cairns
+ *
+ */
+public class RaceGenerator {
+
+	/**
+	 * The types of the stages of a grand tour, in order.
+	 */
+	private static final StageType[] GRAND_TOUR_STAGES = {
+		StageType.FLAT, StageType.FLAT, StageType.MEDIUM_MOUNTAIN, StageType.FLAT, StageType.TT,
+		StageType.MEDIUM_MOUNTAIN, StageType.FLAT, StageType.HIGH_MOUNTAIN, StageType.HIGH_MOUNTAIN,
+		StageType.FLAT, StageType.MEDIUM_MOUNTAIN, StageType.HIGH_MOUNTAIN, StageType.FLAT,
+		StageType.MEDIUM_MOUNTAIN, StageType.HIGH_MOUNTAIN, StageType.FLAT, StageType.HIGH_MOUNTAIN,
+		StageType.HIGH_MOUNTAIN, StageType.FLAT, StageType.TT, StageType.FLAT
+	};
+
+	/**
+	 * The number of nanoseconds in a second.
+	 */
+	private static final long SECOND = 1_000_000_000L;
+
+	/**
+	 * The shape of a race to be generated.
+	 */
+	public static final class Profile {
+
+		/**
+		 * The name given to races of this profile.
+		 */
+		private final String name;
+
+		/**
+		 * The number of stages in the race.
+		 */
+		private final int noOfStages;
+
+		/**
+		 * The number of riders in each team.
+		 */
+		private final int ridersPerTeam;
+
+		/**
+		 * The number of riders in the race, which may leave the last team
+		 * short of riders.
+		 */
+		private final int noOfRiders;
+
+		/**
+		 * The number of segments in each stage, or -1 for a realistic number
+		 * depending on the type of the stage.
+		 */
+		private final int segmentsPerStage;
+
+		/**
+		 * Whether the race is a mass-participation event, whose riders start
+		 * in waves and finish spread over several hours, rather than a
+		 * professional stage race.
+		 */
+		private final boolean massParticipation;
+
+		/**
+		 * Profile class constructor.
+		 *
+		 * @param name The name given to races of this profile.
+		 * @param noOfStages The number of stages in the race.
+		 * @param ridersPerTeam The number of riders in each team.
+		 * @param noOfRiders The number of riders in the race.
+		 * @param segmentsPerStage The number of segments in each stage, or
+		 *                         -1 for a realistic number.
+		 * @param massParticipation Whether the race is a mass-participation
+		 *                          event.
+		 */
+		private Profile(String name, int noOfStages, int ridersPerTeam, int noOfRiders,
+				int segmentsPerStage, boolean massParticipation) {
+			this.name = name;
+			this.noOfStages = noOfStages;
+			this.ridersPerTeam = ridersPerTeam;
+			this.noOfRiders = noOfRiders;
+			this.segmentsPerStage = segmentsPerStage;
+			this.massParticipation = massParticipation;
+		}
+
+		/**
+		 * Creates the profile of a grand tour: 21 stages of every type, with
+		 * realistic sprints and climbs, ridden by 22 teams of 8.
+		 *
+		 * @return The grand tour profile.
+		 */
+		public static Profile grandTour() {
+			return new Profile("GrandTour", GRAND_TOUR_STAGES.length, 8, 22 * 8, -1, false);
+		}
+
+		/**
+		 * Creates the profile of a mass-participation event: a single long
+		 * stage ridden by 30,000 riders in clubs of 25.
+		 *
+		 * @return The mass-participation profile.
+		 */
+		public static Profile massParticipation() {
+			return new Profile("MassParticipation", 1, 25, 30000, -1, true);
+		}
+
+		/**
+		 * Creates the profile of a race of any size, whose stages all have
+		 * the same number of segments, alternating between sprints and
+		 * climbs.
+		 *
+		 * @param noOfStages The number of stages in the race.
+		 * @param noOfRiders The number of riders in the race, in teams of 8.
+		 * @param segmentsPerStage The number of segments in each stage.
+		 * @return The profile.
+		 */
+		public static Profile custom(int noOfStages, int noOfRiders, int segmentsPerStage) {
+			return new Profile("Race", noOfStages, 8, noOfRiders, segmentsPerStage, false);
+		}
+	}
+
+	/**
+	 * A race generated into a portal, along with what is needed to register
+	 * any of its results again.
+	 */
+	public static final class GeneratedRace {
+
+		/**
+		 * The seed the race was generated from.
+		 */
+		private final long seed;
+
+		/**
+		 * The ID of the race.
+		 */
+		private final int raceId;
+
+		/**
+		 * The IDs of the race's stages, in order.
+		 */
+		private final int[] stageIds;
+
+		/**
+		 * The IDs of the riders in the race.
+		 */
+		private final int[] riderIds;
+
+		/**
+		 * The type of each stage, in order.
+		 */
+		private final StageType[] stageTypes;
+
+		/**
+		 * The position of each stage's segments along the stage, as a
+		 * fraction of its length, in order.
+		 */
+		private final double[][] segmentFractions;
+
+		/**
+		 * The time each rider started each stage, in nanoseconds since
+		 * midnight, indexed by stage then rider.
+		 */
+		private final long[][] startNanos;
+
+		/**
+		 * The elapsed time of each rider in each stage, in nanoseconds,
+		 * indexed by stage then rider.
+		 */
+		private final long[][] elapsedNanos;
+
+		/**
+		 * GeneratedRace class constructor.
+		 *
+		 * @param seed The seed the race was generated from.
+		 * @param raceId The ID of the race.
+		 * @param noOfStages The number of stages in the race.
+		 * @param noOfRiders The number of riders in the race.
+		 */
+		private GeneratedRace(long seed, int raceId, int noOfStages, int noOfRiders) {
+			this.seed = seed;
+			this.raceId = raceId;
+			stageIds = new int[noOfStages];
+			riderIds = new int[noOfRiders];
+			stageTypes = new StageType[noOfStages];
+			segmentFractions = new double[noOfStages][];
+			startNanos = new long[noOfStages][];
+			elapsedNanos = new long[noOfStages][];
+		}
+
+		/**
+		 * Works out the checkpoints of a rider's result in a stage, which
+		 * are the same every time.<br>
+		 * Each segment is reached at about the same fraction of the rider's
+		 * elapsed time as its fraction of the stage's length.
+		 *
+		 * @param stage The position of the stage in the race.
+		 * @param rider The position of the rider in the race.
+		 * @return The times the rider reached each checkpoint in the stage.
+		 */
+		public LocalTime[] getCheckpoints(int stage, int rider) {
+			SplittableRandom random = new SplittableRandom(seed ^ ((long) stage << 32 | rider) * 0x9E3779B97F4A7C15L);
+			double[] fractions = segmentFractions[stage];
+			long start = startNanos[stage][rider];
+			long elapsed = elapsedNanos[stage][rider];
+			LocalTime[] checkpoints = new LocalTime[fractions.length + 2];
+			checkpoints[0] = LocalTime.ofNanoOfDay(start);
+			long previous = 0;
+			for (int i=0; i<fractions.length; i++) {
+				// Riders reach each segment up to 2% earlier or later than their average pace
+				long split = (long) (elapsed * fractions[i] * (0.98 + 0.04 * random.nextDouble())) / 1_000_000 * 1_000_000;
+				previous = Math.min(Math.max(split, previous + 1_000_000), elapsed - 1_000_000);
+				checkpoints[i+1] = LocalTime.ofNanoOfDay(start + previous);
+			}
+			checkpoints[checkpoints.length-1] = LocalTime.ofNanoOfDay(start + elapsed);
+			return checkpoints;
+		}
+
+		/**
+		 * Public getter method to return the ID of the race.
+		 *
+		 * @return The ID of the race.
+		 */
+		public int getRaceId() {
+			return raceId;
+		}
+
+		/**
+		 * Public getter method to return the IDs of the race's stages.
+		 *
+		 * @return The IDs of the stages, in order.
+		 */
+		public int[] getStageIds() {
+			return stageIds;
+		}
+
+		/**
+		 * Public getter method to return the IDs of the riders in the race.
+		 *
+		 * @return The IDs of the riders.
+		 */
+		public int[] getRiderIds() {
+			return riderIds;
+		}
+
+		/**
+		 * Public getter method to return the elapsed times of every rider in
+		 * a stage.
+		 *
+		 * @param stage The position of the stage in the race.
+		 * @return The elapsed time of each rider, in nanoseconds, in the
+		 * same order as {@link #getRiderIds()}.
+		 */
+		public long[] getElapsedNanos(int stage) {
+			return elapsedNanos[stage];
+		}
+	}
+
+	/**
+	 * The seed everything generated depends on.
+	 */
+	private final long seed;
+
+	/**
+	 * RaceGenerator class constructor.
+	 *
+	 * @param seed The seed everything generated depends on.
+	 */
+	public RaceGenerator(long seed) {
+		this.seed = seed;
+	}
+
+	/**
+	 * Generates a race into a portal: its teams, riders and stages, with the
+	 * segments of each stage, and a result for every rider in every stage.
+	 *
+	 * @param portal The portal the race is generated into, which must not
+	 *               already hold a race, stage or team generated with the
+	 *               same profile.
+	 * @param profile The shape of the race.
+	 * @return The GeneratedRace, holding the IDs of everything generated.
+	 * @throws Exception If the portal rejects any part of the race, which
+	 *                   would be a bug in the generator.
+	 */
+	public GeneratedRace generate(CyclingPortalInterface portal, Profile profile) throws Exception {
+		Random random = new Random(seed);
+		int noOfRiders = profile.noOfRiders;
+		GeneratedRace race = new GeneratedRace(seed, portal.createRace(profile.name,
+				"A race generated from seed " + seed), profile.noOfStages, noOfRiders);
+
+		int teamId = -1;
+		for (int r=0; r<noOfRiders; r++) {
+			if (r % profile.ridersPerTeam == 0) {
+				teamId = portal.createTeam(profile.name.substring(0, 4) + "Team" + (r / profile.ridersPerTeam),
+						"A team generated from seed " + seed);
+			}
+			race.riderIds[r] = portal.createRider(teamId, "Rider" + r, 1985 + random.nextInt(20));
+		}
+
+		LocalDateTime day = LocalDateTime.of(2023, 7, 1, 0, 0);
+		for (int s=0; s<profile.noOfStages; s++) {
+			StageType type = getStageType(profile, s);
+			race.stageTypes[s] = type;
+			double length = getLength(type, profile, random);
+			race.stageIds[s] = portal.addStageToRace(race.raceId, profile.name + "Stage" + (s + 1),
+					"A " + type + " stage", length, day.plusDays(s).plusHours(12), type);
+			race.segmentFractions[s] = addSegments(portal, race.stageIds[s], type, length, profile, random);
+			portal.concludeStagePreparation(race.stageIds[s]);
+
+			race.startNanos[s] = getStartTimes(type, profile, noOfRiders);
+			race.elapsedNanos[s] = getElapsedTimes(type, profile, length, noOfRiders, random);
+			for (int r=0; r<noOfRiders; r++) {
+				portal.registerRiderResultsInStage(race.stageIds[s], race.riderIds[r], race.getCheckpoints(s, r));
+			}
+		}
+		return race;
+	}
+
+	/**
+	 * Chooses the type of a stage.
+	 *
+	 * @param profile The shape of the race.
+	 * @param stage The position of the stage in the race.
+	 * @return The type of the stage.
+	 */
+	private static StageType getStageType(Profile profile, int stage) {
+		if (profile.massParticipation) {
+			return StageType.MEDIUM_MOUNTAIN;
+		}
+		if (profile.segmentsPerStage == -1) {
+			return GRAND_TOUR_STAGES[stage % GRAND_TOUR_STAGES.length];
+		}
+		// Time trials cannot have segments, so they are only used when there are none
+		StageType[] types = StageType.values();
+		StageType type = types[stage % types.length];
+		return type == StageType.TT && profile.segmentsPerStage > 0 ? StageType.FLAT : type;
+	}
+
+	/**
+	 * Chooses the length of a stage, in kilometres.
+	 *
+	 * @param type The type of the stage.
+	 * @param profile The shape of the race.
+	 * @param random The source of randomness.
+	 * @return The length of the stage.
+	 */
+	private static double getLength(StageType type, Profile profile, Random random) {
+		if (profile.massParticipation) {
+			return 160;
+		}
+		switch (type) {
+			case FLAT: return 170 + random.nextInt(50);
+			case MEDIUM_MOUNTAIN: return 150 + random.nextInt(50);
+			case HIGH_MOUNTAIN: return 140 + random.nextInt(50);
+			default: return 20 + random.nextInt(25);
+		}
+	}
+
+	/**
+	 * Adds the segments of a stage: an intermediate sprint on every road
+	 * stage, and climbs whose number and category depend on the type of the
+	 * stage, with the hardest last.
+	 *
+	 * @param portal The portal holding the stage.
+	 * @param stageId The ID of the stage.
+	 * @param type The type of the stage.
+	 * @param length The length of the stage.
+	 * @param profile The shape of the race.
+	 * @param random The source of randomness.
+	 * @return The position of each segment along the stage, as a fraction of
+	 * its length, in order.
+	 * @throws Exception If the portal rejects a segment.
+	 */
+	private static double[] addSegments(CyclingPortalInterface portal, int stageId, StageType type, double length,
+			Profile profile, Random random) throws Exception {
+		if (profile.segmentsPerStage >= 0) {
+			double[] fractions = new double[profile.segmentsPerStage];
+			for (int g=0; g<fractions.length; g++) {
+				fractions[g] = (g + 1.0) / (fractions.length + 1);
+				// Segments alternate between sprints and climbs of every category
+				if (g % 2 == 0) {
+					portal.addIntermediateSprintToStage(stageId, length * fractions[g]);
+				} else {
+					SegmentType climb = SegmentType.values()[1 + (g / 2) % (SegmentType.values().length - 1)];
+					portal.addCategorizedClimbToStage(stageId, length * fractions[g], climb, 6.5, 8.0);
+				}
+			}
+			return fractions;
+		}
+		if (type == StageType.TT) {
+			return new double[0];
+		}
+
+		int noOfClimbs;
+		SegmentType[] categories;
+		switch (type) {
+			case FLAT:
+				noOfClimbs = random.nextInt(3);
+				categories = new SegmentType[] {SegmentType.C4, SegmentType.C3};
+				break;
+			case MEDIUM_MOUNTAIN:
+				noOfClimbs = 2 + random.nextInt(3);
+				categories = new SegmentType[] {SegmentType.C3, SegmentType.C2, SegmentType.C1};
+				break;
+			default:
+				noOfClimbs = 3 + random.nextInt(3);
+				categories = new SegmentType[] {SegmentType.C2, SegmentType.C1, SegmentType.HC};
+				break;
+		}
+		double[] fractions = new double[noOfClimbs + 1];
+		// The sprint comes around the middle of the stage
+		fractions[0] = 0.35 + 0.2 * random.nextDouble();
+		portal.addIntermediateSprintToStage(stageId, length * fractions[0]);
+		for (int c=0; c<noOfClimbs; c++) {
+			// Climbs are spread over the stage, getting harder towards the finish,
+			// and a mountain stage ends at the top of its last climb
+			boolean summitFinish = type == StageType.HIGH_MOUNTAIN && c == noOfClimbs - 1;
+			double fraction = summitFinish ? 1.0 : (c + 0.5 + 0.4 * random.nextDouble()) / noOfClimbs * 0.95;
+			SegmentType category = categories[Math.min(categories.length - 1,
+					c * categories.length / noOfClimbs + random.nextInt(2))];
+			double climbLength = 3 + random.nextInt(15);
+			double gradient = 4 + random.nextInt(50) / 10.0;
+			portal.addCategorizedClimbToStage(stageId, length * fraction, category, gradient, climbLength);
+			fractions[c+1] = fraction;
+		}
+		// The stage keeps its segments in the order they are reached
+		Arrays.sort(fractions);
+		// A segment cannot be reached at the same moment as the finish
+		for (int g=0; g<fractions.length; g++) {
+			fractions[g] = Math.min(fractions[g], 0.999);
+		}
+		return fractions;
+	}
+
+	/**
+	 * Works out the time each rider starts a stage.<br>
+	 * Road stages have a mass start, time trial riders start one after
+	 * another, and mass-participation riders start in waves of 1,000.
+	 *
+	 * @param type The type of the stage.
+	 * @param profile The shape of the race.
+	 * @param noOfRiders The number of riders in the race.
+	 * @return The start time of each rider, in nanoseconds since midnight.
+	 */
+	private static long[] getStartTimes(StageType type, Profile profile, int noOfRiders) {
+		long[] starts = new long[noOfRiders];
+		for (int r=0; r<noOfRiders; r++) {
+			if (profile.massParticipation) {
+				starts[r] = 7 * 3600 * SECOND + r / 1000 * 180 * SECOND;
+			} else if (type == StageType.TT) {
+				// Riders start a minute apart, or closer if there are too many to fit the day
+				starts[r] = 11 * 3600 * SECOND + r * Math.min(60 * SECOND, 5 * 3600 * SECOND / noOfRiders);
+			} else {
+				starts[r] = 12 * 3600 * SECOND;
+			}
+		}
+		return starts;
+	}
+
+	/**
+	 * Works out the elapsed time of every rider in a stage, with the riders
+	 * finishing in groups shaped by the type of the stage.
+	 *
+	 * @param type The type of the stage.
+	 * @param profile The shape of the race.
+	 * @param length The length of the stage, in kilometres.
+	 * @param noOfRiders The number of riders in the race.
+	 * @param random The source of randomness.
+	 * @return The elapsed time of each rider, in nanoseconds.
+	 */
+	private static long[] getElapsedTimes(StageType type, Profile profile, double length, int noOfRiders,
+			Random random) {
+		// The riders finish in a random order, which differs for each stage
+		int[] order = new int[noOfRiders];
+		for (int r=0; r<noOfRiders; r++) {
+			int j = random.nextInt(r + 1);
+			order[r] = order[j];
+			order[j] = r;
+		}
+		long[] elapsed = new long[noOfRiders];
+
+		if (profile.massParticipation) {
+			// Amateur finishing times are spread over several hours, skewed towards
+			// the slow end, so the field is dense enough that bunches form by chance
+			for (int r=0; r<noOfRiders; r++) {
+				double hours = Math.min(2.5 + 2 * Math.exp(0.35 * random.nextGaussian()), 12);
+				elapsed[r] = (long) (hours * 3600 * SECOND) / 1_000_000 * 1_000_000;
+			}
+			return elapsed;
+		}
+		if (type == StageType.TT) {
+			// Each rider is timed alone, so they only bunch when their times are very close
+			long base = (long) (length / 50 * 3600 * SECOND);
+			for (int r=0; r<noOfRiders; r++) {
+				elapsed[r] = (base + (long) (Math.abs(random.nextGaussian()) * 90 * SECOND)) / 1_000_000 * 1_000_000;
+			}
+			return elapsed;
+		}
+
+		double speed = type == StageType.FLAT ? 44 : type == StageType.MEDIUM_MOUNTAIN ? 39 : 33;
+		// Times are kept to the nearest millisecond, as timing mats record them
+		long time = (long) (length / speed * 3600 * SECOND) / 1_000_000 * 1_000_000;
+		int next = 0;
+		int group = 0;
+		while (next < noOfRiders) {
+			int size;
+			long gap;
+			switch (type) {
+				case FLAT:
+					// A small breakaway stays clear, then most of the field sprints in one bunch
+					if (group == 0) {
+						size = 1 + random.nextInt(4);
+						gap = 0;
+					} else if (group == 1) {
+						size = Math.max(1, (int) ((noOfRiders - next) * (0.75 + 0.2 * random.nextDouble())));
+						gap = (5 + random.nextInt(120)) * SECOND;
+					} else {
+						size = 1 + random.nextInt(15);
+						gap = (2 + random.nextInt(240)) * SECOND;
+					}
+					break;
+				case MEDIUM_MOUNTAIN:
+					size = 1 + random.nextInt(30);
+					gap = group == 0 ? 0 : (2 + random.nextInt(120)) * SECOND;
+					break;
+				default:
+					size = 1 + random.nextInt(8);
+					gap = group == 0 ? 0 : (3 + random.nextInt(240)) * SECOND;
+					break;
+			}
+			time += gap;
+			for (int i=0; i<size && next<noOfRiders; i++) {
+				// Riders in a group cross the line less than a second apart, so they share its time
+				if (i > 0) {
+					time += random.nextInt(900) * 1_000_000L;
+				}
+				elapsed[order[next++]] = time;
+			}
+			group++;
+		}
+		return elapsed;
+	}
+
+	/**
+	 * Generates a race and prints its size, the bunches of each stage and
+	 * the size of the saved portal.
+	 *
+	 * @param args The profile, grandTour or massParticipation, and the seed.
+	 * @throws Exception If the race cannot be generated or saved.
+	 */
+	public static void main(String[] args) throws Exception {
+		Profile profile = args.length > 0 && args[0].equals("massParticipation")
+				? Profile.massParticipation() : Profile.grandTour();
+		long seed = args.length > 1 ? Long.parseLong(args[1]) : 1;
+
+		CyclingPortal portal = new CyclingPortal();
+		long start = System.nanoTime();
+		GeneratedRace race = new RaceGenerator(seed).generate(portal, profile);
+		System.out.printf("%s (seed %d): %d stages, %d riders, generated in %d ms%n", profile.name, seed,
+				race.stageIds.length, race.riderIds.length, (System.nanoTime() - start) / 1_000_000);
+
+		for (int s=0; s<race.stageIds.length; s++) {
+			// Counts the bunches in the same way as the portal, from consecutive finishers
+			long[] times = race.getElapsedNanos(s).clone();
+			Arrays.sort(times);
+			int bunches = 0;
+			int largest = 0;
+			int size = 0;
+			for (int i=0; i<times.length; i++) {
+				if (i == 0 || times[i] - times[i-1] >= SECOND) {
+					bunches++;
+					size = 0;
+				}
+				largest = Math.max(largest, ++size);
+			}
+			System.out.printf("  stage %2d: %-15s %d segments, %d bunches, largest %d, winner %s%n", s + 1,
+					race.stageTypes[s], race.segmentFractions[s].length, bunches, largest,
+					LocalTime.ofNanoOfDay(times[0]));
+		}
+
+		File file = File.createTempFile("portal", ".ser");
+		file.deleteOnExit();
+		portal.saveCyclingPortal(file.getPath());
+		System.out.printf("Saved portal: %d bytes%n", file.length());
+	}
+}
@@ -1,11 +1,23 @@
+import cycling.Classification;
 import cycling.CyclingPortal;
 import cycling.CyclingPortalInterface;
+import cycling.RankChange;
 import cycling.SegmentType;
 import cycling.StageType;
 
+import java.io.File;
+import java.lang.reflect.Field;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
 
 /**
  * A short program to illustrate an app testing some minimal functionality of a
@@ -149,5 +161,276 @@ public class CyclingPortalInterfaceTestApp {
 		} catch (Exception e) {
 			e.printStackTrace(System.out);
 		}
+
+		// Testing that standings stop being worked out once every subscriber has cancelled
+		try {
+			CyclingPortal feedPortal = new CyclingPortal();
+			int feedTeam = feedPortal.createTeam("feedteam", "The team of the feed race");
+			int feedRace = feedPortal.createRace("Feedrace", "A race with many riders");
+			int[] feedStages = new int[10];
+			for (int i=0; i<feedStages.length; i++) {
+				feedStages[i] = feedPortal.addStageToRace(feedRace, "Feedstage" + i, "", 100,
+						LocalDateTime.now(), StageType.FLAT);
+				feedPortal.concludeStagePreparation(feedStages[i]);
+			}
+			int[] feedRiders = new int[2000];
+			for (int i=0; i<feedRiders.length; i++) {
+				feedRiders[i] = feedPortal.createRider(feedTeam, "feedrider" + i, 1990);
+			}
+
+			// Half the stages are registered before anyone subscribes, and half after
+			registerStages(feedPortal, Arrays.copyOfRange(feedStages, 0, 5), feedRiders);
+			CountDownLatch cancelled = new CountDownLatch(2);
+			Flow.Subscriber<RankChange> cancelling = new Flow.Subscriber<RankChange>() {
+				@Override
+				public void onSubscribe(Flow.Subscription subscription) {
+					subscription.cancel();
+					cancelled.countDown();
+				}
+
+				@Override
+				public void onNext(RankChange change) {
+				}
+
+				@Override
+				public void onError(Throwable throwable) {
+				}
+
+				@Override
+				public void onComplete() {
+				}
+			};
+			feedPortal.getRaceStandingsPublisher(feedRace, Classification.GENERAL, 10).subscribe(cancelling);
+			feedPortal.getStageStandingsPublisher(feedStages[5], 10).subscribe(cancelling);
+			assert (cancelled.await(10, TimeUnit.SECONDS));
+			// The feeds are detached as their last subscriber cancels, and registering more results
+			// does not start them again
+			assert (countStandingsFeeds(feedPortal) == 0) : "Feeds still attached after every subscriber cancelled";
+			registerStages(feedPortal, Arrays.copyOfRange(feedStages, 5, 10), feedRiders);
+			assert (countStandingsFeeds(feedPortal) == 0) : "Feeds attached again by registering results";
+		} catch (Exception e) {
+			e.printStackTrace(System.out);
+		}
+
+		// Testing the points classifications of a large field, where most riders are tied on no points
+		try {
+			CyclingPortal fieldPortal = new CyclingPortal();
+			int fieldTeam = fieldPortal.createTeam("fieldteam", "The team of the large field");
+			int fieldRace = fieldPortal.createRace("Fieldrace", "A race with a large field");
+			int[] fieldRiders = new int[4000];
+			for (int i=0; i<fieldRiders.length; i++) {
+				fieldRiders[i] = fieldPortal.createRider(fieldTeam, "fieldrider" + i, 1990);
+			}
+
+			// Riders finish a second apart, in a different order in each stage, so the general
+			// classification is unrelated to the order the riders were created in
+			int[] orderSteps = {7919, 104729};
+			int[] fieldStages = new int[orderSteps.length];
+			for (int s=0; s<orderSteps.length; s++) {
+				int orderStep = orderSteps[s];
+				int stageId = fieldPortal.addStageToRace(fieldRace, "Fieldstage" + orderStep, "", 100,
+						LocalDateTime.now(), StageType.FLAT);
+				fieldPortal.concludeStagePreparation(stageId);
+				for (int i=0; i<fieldRiders.length; i++) {
+					fieldPortal.registerRiderResultsInStage(stageId, fieldRiders[i], LocalTime.of(0, 0),
+							LocalTime.of(0, 30).plusSeconds((long) i * orderStep % fieldRiders.length));
+				}
+				fieldStages[s] = stageId;
+			}
+
+			for (int stageId : fieldStages) {
+				assert (fieldPortal.getRidersRankInStage(stageId).length == fieldRiders.length);
+			}
+
+			int[] pointsRank = fieldPortal.getRidersPointClassificationRank(fieldRace);
+			int[] mountainRank = fieldPortal.getRidersMountainPointClassificationRank(fieldRace);
+
+			int[] generalRank = fieldPortal.getRidersGeneralClassificationRank(fieldRace);
+			int[] points = fieldPortal.getRidersPointsInRace(fieldRace);
+			Map<Integer, Integer> generalPositions = new HashMap<>();
+			Map<Integer, Integer> pointsOfRiders = new HashMap<>();
+			for (int i=0; i<generalRank.length; i++) {
+				generalPositions.put(generalRank[i], i);
+				pointsOfRiders.put(generalRank[i], points[i]);
+			}
+			assert (pointsRank.length == fieldRiders.length && mountainRank.length == fieldRiders.length);
+			// Riders on equal points are ordered by their place in the general classification
+			for (int i=1; i<pointsRank.length; i++) {
+				int before = pointsOfRiders.get(pointsRank[i-1]);
+				int after = pointsOfRiders.get(pointsRank[i]);
+				assert (before > after || before == after
+						&& generalPositions.get(pointsRank[i-1]) < generalPositions.get(pointsRank[i]))
+						: "Points classification out of order at " + i;
+			}
+			// No stage has a climb, so the mountain classification follows the general classification
+			assert (Arrays.equals(mountainRank, generalRank));
+		} catch (Exception e) {
+			e.printStackTrace(System.out);
+		}
+
+		// Testing that the stage standings kept as results are registered and deleted out of order
+		// match those worked out afresh when the portal is loaded
+		try {
+			CyclingPortal orderPortal = new CyclingPortal();
+			int orderTeam = orderPortal.createTeam("orderteam", "The team of the out of order stage");
+			int orderRace = orderPortal.createRace("Orderrace", "A race registered out of order");
+			int orderStage = orderPortal.addStageToRace(orderRace, "Orderstage", "", 100, LocalDateTime.now(),
+					StageType.FLAT);
+			orderPortal.concludeStagePreparation(orderStage);
+			int[] orderRiders = new int[48];
+			for (int i=0; i<orderRiders.length; i++) {
+				orderRiders[i] = orderPortal.createRider(orderTeam, "orderrider" + i, 1990);
+			}
+
+			// Gaps just under a second chain riders into one bunch, gaps of exactly a second start a
+			// new bunch, and riders missing from the middle of a gap leave it wide enough to split a
+			// bunch until they are registered
+			long[] gapMillis = {999, 1000, 500, 1000, 1001, 0, 999, 999};
+			long[] finishMillis = new long[orderRiders.length];
+			for (int i=1; i<finishMillis.length; i++) {
+				finishMillis[i] = finishMillis[i-1] + gapMillis[i % gapMillis.length];
+			}
+
+			File orderFile = File.createTempFile("order", ".ser");
+			orderFile.deleteOnExit();
+			// Riders are registered in a scrambled order, every third is deleted in another order,
+			// and those are registered again
+			for (int i=0; i<orderRiders.length; i++) {
+				int r = i * 29 % orderRiders.length;
+				orderPortal.registerRiderResultsInStage(orderStage, orderRiders[r], LocalTime.of(9, 0),
+						LocalTime.of(12, 0).plusNanos(finishMillis[r] * 1000000));
+				checkStageMatchesLoadedCopy(orderPortal, orderStage, orderFile);
+			}
+			for (int i=0; i<orderRiders.length; i+=3) {
+				int r = (orderRiders.length - 1 - i) * 7 % orderRiders.length;
+				orderPortal.deleteRiderResultsInStage(orderStage, orderRiders[r]);
+				checkStageMatchesLoadedCopy(orderPortal, orderStage, orderFile);
+			}
+			for (int i=0; i<orderRiders.length; i+=3) {
+				int r = (orderRiders.length - 1 - i) * 7 % orderRiders.length;
+				orderPortal.registerRiderResultsInStage(orderStage, orderRiders[r], LocalTime.of(9, 0),
+						LocalTime.of(12, 0).plusNanos(finishMillis[r] * 1000000));
+				checkStageMatchesLoadedCopy(orderPortal, orderStage, orderFile);
+			}
+			assert (orderPortal.getRidersRankInStage(orderStage).length == orderRiders.length);
+		} catch (Exception e) {
+			e.printStackTrace(System.out);
+		}
+
+		// Testing that a journal left open by a crash is replayed, and that a record torn part of
+		// the way through is dropped
+		try {
+			File journalDir = Files.createTempDirectory("journal").toFile();
+			File journalSnapshot = new File(journalDir, "portal.snapshot");
+			File journalFile = new File(journalDir, "portal.snapshot.journal");
+			journalDir.deleteOnExit();
+			journalSnapshot.deleteOnExit();
+			journalFile.deleteOnExit();
+
+			// Every change is forced to the disk, and the journal is never closed
+			CyclingPortal crashed = new CyclingPortal();
+			crashed.openJournal(journalSnapshot.getPath(), 1, 0);
+			int journalTeam = crashed.createTeam("journalteam", "The team of the journalled race");
+			int journalRace = crashed.createRace("Journalrace", "A journalled race");
+			int journalStage = crashed.addStageToRace(journalRace, "Journalstage", "", 100, LocalDateTime.now(),
+					StageType.FLAT);
+			crashed.concludeStagePreparation(journalStage);
+			int[] journalRiders = new int[4];
+			for (int i=0; i<journalRiders.length; i++) {
+				journalRiders[i] = crashed.createRider(journalTeam, "journalrider" + i, 1990);
+			}
+			for (int i=0; i<3; i++) {
+				crashed.registerRiderResultsInStage(journalStage, journalRiders[i], LocalTime.of(9, 0),
+						LocalTime.of(12, 0).plusSeconds(i * 5));
+			}
+			crashed.deleteRiderResultsInStage(journalStage, journalRiders[0]);
+			int[] ranksBeforeLast = crashed.getRidersRankInStage(journalStage);
+			crashed.registerRiderResultsInStage(journalStage, journalRiders[3], LocalTime.of(9, 0),
+					LocalTime.of(11, 59));
+
+			CyclingPortal replayed = new CyclingPortal();
+			replayed.openJournal(journalSnapshot.getPath(), 1, 0);
+			assert (Arrays.equals(replayed.getRaceIds(), crashed.getRaceIds()));
+			assert (Arrays.equals(replayed.getRaceStages(journalRace), crashed.getRaceStages(journalRace)));
+			assert (Arrays.equals(replayed.getTeamRiders(journalTeam), crashed.getTeamRiders(journalTeam)));
+			assert (Arrays.equals(replayed.getRidersRankInStage(journalStage),
+					crashed.getRidersRankInStage(journalStage))) : "Replayed stage ranks differ";
+			assert (Arrays.equals(replayed.getRankedAdjustedElapsedTimesInStage(journalStage),
+					crashed.getRankedAdjustedElapsedTimesInStage(journalStage))) : "Replayed stage times differ";
+			assert (Arrays.equals(replayed.getRidersGeneralClassificationRank(journalRace),
+					crashed.getRidersGeneralClassificationRank(journalRace))) : "Replayed standings differ";
+			replayed.closeJournal();
+
+			// Cutting the last record short, as a crash while writing it would, loses only that record
+			try (FileChannel channel = FileChannel.open(journalFile.toPath(), StandardOpenOption.WRITE)) {
+				channel.truncate(channel.size() - 2);
+			}
+			CyclingPortal torn = new CyclingPortal();
+			torn.openJournal(journalSnapshot.getPath(), 1, 0);
+			assert (Arrays.equals(torn.getTeamRiders(journalTeam), crashed.getTeamRiders(journalTeam)));
+			assert (Arrays.equals(torn.getRidersRankInStage(journalStage), ranksBeforeLast))
+					: "Torn journal record was not dropped";
+			torn.closeJournal();
+			crashed.closeJournal();
+		} catch (Exception e) {
+			e.printStackTrace(System.out);
+		}
+	}
+
+	/**
+	 * Registers a result for every rider in each of some stages.
+	 *
+	 * @param portal The portal the stages are in.
+	 * @param stageIds The IDs of the stages.
+	 * @param riderIds The IDs of the riders.
+	 * @throws Exception If a result is rejected.
+	 */
+	private static void registerStages(CyclingPortal portal, int[] stageIds, int[] riderIds) throws Exception {
+		for (int stageId : stageIds) {
+			for (int i=0; i<riderIds.length; i++) {
+				portal.registerRiderResultsInStage(stageId, riderIds[i], LocalTime.of(10, 0),
+						LocalTime.of(13, 0).plusSeconds(i * 7 % 600));
+			}
+		}
+	}
+
+	/**
+	 * Checks the standings of a stage match those of a copy of the portal saved and loaded
+	 * again, whose standings are worked out afresh from its results.
+	 *
+	 * @param portal The portal the stage is in.
+	 * @param stageId The ID of the stage.
+	 * @param file The file the portal is saved to.
+	 * @throws Exception If the portal cannot be saved or loaded.
+	 */
+	private static void checkStageMatchesLoadedCopy(CyclingPortal portal, int stageId, File file) throws Exception {
+		portal.saveCyclingPortal(file.getPath());
+		CyclingPortal copy = new CyclingPortal();
+		copy.loadCyclingPortal(file.getPath());
+		assert (Arrays.equals(portal.getRidersRankInStage(stageId), copy.getRidersRankInStage(stageId)))
+				: "Stage ranks differ from the loaded copy";
+		assert (Arrays.equals(portal.getRankedAdjustedElapsedTimesInStage(stageId),
+				copy.getRankedAdjustedElapsedTimesInStage(stageId)))
+				: "Stage adjusted elapsed times differ from the loaded copy";
+	}
+
+	/**
+	 * Counts the standings feeds a portal has attached to its stages and races, which the
+	 * portal keeps to itself, so they are read by reflection.
+	 *
+	 * @param portal The portal in question.
+	 * @return The number of feeds attached.
+	 * @throws ReflectiveOperationException If the portal's feeds cannot be read.
+	 */
+	private static int countStandingsFeeds(CyclingPortal portal) throws ReflectiveOperationException {
+		Field stageFeeds = CyclingPortal.class.getDeclaredField("stageFeeds");
+		Field raceFeeds = CyclingPortal.class.getDeclaredField("raceFeeds");
+		stageFeeds.setAccessible(true);
+		raceFeeds.setAccessible(true);
+		int count = ((Map<?, ?>) stageFeeds.get(portal)).size();
+		for (Object feeds : ((Map<?, ?>) raceFeeds.get(portal)).values()) {
+			count += ((Map<?, ?>) feeds).size();
+		}
+		return count;
 	}
 }
@@ -0,0 +1,251 @@
+package cycling;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * BinaryReader class.<br>
+ * Reads primitives written by a {@link BinaryWriter}, either from a file
+ * channel through a buffer, or from an array of bytes.
+ *
+ * @author Joey Griffiths and Alexander Cairns
+ *
+ */
+final class BinaryReader implements AutoCloseable {
+
+    /**
+     * The channel read from, or null if reading from an array.
+     */
+    private final FileChannel channel;
+
+    /**
+     * The bytes read from the channel but not yet consumed, or the array
+     * being read.
+     */
+    private final ByteBuffer buffer;
+
+    /**
+     * BinaryReader class constructor.<br>
+     * Creates a reader from a file channel.
+     *
+     * @param channel The channel to read from.
+     * @param bufferSize The number of bytes to read from the channel at a
+     *                   time.
+     */
+    BinaryReader(FileChannel channel, int bufferSize) {
+        this.channel = channel;
+        buffer = ByteBuffer.allocate(bufferSize);
+        buffer.flip();
+    }
+
+    /**
+     * BinaryReader class constructor.<br>
+     * Creates a reader from part of an array of bytes.
+     *
+     * @param bytes The array of bytes.
+     * @param offset The index of the first byte to be read.
+     * @param length The number of bytes which can be read.
+     */
+    BinaryReader(byte[] bytes, int offset, int length) {
+        channel = null;
+        buffer = ByteBuffer.wrap(bytes, offset, length);
+    }
+
+    /**
+     * Private method to read from the channel until the buffer holds a
+     * number of bytes.
+     *
+     * @param bytes The number of bytes needed, at most the buffer size.
+     * @return true if the bytes are available, false if the end of the input
+     * is reached first.
+     * @throws IOException If the channel cannot be read.
+     */
+    private boolean fill(int bytes) throws IOException {
+        if (buffer.remaining() >= bytes) {
+            return true;
+        }
+        if (channel == null) {
+            return false;
+        }
+        buffer.compact();
+        try {
+            while (buffer.position() < bytes) {
+                if (channel.read(buffer) < 0) {
+                    return false;
+                }
+            }
+            return true;
+        } finally {
+            buffer.flip();
+        }
+    }
+
+    /**
+     * Private method to make sure the buffer holds a number of bytes.
+     *
+     * @param bytes The number of bytes needed, at most the buffer size.
+     * @throws IOException If the end of the input is reached first.
+     */
+    private void ensure(int bytes) throws IOException {
+        if (!fill(bytes)) {
+            throw new EOFException("Unexpected end of input.");
+        }
+    }
+
+    /**
+     * Method to check whether any bytes remain to be read.
+     *
+     * @return true if at least one more byte can be read.
+     * @throws IOException If the channel cannot be read.
+     */
+    public boolean hasMore() throws IOException {
+        return fill(1);
+    }
+
+    /**
+     * Method to get the number of bytes consumed from the channel, which is
+     * the position to resume from after the last value read.
+     *
+     * @return The position in the channel after the last value read.
+     * @throws IOException If the channel's position cannot be found.
+     */
+    public long position() throws IOException {
+        return channel.position() - buffer.remaining();
+    }
+
+    /**
+     * Method to read a single unsigned byte.
+     *
+     * @return The byte read.
+     * @throws IOException If the end of the input is reached.
+     */
+    public int readByte() throws IOException {
+        ensure(1);
+        return buffer.get() & 0xFF;
+    }
+
+    /**
+     * Method to read an int from 4 bytes.
+     *
+     * @return The value read.
+     * @throws IOException If the end of the input is reached.
+     */
+    public int readInt() throws IOException {
+        ensure(4);
+        return buffer.getInt();
+    }
+
+    /**
+     * Method to read a long from 8 bytes.
+     *
+     * @return The value read.
+     * @throws IOException If the end of the input is reached.
+     */
+    public long readLong() throws IOException {
+        ensure(8);
+        return buffer.getLong();
+    }
+
+    /**
+     * Method to read a double from 8 bytes.
+     *
+     * @return The value read.
+     * @throws IOException If the end of the input is reached.
+     */
+    public double readDouble() throws IOException {
+        ensure(8);
+        return buffer.getDouble();
+    }
+
+    /**
+     * Method to read a non-negative int written as a variable length
+     * integer.
+     *
+     * @return The value read.
+     * @throws IOException If the end of the input is reached, or the value
+     *                     is out of range.
+     */
+    public int readVarInt() throws IOException {
+        long value = readVarLong();
+        if (value > Integer.MAX_VALUE) {
+            throw new IOException("Integer out of range.");
+        }
+        return (int)value;
+    }
+
+    /**
+     * Method to read a non-negative long written as a variable length
+     * integer.
+     *
+     * @return The value read.
+     * @throws IOException If the end of the input is reached, or the value
+     *                     is malformed.
+     */
+    public long readVarLong() throws IOException {
+        long value = 0;
+        for (int shift=0; shift<64; shift+=7) {
+            int b = readByte();
+            value |= (long)(b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed variable length integer.");
+    }
+
+    /**
+     * Method to read a long written zig-zag encoded.
+     *
+     * @return The value read.
+     * @throws IOException If the end of the input is reached, or the value
+     *                     is malformed.
+     */
+    public long readSignedVarLong() throws IOException {
+        long value = readVarLong();
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * Method to fill an array with the next bytes of the input.
+     *
+     * @param bytes The array to be filled.
+     * @throws IOException If the end of the input is reached first.
+     */
+    public void readBytes(byte[] bytes) throws IOException {
+        int offset = 0;
+        while (offset < bytes.length) {
+            ensure(1);
+            int length = Math.min(buffer.remaining(), bytes.length - offset);
+            buffer.get(bytes, offset, length);
+            offset += length;
+        }
+    }
+
+    /**
+     * Method to read a string written as its length followed by its UTF-8
+     * bytes.
+     *
+     * @return The string read.
+     * @throws IOException If the end of the input is reached first.
+     */
+    public String readString() throws IOException {
+        byte[] bytes = new byte[readVarInt()];
+        readBytes(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Method to close the channel.
+     *
+     * @throws IOException If the channel cannot be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+        }
+    }
+}
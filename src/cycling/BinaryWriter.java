@@ -0,0 +1,271 @@
+package cycling;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * BinaryWriter class.<br>
+ * Writes primitives in the compact encoding shared by portal snapshots and
+ * the mutation journal, either to a file channel through a buffer, or into
+ * memory.<br>
+ * Non-negative integers are written in 7-bit groups, least significant
+ * first, with the top bit of each byte set if more follow, so that small
+ * values such as IDs take a single byte.
+ *
+ * @author Joey Griffiths and Alexander Cairns
+ *
+ */
+final class BinaryWriter implements AutoCloseable {
+
+    /**
+     * The channel written to, or null if writing into memory.
+     */
+    private final FileChannel channel;
+
+    /**
+     * The bytes not yet written to the channel, or every byte written if
+     * writing into memory.
+     */
+    private ByteBuffer buffer;
+
+    /**
+     * BinaryWriter class constructor.<br>
+     * Creates a writer to a file channel.
+     *
+     * @param channel The channel to write to.
+     * @param bufferSize The number of bytes to buffer before writing to the
+     *                   channel.
+     */
+    BinaryWriter(FileChannel channel, int bufferSize) {
+        this.channel = channel;
+        buffer = ByteBuffer.allocate(bufferSize);
+    }
+
+    /**
+     * BinaryWriter class constructor.<br>
+     * Creates a writer into memory, which grows as bytes are written.
+     *
+     * @param initialSize The number of bytes initially allocated.
+     */
+    BinaryWriter(int initialSize) {
+        channel = null;
+        buffer = ByteBuffer.allocate(initialSize);
+    }
+
+    /**
+     * Private method to make room in the buffer for a number of bytes.
+     *
+     * @param bytes The number of bytes needed, at most the buffer size if
+     *              writing to a channel.
+     * @throws IOException If the buffer cannot be written.
+     */
+    private void ensure(int bytes) throws IOException {
+        if (buffer.remaining() >= bytes) {
+            return;
+        }
+        if (channel != null) {
+            flush();
+        } else {
+            ByteBuffer grown = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + bytes));
+            buffer.flip();
+            grown.put(buffer);
+            buffer = grown;
+        }
+    }
+
+    /**
+     * Method to write the contents of the buffer to the channel.<br>
+     * Does nothing if writing into memory.
+     *
+     * @throws IOException If the buffer cannot be written.
+     */
+    public void flush() throws IOException {
+        if (channel == null) {
+            return;
+        }
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Method to write the contents of the buffer to the channel and force
+     * everything written to the disk, along with the file's metadata.<br>
+     * Does nothing if writing into memory.
+     *
+     * @throws IOException If the buffer cannot be written or forced.
+     */
+    public void sync() throws IOException {
+        if (channel == null) {
+            return;
+        }
+        flush();
+        channel.force(true);
+    }
+
+    /**
+     * Method to get the number of bytes written into memory.
+     *
+     * @return The number of bytes written.
+     */
+    public int size() {
+        return buffer.position();
+    }
+
+    /**
+     * Method to get the array holding the bytes written into memory.<br>
+     * The array is shared with the writer and only its first
+     * {@link #size()} elements are in use.
+     *
+     * @return The array of bytes written.
+     */
+    public byte[] array() {
+        return buffer.array();
+    }
+
+    /**
+     * Method to discard every byte written into memory, so that the writer
+     * can be reused.
+     */
+    public void reset() {
+        buffer.clear();
+    }
+
+    /**
+     * Method to write a single byte.
+     *
+     * @param value The byte to be written, in the low 8 bits.
+     * @throws IOException If the buffer cannot be written.
+     */
+    public void writeByte(int value) throws IOException {
+        ensure(1);
+        buffer.put((byte)value);
+    }
+
+    /**
+     * Method to write an int in 4 bytes.
+     *
+     * @param value The value to be written.
+     * @throws IOException If the buffer cannot be written.
+     */
+    public void writeInt(int value) throws IOException {
+        ensure(4);
+        buffer.putInt(value);
+    }
+
+    /**
+     * Method to write a long in 8 bytes.
+     *
+     * @param value The value to be written.
+     * @throws IOException If the buffer cannot be written.
+     */
+    public void writeLong(long value) throws IOException {
+        ensure(8);
+        buffer.putLong(value);
+    }
+
+    /**
+     * Method to write a double in 8 bytes.
+     *
+     * @param value The value to be written.
+     * @throws IOException If the buffer cannot be written.
+     */
+    public void writeDouble(double value) throws IOException {
+        ensure(8);
+        buffer.putDouble(value);
+    }
+
+    /**
+     * Method to write a non-negative int as a variable length integer.
+     *
+     * @param value The value to be written.
+     * @throws IOException If the buffer cannot be written.
+     */
+    public void writeVarInt(int value) throws IOException {
+        writeVarLong(value & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Method to write a non-negative long as a variable length integer.
+     *
+     * @param value The value to be written.
+     * @throws IOException If the buffer cannot be written.
+     */
+    public void writeVarLong(long value) throws IOException {
+        ensure(10);
+        while ((value & ~0x7FL) != 0) {
+            buffer.put((byte)((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte)value);
+    }
+
+    /**
+     * Method to write a long which may be negative, zig-zag encoded so that
+     * values close to 0 take few bytes.
+     *
+     * @param value The value to be written.
+     * @throws IOException If the buffer cannot be written.
+     */
+    public void writeSignedVarLong(long value) throws IOException {
+        writeVarLong((value << 1) ^ (value >> 63));
+    }
+
+    /**
+     * Method to write part of an array of bytes.
+     *
+     * @param bytes The array of bytes.
+     * @param offset The index of the first byte to be written.
+     * @param length The number of bytes to be written.
+     * @throws IOException If the buffer cannot be written.
+     */
+    public void writeBytes(byte[] bytes, int offset, int length) throws IOException {
+        if (channel == null) {
+            ensure(length);
+            buffer.put(bytes, offset, length);
+            return;
+        }
+        int end = offset + length;
+        while (offset < end) {
+            if (!buffer.hasRemaining()) {
+                flush();
+            }
+            int chunk = Math.min(buffer.remaining(), end - offset);
+            buffer.put(bytes, offset, chunk);
+            offset += chunk;
+        }
+    }
+
+    /**
+     * Method to write a string as its length followed by its UTF-8 bytes.
+     *
+     * @param value The string to be written.
+     * @throws IOException If the buffer cannot be written.
+     */
+    public void writeString(String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(bytes.length);
+        writeBytes(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Method to flush the buffer and close the channel.
+     *
+     * @throws IOException If the buffer cannot be written.
+     */
+    @Override
+    public void close() throws IOException {
+        if (channel == null) {
+            return;
+        }
+        try {
+            flush();
+        } finally {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package cycling;
+
+/**
+ * This enum is used to represent the classifications a race's riders are
+ * ranked in.
+ *
+ * @author Joey Griffiths and Alexander Cairns
+ *
+ */
+public enum Classification {
+
+	/**
+	 * The general classification, ranked by least total adjusted elapsed
+	 * time.
+	 */
+	GENERAL,
+
+	/**
+	 * The points classification, ranked by most points, with ties broken by
+	 * general classification.
+	 */
+	POINTS,
+
+	/**
+	 * The mountain classification, ranked by most mountain points, with ties
+	 * broken by general classification.
+	 */
+	MOUNTAIN
+
+}
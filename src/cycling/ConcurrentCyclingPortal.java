@@ -0,0 +1,1008 @@
+package cycling;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Flow;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * ConcurrentCyclingPortal class which implements CyclingPortalInterface.
+ * <p>
+ *     A thread-safe CyclingPortal, so that results from several timing feeds
+ *     can be registered at once while standings are being read. Every call is
+ *     passed on to a CyclingPortal, guarded by two levels of lock:
+ * </p>
+ * <ul>
+ *     <li>The structure lock guards the races, stages, segments, teams and
+ *     riders in the system. It is held for writing by calls which add,
+ *     remove or prepare them, and for reading by every other call.</li>
+ *     <li>Each stage has its own lock guarding its results. It is held for
+ *     writing while results are registered or deleted in the stage, and for
+ *     reading while the stage's results, rankings or points are read. Race
+ *     classifications hold the lock of every stage in the race for
+ *     reading, taken in ascending order of stage ID.</li>
+ * </ul>
+ * <p>
+ *     Registering results in different stages therefore never contends, and
+ *     readers never block each other. Queries which only read the structure
+ *     are first attempted optimistically, without taking a lock at all, and
+ *     only retried under the read lock if a change was made meanwhile.
+ * </p>
+ *
+ * @author Joey Griffiths and Alexander Cairns
+ *
+ */
+public class ConcurrentCyclingPortal implements CyclingPortalInterface {
+
+	/**
+	 * A query of the CyclingPortal, run while holding the appropriate locks.
+	 *
+	 * @param <T> The type of the query's result.
+	 * @param <E> The type of exception the query can throw.
+	 */
+	@FunctionalInterface
+	private interface Query<T, E extends Exception> {
+
+		/**
+		 * Method to run the query.
+		 *
+		 * @return The result of the query.
+		 * @throws E If the query fails.
+		 */
+		T get() throws E;
+	}
+
+	/**
+	 * The CyclingPortal every call is passed on to.<br>
+	 * It publishes each change to its standings while the stage's lock is
+	 * held, but leaves the standings its feeds could not follow to be resent
+	 * here, as the standings of a race are read from all of its stages, whose
+	 * locks are not held while a result is registered in one of them.
+	 */
+	private final CyclingPortal portal = new CyclingPortal(false);
+
+	/**
+	 * The lock guarding the structure of the system.
+	 */
+	private final StampedLock structureLock = new StampedLock();
+
+	/**
+	 * Maps the ID of each stage to the lock guarding its results.<br>
+	 * Only changed while the structure lock is held for writing, so that a
+	 * stage has a lock exactly when it exists.
+	 */
+	private final ConcurrentHashMap<Integer, StampedLock> stageLocks = new ConcurrentHashMap<>();
+
+	/**
+	 * The number of changes journalled between each snapshot, or 0 if the
+	 * journal is only compacted on request.<br>
+	 * Compaction is handled here rather than by the CyclingPortal, as it must
+	 * wait for every stage to be free of writers.
+	 */
+	private volatile int compactionInterval = 0;
+
+	@Override
+	public int[] getRaceIds() {
+		return readStructure(portal::getRaceIds);
+	}
+
+	@Override
+	public int createRace(String name, String description) throws IllegalNameException, InvalidNameException {
+		int raceId;
+		long stamp = structureLock.writeLock();
+		try {
+			raceId = portal.createRace(name, description);
+		} finally {
+			structureLock.unlockWrite(stamp);
+		}
+		compactJournalIfDue();
+		return raceId;
+	}
+
+	@Override
+	public String viewRaceDetails(int raceId) throws IDNotRecognisedException {
+		return readStructure(() -> portal.viewRaceDetails(raceId));
+	}
+
+	@Override
+	public void removeRaceById(int raceId) throws IDNotRecognisedException {
+		long stamp = structureLock.writeLock();
+		try {
+			portal.removeRaceById(raceId);
+			updateStageLocks();
+			portal.resyncAllStandings();
+		} finally {
+			structureLock.unlockWrite(stamp);
+		}
+		compactJournalIfDue();
+	}
+
+	@Override
+	public int getNumberOfStages(int raceId) throws IDNotRecognisedException {
+		return readStructure(() -> portal.getNumberOfStages(raceId));
+	}
+
+	@Override
+	public int addStageToRace(int raceId, String stageName, String description, double length,
+			LocalDateTime startTime, StageType type) throws IDNotRecognisedException, IllegalNameException,
+			InvalidNameException, InvalidLengthException {
+		int stageId;
+		long stamp = structureLock.writeLock();
+		try {
+			stageId = portal.addStageToRace(raceId, stageName, description, length, startTime, type);
+			// Every new stage is given its own lock
+			stageLocks.put(stageId, new StampedLock());
+		} finally {
+			structureLock.unlockWrite(stamp);
+		}
+		compactJournalIfDue();
+		return stageId;
+	}
+
+	@Override
+	public int[] getRaceStages(int raceId) throws IDNotRecognisedException {
+		return readStructure(() -> portal.getRaceStages(raceId));
+	}
+
+	@Override
+	public double getStageLength(int stageId) throws IDNotRecognisedException {
+		return readStructure(() -> portal.getStageLength(stageId));
+	}
+
+	@Override
+	public void removeStageById(int stageId) throws IDNotRecognisedException {
+		long stamp = structureLock.writeLock();
+		try {
+			portal.removeStageById(stageId);
+			updateStageLocks();
+			portal.resyncAllStandings();
+		} finally {
+			structureLock.unlockWrite(stamp);
+		}
+		compactJournalIfDue();
+	}
+
+	@Override
+	public int addCategorizedClimbToStage(int stageId, Double location, SegmentType type, Double averageGradient,
+			Double length) throws IDNotRecognisedException, InvalidLocationException, InvalidStageStateException,
+			InvalidStageTypeException {
+		int segmentId;
+		long stamp = structureLock.writeLock();
+		try {
+			segmentId = portal.addCategorizedClimbToStage(stageId, location, type, averageGradient, length);
+		} finally {
+			structureLock.unlockWrite(stamp);
+		}
+		compactJournalIfDue();
+		return segmentId;
+	}
+
+	@Override
+	public int addIntermediateSprintToStage(int stageId, double location) throws IDNotRecognisedException,
+			InvalidLocationException, InvalidStageStateException, InvalidStageTypeException {
+		int segmentId;
+		long stamp = structureLock.writeLock();
+		try {
+			segmentId = portal.addIntermediateSprintToStage(stageId, location);
+		} finally {
+			structureLock.unlockWrite(stamp);
+		}
+		compactJournalIfDue();
+		return segmentId;
+	}
+
+	@Override
+	public void removeSegment(int segmentId) throws IDNotRecognisedException, InvalidStageStateException {
+		long stamp = structureLock.writeLock();
+		try {
+			portal.removeSegment(segmentId);
+		} finally {
+			structureLock.unlockWrite(stamp);
+		}
+		compactJournalIfDue();
+	}
+
+	@Override
+	public void concludeStagePreparation(int stageId) throws IDNotRecognisedException, InvalidStageStateException {
+		long stamp = structureLock.writeLock();
+		try {
+			portal.concludeStagePreparation(stageId);
+		} finally {
+			structureLock.unlockWrite(stamp);
+		}
+		compactJournalIfDue();
+	}
+
+	@Override
+	public int[] getStageSegments(int stageId) throws IDNotRecognisedException {
+		return readStructure(() -> portal.getStageSegments(stageId));
+	}
+
+	@Override
+	public int createTeam(String name, String description) throws IllegalNameException, InvalidNameException {
+		int teamId;
+		long stamp = structureLock.writeLock();
+		try {
+			teamId = portal.createTeam(name, description);
+		} finally {
+			structureLock.unlockWrite(stamp);
+		}
+		compactJournalIfDue();
+		return teamId;
+	}
+
+	@Override
+	public void removeTeam(int teamId) throws IDNotRecognisedException {
+		long stamp = structureLock.writeLock();
+		try {
+			portal.removeTeam(teamId);
+			portal.resyncAllStandings();
+		} finally {
+			structureLock.unlockWrite(stamp);
+		}
+		compactJournalIfDue();
+	}
+
+	@Override
+	public int[] getTeams() {
+		return readStructure(portal::getTeams);
+	}
+
+	@Override
+	public int[] getTeamRiders(int teamId) throws IDNotRecognisedException {
+		return readStructure(() -> portal.getTeamRiders(teamId));
+	}
+
+	@Override
+	public int createRider(int teamID, String name, int yearOfBirth)
+			throws IDNotRecognisedException, IllegalArgumentException {
+		int riderId;
+		long stamp = structureLock.writeLock();
+		try {
+			riderId = portal.createRider(teamID, name, yearOfBirth);
+		} finally {
+			structureLock.unlockWrite(stamp);
+		}
+		compactJournalIfDue();
+		return riderId;
+	}
+
+	@Override
+	public void removeRider(int riderId) throws IDNotRecognisedException {
+		long stamp = structureLock.writeLock();
+		try {
+			portal.removeRider(riderId);
+			portal.resyncAllStandings();
+		} finally {
+			structureLock.unlockWrite(stamp);
+		}
+		compactJournalIfDue();
+	}
+
+	@Override
+	public void registerRiderResultsInStage(int stageId, int riderId, LocalTime... checkpoints)
+			throws IDNotRecognisedException, DuplicatedResultException, InvalidCheckpointsException,
+			InvalidStageStateException {
+		long structure = structureLock.readLock();
+		try {
+			// Only this stage's results are changed, so only its lock is held for writing
+			StampedLock lock = getStageLock(stageId);
+			long stamp = lock.writeLock();
+			try {
+				portal.registerRiderResultsInStage(stageId, riderId, checkpoints);
+			} finally {
+				lock.unlockWrite(stamp);
+			}
+		} finally {
+			structureLock.unlockRead(structure);
+		}
+		resyncStandings(stageId);
+		compactJournalIfDue();
+	}
+
+	/**
+	 * Method to register a single checkpoint reached by a rider in a stage,
+	 * as by {@link CyclingPortal#registerRiderCheckpointInStage(int, int, int, LocalTime)}.
+	 *
+	 * @param stageId The ID of the stage the checkpoint is in.
+	 * @param riderId The ID of the rider who reached the checkpoint.
+	 * @param checkpoint The index of the checkpoint.
+	 * @param time The time the rider reached the checkpoint.
+	 * @return true if the rider's result is now complete, false otherwise.
+	 * @throws IDNotRecognisedException If the ID does not match any rider or
+	 *                                  stage in the system.
+	 * @throws DuplicatedResultException If the rider already has a result in
+	 *                                   the stage, or has already reached
+	 *                                   the checkpoint.
+	 * @throws InvalidCheckpointsException If the checkpoint is not the next
+	 *                                     one the rider has to reach.
+	 * @throws InvalidStageStateException If the stage is not "waiting for
+	 *                                    results".
+	 *
+	 */
+	public boolean registerRiderCheckpointInStage(int stageId, int riderId, int checkpoint, LocalTime time)
+			throws IDNotRecognisedException, DuplicatedResultException, InvalidCheckpointsException,
+			InvalidStageStateException {
+		boolean finished;
+		long structure = structureLock.readLock();
+		try {
+			// Only this stage's checkpoints are changed, so only its lock is held for writing
+			StampedLock lock = getStageLock(stageId);
+			long stamp = lock.writeLock();
+			try {
+				finished = portal.registerRiderCheckpointInStage(stageId, riderId, checkpoint, time);
+			} finally {
+				lock.unlockWrite(stamp);
+			}
+		} finally {
+			structureLock.unlockRead(structure);
+		}
+		// The standings only change once the rider's result is complete
+		if (finished) {
+			resyncStandings(stageId);
+			compactJournalIfDue();
+		}
+		return finished;
+	}
+
+	/**
+	 * Method to register the results of many riders in a stage at once, as
+	 * by {@link CyclingPortal#registerRiderResultsInStageBatch(int, int[], long[][])},
+	 * holding the stage's lock for the whole batch.
+	 *
+	 * @param stageId The ID of the stage the results are for.
+	 * @param riderIds The ID of the rider each result belongs to.
+	 * @param checkpoints The checkpoint times of each result, in nanoseconds
+	 *                    since midnight.
+	 * @return An array the same length as riderIds, holding null for each
+	 * result registered, or the exception explaining why it was rejected.
+	 * @throws IDNotRecognisedException If the stage does not exist.
+	 * @throws InvalidStageStateException If the stage is not waiting for
+	 *                                    results.
+	 *
+	 */
+	public Exception[] registerRiderResultsInStageBatch(int stageId, int[] riderIds, long[][] checkpoints)
+			throws IDNotRecognisedException, InvalidStageStateException {
+		Exception[] errors;
+		long structure = structureLock.readLock();
+		try {
+			StampedLock lock = getStageLock(stageId);
+			long stamp = lock.writeLock();
+			try {
+				errors = portal.registerRiderResultsInStageBatch(stageId, riderIds, checkpoints);
+			} finally {
+				lock.unlockWrite(stamp);
+			}
+		} finally {
+			structureLock.unlockRead(structure);
+		}
+		resyncStandings(stageId);
+		compactJournalIfDue();
+		return errors;
+	}
+
+	@Override
+	public LocalTime[] getRiderResultsInStage(int stageId, int riderId) throws IDNotRecognisedException {
+		return readStage(stageId, () -> portal.getRiderResultsInStage(stageId, riderId));
+	}
+
+	@Override
+	public LocalTime getRiderAdjustedElapsedTimeInStage(int stageId, int riderId) throws IDNotRecognisedException {
+		return readStage(stageId, () -> portal.getRiderAdjustedElapsedTimeInStage(stageId, riderId));
+	}
+
+	@Override
+	public void deleteRiderResultsInStage(int stageId, int riderId) throws IDNotRecognisedException {
+		long structure = structureLock.readLock();
+		try {
+			StampedLock lock = getStageLock(stageId);
+			long stamp = lock.writeLock();
+			try {
+				portal.deleteRiderResultsInStage(stageId, riderId);
+			} finally {
+				lock.unlockWrite(stamp);
+			}
+		} finally {
+			structureLock.unlockRead(structure);
+		}
+		resyncStandings(stageId);
+		compactJournalIfDue();
+	}
+
+	@Override
+	public int[] getRidersRankInStage(int stageId) throws IDNotRecognisedException {
+		return readStage(stageId, () -> portal.getRidersRankInStage(stageId));
+	}
+
+	@Override
+	public LocalTime[] getRankedAdjustedElapsedTimesInStage(int stageId) throws IDNotRecognisedException {
+		return readStage(stageId, () -> portal.getRankedAdjustedElapsedTimesInStage(stageId));
+	}
+
+	@Override
+	public int[] getRidersPointsInStage(int stageId) throws IDNotRecognisedException {
+		return readStage(stageId, () -> portal.getRidersPointsInStage(stageId));
+	}
+
+	@Override
+	public int[] getRidersMountainPointsInStage(int stageId) throws IDNotRecognisedException {
+		return readStage(stageId, () -> portal.getRidersMountainPointsInStage(stageId));
+	}
+
+	@Override
+	public void eraseCyclingPortal() {
+		long stamp = structureLock.writeLock();
+		try {
+			portal.eraseCyclingPortal();
+			updateStageLocks();
+			portal.resyncAllStandings();
+		} finally {
+			structureLock.unlockWrite(stamp);
+		}
+		compactJournalIfDue();
+	}
+
+	@Override
+	public void saveCyclingPortal(String filename) throws IOException {
+		// Every stage is read, so no results may be changed while saving
+		readAll(() -> {
+			portal.saveCyclingPortal(filename);
+			return null;
+		});
+	}
+
+	@Override
+	public void loadCyclingPortal(String filename) throws IOException, ClassNotFoundException {
+		long stamp = structureLock.writeLock();
+		try {
+			portal.loadCyclingPortal(filename);
+			updateStageLocks();
+			portal.resyncAllStandings();
+		} finally {
+			structureLock.unlockWrite(stamp);
+		}
+	}
+
+	@Override
+	public void removeRaceByName(String name) throws NameNotRecognisedException {
+		long stamp = structureLock.writeLock();
+		try {
+			portal.removeRaceByName(name);
+			updateStageLocks();
+			portal.resyncAllStandings();
+		} finally {
+			structureLock.unlockWrite(stamp);
+		}
+		compactJournalIfDue();
+	}
+
+	@Override
+	public LocalTime[] getGeneralClassificationTimesInRace(int raceId) throws IDNotRecognisedException {
+		return readRace(raceId, () -> portal.getGeneralClassificationTimesInRace(raceId));
+	}
+
+	@Override
+	public int[] getRidersPointsInRace(int raceId) throws IDNotRecognisedException {
+		return readRace(raceId, () -> portal.getRidersPointsInRace(raceId));
+	}
+
+	@Override
+	public int[] getRidersMountainPointsInRace(int raceId) throws IDNotRecognisedException {
+		return readRace(raceId, () -> portal.getRidersMountainPointsInRace(raceId));
+	}
+
+	/**
+	 * Method to get the rank of a single rider in a stage, as by
+	 * {@link CyclingPortal#getRiderRankInStage(int, int)}.
+	 *
+	 * @param stageId The ID of the stage being queried.
+	 * @param riderId The ID of the rider being queried.
+	 * @return The rider's rank in the stage, 1 being the winner, or 0 if the
+	 * rider has no result in the stage.
+	 * @throws IDNotRecognisedException If the ID does not match any rider or
+	 *                                  stage in the system.
+	 *
+	 */
+	public int getRiderRankInStage(int stageId, int riderId) throws IDNotRecognisedException {
+		return readStage(stageId, () -> portal.getRiderRankInStage(stageId, riderId));
+	}
+
+	/**
+	 * Method to get the rank of a single rider in a race's general
+	 * classification, as by
+	 * {@link CyclingPortal#getRiderGeneralClassificationRank(int, int)}.
+	 *
+	 * @param raceId The ID of the race being queried.
+	 * @param riderId The ID of the rider being queried.
+	 * @return The rider's rank in the general classification, 1 being the
+	 * leader, or 0 if the rider has no result in the race.
+	 * @throws IDNotRecognisedException If the ID does not match any rider or
+	 *                                  race in the system.
+	 *
+	 */
+	public int getRiderGeneralClassificationRank(int raceId, int riderId) throws IDNotRecognisedException {
+		return readRace(raceId, () -> portal.getRiderGeneralClassificationRank(raceId, riderId));
+	}
+
+	/**
+	 * Method to get the total adjusted elapsed time of a single rider in a
+	 * race, as by {@link CyclingPortal#getRiderGeneralClassificationTime(int, int)}.
+	 *
+	 * @param raceId The ID of the race being queried.
+	 * @param riderId The ID of the rider being queried.
+	 * @return The rider's total time, or null if the rider has no result in
+	 * the race.
+	 * @throws IDNotRecognisedException If the ID does not match any rider or
+	 *                                  race in the system.
+	 *
+	 */
+	public LocalTime getRiderGeneralClassificationTime(int raceId, int riderId) throws IDNotRecognisedException {
+		return readRace(raceId, () -> portal.getRiderGeneralClassificationTime(raceId, riderId));
+	}
+
+	/**
+	 * Method to get the first riders in a stage, ranked by elapsed time, as by
+	 * {@link CyclingPortal#getTopRidersInStage(int, int)}.
+	 *
+	 * @param stageId The ID of the stage being queried.
+	 * @param n The number of riders wanted.
+	 * @return A Leaderboard of the first n riders in the stage.
+	 * @throws IDNotRecognisedException If the ID does not match any stage in
+	 *                                  the system.
+	 *
+	 */
+	public Leaderboard getTopRidersInStage(int stageId, int n) throws IDNotRecognisedException {
+		return readStage(stageId, () -> portal.getTopRidersInStage(stageId, n));
+	}
+
+	/**
+	 * Method to get the first riders to reach a segment, as by
+	 * {@link CyclingPortal#getSegmentStandings(int, int)}.
+	 *
+	 * @param segmentId The ID of the segment being queried.
+	 * @param n The number of riders wanted.
+	 * @return A Leaderboard of the first n riders to reach the segment.
+	 * @throws IDNotRecognisedException If the ID does not match any segment
+	 *                                  in the system.
+	 *
+	 */
+	public Leaderboard getSegmentStandings(int segmentId, int n) throws IDNotRecognisedException {
+		int stageId = readStructure(() -> portal.getStageIdOfSegment(segmentId));
+		return readStage(stageId, () -> portal.getSegmentStandings(segmentId, n));
+	}
+
+	/**
+	 * Method to get the first riders in one of a race's classifications, as
+	 * by {@link CyclingPortal#getTopRidersInRace(int, Classification, int)}.
+	 *
+	 * @param raceId The ID of the race being queried.
+	 * @param classification The classification to rank the riders by.
+	 * @param n The number of riders wanted.
+	 * @return A Leaderboard of the first n riders in the classification.
+	 * @throws IDNotRecognisedException If the ID does not match any race in
+	 *                                  the system.
+	 *
+	 */
+	public Leaderboard getTopRidersInRace(int raceId, Classification classification, int n)
+			throws IDNotRecognisedException {
+		return readRace(raceId, () -> portal.getTopRidersInRace(raceId, classification, n));
+	}
+
+	@Override
+	public int[] getRidersGeneralClassificationRank(int raceId) throws IDNotRecognisedException {
+		return readRace(raceId, () -> portal.getRidersGeneralClassificationRank(raceId));
+	}
+
+	@Override
+	public int[] getRidersPointClassificationRank(int raceId) throws IDNotRecognisedException {
+		return readRace(raceId, () -> portal.getRidersPointClassificationRank(raceId));
+	}
+
+	@Override
+	public int[] getRidersMountainPointClassificationRank(int raceId) throws IDNotRecognisedException {
+		return readRace(raceId, () -> portal.getRidersMountainPointClassificationRank(raceId));
+	}
+
+	/**
+	 * Method to subscribe to the changes to a stage's standings, as by
+	 * {@link CyclingPortal#getStageStandingsPublisher(int, int)}.<br>
+	 * Changes are published while the stage's lock is held for writing, and
+	 * standings which must be resent are resent after it is released,
+	 * holding the lock of every stage in its race for reading. Each
+	 * subscriber joins the stage's feed holding the stage's lock for reading,
+	 * as a new feed is started from the stage's current standings.
+	 *
+	 * @param stageId The ID of the stage being subscribed to.
+	 * @param bufferCapacity The number of changes which may wait to be
+	 *                       delivered to each subscriber.
+	 * @return A Flow.Publisher of the changes to the stage's standings.
+	 * @throws IDNotRecognisedException If the ID does not match any stage in
+	 *                                  the system.
+	 * @throws IllegalArgumentException If the buffer capacity is less than 1.
+	 *
+	 */
+	public Flow.Publisher<RankChange> getStageStandingsPublisher(int stageId, int bufferCapacity)
+			throws IDNotRecognisedException {
+		Flow.Publisher<RankChange> publisher = readStage(stageId,
+				() -> portal.getStageStandingsPublisher(stageId, bufferCapacity));
+		return subscriber -> {
+			try {
+				readStage(stageId, () -> {
+					publisher.subscribe(subscriber);
+					return null;
+				});
+			} catch (IDNotRecognisedException e) {
+				// The stage has been removed, so the subscriber is completed straight away
+				readAll(() -> {
+					publisher.subscribe(subscriber);
+					return null;
+				});
+			}
+		};
+	}
+
+	/**
+	 * Method to subscribe to the changes to one of a race's classifications,
+	 * as by {@link CyclingPortal#getRaceStandingsPublisher(int, Classification, int)}.<br>
+	 * Each subscriber joins the race's feed holding the lock of every stage
+	 * in the race for reading.
+	 *
+	 * @param raceId The ID of the race being subscribed to.
+	 * @param classification The classification being subscribed to.
+	 * @param bufferCapacity The number of changes which may wait to be
+	 *                       delivered to each subscriber.
+	 * @return A Flow.Publisher of the changes to the race's classification.
+	 * @throws IDNotRecognisedException If the ID does not match any race in
+	 *                                  the system.
+	 * @throws IllegalArgumentException If the buffer capacity is less than 1.
+	 *
+	 */
+	public Flow.Publisher<RankChange> getRaceStandingsPublisher(int raceId, Classification classification,
+			int bufferCapacity) throws IDNotRecognisedException {
+		Flow.Publisher<RankChange> publisher = readRace(raceId,
+				() -> portal.getRaceStandingsPublisher(raceId, classification, bufferCapacity));
+		return subscriber -> {
+			try {
+				readRace(raceId, () -> {
+					publisher.subscribe(subscriber);
+					return null;
+				});
+			} catch (IDNotRecognisedException e) {
+				// The race has been removed
+				readAll(() -> {
+					publisher.subscribe(subscriber);
+					return null;
+				});
+			}
+		};
+	}
+
+	/**
+	 * Method to make this ConcurrentCyclingPortal durable by journalling
+	 * every change made to it.<br>
+	 * See {@link CyclingPortal#openJournal(String, int, int)}. Changes made
+	 * by different threads at once are grouped into the same sync of the
+	 * journal.
+	 *
+	 * @param filename Location of the snapshot file.
+	 * @param syncInterval The number of changes journalled between each time
+	 *                     the journal is forced to the disk, though no
+	 *                     change waits more than 100 milliseconds.
+	 * @param compactionInterval The number of changes journalled between each
+	 *                           snapshot, or 0 to only save a snapshot when
+	 *                           {@link #compactJournal()} is called.
+	 * @throws IOException If the snapshot or the journal cannot be read, or
+	 *                     the journal cannot be written.
+	 * @throws IllegalArgumentException If the sync interval is less than 1,
+	 *                                  or the compaction interval is negative.
+	 */
+	public void openJournal(String filename, int syncInterval, int compactionInterval) throws IOException {
+		if (compactionInterval < 0) {
+			throw new IllegalArgumentException("Journal compaction interval cannot be negative");
+		}
+		long stamp = structureLock.writeLock();
+		try {
+			// The CyclingPortal never compacts the journal itself, as it cannot
+			// wait for other stages' writers to finish
+			portal.openJournal(filename, syncInterval, 0);
+			this.compactionInterval = compactionInterval;
+			updateStageLocks();
+			portal.resyncAllStandings();
+		} finally {
+			structureLock.unlockWrite(stamp);
+		}
+	}
+
+	/**
+	 * Method to force every change journalled so far to the disk.<br>
+	 * Does nothing if this ConcurrentCyclingPortal is not journalled.
+	 *
+	 * @throws IOException If the journal cannot be written.
+	 */
+	public void syncJournal() throws IOException {
+		long stamp = structureLock.readLock();
+		try {
+			portal.syncJournal();
+		} finally {
+			structureLock.unlockRead(stamp);
+		}
+	}
+
+	/**
+	 * Method to save the contents of this ConcurrentCyclingPortal as a new
+	 * snapshot and empty its journal.<br>
+	 * Does nothing if this ConcurrentCyclingPortal is not journalled.
+	 *
+	 * @throws IOException If the snapshot or the journal cannot be written.
+	 */
+	public void compactJournal() throws IOException {
+		readAll(() -> {
+			portal.compactJournal();
+			return null;
+		});
+	}
+
+	/**
+	 * Method to force every change journalled to the disk and stop
+	 * journalling changes to this ConcurrentCyclingPortal.<br>
+	 * Does nothing if this ConcurrentCyclingPortal is not journalled.
+	 *
+	 * @throws IOException If the journal cannot be written.
+	 */
+	public void closeJournal() throws IOException {
+		long stamp = structureLock.writeLock();
+		try {
+			portal.closeJournal();
+		} finally {
+			structureLock.unlockWrite(stamp);
+		}
+	}
+
+	/**
+	 * Private method to run a query which only reads the structure of the
+	 * system.
+	 * <p>
+	 *     The query is first run optimistically without taking a lock. If the
+	 *     structure was changed while it ran, its result (or any exception it
+	 *     threw while reading an inconsistent structure) is discarded and it
+	 *     is run again under the read lock.
+	 * </p>
+	 *
+	 * @param query The query to be run.
+	 * @param <T> The type of the query's result.
+	 * @param <E> The type of exception the query can throw.
+	 * @return The result of the query.
+	 * @throws E If the query fails.
+	 *
+	 */
+	private <T, E extends Exception> T readStructure(Query<T, E> query) throws E {
+		long stamp = structureLock.tryOptimisticRead();
+		if (stamp != 0) {
+			try {
+				T result = query.get();
+				if (structureLock.validate(stamp)) {
+					return result;
+				}
+			} catch (Exception e) {
+				if (structureLock.validate(stamp)) {
+					// The structure was not changed, so the exception is genuine
+					throw e;
+				}
+			}
+		}
+		stamp = structureLock.readLock();
+		try {
+			return query.get();
+		} finally {
+			structureLock.unlockRead(stamp);
+		}
+	}
+
+	/**
+	 * Private method to run a query which reads a stage's results, holding
+	 * the structure lock and the stage's lock for reading.
+	 *
+	 * @param stageId The ID of the stage in question.
+	 * @param query The query to be run.
+	 * @param <T> The type of the query's result.
+	 * @return The result of the query.
+	 * @throws IDNotRecognisedException If the ID does not match any stage in
+	 * the system, or the query fails.
+	 *
+	 */
+	private <T> T readStage(int stageId, Query<T, IDNotRecognisedException> query)
+			throws IDNotRecognisedException {
+		long structure = structureLock.readLock();
+		try {
+			StampedLock lock = getStageLock(stageId);
+			long stamp = lock.readLock();
+			try {
+				return query.get();
+			} finally {
+				lock.unlockRead(stamp);
+			}
+		} finally {
+			structureLock.unlockRead(structure);
+		}
+	}
+
+	/**
+	 * Private method to run a query which reads the results of every stage
+	 * in a race, holding the structure lock and the lock of each of the
+	 * race's stages for reading.
+	 *
+	 * @param raceId The ID of the race in question.
+	 * @param query The query to be run.
+	 * @param <T> The type of the query's result.
+	 * @return The result of the query.
+	 * @throws IDNotRecognisedException If the ID does not match any race in
+	 * the system, or the query fails.
+	 *
+	 */
+	private <T> T readRace(int raceId, Query<T, IDNotRecognisedException> query)
+			throws IDNotRecognisedException {
+		long structure = structureLock.readLock();
+		try {
+			return readStages(portal.getRaceStages(raceId), query);
+		} finally {
+			structureLock.unlockRead(structure);
+		}
+	}
+
+	/**
+	 * Private method to run a query which reads every stage in the system,
+	 * holding the structure lock and the lock of every stage for reading.
+	 *
+	 * @param query The query to be run.
+	 * @param <T> The type of the query's result.
+	 * @param <E> The type of exception the query can throw.
+	 * @return The result of the query.
+	 * @throws E If the query fails.
+	 *
+	 */
+	private <T, E extends Exception> T readAll(Query<T, E> query) throws E {
+		long structure = structureLock.readLock();
+		try {
+			int[] stageIds = new int[stageLocks.size()];
+			int i = 0;
+			for (int stageId : stageLocks.keySet()) {
+				stageIds[i++] = stageId;
+			}
+			return readStages(stageIds, query);
+		} finally {
+			structureLock.unlockRead(structure);
+		}
+	}
+
+	/**
+	 * Private method to run a query while holding the locks of a number of
+	 * stages for reading.<br>
+	 * A read lock waits for a writer already queued on it, so two queries
+	 * taking the same locks in different orders could each wait on a writer
+	 * queued behind the other. The locks are therefore always taken in
+	 * ascending order of stage ID.<br>
+	 * The structure lock must be held, so that every stage has a lock.
+	 *
+	 * @param stageIds The IDs of the stages, in any order.
+	 * @param query The query to be run.
+	 * @param <T> The type of the query's result.
+	 * @param <E> The type of exception the query can throw.
+	 * @return The result of the query.
+	 * @throws E If the query fails.
+	 *
+	 */
+	private <T, E extends Exception> T readStages(int[] stageIds, Query<T, E> query) throws E {
+		int[] ordered = stageIds.clone();
+		Arrays.sort(ordered);
+		StampedLock[] locks = new StampedLock[ordered.length];
+		for (int i=0; i<ordered.length; i++) {
+			locks[i] = stageLocks.get(ordered[i]);
+		}
+		long[] stamps = new long[locks.length];
+		int held = 0;
+		try {
+			for (; held<locks.length; held++) {
+				stamps[held] = locks[held].readLock();
+			}
+			return query.get();
+		} finally {
+			for (int i=0; i<held; i++) {
+				locks[i].unlockRead(stamps[i]);
+			}
+		}
+	}
+
+	/**
+	 * Private method to find the lock guarding a stage's results.<br>
+	 * The structure lock must be held, so that the stage cannot be removed
+	 * while its lock is in use.
+	 *
+	 * @param stageId The ID of the stage in question.
+	 * @return The stage's lock.
+	 * @throws IDNotRecognisedException If the ID does not match any stage in
+	 * the system.
+	 *
+	 */
+	private StampedLock getStageLock(int stageId) throws IDNotRecognisedException {
+		StampedLock lock = stageLocks.get(stageId);
+		if (lock == null) {
+			throw new IDNotRecognisedException("No stage with an ID of " + stageId + " exists");
+		}
+		return lock;
+	}
+
+	/**
+	 * Private method to give every stage in the system a lock, and discard
+	 * the locks of stages which no longer exist.<br>
+	 * The structure lock must be held for writing, so that no stage lock is
+	 * in use.
+	 */
+	private void updateStageLocks() {
+		HashSet<Integer> stageIds = new HashSet<>();
+		for (Race race : portal.getRacesList()) {
+			for (Stage stage : race.getStages()) {
+				stageIds.add(stage.getId());
+				stageLocks.putIfAbsent(stage.getId(), new StampedLock());
+			}
+		}
+		stageLocks.keySet().retainAll(stageIds);
+	}
+
+	/**
+	 * Private method to resend the standings of a stage, and of its race,
+	 * which their feeds could not follow after the stage's results changed,
+	 * holding the lock of every stage in the race for reading.<br>
+	 * Must be called without holding any lock. Nothing is locked unless a
+	 * feed is stale.
+	 *
+	 * @param stageId The ID of the stage whose results changed.
+	 *
+	 */
+	private void resyncStandings(int stageId) {
+		if (!portal.hasStaleStandings()) {
+			return;
+		}
+		try {
+			int raceId = readStructure(() -> portal.getRaceIdOfStage(stageId));
+			readRace(raceId, () -> {
+				portal.resyncStandings(stageId);
+				return null;
+			});
+		} catch (IDNotRecognisedException e) {
+			// The stage has been removed meanwhile, which closed its feed
+		}
+	}
+
+	/**
+	 * Private method to compact the journal if enough changes have been
+	 * journalled since the last snapshot.<br>
+	 * Must be called without holding any lock, as every stage is read while
+	 * compacting.
+	 *
+	 * @throws UncheckedIOException If the snapshot or the journal cannot be
+	 * written.
+	 *
+	 */
+	private void compactJournalIfDue() {
+		int interval = compactionInterval;
+		if (interval == 0 || portal.getNoOfJournalRecords() < interval) {
+			return;
+		}
+		try {
+			readAll(() -> {
+				// Another thread may have compacted the journal while the locks were taken
+				if (portal.getNoOfJournalRecords() >= interval) {
+					portal.compactJournal();
+				}
+				return null;
+			});
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+}
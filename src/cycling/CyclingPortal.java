@@ -1,16 +1,18 @@
 package cycling;
 
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
-import java.time.temporal.ChronoUnit;
 import java.util.*;
 import java.util.Map.Entry;
-import java.util.stream.Collectors;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Flow;
+import java.util.function.IntFunction;
+import java.util.function.IntUnaryOperator;
+import java.util.function.Supplier;
 
 /**
  * CyclingPortal class which implements CyclingPortalInterface.
@@ -25,6 +27,28 @@ import java.util.stream.Collectors;
  */
 public class CyclingPortal implements CyclingPortalInterface {
 
+	/**
+	 * Works out the current standings of a stage or race, for a new feed to
+	 * start from.
+	 */
+	@FunctionalInterface
+	private interface StandingsQuery {
+
+		/**
+		 * Method to work out the standings.
+		 *
+		 * @return The current standings.
+		 * @throws IDNotRecognisedException If the stage or race has been
+		 *                                  removed.
+		 */
+		Leaderboard get() throws IDNotRecognisedException;
+	}
+
+	/**
+	 * The classifications ranked by points, each of which has its own index.
+	 */
+	private static final Classification[] POINTS_CLASSIFICATIONS = {Classification.POINTS, Classification.MOUNTAIN};
+
 	/**
 	 * A private, final, 2D array of integers, used to represent the points
 	 * earned for each rank in a stage, for different types of stages.<br>
@@ -65,6 +89,75 @@ public class CyclingPortal implements CyclingPortalInterface {
 	 */
 	private ArrayList<Team> teams = new ArrayList<>();
 
+	/**
+	 * An EntityRegistry indexing every entity in the system by its ID.<br>
+	 * Used to find races, stages, segments, teams and riders (and the entities
+	 * containing them) in constant time.
+	 */
+	private EntityRegistry registry = new EntityRegistry();
+
+	/**
+	 * An IdAllocator giving IDs to every entity in this CyclingPortal.<br>
+	 * Each CyclingPortal has its own, so that IDs in one do not depend on
+	 * another.
+	 */
+	private final IdAllocator ids = new IdAllocator();
+
+	/**
+	 * The MutationJournal recording every change made to the system since its
+	 * last snapshot, or null if the system is not journalled.
+	 */
+	private transient MutationJournal journal;
+
+	/**
+	 * Maps the ID of each stage with subscribers, to the feed publishing
+	 * changes to its standings.<br>
+	 * A feed removes itself once its last subscriber has gone.
+	 */
+	private final ConcurrentHashMap<Integer, StandingsFeed> stageFeeds = new ConcurrentHashMap<>();
+
+	/**
+	 * Maps each classification to a map of the ID of each race with
+	 * subscribers, to the feed publishing changes to its standings in that
+	 * classification.
+	 */
+	private final EnumMap<Classification, ConcurrentHashMap<Integer, StandingsFeed>> raceFeeds =
+			new EnumMap<>(Classification.class);
+
+	/**
+	 * Whether this CyclingPortal resends the standings its feeds could not
+	 * follow after each change it makes, or leaves them to be resent by its
+	 * caller.
+	 */
+	private final boolean publishesStandings;
+
+	/**
+	 * CyclingPortal class constructor.<br>
+	 * Creates an empty CyclingPortal, which resends the standings its feeds
+	 * could not follow itself.
+	 */
+	public CyclingPortal() {
+		this(true);
+	}
+
+	/**
+	 * CyclingPortal class constructor.<br>
+	 * Creates an empty CyclingPortal.
+	 *
+	 * @param publishesStandings Whether the standings its feeds could not
+	 *                           follow are resent by this CyclingPortal after
+	 *                           each change, or left to its caller, as for a
+	 *                           ConcurrentCyclingPortal, which must resend them
+	 *                           while holding the locks of every stage they
+	 *                           read.
+	 */
+	CyclingPortal(boolean publishesStandings) {
+		this.publishesStandings = publishesStandings;
+		for (Classification classification : Classification.values()) {
+			raceFeeds.put(classification, new ConcurrentHashMap<>());
+		}
+	}
+
 	@Override
 	public int[] getRaceIds() {
 		// Initialise int[] of the same length as races ArrayList
@@ -84,18 +177,16 @@ public class CyclingPortal implements CyclingPortalInterface {
 		if (name.length() > 30) { throw new InvalidNameException("Race name cannot be greater than 30 characters"); }
         if (name.contains(" ")) { throw new InvalidNameException("Race name cannot contain white space"); }
 
-        for (Race race : races) {
-			// Searches through races to find one which has this same name
-            if (race.getName().equals(name)) {
-				// If the name already exists, exception thrown
-                throw new IllegalNameException("Race name " + name + " already exists");
-            }
-
+		// Race names are indexed in the registry, so a duplicate is found without a search
+		if (registry.findRaceByName(name) != null) {
+			throw new IllegalNameException("Race name " + name + " already exists");
 		}
 
 		// Checks passed, race in instantiated and added to the list of races
-        Race race = new Race(name, description);
+        Race race = new Race(ids.allocate(IdAllocator.Kind.RACE), name, description);
         races.add(race);
+		registry.addRace(race);
+		journal(j -> j.recordCreateRace(race.getId(), name, description));
 		assert (races.size() > 0);
 		return race.getId();
 	}
@@ -108,8 +199,18 @@ public class CyclingPortal implements CyclingPortalInterface {
 
 	@Override
 	public void removeRaceById(int raceId) throws IDNotRecognisedException {
-		// Finds Race object and removes it from list of races
-		races.remove(getRaceById(raceId));
+		// Finds Race object and removes it from list of races and the registry
+		Race race = getRaceById(raceId);
+		for (Stage stage : race.getStages()) {
+			// Results in the race's stages are removed from their riders
+			removeResultsInStage(stage);
+		}
+		races.remove(race);
+		registry.removeRace(race);
+		journal(j -> j.recordRemoveRace(raceId));
+		if (publishesStandings) {
+			resyncAllStandings();
+		}
 	}
 
 	@Override
@@ -128,26 +229,18 @@ public class CyclingPortal implements CyclingPortalInterface {
         if (length<5) { throw new InvalidLengthException("Stage length cannot be less than 5(km)"); }
         if (stageName.contains(" ")) { throw new InvalidNameException("Stage name cannot contain white space"); }
 
-        Race raceToAddTo = null;
-        for (Race race : races) {
-            for (Stage stage : race.getStages()) {
-				// Searches through stages to find one which has this same name
-                if (stage.getName().equals(stageName)) {
-					// If name already exists, exception thrown
-                    throw new IllegalNameException("Stage name " + stageName + " already exists");
-                }
-            }
-			// Using this loop to find the race with this ID instead of getRaceById() saves computation
-            if (race.getId() == raceId) { raceToAddTo = race; }
-        }
-        if (raceToAddTo == null) {
-			throw new IDNotRecognisedException("No race with an ID of "+ raceId + " exists");
+		// Stage names are unique across every race, and indexed in the registry
+		if (registry.hasStageNamed(stageName)) {
+			throw new IllegalNameException("Stage name " + stageName + " already exists");
 		}
-        
+        Race raceToAddTo = getRaceById(raceId);
+
 		// Checks passed, instantiates the stage and adds it to list of stages in race
-		Stage stage = new Stage(stageName, description, length, startTime,
-				type);
+		Stage stage = new Stage(ids.allocate(IdAllocator.Kind.STAGE), stageName, description, length,
+				startTime, type);
         raceToAddTo.addStage(stage);
+		registry.addStage(raceToAddTo, stage);
+		journal(j -> j.recordAddStage(raceId, stage.getId(), stageName, description, length, startTime, type));
 		assert (raceToAddTo.getNoOfStages() > 0);
         return stage.getId();
 	}
@@ -174,7 +267,14 @@ public class CyclingPortal implements CyclingPortalInterface {
 	@Override
 	public void removeStageById(int stageId) throws IDNotRecognisedException {
 		// Finds Race object and Stage object and uses the race's removeStage() method
-		getRaceByStageId(stageId).removeStage(getStageById(stageId));
+		Stage stage = getStageById(stageId);
+		removeResultsInStage(stage);
+		getRaceByStageId(stageId).removeStage(stage);
+		registry.removeStage(stage);
+		journal(j -> j.recordRemoveStage(stageId));
+		if (publishesStandings) {
+			resyncAllStandings();
+		}
 	}
 
 	@Override
@@ -193,8 +293,11 @@ public class CyclingPortal implements CyclingPortalInterface {
 			throw new InvalidStageTypeException("Time-trial stages cannot contain segments");
 		}
 		// If arguments are valid, new Segment is instantiated and added to stage's list of segments
-		Segment segment = new Segment(location, type, averageGradient, length);
+		Segment segment = new Segment(ids.allocate(IdAllocator.Kind.SEGMENT), location, type, averageGradient,
+				length);
 		stage.addSegment(segment);
+		registry.addSegment(stage, segment);
+		journal(j -> j.recordAddClimb(stageId, segment.getId(), location, type, averageGradient, length));
 		return segment.getId();
 	}
 
@@ -213,8 +316,10 @@ public class CyclingPortal implements CyclingPortalInterface {
 			throw new InvalidStageTypeException("Time-trial stages cannot contain segments");
 		}
 		// If arguments are valid, new Segment is instantiated and added to stage's list of segments
-		Segment segment = new Segment(location, SegmentType.SPRINT);
+		Segment segment = new Segment(ids.allocate(IdAllocator.Kind.SEGMENT), location, SegmentType.SPRINT);
 		stage.addSegment(segment);
+		registry.addSegment(stage, segment);
+		journal(j -> j.recordAddSprint(stageId, segment.getId(), location));
 		return segment.getId();
 	}
 
@@ -226,7 +331,10 @@ public class CyclingPortal implements CyclingPortalInterface {
 			throw new InvalidStageStateException("Stage is already 'waiting for results'");
 		}
 		// Removes segment from stage
-		stage.removeSegment(getSegmentById(segmentId));
+		Segment segment = getSegmentById(segmentId);
+		stage.removeSegment(segment);
+		registry.removeSegment(segment);
+		journal(j -> j.recordRemoveSegment(segmentId));
 	}
 
 	@Override
@@ -238,6 +346,7 @@ public class CyclingPortal implements CyclingPortalInterface {
 		}
 		// Prepares the stage
 		stage.prepare();
+		journal(j -> j.recordConcludeStage(stageId));
 	}
 
 	@Override
@@ -262,23 +371,33 @@ public class CyclingPortal implements CyclingPortalInterface {
 		if (name.length() > 30) { throw new IllegalNameException("Team name cannot be greater than 30 characters"); }
         if (name.contains(" ")) { throw new InvalidNameException("Team name cannot contain white space"); }
 
-		for (Team team : teams) {
-			if (team.getName() == name) {
-				// Loops through each team to check the name is not already present
-				throw new IllegalNameException("Team with name \"" + name + "\" already exists");
-			}
+		// Team names are compared by their contents, through the registry's index of names
+		if (registry.hasTeamNamed(name)) {
+			throw new IllegalNameException("Team with name \"" + name + "\" already exists");
 		}
 
 		// Instantiates new Team and adds it to the list of teams
-		Team team = new Team(name, description);
+		Team team = new Team(ids.allocate(IdAllocator.Kind.TEAM), name, description);
 		teams.add(team);
+		registry.addTeam(team);
+		journal(j -> j.recordCreateTeam(team.getId(), name, description));
 		return team.getId();
 	}
 
 	@Override
 	public void removeTeam(int teamId) throws IDNotRecognisedException {
-		// Finds the Team with this ID and removes it from the list of teams
-		teams.remove(getTeamById(teamId));
+		// Finds the Team with this ID and removes it from the list of teams and the registry
+		Team team = getTeamById(teamId);
+		for (Rider rider : team.getRiders()) {
+			// The team's riders' results are removed from their stages
+			removeResultsOfRider(rider);
+		}
+		teams.remove(team);
+		registry.removeTeam(team);
+		journal(j -> j.recordRemoveTeam(teamId));
+		if (publishesStandings) {
+			resyncAllStandings();
+		}
 	}
 
 	@Override
@@ -315,22 +434,34 @@ public class CyclingPortal implements CyclingPortalInterface {
 		}
 
 		// If arguments are valid, new Rider is instantiated and added to the team specified
-		Rider rider = new Rider(name, yearOfBirth);
-		getTeamById(teamID).addRider(rider);
+		Team team = getTeamById(teamID);
+		Rider rider = new Rider(ids.allocate(IdAllocator.Kind.RIDER), name, yearOfBirth);
+		team.addRider(rider);
+		registry.addRider(team, rider);
+		journal(j -> j.recordCreateRider(teamID, rider.getId(), name, yearOfBirth));
 		return rider.getId();
 	}
 
 	@Override
 	public void removeRider(int riderId) throws IDNotRecognisedException {
 		// Finds the correct team and removes this rider from it
-        getTeamByRiderId(riderId).removeRider(getRiderById(riderId));
-
+		Rider rider = getRiderById(riderId);
+		removeResultsOfRider(rider);
+        getTeamByRiderId(riderId).removeRider(rider);
+		registry.removeRider(rider);
+		journal(j -> j.recordRemoveRider(riderId));
+		if (publishesStandings) {
+			resyncAllStandings();
+		}
 	}
 
 	@Override
 	public void registerRiderResultsInStage(int stageId, int riderId, LocalTime... checkpoints)
 			throws IDNotRecognisedException, DuplicatedResultException, InvalidCheckpointsException,
 			InvalidStageStateException {
+		// Only results which are registered are recorded, as the others are rejected straight away
+		PortalEvents.ResultRegistrationEvent event = new PortalEvents.ResultRegistrationEvent();
+		event.begin();
 		Stage stage = getStageById(stageId);
 		Rider rider = getRiderById(riderId);
 		// Makes sure stage has finished preparation before results are registered
@@ -338,17 +469,246 @@ public class CyclingPortal implements CyclingPortalInterface {
 			throw new InvalidStageStateException("Stage is not 'waiting for results'");
 		}
 		// Checkpoints input validation
-		if (checkpoints.length != stage.getSegments().length+2) {
+		if (checkpoints.length != stage.getNoOfSegments()+2) {
 			throw new InvalidCheckpointsException("Number of checkpoints must be number of segments + 2");
 		}
 		// Rider can only have one StageResult per stage
-		if (getResultInStage(rider, stage) != null) {
+		if (stage.getResult(riderId) != null) {
 			throw new DuplicatedResultException("A result for this stage already exists");
 		}
+		// A rider still on the course cannot also be given a whole result
+		if (stage.getNoOfCheckpointsReached(riderId) != 0) {
+			throw new DuplicatedResultException("Checkpoints for this stage have already been registered");
+		}
 		// If arguments are valid, new StageResult is instantiated storing these checkpoints
-		// and is added to rider's results
-		StageResult stageResult = new StageResult(stage, checkpoints);
+		// and is added to both the rider's and the stage's results
+		long elapsed = Timing.between(Timing.toNanos(checkpoints[0]),
+				Timing.toNanos(checkpoints[checkpoints.length-1]));
+		StageResult stageResult = addResultToStage(stage, riderId, elapsed,
+				resultId -> stage.addResult(riderId, resultId, checkpoints));
+		rider.addResult(stageResult);
+		journal(j -> j.recordRegisterResult(stageId, riderId, stageResult.getId(), checkpoints));
+		if (publishesStandings) {
+			resyncStandings(stageId);
+		}
+		event.end();
+		if (event.shouldCommit()) {
+			event.stageId = stageId;
+			event.batchSize = 1;
+			event.commit();
+		}
+	}
+
+	/**
+	 * Method to register a single checkpoint reached by a rider in a stage,
+	 * as it is read from a timing mat on the course.
+	 * <p>
+	 *     A rider's checkpoints must be registered in order, from the start.
+	 *     Each one reached at a segment adds the rider to that segment's
+	 *     standings straight away, so they can be read with
+	 *     {@link #getSegmentStandings(int, int)} while the stage is still
+	 *     being ridden. When the finish is registered, the checkpoints
+	 *     already reached become the rider's result in the stage, just as if
+	 *     they had all been registered at once with
+	 *     {@link #registerRiderResultsInStage(int, int, LocalTime...)}.
+	 * </p>
+	 * <p>
+	 *     Checkpoints are only saved and journalled once the rider's result
+	 *     is complete, so a rider still on the course when the portal is
+	 *     saved, loaded or recovered must have their checkpoints registered
+	 *     again.
+	 * </p>
+	 *
+	 * @param stageId The ID of the stage the checkpoint is in.
+	 * @param riderId The ID of the rider who reached the checkpoint.
+	 * @param checkpoint The index of the checkpoint, from 0 for the start to
+	 *                   the number of segments + 1 for the finish.
+	 * @param time The time the rider reached the checkpoint.
+	 * @return true if the checkpoint was the finish, so the rider's result is
+	 * now complete, false otherwise.
+	 * @throws IDNotRecognisedException If the ID does not match any rider or
+	 *                                  stage in the system.
+	 * @throws DuplicatedResultException If the rider already has a result in
+	 *                                   the stage, or has already reached
+	 *                                   the checkpoint.
+	 * @throws InvalidCheckpointsException If the index is not that of a
+	 *                                     checkpoint in the stage, or the
+	 *                                     rider has not reached every
+	 *                                     checkpoint before it.
+	 * @throws InvalidStageStateException If the stage is not "waiting for
+	 *                                    results".
+	 *
+	 */
+	public boolean registerRiderCheckpointInStage(int stageId, int riderId, int checkpoint, LocalTime time)
+			throws IDNotRecognisedException, DuplicatedResultException, InvalidCheckpointsException,
+			InvalidStageStateException {
+		Stage stage = getStageById(stageId);
+		Rider rider = getRiderById(riderId);
+		// Makes sure stage has finished preparation before checkpoints are registered
+		if (!stage.isPrepared()) {
+			throw new InvalidStageStateException("Stage is not 'waiting for results'");
+		}
+		int finish = stage.getNoOfSegments()+1;
+		if (checkpoint < 0 || checkpoint > finish) {
+			throw new InvalidCheckpointsException("Checkpoint must be between 0 and number of segments + 1");
+		}
+		// Rider can only have one StageResult per stage
+		if (stage.getResult(riderId) != null) {
+			throw new DuplicatedResultException("A result for this stage already exists");
+		}
+		// Checkpoints must arrive in the order they are reached
+		int reached = stage.getNoOfCheckpointsReached(riderId);
+		if (checkpoint < reached) {
+			throw new DuplicatedResultException("Checkpoint "+checkpoint+" has already been registered");
+		}
+		if (checkpoint > reached) {
+			throw new InvalidCheckpointsException("Checkpoint "+reached+" must be registered first");
+		}
+		if (checkpoint < finish) {
+			// The rider is still on the course, so only the segment they reached changes
+			stage.addCheckpoint(riderId, checkpoint, time);
+			if (checkpoint == 0) {
+				rider.addStageOnCourse(stage);
+			}
+			return false;
+		}
+		// At the finish, the checkpoints already reached become the rider's result
+		long elapsed = Timing.between(stage.getArrivals().getPartial(riderId).getStart(), Timing.toNanos(time));
+		StageResult stageResult = addResultToStage(stage, riderId, elapsed,
+				resultId -> stage.finishResult(riderId, resultId, time));
+		rider.removeStageOnCourse(stage);
 		rider.addResult(stageResult);
+		journal(j -> j.recordRegisterResult(stageId, riderId, stageResult.getId(), stageResult.getCheckpoints()));
+		if (publishesStandings) {
+			resyncStandings(stageId);
+		}
+		return true;
+	}
+
+	/**
+	 * Method to register the results of many riders in a stage at once.
+	 * <p>
+	 * The stage is found and checked once for the whole batch, then each
+	 * result is validated in the same way as by
+	 * {@link #registerRiderResultsInStage(int, int, LocalTime...)}. Every
+	 * valid result is registered and the stage's cached ranking is only
+	 * invalidated once. An invalid result does not stop the rest of the batch
+	 * from being registered; instead, the reason it was rejected is returned
+	 * at the same index it was given at.
+	 * </p>
+	 *
+	 * @param stageId The ID of the stage the results are for.
+	 * @param riderIds The ID of the rider each result belongs to.
+	 * @param checkpoints The checkpoint times of each result, in nanoseconds
+	 *                    since midnight.
+	 * @return An array the same length as riderIds, holding null for each
+	 * result registered, or the exception explaining why it was rejected: an
+	 * {@link IDNotRecognisedException} if the rider does not exist, an
+	 * {@link InvalidCheckpointsException} if the wrong number of checkpoints
+	 * are given or one is not a time of day, or a
+	 * {@link DuplicatedResultException} if the rider already has a result in
+	 * the stage, or appears earlier in the batch.
+	 * @throws IDNotRecognisedException If the stage does not exist.
+	 * @throws InvalidStageStateException If the stage is not waiting for
+	 *                                    results.
+	 * @throws IllegalArgumentException If there is not one set of checkpoints
+	 *                                  for each rider.
+	 *
+	 */
+	public Exception[] registerRiderResultsInStageBatch(int stageId, int[] riderIds, long[][] checkpoints)
+			throws IDNotRecognisedException, InvalidStageStateException {
+		// Input validation for the batch as a whole
+		if (riderIds.length != checkpoints.length) {
+			throw new IllegalArgumentException("There must be one set of checkpoints for each rider");
+		}
+		PortalEvents.ResultRegistrationEvent event = new PortalEvents.ResultRegistrationEvent();
+		event.begin();
+		Stage stage = getStageById(stageId);
+		if (!stage.isPrepared()) {
+			throw new InvalidStageStateException("Stage is not 'waiting for results'");
+		}
+		int noOfCheckpoints = stage.getNoOfSegments()+2;
+
+		// Each result is validated, and the valid ones are collected to be added together
+		Exception[] errors = new Exception[riderIds.length];
+		HashSet<Integer> ridersInBatch = new HashSet<>();
+		Rider[] riders = new Rider[riderIds.length];
+		int[] acceptedRiderIds = new int[riderIds.length];
+		int[] resultIds = new int[riderIds.length];
+		long[][] acceptedCheckpoints = new long[riderIds.length][];
+		int count = 0;
+		for (int i=0; i<riderIds.length; i++) {
+			int riderId = riderIds[i];
+			try {
+				Rider rider = getRiderById(riderId);
+				validateCheckpoints(checkpoints[i], noOfCheckpoints);
+				// Rider can only have one StageResult per stage, including those earlier in the batch
+				if (stage.getResult(riderId) != null || !ridersInBatch.add(riderId)) {
+					throw new DuplicatedResultException("A result for rider "+riderId+" in this stage already exists");
+				}
+				if (stage.getNoOfCheckpointsReached(riderId) != 0) {
+					throw new DuplicatedResultException("Checkpoints for rider "+riderId+" in this stage have already been registered");
+				}
+				riders[count] = rider;
+				acceptedRiderIds[count] = riderId;
+				resultIds[count] = ids.allocate(IdAllocator.Kind.RESULT);
+				acceptedCheckpoints[count] = checkpoints[i];
+				count++;
+			} catch (IDNotRecognisedException | InvalidCheckpointsException | DuplicatedResultException e) {
+				errors[i] = e;
+			}
+		}
+
+		// Every valid result is added to the stage at once, then to its rider, so the
+		// standings are sent again rather than changed one result at a time
+		stage.addResults(acceptedRiderIds, resultIds, acceptedCheckpoints, count);
+		if (count > 0) {
+			invalidateStandings(stageId);
+		}
+		for (int r=0; r<count; r++) {
+			riders[r].addResult(stage.getResult(acceptedRiderIds[r]));
+		}
+		// The whole batch is journalled before the journal can be compacted, so that
+		// a snapshot never contains results whose records follow it
+		int noOfResults = count;
+		journal(j -> {
+			for (int r=0; r<noOfResults; r++) {
+				j.recordRegisterResult(stageId, acceptedRiderIds[r], resultIds[r], acceptedCheckpoints[r]);
+			}
+		});
+		if (publishesStandings) {
+			resyncStandings(stageId);
+		}
+		event.end();
+		if (event.shouldCommit()) {
+			event.stageId = stageId;
+			event.batchSize = riderIds.length;
+			event.rejected = riderIds.length - count;
+			event.commit();
+		}
+		return errors;
+	}
+
+	/**
+	 * Private method to validate the checkpoints of a result given in
+	 * nanoseconds since midnight.
+	 *
+	 * @param checkpoints The checkpoint times to be validated.
+	 * @param noOfCheckpoints The number of checkpoints in the stage.
+	 * @throws InvalidCheckpointsException If the wrong number of checkpoints
+	 *                                     are given, or one is not a time of
+	 *                                     day.
+	 *
+	 */
+	private void validateCheckpoints(long[] checkpoints, int noOfCheckpoints) throws InvalidCheckpointsException {
+		if (checkpoints == null || checkpoints.length != noOfCheckpoints) {
+			throw new InvalidCheckpointsException("Number of checkpoints must be number of segments + 2");
+		}
+		for (long checkpoint : checkpoints) {
+			if (checkpoint < 0 || checkpoint >= Timing.NANOS_PER_DAY) {
+				throw new InvalidCheckpointsException("Checkpoint time "+checkpoint+" is not a time of day");
+			}
+		}
 	}
 
 	@Override
@@ -365,635 +725,837 @@ public class CyclingPortal implements CyclingPortalInterface {
 
 	@Override
 	public LocalTime getRiderAdjustedElapsedTimeInStage(int stageId, int riderId) throws IDNotRecognisedException {
-		Rider riderToFind = getRiderById(riderId);
+		// Validates that the rider exists before looking them up in the stage
+		getRiderById(riderId);
 		Stage stage = getStageById(stageId);
-		// Retrieves a list of all riders in the stage
-		ArrayList<Rider> ridersInStage = getRidersInStage(stage);
-
-		// HashMap to associate riders with elapsed times
-		HashMap<Rider, LocalTime> ridersAndTimes = new HashMap<>();
-		for (Rider rider : ridersInStage) {
-			// Adds each rider in the stage and their elapsed time in the stage to the HashMap
-			ridersAndTimes.put(rider, getElapsedTime(stage, rider));
-		}
-
-		// HashMap is sorted by values (elapsed times)
-		HashMap<Rider, LocalTime> sortedMap = sortRidersByTimes(ridersAndTimes);
-
-		// The HashMap is split into two arrays of riders and times
-		Rider[] sortedRidersInStage = sortedMap.keySet().toArray(new Rider[ridersInStage.size()]);
-		LocalTime[] sortedTimes = sortedMap.values().toArray(new LocalTime[ridersInStage.size()]);
-
-		// streak represents the number of riders in a row who finished the stage with
-		// less than 1 second between them
-		int streak = 0;
-		for (int i=0; i<sortedRidersInStage.length; i++) {
-			// First rider is skipped as it has no previous rider
-			if (i > 0) {
-				LocalTime elapsedTime = sortedTimes[i];
-				LocalTime prevElapsedTime = sortedTimes[i-1];
-				assert (elapsedTime.equals(sortedMap.get(sortedRidersInStage[i])));
-
-				// Calculates the time difference between two adjacent elapsed times
-				long timeDifference = prevElapsedTime.until(elapsedTime, ChronoUnit.MILLIS);
-				assert (timeDifference >= 0);
-
-				if (timeDifference < 1000) {
-					// If the time difference is less than 1 second (1000ms), streak is incremented
-					streak++;
-				} else {
-					// Otherwise, the streak ends
-					streak = 0;
-				}
-			}
+		if (!stage.hasResult(riderId)) {
+			return null;
+		}
+		// The stage's index finds the rider and the front of their bunch without
+		// ranking the whole stage
+		RankIndex index = stage.getStandings();
+		return Timing.toLocalTime(index.getAdjustedTime(index.getPosition(stage.getElapsedNanos(riderId), riderId)));
+	}
 
-			if (sortedRidersInStage[i].equals(riderToFind)) {
-				// When the rider we are looking for is found in the loop
-				if (streak == 0) {
-					// If there is no streak (previous rider was more than 1 second apart),
-					// the rider's adjusted elapsed time is simply the rider's elapsed time
-					return sortedTimes[i];
-				}
-				else {
-					// If there is a streak, the elapsed time of the rider who began the streak
-					// is returned
-					return getElapsedTime(stage, sortedRidersInStage[i-streak]);
-				}
-			}
+	/**
+	 * Method to get the rank of a single rider in a stage.
+	 * <p>
+	 *     The stage keeps an index of its riders ordered by elapsed time,
+	 *     which is updated as each result is registered or deleted, so the
+	 *     rider is found in O(log n) time without ranking the whole stage.
+	 * </p>
+	 *
+	 * @param stageId The ID of the stage being queried.
+	 * @param riderId The ID of the rider being queried.
+	 * @return The rider's rank in the stage, 1 being the winner, or 0 if the
+	 * rider has no result in the stage.
+	 * @throws IDNotRecognisedException If the ID does not match any rider or
+	 *                                  stage in the system.
+	 *
+	 */
+	public int getRiderRankInStage(int stageId, int riderId) throws IDNotRecognisedException {
+		getRiderById(riderId);
+		Stage stage = getStageById(stageId);
+		if (!stage.hasResult(riderId)) {
+			return 0;
 		}
-		// Return null if given rider does not exist in this stage
-		return null;
+		return stage.getStandings().getPosition(stage.getElapsedNanos(riderId), riderId) + 1;
 	}
 
 	@Override
 	public void deleteRiderResultsInStage(int stageId, int riderId) throws IDNotRecognisedException {
 		// Retrieves the Rider object and the StageResult that corresponds to it and this stage
 		Rider rider = getRiderById(riderId);
-		StageResult result = getResultInStage(rider, getStageById(stageId));
+		Stage stage = getStageById(stageId);
+		StageResult result = getResultInStage(rider, stage);
 		if (result == null) {
+			// A rider still on the course has the checkpoints they have reached discarded
+			if (stage.removeCheckpoints(riderId)) {
+				rider.removeStageOnCourse(stage);
+				return;
+			}
 			throw new IDNotRecognisedException("Rider "+riderId+" does not have any results in stage "+stageId);
 		} else {
-			// Removes the result if it exists in the stage
-			rider.removeResult(result);
+			// Removes the result from both the rider and the stage if it exists
+			changeResultInStage(stage, riderId, stage.getElapsedNanos(riderId), false, () -> {
+				rider.removeResult(result);
+				stage.removeResult(riderId);
+				return null;
+			});
+			journal(j -> j.recordDeleteResult(stageId, riderId));
+			if (publishesStandings) {
+				resyncStandings(stageId);
+			}
 		}
 	}
 
 	@Override
 	public int[] getRidersRankInStage(int stageId) throws IDNotRecognisedException {
-		// HashMap to associate riders with their adjusted elapsed times is initialised
-		HashMap<Rider, LocalTime> riderToResultMap = new HashMap<Rider, LocalTime>();
-		Stage stage = getStageById(stageId);
-
-		for (Rider rider : getRidersInStage(stage)) {
-			// Finds the StageResult for each rider in this stage
-			StageResult result = getResultInStage(rider, stage);
-			if (result != null) {
-				// If the rider is in this stage, their adjusted elapsed time is retrieved
-				// And associated with them in the HashMap
-				LocalTime elapsedTime = getRiderAdjustedElapsedTimeInStage(stageId, rider.getId());
-				riderToResultMap.put(rider, elapsedTime);
-			}
-		}
-
-
-		// The hashmap is sorted so that riders will be order of their ranking
-		HashMap<Rider, LocalTime> sortedMap = sortRidersByTimes(riderToResultMap);
-
-		// The method needs to return an int[] of IDs, so one is initialised
-		int[] rankedRiders = new int[sortedMap.size()];
-		int i = 0;
-		for (Rider rider : sortedMap.keySet()) {
-			// Each rider's ID from the sorted HashMap is added to the int[] in order
-			rankedRiders[i] = rider.getId();
-			i++;
-		}
-		return rankedRiders;
+		// The stage's ranking holds the IDs of its riders in order of their rank
+		return getStageRanking(getStageById(stageId)).getRiderIds();
 	}
 
 	@Override
 	public LocalTime[] getRankedAdjustedElapsedTimesInStage(int stageId) throws IDNotRecognisedException {
-		// Retrieves an int[] of ranked rider IDs
-		int[] rankedRiderIds = getRidersRankInStage(stageId);
-		LocalTime[] rankedTimes = new LocalTime[rankedRiderIds.length];
-		for (int i=0;i<rankedRiderIds.length;i++) {
-			// Retrieves the adjusted elapsed time for each rider in the stage and adds it
-			// to the ranked array of times
-			rankedTimes[i] = getRiderAdjustedElapsedTimeInStage(stageId, rankedRiderIds[i]);
-		}
-		return rankedTimes;
+		// The stage's ranking holds the adjusted elapsed times in the same order
+		// as its ranked rider IDs
+		return getStageRanking(getStageById(stageId)).getAdjustedTimes();
 	}
 
 	@Override
 	public int[] getRidersPointsInStage(int stageId) throws IDNotRecognisedException {
-		Stage stage = getStageById(stageId);
-		// Retrieves a list of rider IDs in order of their rank
-		int[] rankedRiders = getRidersRankInStage(stageId);
-		StageType type = stage.getType();
-		// Initialises a new array to contain points for each rider
-		int[] points = new int[rankedRiders.length];
-		for (int i=0;i<points.length;i++) {
-			// i represents the current rider in the loop's ranking
-			if (i > 14) {
-				// If the rider ranked 16th or more, they get no points
-				points[i] = 0;
-			} else {
-				// Looks up points table attribute to assign points
-				switch (type) {
-					case FLAT:
-						points[i] = pointsTable[0][i];
-						break;
-					case MEDIUM_MOUNTAIN:
-						points[i] = pointsTable[1][i];
-						break;
-					default: // HIGH_MOUNTAIN or TT
-						points[i] = pointsTable[2][i];
-						break;
-				}
-			}
-
-			// Calculates and adds the points aquired from immediate sprints in the stage
-			points[i] += getImmediateSprintPoints(getRiderById(rankedRiders[i]), stage);
-		}
-		return points;
+		// Points are computed from the stage's cached ranking
+		return getStagePoints(getStageById(stageId));
 	}
 
 	@Override
 	public int[] getRidersMountainPointsInStage(int stageId) throws IDNotRecognisedException {
-		Stage stage = getStageById(stageId);
-		Segment[] segments = stage.getSegments();
-		// Ranked list of rider IDs in the stage
-		int[] ridersRanks = getRidersRankInStage(stageId);
-		// Ranked list of Rider objects in the stage
-		Rider[] ridersInStage = new Rider[ridersRanks.length];
-		for (int i=0;i<ridersInStage.length;i++) {
-			// Adds the Rider object for each ID to the array
-			ridersInStage[i] = getRiderById(ridersRanks[i]);
-		}
-
-		// Initalises an array of points for each rider in the stage, starting with 0 for all
-		int[] mountainPoints = new int[ridersInStage.length];
-		Arrays.fill(mountainPoints, 0);
-
-		for (int i=0;i<segments.length;i++) {
-			SegmentType type = segments[i].getType();
-			if (type == SegmentType.SPRINT) {
-				// Sprint segments are ignored when calculating points
-				continue;
-			}
-
-			// HashMap to associate riders with their segment time for this segment
-			HashMap<Rider, LocalTime> resultToTimeMap = new HashMap<Rider, LocalTime>();
-
-			for (Rider rider : ridersInStage) {
-				StageResult result = getResultInStage(rider, stage);
-				if (result != null) {
-					// Segment time is the time a rider reaches the segment
-					LocalTime[] checkpoints = result.getCheckpoints();
-					assert (checkpoints.length == segments.length + 2);
-					LocalTime segmentTime = timeDifference(checkpoints[0], checkpoints[i+1]);
-					resultToTimeMap.put(rider, segmentTime);
-				}
-			}
-
-			// Sorts this segments HashMap based on values (segment times)
-			HashMap<Rider, LocalTime> sortedMap = sortRidersByTimes(resultToTimeMap);
-
-			// The rank of the current rider in this segment for each rider
-			int a = 0;
-			for (Rider rider : sortedMap.keySet()) {
-				// Only checks the first 8 riders in the segment, as the others will
-				// recieve no points for this segment
-				if (a > 7) { break; }
-
-				for (int b=0;b<ridersInStage.length;b++) {
-					// b represents the position of the rider in the final points array
-					if (ridersInStage[b].equals(rider)) {
-						// Where the rider in the segment matches up with the rider in the stage,
-						// the rider's total points is incremented by the points for this segment
-						// which is looked up in the points table, based on rank and segment type
-						switch (type) {
-							case C4:
-								mountainPoints[b] += mountainPointsTable[a][0];
-								break;
-							case C3:
-								mountainPoints[b] += mountainPointsTable[a][1];
-								break;
-							case C2:
-								mountainPoints[b] += mountainPointsTable[a][2];
-								break;
-							case C1:
-								mountainPoints[b] += mountainPointsTable[a][3];
-								break;
-							case HC:
-								mountainPoints[b] += mountainPointsTable[a][4];
-								break;
-							default:
-								assert (false);
-						}
-						break;
-					}
-				}
-				a++;
-			}
-		}
-		return mountainPoints;
+		// Mountain points are computed from the stage's cached ranking
+		return getStageMountainPoints(getStageById(stageId));
 	}
 
 	@Override
 	public void eraseCyclingPortal() {
-		// Resets all static counter attributes so that IDs start from 0 again
-		Team.resetNoOfTeams();
-		Rider.resetNoOfRiders();
-		Race.resetNoOfRaces();
-		Stage.resetNoOfStages();
-		Segment.resetNoOfSegments();
-		StageResult.resetTotalResults();
+		// Resets the ID allocator so that IDs start from 0 again
+		ids.reset();
 		// Clears list of teams and races in CyclingPortal
 		teams.clear();
 		races.clear();
+		registry.clear();
+		journal(j -> j.recordErase());
+		if (publishesStandings) {
+			resyncAllStandings();
+		}
 	}
 
 	@Override
 	public void saveCyclingPortal(String filename) throws IOException {
-		// ObjectOutputStream can serialise an object and write it to a file
-		ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(filename));
-		try {
-			// Serialises this CyclingPortal object
-			oos.writeObject(this);
-		} finally {
-			// ObjectOutputStream must close regardless of if write is successful
-			oos.close();
-		}
+		// The races and teams are written in a compact binary snapshot, along with the ID counters
+		PortalSnapshot.save(races, teams, ids, filename);
 	}
 
 	@Override
 	public void loadCyclingPortal(String filename) throws IOException, ClassNotFoundException {
-		// ObjectInputStream can read a serialised file and deserialise the object
-		ObjectInputStream ois = new ObjectInputStream(new FileInputStream(filename));
-		try {
-			// Reads the serialised object and deserialises it
-			Object obj = ois.readObject();
-			CyclingPortal cyclingPortal;
-			if (obj instanceof CyclingPortal) {
-				cyclingPortal = (CyclingPortal)obj;
-				// Replaces this object attributes with those of loaded CyclingPortal
-				teams = cyclingPortal.getTeamsList();
-				races = cyclingPortal.getRacesList();
-			}
-		} finally {
-			// ObjectInputStream must close regardless of if read is successful
-			ois.close();
+		// The whole snapshot is read before anything is replaced, so this portal is
+		// unchanged if the file cannot be loaded
+		restoreSnapshot(PortalSnapshot.load(filename));
+		if (journal != null) {
+			// The loaded contents replace everything journalled, so they are
+			// compacted straight into a new snapshot
+			journal.compact(races, teams, ids);
+		}
+		if (publishesStandings) {
+			resyncAllStandings();
 		}
 	}
 
-	@Override
-	public void removeRaceByName(String name) throws NameNotRecognisedException {
-		for (Race race : races) {
-			// Searches through each race until a matching name is found
-			if (race.getName().equals(name)) {
-				// Removes this race from the list
-				races.remove(race);
-				// Exits the method so that the for loop does not continue
-				return;
-			}
+	/**
+	 * Method to make this CyclingPortal durable by journalling every change
+	 * made to it.
+	 * <p>
+	 * The contents of this CyclingPortal are replaced with those of the
+	 * snapshot with the given filename, or emptied if it does not exist, and
+	 * any changes in its journal (the file with ".journal" appended to the
+	 * filename) are then replayed. From then on, every change is appended to
+	 * the journal, and every 'compactionInterval' changes the contents are
+	 * saved as a new snapshot and the journal is emptied.
+	 * </p>
+	 *
+	 * @param filename Location of the snapshot file.
+	 * @param syncInterval The number of changes journalled between each time
+	 *                     the journal is forced to the disk. 1 makes every
+	 *                     change durable before its method returns, while
+	 *                     larger values group changes into fewer, cheaper
+	 *                     writes at the risk of losing the most recent
+	 *                     changes in a crash: at most syncInterval - 1 of
+	 *                     them, and none made more than 100 milliseconds
+	 *                     before it, as a change which waits that long is
+	 *                     forced to the disk however few follow it.
+	 * @param compactionInterval The number of changes journalled between each
+	 *                           snapshot, or 0 to only save a snapshot when
+	 *                           {@link #compactJournal()} is called.
+	 * @throws IOException If the snapshot or the journal cannot be read, or
+	 *                     the journal cannot be written.
+	 * @throws IllegalArgumentException If the sync interval is less than 1,
+	 *                                  or the compaction interval is negative.
+	 */
+	public void openJournal(String filename, int syncInterval, int compactionInterval) throws IOException {
+		// Input validation
+		if (syncInterval < 1) {
+			throw new IllegalArgumentException("Journal sync interval must be at least 1");
+		}
+		if (compactionInterval < 0) {
+			throw new IllegalArgumentException("Journal compaction interval cannot be negative");
+		}
+		closeJournal();
+		long generation = 0;
+		if (Files.exists(Paths.get(filename))) {
+			PortalSnapshot snapshot = PortalSnapshot.load(filename);
+			restoreSnapshot(snapshot);
+			generation = snapshot.getGeneration();
+		} else {
+			eraseCyclingPortal();
+		}
+		// The journal is only attached once it has been replayed, so that replayed
+		// changes are not journalled again
+		journal = MutationJournal.open(filename, generation, syncInterval, compactionInterval, this);
+		if (publishesStandings) {
+			resyncAllStandings();
 		}
-		throw new NameNotRecognisedException("No race exists with name " + name);
 	}
 
-	@Override
-	public LocalTime[] getGeneralClassificationTimesInRace(int raceId) throws IDNotRecognisedException {
-		Race race = getRaceById(raceId);
-		Stage[] stages = race.getStages();
-		// Retrieves all riders participating in this race
-		ArrayList<Rider> riders = getRidersInRace(race);
-		// Initialises a HashMap to associate riders with their elapsed times
-		HashMap<Rider, LocalTime> riderTimes = new HashMap<Rider, LocalTime>();
-		for (Rider rider : riders) {
-			// Every participating rider is added to the HashMap
-			riderTimes.put(rider, LocalTime.of(0, 0, 0));
-
-			for (Stage stage : stages) {
-				// The rider's elapsed time for each stage is found
-				LocalTime t = getRiderAdjustedElapsedTimeInStage(stage.getId(),	rider.getId());
-				// If this result exists (rider has finished the stage), HashMap
-				// value for the rider is incremented by the elapsed time for this stage
-				if (t != null) {
-					riderTimes.replace(rider, riderTimes.get(rider).plusHours(t.getHour())
-														.plusMinutes(t.getMinute())
-														.plusSeconds(t.getSecond())
-														.plusNanos(t.getNano()));
-				}
-			}
+	/**
+	 * Method to force every change journalled so far to the disk, regardless
+	 * of the journal's sync interval.<br>
+	 * Does nothing if this CyclingPortal is not journalled.
+	 *
+	 * @throws IOException If the journal cannot be written.
+	 */
+	public void syncJournal() throws IOException {
+		if (journal != null) {
+			journal.sync();
 		}
-
-		// The HashMap is then sorted by values (total elapsed times)
-		HashMap<Rider, LocalTime> sortedMap = sortRidersByTimes(riderTimes);
-
-		// The method needs to return a LocalTime[], so one is initialised
-		LocalTime[] times = new LocalTime[riders.size()];
-		// Sorted classification times are added to this array
-		sortedMap.values().toArray(times);
-		return times;
 	}
 
-	@Override
-	public int[] getRidersPointsInRace(int raceId) throws IDNotRecognisedException {
-		Race race = getRaceById(raceId);
-		Stage[] stages = race.getStages();
-		// Retrieves all riders participating in this race
-		ArrayList<Rider> riders = getRidersInRace(race);
-		// Initialises a HashMap to associate riders with their points
-		Map<Rider, Integer> riderPoints = new HashMap<Rider, Integer>();
-
-		for (Rider rider : riders) {
-			// Every participating rider is added to the HashMap
-			riderPoints.put(rider, 0);
-			for (Stage stage : stages) {
-				// Loops through every stage in the race and retrieves an array of
-				// ranked rider IDs
-				int[] ranks = getRidersRankInStage(stage.getId());
-
-				// Finds the index of the current rider in this array
-				int indexOfRider = -1;
-				for (int i=0; i<ranks.length; i++) {
-					if (ranks[i] == rider.getId()) {
-						indexOfRider = i;
-					}
-				}
-
-				if (indexOfRider != -1) {
-					// Retrieves an array of ranked rider's points in the stage
-					// Note: this is sorted by time and so items in this array and the
-					//       ranks array will match up with each other
-					int[] pointsArr = getRidersPointsInStage(stage.getId());
-					int points = pointsArr[indexOfRider];
-
-					// Increments the rider's total points by the points in this stage
-					riderPoints.replace(rider, riderPoints.get(rider) + points);
-				}
-			}
+	/**
+	 * Method to save the contents of this CyclingPortal as a new snapshot and
+	 * empty its journal.<br>
+	 * Does nothing if this CyclingPortal is not journalled.
+	 *
+	 * @throws IOException If the snapshot or the journal cannot be written.
+	 */
+	public void compactJournal() throws IOException {
+		if (journal != null) {
+			journal.compact(races, teams, ids);
 		}
+	}
 
-		// The method needs to return an int[] sorted by elapsed time, so one is initialised
-		int[] sortedPoints = new int[riders.size()];
-		// Retrieves array of rider IDs sorted by elapsed time
-		int[] riderRanks = getRidersGeneralClassificationRank(raceId);
-		for ( int i=0; i<riderRanks.length; i++ ) {
-			// Finds the rider for every ID in the array of ranks and adds its corresponding
-			// number of points in the HashMap to the array of sorted points
-			sortedPoints[i] = riderPoints.get(getRiderById(riderRanks[i]));
+	/**
+	 * Method to force every change journalled to the disk and stop
+	 * journalling changes to this CyclingPortal.<br>
+	 * Does nothing if this CyclingPortal is not journalled.
+	 *
+	 * @throws IOException If the journal cannot be written.
+	 */
+	public void closeJournal() throws IOException {
+		if (journal != null) {
+			MutationJournal closing = journal;
+			journal = null;
+			closing.close();
 		}
-		return sortedPoints;
 	}
 
-	@Override
-	public int[] getRidersMountainPointsInRace(int raceId) throws IDNotRecognisedException {
-		Race race = getRaceById(raceId);
-		Stage[] stages = race.getStages();
-		ArrayList<Rider> riders = getRidersInRace(race);
-		// HashMap to associatie riders in the race and their total points in the race
-		HashMap<Rider, Integer> riderPoints = new HashMap<Rider, Integer>();
-
-		for (Rider rider : riders) {
-			// Adds each rider and an inital value of 0 points to the HashMap
-			riderPoints.put(rider, 0);
-			for (Stage stage : stages) {
-				if (getResultInStage(rider, stage) != null) {
-					// For each stage in the race, retrieves the riders ranks if they are in the stage
-					// (riders in a race should have results in all stages in the race)
-					int[] ranks = getRidersRankInStage(stage.getId());
-
-					// The index of the current rider in the array of ranks for the stage
-					int indexOfRider = -1;
-					for (int i=0; i<ranks.length; i++) {
-						if (ranks[i] == rider.getId()) {
-							// When the ID in ranks that matches with this current rider is found,
-							// the index is assigned and the loop is broken out of
-							indexOfRider = i;
-							break;
-						}
-					}
+	/**
+	 * Private method to replace the contents of this CyclingPortal with those
+	 * of a loaded snapshot.
+	 *
+	 * @param snapshot The snapshot loaded.
+	 */
+	private void restoreSnapshot(PortalSnapshot snapshot) {
+		// Replaces this object attributes with those of the loaded snapshot
+		teams = snapshot.getTeams();
+		races = snapshot.getRaces();
+		snapshot.restoreCounters(ids);
+		// The registry is rebuilt to index the loaded entities
+		registry.rebuild(races, teams);
+	}
 
-					if (indexOfRider != -1) {
-						// Finds all the riders' mountain points in this stage
-						int[] pointsArr = getRidersMountainPointsInStage(stage.getId());
-						int points = 0;
-						if (pointsArr.length > 0) {
-							// The current rider's points in this stage are found
-							points = pointsArr[indexOfRider];
-						}
-						// Rider's total points for the race is incremented by their points in this stage
-						riderPoints.replace(rider, riderPoints.get(rider) + points);
-					}
-				}
-			}
+	/**
+	 * Private method to record a change in the journal, if this CyclingPortal
+	 * is journalled, compacting the journal if enough changes have been
+	 * recorded.<br>
+	 * The change has already been made, so a failure to journal it cannot be
+	 * reported as a checked exception by the method making it.
+	 *
+	 * @param write The change to be recorded.
+	 * @throws UncheckedIOException If the journal cannot be written.
+	 */
+	private void journal(MutationJournal.Write write) {
+		if (journal == null) {
+			return;
 		}
-
-		// Method needs to return an int[] of points, so one is initialised
-		int[] sortedPoints = new int[riders.size()];
-		// Points need to be sorted by total elapsed times, so these are retrieved
-		int[] riderRanks = getRidersGeneralClassificationRank(raceId);
-		for ( int i=0; i<riderRanks.length; i++ ) {
-			// Adds the points of each rider to the points array,
-			// ordered by general classification rank
-			sortedPoints[i] = riderPoints.get(getRiderById(riderRanks[i]));
+		try {
+			write.to(journal);
+			if (journal.isCompactionDue()) {
+				journal.compact(races, teams, ids);
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
 		}
-		return sortedPoints;
 	}
 
 	@Override
-	public int[] getRidersGeneralClassificationRank(int raceId) throws IDNotRecognisedException {
-		Race race = getRaceById(raceId);
-		Stage[] stages = race.getStages();
-		ArrayList<Rider> riders = getRidersInRace(race);
-		// HashMap to associate riders with their total adjusted elapsed times
-		HashMap<Rider, LocalTime> riderTimes = new HashMap<Rider, LocalTime>();
-		
-		for (Rider rider : riders) {
-			// Adds each rider in the race to the HashMap, initialising their time as 0:0:0
-			riderTimes.put(rider, LocalTime.of(0, 0, 0));
-			for (Stage stage : stages) {
-				// Calculates the adjusted elapsed time for each stage for this rider
-				LocalTime t = getRiderAdjustedElapsedTimeInStage(stage.getId(), rider.getId());
-				if (t != null) {
-					// If the rider has a result in this stage, their total time is incremented
-					// by the adjusted elapsed time in this stage
-					riderTimes.replace(rider, riderTimes.get(rider).plusHours(t.getHour())
-														.plusMinutes(t.getMinute())
-														.plusSeconds(t.getSecond()));
-				}
-			}
+	public void removeRaceByName(String name) throws NameNotRecognisedException {
+		// The race is found through the registry's index of race names
+		Race race = registry.findRaceByName(name);
+		if (race == null) {
+			throw new NameNotRecognisedException("No race exists with name " + name);
 		}
-
-		// The HashMap is sorted by values (total elapsed times)
-		HashMap<Rider, LocalTime> sortedMap = sortRidersByTimes(riderTimes);
-
-		// The method needs to return an int[] of IDs, so one is initialised
-		int[] riderIds = new int[riders.size()];
-		int i = 0;
-		for (Rider key : sortedMap.keySet()) {
-			// The ID of each rider in the sorted HashMap is added to the int[] in order
-			riderIds[i] = key.getId();
-			i++;
+		// Removes this race's results, then the race from the list and the registry
+		for (Stage stage : race.getStages()) {
+			removeResultsInStage(stage);
+		}
+		races.remove(race);
+		registry.removeRace(race);
+		journal(j -> j.recordRemoveRace(race.getId()));
+		if (publishesStandings) {
+			resyncAllStandings();
 		}
-		return riderIds;
 	}
 
 	@Override
-	public int[] getRidersPointClassificationRank(int raceId) throws IDNotRecognisedException {
-		// Retrieves race's ranking and points sorted by time
-		// This is so that the array of times aligns with the array of rider IDs
-		// Therefore, they can be paired up into a HashMap
-		int[] riderRanks = getRidersGeneralClassificationRank(raceId);
-		int[] riderPointsSortedByTime = getRidersPointsInRace(raceId);
-		assert (riderRanks.length == riderPointsSortedByTime.length);
-		HashMap<Rider, Integer> riderPoints = new HashMap<>();
-
-		for (int i=0; i<riderRanks.length;i++) {
-			// Each rider and their corresponding points are put into the HashMap
-			riderPoints.put(getRiderById(riderRanks[i]),
-					riderPointsSortedByTime[i]);
-		}
-
-		// The HashMap is then sorted by number of points (sorted by value)
-		HashMap<Rider, Integer> sortedMap = sortRidersByPoints(riderPoints);
-		assert (sortedMap.size() == riderPoints.size());
-
-		// The method needs to return an int[], so one is initialised
-		int[] riderIds = new int[riderRanks.length];
-		int i = 0;
-		for ( Rider key : sortedMap.keySet() ) {
-			// Finds each key in the sorted HashMap (the rider), and adds its ID to the int[]
-			riderIds[i] = key.getId();
-			i++;
-		}
-
-		// The array needs to be in descending order, so it is reversed
-		reverseArray(riderIds);
-		return riderIds;
+	public LocalTime[] getGeneralClassificationTimesInRace(int raceId) throws IDNotRecognisedException {
+		// Every classification of the race is computed together from its stages
+		return getRaceClassification(getRaceById(raceId)).getGeneralClassificationTimes();
 	}
 
 	@Override
-	public int[] getRidersMountainPointClassificationRank(int raceId) throws IDNotRecognisedException {
-		// These two arrays associate rider IDs with their mountain points in the race
-		int[] riderRanks = getRidersGeneralClassificationRank(raceId);
-		int[] riderPointsSortedByTime = getRidersMountainPointsInRace(raceId);
-		assert (riderRanks.length == riderPointsSortedByTime.length);
+	public int[] getRidersPointsInRace(int raceId) throws IDNotRecognisedException {
+		// Points are returned in general classification order
+		return getRaceClassification(getRaceById(raceId)).getPointsInGeneralOrder();
+	}
+
+	@Override
+	public int[] getRidersMountainPointsInRace(int raceId) throws IDNotRecognisedException {
+		// Mountain points are returned in general classification order
+		return getRaceClassification(getRaceById(raceId)).getMountainPointsInGeneralOrder();
+	}
 
-		// HashMap to associate riders with their total mountain points in the race
-		HashMap<Rider, Integer> riderPoints = new HashMap<>();
+	@Override
+	public int[] getRidersGeneralClassificationRank(int raceId) throws IDNotRecognisedException {
+		return getRaceClassification(getRaceById(raceId)).getGeneralClassificationRank();
+	}
 
-		for (int i=0; i<riderRanks.length;i++) {
-			// Adds each rider in the race and their associated mountain points to the HashMap
-			riderPoints.put(getRiderById(riderRanks[i]), riderPointsSortedByTime[i]);
+	@Override
+	public int[] getRidersPointClassificationRank(int raceId) throws IDNotRecognisedException {
+		return getRaceClassification(getRaceById(raceId)).getPointsClassificationRank();
+	}
+
+	@Override
+	public int[] getRidersMountainPointClassificationRank(int raceId) throws IDNotRecognisedException {
+		return getRaceClassification(getRaceById(raceId)).getMountainClassificationRank();
+	}
+
+	/**
+	 * Method to get the rank of a single rider in a race's general
+	 * classification.
+	 * <p>
+	 *     The race keeps an index of its general classification, which is
+	 *     updated as each result is registered or deleted by moving only the
+	 *     riders whose adjusted time changed, so the rider is found in
+	 *     O(log n) time. Other changes to the race's stages cause the index
+	 *     to be rebuilt when next needed.
+	 * </p>
+	 *
+	 * @param raceId The ID of the race being queried.
+	 * @param riderId The ID of the rider being queried.
+	 * @return The rider's rank in the general classification, 1 being the
+	 * leader, or 0 if the rider has no result in the race.
+	 * @throws IDNotRecognisedException If the ID does not match any rider or
+	 *                                  race in the system.
+	 *
+	 */
+	public int getRiderGeneralClassificationRank(int raceId, int riderId) throws IDNotRecognisedException {
+		getRiderById(riderId);
+		return getGeneralStandings(getRaceById(raceId)).getPosition(riderId) + 1;
+	}
+
+	/**
+	 * Method to get the total adjusted elapsed time of a single rider in a
+	 * race, from the race's general classification index.
+	 *
+	 * @param raceId The ID of the race being queried.
+	 * @param riderId The ID of the rider being queried.
+	 * @return The sum of the rider's adjusted elapsed times in the race's
+	 * stages, or null if the rider has no result in the race.
+	 * @throws IDNotRecognisedException If the ID does not match any rider or
+	 *                                  race in the system.
+	 *
+	 */
+	public LocalTime getRiderGeneralClassificationTime(int raceId, int riderId) throws IDNotRecognisedException {
+		getRiderById(riderId);
+		long totalNanos = getGeneralStandings(getRaceById(raceId)).getTotalNanos(riderId);
+		return totalNanos == -1 ? null : Timing.toLocalTime(totalNanos);
+	}
+
+	/**
+	 * Method to get the first riders in a stage, ranked by elapsed time.
+	 * <p>
+	 *     If the stage's ranking is already cached, its first riders are
+	 *     copied from it. Otherwise only the first n riders are read from the
+	 *     stage's index, in O(n + log r) time for r results, rather than the
+	 *     whole stage being ranked.
+	 * </p>
+	 *
+	 * @param stageId The ID of the stage being queried.
+	 * @param n The number of riders wanted.
+	 * @return A Leaderboard of the first n riders in the stage and their
+	 * adjusted elapsed times, or of every rider if fewer than n have results.
+	 * @throws IDNotRecognisedException If the ID does not match any stage in
+	 *                                  the system.
+	 * @throws IllegalArgumentException If n is negative.
+	 *
+	 */
+	public Leaderboard getTopRidersInStage(int stageId, int n) throws IDNotRecognisedException {
+		if (n < 0) {
+			throw new IllegalArgumentException("Number of riders cannot be negative");
 		}
+		Stage stage = getStageById(stageId);
+		StageRanking ranking = stage.getCachedRanking();
+		if (ranking != null) {
+			return ranking.getTop(n);
+		}
+		return StageRanking.rankTop(stage, n);
+	}
 
-		// The HashMap is sorted by values (total mountain points)
-		HashMap<Rider, Integer> sortedMap = sortRidersByPoints(riderPoints);
+	/**
+	 * Method to get the first riders to reach a segment, including riders
+	 * who are still on the course.
+	 * <p>
+	 *     Each segment keeps the riders who have reached it in order of the
+	 *     time taken to reach it from their start, with ties broken by rider
+	 *     ID, updated as each checkpoint or result is registered. The first n
+	 *     riders are read from it in O(n + log r) time for r riders, without
+	 *     the stage being ranked.
+	 * </p>
+	 *
+	 * @param segmentId The ID of the segment being queried.
+	 * @param n The number of riders wanted.
+	 * @return A Leaderboard of the first n riders to reach the segment, with
+	 * the time each took to reach it and the points their position earns: the
+	 * intermediate sprint points for a sprint, or the mountain points for a
+	 * climb.
+	 * @throws IDNotRecognisedException If the ID does not match any segment
+	 *                                  in the system.
+	 * @throws IllegalArgumentException If n is negative.
+	 *
+	 */
+	public Leaderboard getSegmentStandings(int segmentId, int n) throws IDNotRecognisedException {
+		if (n < 0) {
+			throw new IllegalArgumentException("Number of riders cannot be negative");
+		}
+		Stage stage = getStageBySegmentId(segmentId);
+		Segment segment = getSegmentById(segmentId);
+		// Finds the position of the segment in the stage
+		Segment[] segments = stage.getSegments();
+		int position = 0;
+		while (segments[position] != segment) {
+			position++;
+		}
+		RankIndex order = stage.getArrivals().getOrder(position);
+		int size = Math.min(n, order.size());
+		int[] riderIds = new int[size];
+		long[] nanos = new long[size];
+		int[] points = new int[size];
+		int[] rank = {0};
+		order.forEach(size, (riderId, time, adjustedTime) -> {
+			riderIds[rank[0]] = riderId;
+			nanos[rank[0]] = time;
+			points[rank[0]] = getSegmentPoints(segment.getType(), rank[0]);
+			rank[0]++;
+		});
+		return new Leaderboard(riderIds, nanos, points);
+	}
 
-		// The method needs to return an int[] of rider IDs, so one is initialised
-		int[] riderIds = new int[riderRanks.length];
-		int i = 0;
-		for ( Rider key : sortedMap.keySet() ) {
-			// Finds each key in the sorted HashMap (the rider), and adds its ID to the int[]
-			riderIds[i] = key.getId();
-			i++;
+	/**
+	 * Method to get the first riders in one of a race's classifications.
+	 * <p>
+	 *     Each rider's totals are added up from the race's stages as for a
+	 *     full classification, but only the first n riders are then selected
+	 *     from them, in O(r log n) time for r riders, rather than every
+	 *     rider being ranked. Stage points are only computed for the
+	 *     classification asked for.
+	 * </p>
+	 *
+	 * @param raceId The ID of the race being queried.
+	 * @param classification The classification to rank the riders by.
+	 * @param n The number of riders wanted.
+	 * @return A Leaderboard of the first n riders in the classification, with
+	 * their total adjusted elapsed times and, for the points and mountain
+	 * classifications, their points in that classification.
+	 * @throws IDNotRecognisedException If the ID does not match any race in
+	 *                                  the system.
+	 * @throws IllegalArgumentException If n is negative.
+	 *
+	 */
+	public Leaderboard getTopRidersInRace(int raceId, Classification classification, int n)
+			throws IDNotRecognisedException {
+		if (n < 0) {
+			throw new IllegalArgumentException("Number of riders cannot be negative");
 		}
-		
-		// The array needs to be in descending order, so it is reversed
-		reverseArray(riderIds);
-		return riderIds;
+		PortalEvents.RaceClassificationEvent event = new PortalEvents.RaceClassificationEvent();
+		event.begin();
+		Stage[] stages = getRaceById(raceId).getStages();
+		StageRanking[] stageRankings = getStageRankings(stages);
+		// Only the points the classification is ranked by are computed
+		int[][] stagePoints = null;
+		if (classification != Classification.GENERAL) {
+			stagePoints = new int[stages.length][];
+			for (int i=0; i<stages.length; i++) {
+				stagePoints[i] = classification == Classification.POINTS ? getStagePoints(stages[i])
+						: getStageMountainPoints(stages[i]);
+			}
+		}
+		RaceTotals totals = classification == Classification.MOUNTAIN
+				? new RaceTotals(stageRankings, null, stagePoints)
+				: new RaceTotals(stageRankings, stagePoints, null);
+		IntUnaryOperator points = classification == Classification.MOUNTAIN
+				? totals::getTotalMountainPoints : totals::getTotalPoints;
+
+		// The points classifications are ranked by most points, with ties broken by
+		// general classification, which is the same as comparing the riders' totals
+		int[] top = TopNSelector.select(totals.size(), n, classification == Classification.GENERAL
+				? totals::compareGeneral
+				: (a, b) -> {
+					int byPoints = Integer.compare(points.applyAsInt(b), points.applyAsInt(a));
+					return byPoints != 0 ? byPoints : totals.compareGeneral(a, b);
+				});
+
+		int[] riderIds = new int[top.length];
+		long[] nanos = new long[top.length];
+		int[] topPoints = classification == Classification.GENERAL ? null : new int[top.length];
+		for (int i=0; i<top.length; i++) {
+			riderIds[i] = totals.getRiderId(top[i]);
+			nanos[i] = totals.getTotalNanos(top[i]);
+			if (topPoints != null) {
+				topPoints[i] = points.applyAsInt(top[i]);
+			}
+		}
+		event.end();
+		if (event.shouldCommit()) {
+			event.raceId = raceId;
+			event.classification = classification.name();
+			event.stages = stages.length;
+			event.riders = totals.size();
+			event.commit();
+		}
+		return new Leaderboard(riderIds, nanos, topPoints);
 	}
 
 	/**
-	 * Public getter method to return a list of all teams stored in the
-	 * 'teams' ArrayList.
+	 * Method to subscribe to the changes to a stage's standings.
+	 * <p>
+	 *     Each subscriber is first sent a reset and every rider in the stage,
+	 *     in order, and then a {@link RankChange} for each result registered
+	 *     or deleted, and for each rider whose adjusted elapsed time changed
+	 *     with it. The riders a result moves past are not sent, as applying
+	 *     the change moves them. Changes are delivered on another thread, so
+	 *     a slow subscriber never holds up the registration of results. A
+	 *     subscriber with more changes waiting than its buffer holds has them
+	 *     discarded, and is sent a reset and the whole standings again
+	 *     instead. Subscribers are completed if the stage is removed.
+	 * </p>
+	 * <p>
+	 *     The changes are read from the stage's index as each result is
+	 *     registered or deleted, in O(b log n) time for a bunch of b riders,
+	 *     and only while the stage has subscribers, so once every subscriber
+	 *     has cancelled, registering results costs no more than if the stage
+	 *     had never been subscribed to.
+	 * </p>
 	 *
-	 * @return An ArrayList of team objects.
+	 * @param stageId The ID of the stage being subscribed to.
+	 * @param bufferCapacity The number of changes which may wait to be
+	 *                       delivered to each subscriber.
+	 * @return A Flow.Publisher of the changes to the stage's standings.
+	 * @throws IDNotRecognisedException If the ID does not match any stage in
+	 *                                  the system.
+	 * @throws IllegalArgumentException If the buffer capacity is less than 1.
 	 *
 	 */
-	public ArrayList<Team> getTeamsList() {
-		return teams;
+	public Flow.Publisher<RankChange> getStageStandingsPublisher(int stageId, int bufferCapacity)
+			throws IDNotRecognisedException {
+		if (bufferCapacity < 1) {
+			throw new IllegalArgumentException("Buffer capacity must be at least 1");
+		}
+		getStageById(stageId);
+		// The feed is found when each subscriber subscribes, as it may have gone idle meanwhile
+		return subscriber -> subscribe(stageFeeds, stageId, subscriber, bufferCapacity, false,
+				() -> getTopRidersInStage(stageId, Integer.MAX_VALUE));
 	}
 
 	/**
-	 * Public getter method to return a list of all races stored in the
-	 * 'races' ArrayList.
+	 * Method to subscribe to the changes to one of a race's classifications.
+	 * <p>
+	 *     Each subscriber is first sent a reset and every rider in the
+	 *     classification, in order, and then a {@link RankChange} for each
+	 *     rider whose total adjusted elapsed time or points change as results
+	 *     are registered or deleted in the race's stages, delivered as for
+	 *     {@link #getStageStandingsPublisher(int, int)}. Subscribers are
+	 *     completed if the race is removed.
+	 * </p>
+	 * <p>
+	 *     While the classification has subscribers, the race keeps an index
+	 *     of it, which moves only the riders a result changes, and the
+	 *     changes are read from it rather than the classification being
+	 *     worked out again. Changes the index cannot follow, such as a batch
+	 *     of results or a rider being removed, cause the classification to be
+	 *     worked out again, and only sent again if it differs.
+	 * </p>
 	 *
-	 * @return An ArrayList of race objects.
+	 * @param raceId The ID of the race being subscribed to.
+	 * @param classification The classification being subscribed to.
+	 * @param bufferCapacity The number of changes which may wait to be
+	 *                       delivered to each subscriber.
+	 * @return A Flow.Publisher of the changes to the race's classification.
+	 * @throws IDNotRecognisedException If the ID does not match any race in
+	 *                                  the system.
+	 * @throws IllegalArgumentException If the buffer capacity is less than 1.
 	 *
 	 */
-	public ArrayList<Race> getRacesList() {
-		return races;
+	public Flow.Publisher<RankChange> getRaceStandingsPublisher(int raceId, Classification classification,
+			int bufferCapacity) throws IDNotRecognisedException {
+		if (bufferCapacity < 1) {
+			throw new IllegalArgumentException("Buffer capacity must be at least 1");
+		}
+		getRaceById(raceId);
+		return subscriber -> subscribe(raceFeeds.get(classification), raceId, subscriber, bufferCapacity,
+				classification != Classification.GENERAL, () -> getRaceStandings(raceId, classification));
 	}
 
 	/**
-	 * Private method to find the time difference between two local times,
-	 * outputting the result as a LocalTime object.
+	 * Private method to subscribe to the feed of a stage or race, starting a
+	 * new feed from its current standings if it has none.<br>
+	 * A subscriber to a stage or race which has been removed is completed
+	 * straight away.
 	 *
-	 * @param time1 LocalTime object.
-	 * @param time2 LocalTime object.
-	 * @return LocalTime object, in format HH:MM:SS:NN, representing
-	 * difference between time1 and time2.
+	 * @param feeds The feeds of the stages or races of this kind.
+	 * @param id The ID of the stage or race.
+	 * @param subscriber The subscriber.
+	 * @param bufferCapacity The number of changes which may wait to be
+	 *                       delivered to the subscriber.
+	 * @param withPoints Whether the standings are ranked by points.
+	 * @param standings Works out the current standings of the stage or race.
 	 *
 	 */
-	private LocalTime timeDifference(LocalTime time1, LocalTime time2) {
-		// Works out time difference in milliseconds
-		long elapsedTimeInMilliSecs = time1.until(time2, ChronoUnit.MILLIS);
+	private void subscribe(ConcurrentHashMap<Integer, StandingsFeed> feeds, int id,
+			Flow.Subscriber<? super RankChange> subscriber, int bufferCapacity, boolean withPoints,
+			StandingsQuery standings) {
+		// A feed which goes idle before the subscriber joins it is replaced, so the loop
+		// only repeats if the last subscriber leaves at that moment
+		while (true) {
+			StandingsFeed feed = feeds.get(id);
+			if (feed == null) {
+				try {
+					StandingsFeed newFeed = new StandingsFeed(standings.get(), withPoints,
+							idle -> feeds.remove(id, idle));
+					feed = feeds.putIfAbsent(id, newFeed);
+					if (feed == null) {
+						feed = newFeed;
+					}
+				} catch (IDNotRecognisedException e) {
+					// The stage or race has been removed, so there will never be any changes
+					StandingsFeed closed = new StandingsFeed(new Leaderboard(new int[0], new long[0], null),
+							withPoints, null);
+					closed.close();
+					feed = closed;
+				}
+			}
+			if (feed.subscribe(subscriber, bufferCapacity)) {
+				return;
+			}
+		}
+	}
 
-		// Conversion of ms into hours, mins, secs, nanos
-		int hours = (int) elapsedTimeInMilliSecs / 3600000;
-		int mins = (int) (elapsedTimeInMilliSecs % 3600000) / 60000;
-		int secs = (int) ((elapsedTimeInMilliSecs % 3600000) % 60000) / 1000;
-		int nanos = (int) (((elapsedTimeInMilliSecs % 3600000) % 60000) % 1000) * 1000000;
+	/**
+	 * Private method to get the current standings of one of a race's
+	 * classifications, from the race's index of it, for its feed to start
+	 * from or be reset to.
+	 *
+	 * @param raceId The ID of the race in question.
+	 * @param classification The classification in question.
+	 * @return A Leaderboard of every rider in the classification.
+	 * @throws IDNotRecognisedException If the ID does not match any race in
+	 *                                  the system.
+	 *
+	 */
+	private Leaderboard getRaceStandings(int raceId, Classification classification)
+			throws IDNotRecognisedException {
+		Race race = getRaceById(raceId);
+		if (classification == Classification.GENERAL) {
+			return getGeneralStandings(race).getLeaderboard();
+		}
+		return getPointsStandings(race, classification).getLeaderboard();
+	}
+
+	/**
+	 * Private method to mark the feeds of a stage and of its race stale,
+	 * after a change to the stage's results which was not published, so
+	 * they are sent again.
+	 *
+	 * @param stageId The ID of the stage whose results changed.
+	 * @throws IDNotRecognisedException If the ID does not match any stage in
+	 *                                  the system.
+	 *
+	 */
+	private void invalidateStandings(int stageId) throws IDNotRecognisedException {
+		StandingsFeed feed = stageFeeds.get(stageId);
+		if (feed != null) {
+			feed.invalidate();
+		}
+		int raceId = getRaceIdOfStage(stageId);
+		for (Classification classification : Classification.values()) {
+			feed = raceFeeds.get(classification).get(raceId);
+			if (feed != null) {
+				feed.invalidate();
+			}
+		}
+	}
 
-		// Returns a LocalTime object
-		return LocalTime.of(hours, mins, secs, nanos);
+	/**
+	 * Method to check whether any stage or race has a stale feed, so that
+	 * there may be standings to resend.
+	 *
+	 * @return true if any stage or race has a feed which is stale.
+	 *
+	 */
+	boolean hasStaleStandings() {
+		for (StandingsFeed feed : stageFeeds.values()) {
+			if (feed.isStale()) {
+				return true;
+			}
+		}
+		for (ConcurrentHashMap<Integer, StandingsFeed> feeds : raceFeeds.values()) {
+			for (StandingsFeed feed : feeds.values()) {
+				if (feed.isStale()) {
+					return true;
+				}
+			}
+		}
+		return false;
 	}
 
 	/**
-	 * Private method to sort a HashMap of Rider : LocalTime by their
-	 * adjusted elapsed times (LocalTime).
+	 * Method to reset the stale feeds of a stage and of each classification
+	 * of its race to their current standings, after its results have
+	 * changed.<br>
+	 * Feeds which are not stale have already been sent every change, so
+	 * nothing is worked out for them. The stages of the race must not be
+	 * changed meanwhile.
+	 *
+	 * @param stageId The ID of the stage whose results changed.
+	 * @throws IDNotRecognisedException If the ID does not match any stage in
+	 *                                  the system.
 	 *
-	 * @param initialMap The HashMap to be sorted.
-	 * @return A HashMap object sorted by the LocalTime value (descending).
+	 */
+	void resyncStandings(int stageId) throws IDNotRecognisedException {
+		StandingsFeed feed = stageFeeds.get(stageId);
+		if (feed != null && feed.isStale()) {
+			feed.reset(getTopRidersInStage(stageId, Integer.MAX_VALUE));
+		}
+		int raceId = getRaceIdOfStage(stageId);
+		for (Classification classification : Classification.values()) {
+			feed = raceFeeds.get(classification).get(raceId);
+			if (feed != null && feed.isStale()) {
+				feed.reset(getRaceStandings(raceId, classification));
+			}
+		}
+	}
+
+	/**
+	 * Method to reset the feed of every stage and race which has been
+	 * subscribed to, after the structure of the system has changed in a way
+	 * no change describes.<br>
+	 * The feeds of stages and races which have been removed are closed. No
+	 * stage may be changed meanwhile.
 	 *
 	 */
-	private HashMap<Rider, LocalTime> sortRidersByTimes(HashMap<Rider, LocalTime> initialMap) {
-		return initialMap.entrySet().stream()
-				.sorted(Entry.comparingByValue())
-				.collect(Collectors.toMap(Entry::getKey, Entry::getValue,
-						(e1, e2) -> e1, LinkedHashMap::new));
+	void resyncAllStandings() {
+		Iterator<Entry<Integer, StandingsFeed>> iterator = stageFeeds.entrySet().iterator();
+		while (iterator.hasNext()) {
+			Entry<Integer, StandingsFeed> entry = iterator.next();
+			try {
+				entry.getValue().reset(getTopRidersInStage(entry.getKey(), Integer.MAX_VALUE));
+			} catch (IDNotRecognisedException e) {
+				// The stage has been removed, so its subscribers are told no more changes will come
+				iterator.remove();
+				entry.getValue().close();
+			}
+		}
+		for (Classification classification : Classification.values()) {
+			iterator = raceFeeds.get(classification).entrySet().iterator();
+			while (iterator.hasNext()) {
+				Entry<Integer, StandingsFeed> entry = iterator.next();
+				try {
+					entry.getValue().reset(getRaceStandings(entry.getKey(), classification));
+				} catch (IDNotRecognisedException e) {
+					// The race has been removed
+					iterator.remove();
+					entry.getValue().close();
+				}
+			}
+		}
 	}
 
 	/**
-	 * Private method to sort a HashMap of Rider : Integer by the rider's
-	 * points (integer).
+	 * Method to find the ID of the race containing a stage.
 	 *
-	 * @param initialMap The HashMap to be sorted.
-	 * @return A HashMap object sorted by the integer value (descending).
+	 * @param stageId The ID of the stage in question.
+	 * @return The ID of the race the stage belongs to.
+	 * @throws IDNotRecognisedException If the ID does not match any stage in
+	 *                                  the system.
 	 *
 	 */
-	private HashMap<Rider, Integer> sortRidersByPoints(HashMap<Rider, Integer> initialMap) {
-		return initialMap.entrySet().stream()
-				.sorted(Entry.comparingByValue())
-				.collect(Collectors.toMap(Entry::getKey, Entry::getValue,
-						(e1, e2) -> e1, LinkedHashMap::new));
+	int getRaceIdOfStage(int stageId) throws IDNotRecognisedException {
+		return getRaceByStageId(stageId).getId();
 	}
 
 	/**
-	 * Private method to reverse an int[], used to sort rider IDs by descending order.
-	 * 
-	 * @param array The array to reverse.
+	 * Method to find the ID of the stage containing a segment.
+	 *
+	 * @param segmentId The ID of the segment in question.
+	 * @return The ID of the stage the segment belongs to.
+	 * @throws IDNotRecognisedException If the ID does not match any segment
+	 *                                  in the system.
+	 *
+	 */
+	int getStageIdOfSegment(int segmentId) throws IDNotRecognisedException {
+		return getStageBySegmentId(segmentId).getId();
+	}
+
+	/**
+	 * Public getter method to return a list of all teams stored in the
+	 * 'teams' ArrayList.
+	 *
+	 * @return An ArrayList of team objects.
+	 *
+	 */
+	public ArrayList<Team> getTeamsList() {
+		return teams;
+	}
+
+	/**
+	 * Public getter method to return a list of all races stored in the
+	 * 'races' ArrayList.
+	 *
+	 * @return An ArrayList of race objects.
+	 *
+	 */
+	public ArrayList<Race> getRacesList() {
+		return races;
+	}
+
+	/**
+	 * Method to get the number of changes recorded in the journal since the
+	 * last snapshot.
+	 *
+	 * @return The number of changes journalled, or 0 if the system is not
+	 * journalled.
+	 *
 	 */
-	private void reverseArray(int[] array) {
-		for (int i = 0; i < array.length / 2; i++) {
-			// Swaps first and last elements in the array and gradually moves inwards
-			// swapping elements until meeting at the middle
-			int temp = array[i];
-			array[i] = array[array.length - 1 - i];
-			array[array.length - 1 - i] = temp;
-		}}
+	int getNoOfJournalRecords() {
+		return journal == null ? 0 : journal.getNoOfRecords();
+	}
+
+	/**
+	 * Method to get the IdAllocator giving IDs to every entity in this
+	 * CyclingPortal.
+	 *
+	 * @return The portal's IdAllocator.
+	 *
+	 */
+	IdAllocator getIdAllocator() {
+		return ids;
+	}
 
 	/**
 	 * Private method to find the StageResult object for a particular rider and stage.
@@ -1005,80 +1567,114 @@ public class CyclingPortal implements CyclingPortalInterface {
 	 * 
 	 */
 	private StageResult getResultInStage(Rider rider, Stage stage) {
+		// The stage indexes its results by rider ID, returning null if there is no result
+		return stage.getResult(rider.getId());
+	}
+
+	/**
+	 * Private method to remove all of a rider's results from the stages
+	 * they are registered in.<br>
+	 * Used when the rider is removed from the system.
+	 *
+	 * @param rider The rider whose results are to be removed.
+	 */
+	private void removeResultsOfRider(Rider rider) {
 		for (StageResult result : rider.getResults()) {
-			if (result.getStage().equals(stage)) {
-				// A StageResult with the correct Stage was found, returns the StageResult
-				return result;
+			result.getStage().removeResult(rider.getId());
+			rider.removeResult(result);
+		}
+		// Only the stages the rider is still on the course in hold any of their checkpoints
+		for (Stage stage : rider.getStagesOnCourse()) {
+			stage.removeCheckpoints(rider.getId());
+			rider.removeStageOnCourse(stage);
+		}
+	}
+
+	/**
+	 * Private method to remove all of a stage's results from the riders
+	 * they belong to.<br>
+	 * Used when the stage is removed from the system.
+	 *
+	 * @param stage The stage whose results are to be removed.
+	 */
+	private void removeResultsInStage(Stage stage) {
+		for (int riderId : stage.getRiderIds()) {
+			Rider rider = registry.findRider(riderId);
+			if (rider != null) {
+				rider.removeResult(stage.getResult(riderId));
+			}
+			stage.removeResult(riderId);
+		}
+		// Riders still on the course in the stage no longer are
+		for (int riderId : stage.getRidersOnCourse()) {
+			Rider rider = registry.findRider(riderId);
+			if (rider != null) {
+				rider.removeStageOnCourse(stage);
 			}
 		}
-		// A StageResult with the correct Stage was not found, returns null
-		return null;
 	}
 
 	/**
-	 * Private method to calculate the points a rider obtained from
+	 * Private method to calculate the points each rider obtained from
 	 * immediate sprints in a stage.
-	 * 
-	 * @param riderToFind The rider in question.
+	 * <p>
+	 *     Each sprint segment is ranked once for the whole stage, selecting
+	 *     only the 15 riders who reached it first, as the rest receive no
+	 *     points for it. Riders who reached a segment at the same time are
+	 *     ranked by their ID.
+	 * </p>
+	 *
 	 * @param stage The stage in question.
-	 * @return An int representing the number of points obtained in the stage.
+	 * @param ranking The stage's ranking.
+	 * @return An array of sprint points, in the order of the stage's ranking.
 	 */
-	private int getImmediateSprintPoints(Rider riderToFind, Stage stage) {
-		int totalPoints = 0;
+	private int[] getImmediateSprintPoints(Stage stage, StageRanking ranking) {
+		int[] sprintPoints = new int[ranking.size()];
 		Segment[] segments = stage.getSegments();
-		ArrayList<Rider> ridersInStage = getRidersInStage(stage);
+		StageResultStore store = stage.getResultStore();
 
-		for (int i=0; i<segments.length; i++) {
+		// Segments are only ranked if there are results in the stage
+		for (int i=0; i<segments.length && store.size()>0; i++) {
 			if (!segments[i].getType().equals(SegmentType.SPRINT)) {
 				// Ignores segments that aren't immediate sprints
 				continue;
 			}
+			assert (store.getWidth() == segments.length + 2);
 
-			// HashMap to associate riders with their times for this segment
-			HashMap<Rider, LocalTime> riderTimesAtSegment = new HashMap<>();
-
-			for (Rider rider : ridersInStage) {
-				StageResult result = getResultInStage(rider, stage);
-				if (result != null) {
-					// Gets the rider's checkpoints in this stage
-					LocalTime[] checkpoints = result.getCheckpoints();
-					assert (checkpoints.length == segments.length + 2);
-
-					// Calculates time this segment was reached and associates it with the rider in the HashMap
-					LocalTime timeAtSegment = timeDifference(checkpoints[0], checkpoints[i+1]);
-					riderTimesAtSegment.put(rider, timeAtSegment);
-				}
-			}
-
-			// HashMap is sorted by values (segment time)
-			HashMap<Rider, LocalTime> sortedMap = sortRidersByTimes(riderTimesAtSegment);
-
-			// List to contain all riders in the stage, sorted by time they reached this segment
-			ArrayList<Rider> riderRankingsAtSegment = new ArrayList<Rider>();
-			for (Rider key : sortedMap.keySet()) {
-				// Adds each rider in the HashMap to the list in order
-				riderRankingsAtSegment.add(key);
+			// The rows of the first 15 riders to reach this segment, in the order they reached it
+			int[] rows = rankRowsAtSegment(store, i+1, 15);
+			for (int rank=0; rank<rows.length; rank++) {
+				// Looks up table to find points to add for the rider in their place in the stage
+				sprintPoints[ranking.getPosition(store.getRiderId(rows[rank]))] += pointsTable[2][rank];
 			}
-
-			// The ranking of this rider is the index they have in the ranked list
-			int riderRanking = riderRankingsAtSegment.indexOf(riderToFind);
-
-			if (riderRanking < 15) {
-				// Looks up table to find points to add for the rider
-				// Adds no points if the rider reaches the segment 16th or more
-				totalPoints += pointsTable[2][riderRanking];
-			}
-
 		}
-		return totalPoints;
+		return sprintPoints;
+	}
+
+	/**
+	 * Private method to select the first riders to reach a segment from a
+	 * stage's results.
+	 *
+	 * @param store The results of the stage.
+	 * @param checkpoint The index of the segment's checkpoint, from 1.
+	 * @param limit The number of riders wanted.
+	 * @return The rows of the first riders in the store, in the order they
+	 * reached the segment, with ties broken by rider ID.
+	 */
+	private int[] rankRowsAtSegment(StageResultStore store, int checkpoint, int limit) {
+		// The times every rider reached this segment are stored in a single column
+		long[] segmentTimes = store.getSplitColumn(checkpoint);
+		return TopNSelector.select(store.size(), limit, (a, b) -> {
+			int byTime = Long.compare(segmentTimes[a], segmentTimes[b]);
+			return byTime != 0 ? byTime : Integer.compare(store.getRiderId(a), store.getRiderId(b));
+		});
 	}
 
 	/**
 	 * Private method to find a Race object based on its unique ID.
 	 * <p>
-	 *     Iterates through the 'races' ArrayList, checking each race's ID
-	 *     through the 'getId()' getter method, until the race matching the ID
-	 *     is found.
+	 *     Looks the race up in the registry, which maps each race ID to its
+	 *     Race object.
 	 * </p>
 	 *
 	 * @param id The ID of the race to be found.
@@ -1088,20 +1684,14 @@ public class CyclingPortal implements CyclingPortalInterface {
 	 * 
 	 */
     private Race getRaceById(int id) throws IDNotRecognisedException {
-        for (Race race : races) {
-			if (race.getId() == id) {
-				return race;
-			}
-		}
-        throw new IDNotRecognisedException("No race with an ID of " + id + " exists");
+        return registry.getRace(id);
     }
 
 	/**
 	 * Private method to find a Stage object based on its unique ID.
 	 * <p>
-	 *     Iterates through the 'races' ArrayList, and again through the
-	 *     race's Stages (through the 'getStages()' getter method), until the
-	 *     Stage matching the ID is found.
+	 *     Looks the stage up in the registry, which maps each stage ID to its
+	 *     Stage object.
 	 * </p>
 	 *
 	 * @param id The ID of the stage to be found.
@@ -1111,25 +1701,14 @@ public class CyclingPortal implements CyclingPortalInterface {
 	 * 
 	 */
     private Stage getStageById(int id) throws IDNotRecognisedException {
-        for (Race race : races) {
-            for (Stage stage : race.getStages()) {
-				// Loops through every Stage in the CyclingPortal
-				// If an ID match is found, returns this Stage
-    			if (stage.getId() == id) {
-    				return stage;
-    			}
-    		}
-        }
-        throw new IDNotRecognisedException("No stage with an ID of " + id + " exists");
+        return registry.getStage(id);
     }
 
 	/**
 	 * Private method to find a Segment object based on its unique ID.
 	 * <p>
-	 *     Iterates through the 'races' ArrayList, and again through the
-	 *     race's Stages (through the 'getStages()' getter method), and again
-	 *     through the stage's Segments (through the 'getSegments()' getter
-	 *     method), until the Segment matching the ID is found.
+	 *     Looks the segment up in the registry, which maps each segment ID to
+	 *     its Segment object.
 	 * </p>
 	 *
 	 * @param id The ID of the segment to be found.
@@ -1139,25 +1718,14 @@ public class CyclingPortal implements CyclingPortalInterface {
 	 * 
 	 */
 	private Segment getSegmentById(int id) throws IDNotRecognisedException {
-		for (Race race : races) {
-			for (Stage stage : race.getStages()) {
-				for (Segment segment : stage.getSegments()) {
-					// Loops through every Segment in the CyclingPortal
-					// If an ID match is found, returns this Segment
-					if (segment.getId() == id) {
-						return segment;
-					}
-				}
-			}
-		}
-		throw new IDNotRecognisedException("No segment with an ID of " + id + " exists");
+		return registry.getSegment(id);
 	}
 
 	/**
 	 * Private method to find a Team object based on its unique ID.
 	 * <p>
-	 *     Iterates through the 'teams' ArrayList, until the Team matching
-	 *     the ID is found.
+	 *     Looks the team up in the registry, which maps each team ID to its
+	 *     Team object.
 	 * </p>
 	 *
 	 * @param id The ID of the team to be found.
@@ -1167,22 +1735,14 @@ public class CyclingPortal implements CyclingPortalInterface {
 	 * 
 	 */
 	private Team getTeamById(int id) throws IDNotRecognisedException {
-		for (Team team : teams) {
-			// Loops through every Team in the CyclingPortal
-			// If an ID match is found, returns this Team
-			if (team.getId() == id) {
-				return team;
-			}
-		}
-		throw new IDNotRecognisedException("No team with an ID of " + id + " exists");
+		return registry.getTeam(id);
 	}
 
 	/**
 	 * Private method to find a Rider object based on its unique ID.
 	 * <p>
-	 *     Iterates through the 'teams' ArrayList, and again through the
-	 *     team's riders (through the 'getRiders()' getter method), until the
-	 *     Rider matching the ID is found.
+	 *     Looks the rider up in the registry, which maps each rider ID to its
+	 *     Rider object.
 	 * </p>
 	 *
 	 * @param id The ID of the rider to be found.
@@ -1192,25 +1752,15 @@ public class CyclingPortal implements CyclingPortalInterface {
 	 * 
 	 */
 	private Rider getRiderById(int id) throws IDNotRecognisedException {
-		for (Team team : teams) {
-			for (Rider rider : team.getRiders()) {
-				// Loops through every Rider in the CyclingPortal
-				// If an ID match is found, returns this Rider
-				if (rider.getId() == id) {
-					return rider;
-				}
-			}
-		}
-		throw new IDNotRecognisedException("No rider with an ID of " + id + " exists");
+		return registry.getRider(id);
 	}
 
 	/**
 	 * Private method to find a Race object based on the ID of a Stage object
 	 * inside the race.
 	 * <p>
-	 *     Iterates through the 'races' ArrayList, and again through the
-	 *     race's stages (through the 'getStages()' getter method), until a
-	 *     Stage matching the ID is found.
+	 *     Looks up the back-reference from the stage to its race in the
+	 *     registry.
 	 * </p>
 	 *
 	 * @param id The ID of the stage contained in the race to be found.
@@ -1220,27 +1770,15 @@ public class CyclingPortal implements CyclingPortalInterface {
 	 * 
 	 */
     private Race getRaceByStageId(int id) throws IDNotRecognisedException {
-        for (Race race : races) {
-            for (Stage stage : race.getStages()) {
-				// Loops through every Stage in the CyclingPortal
-				// If an ID match is found, returns the Race this Stage is in
-    			if (stage.getId() == id) {
-    				return race;
-    			}
-    		}
-        }
-        throw new IDNotRecognisedException("No stage with an ID of " + id + " exists");
+        return registry.getRaceOfStage(id);
     }
 
 	/**
 	 * Private method to find a Stage object based on the ID of a Segment object
 	 * inside the Stage.
 	 * <p>
-	 *     Iterates through the 'races' ArrayList, and again through the
-	 *     race's stages (through the 'getStages()' getter method), and again
-	 *     through the stage's segments (through the 'getSegments()' getter
-	 *     method) until a
-	 *     Segment matching the ID is found.
+	 *     Looks up the back-reference from the segment to its stage in the
+	 *     registry.
 	 * </p>
 	 *
 	 * @param id The ID of the segment contained in the stage to be found.
@@ -1250,27 +1788,15 @@ public class CyclingPortal implements CyclingPortalInterface {
 	 *
 	 */
 	private Stage getStageBySegmentId(int id) throws IDNotRecognisedException {
-		for (Race race : races) {
-			for (Stage stage : race.getStages()) {
-				for (Segment segment : stage.getSegments()) {
-					// Loops through every Segment in the CyclingPortal
-					// If an ID match is found, returns the Stage this Segment is in
-					if (segment.getId() == id) {
-						return stage;
-					}
-				}
-			}
-		}
-		throw new IDNotRecognisedException("No segment with an ID of " + id + " exists");
+		return registry.getStageOfSegment(id);
 	}
 
 	/**
 	 * Private method to find a Team object based on the ID of a Rider object
 	 * inside the Team.
 	 * <p>
-	 *     Iterates through the 'teams' ArrayList, and again through the
-	 *     team's riders (through the 'getRiders()' getter method), until a
-	 *     Rider matching the ID is found.
+	 *     Looks up the back-reference from the rider to its team in the
+	 *     registry.
 	 * </p>
 	 *
 	 * @param id The ID of the rider contained in the team to be found.
@@ -1280,85 +1806,468 @@ public class CyclingPortal implements CyclingPortalInterface {
 	 *
 	 */
 	private Team getTeamByRiderId(int id) throws IDNotRecognisedException {
-		for (Team team : teams) {
-			for (Rider rider : team.getRiders()) {
-				// Loops through every Rider in the CyclingPortal
-				// If an ID match is found, returns the Team this Rider is in
-				if (rider.getId() == id) {
-					return team;
-				}
-			}
-		}
-		throw new IDNotRecognisedException("No rider with an ID of " + id + " exists");
+		return registry.getTeamOfRider(id);
 	}
 
 	/**
-	 * Private method to calculate the elapsed time a rider took in a stage.
+	 * Private method to calculate the points each rider received in a stage.
+	 * <p>
+	 *     The points are cached alongside the stage's ranking, so they are
+	 *     only computed once for each version of the stage.
+	 * </p>
 	 *
 	 * @param stage The stage in question.
-	 * @param rider The particular rider who's elapsed time we want to find.
-	 * @return A LocalTime object in the form HH:MM:SS:nn which represents
-	 * the elapsed time the rider took to complete the stage.
+	 * @return An array of points, in the order of the stage's ranking.
 	 *
 	 */
-	private LocalTime getElapsedTime(Stage stage, Rider rider) {
-		// Finds the appropriate StageResult object
-		StageResult result = getResultInStage(rider, stage);
-		// If this StageResult exists
-		if (result != null) {
-			LocalTime[] checkpoints = result.getCheckpoints();
-			// Returns the difference in time between the first and last checkpoint
-			// i.e. between the start and finish of the stage
-			return timeDifference(checkpoints[0], checkpoints[checkpoints.length-1]);
-		} else {
-			return null;
+	private int[] getStagePoints(Stage stage) {
+		StageRanking ranking = getStageRanking(stage);
+		// Points are only computed once for each version of the stage
+		int[] cachedPoints = ranking.getPoints();
+		if (cachedPoints != null) {
+			return cachedPoints;
 		}
+		StageType type = stage.getType();
+		// Starts from the points each rider aquired from immediate sprints in the stage,
+		// in the same order as the stage's ranking
+		int[] points = getImmediateSprintPoints(stage, ranking);
+		// Only the first 15 riders in the stage get points for their rank
+		for (int i=0;i<points.length && i<15;i++) {
+			// i represents the current rider in the loop's ranking
+			points[i] += getFinishPoints(type, i);
+		}
+		ranking.setPoints(points);
+		return points;
 	}
 
 	/**
-	 * Private method to return an ArrayList of riders in a particular stage.
+	 * Private method to calculate the mountain points each rider received in
+	 * a stage.
+	 * <p>
+	 *     The mountain points are cached alongside the stage's ranking, so
+	 *     they are only computed once for each version of the stage. Each
+	 *     climb is ranked once, selecting only the 8 riders who reached it
+	 *     first, as the rest receive no points for it.
+	 * </p>
 	 *
 	 * @param stage The stage in question.
-	 * @return An ArrayList of Rider objects, all of which have results for
-	 * the stage in question.
-	 *
-	 */
-	private ArrayList<Rider> getRidersInStage(Stage stage) {
-		// Initalises a list to hold the riders in the stage
-		ArrayList<Rider> riders = new ArrayList<>();
-		for (Team team : teams) {
-			for (Rider rider : team.getRiders()) {
-				// Loops through every Rider in the CyclingPortal
-				// If the Rider has a StageResult for this Stage, it is added to the list
-				if (getResultInStage(rider, stage) != null) {
-					riders.add(rider);
+	 * @return An array of mountain points, in the order of the stage's
+	 * ranking.
+	 *
+	 */
+	private int[] getStageMountainPoints(Stage stage) {
+		StageRanking ranking = getStageRanking(stage);
+		// Mountain points are only computed once for each version of the stage
+		int[] cachedPoints = ranking.getMountainPoints();
+		if (cachedPoints != null) {
+			return cachedPoints;
+		}
+		// Initalises an array of points for each rider in the stage, starting with 0 for all
+		int[] mountainPoints = new int[ranking.size()];
+		StageResultStore store = stage.getResultStore();
+		int[][] climbs = stage.getClimbs();
+
+		// Segments are only ranked if there are results in the stage
+		if (climbs.length > 0 && store.size() > 0) {
+			assert (store.getWidth() == stage.getNoOfSegments() + 2);
+			// The position in the stage's ranking of the rider in each row of the store,
+			// found once rather than for every climb
+			int[] slots = new int[store.size()];
+			for (int row=0; row<slots.length; row++) {
+				slots[row] = ranking.getPosition(store.getRiderId(row));
+			}
+			for (int[] climb : climbs) {
+				// The rows of the first 8 riders to reach this climb, in the order they reached it
+				int[] rows = rankRowsAtSegment(store, climb[0], 8);
+				for (int rank=0; rank<rows.length; rank++) {
+					// The rider's total points is incremented by the points for this segment,
+					// which is looked up in the points table based on rank and segment type
+					mountainPoints[slots[rows[rank]]] += mountainPointsTable[rank][climb[1]];
 				}
 			}
 		}
-		return riders;
+		ranking.setMountainPoints(mountainPoints);
+		return mountainPoints;
 	}
 
 	/**
-	 * Private method to return an ArrayList of riders in a particular race.
+	 * Private method to compute every classification of a race.
+	 * <p>
+	 *     Each stage's ranking, points and mountain points are read once
+	 *     (from the stage's cache where possible) and aggregated into the
+	 *     general, points and mountain classifications in a single pass.
+	 * </p>
 	 *
 	 * @param race The race in question.
-	 * @return An ArrayList of Rider objects, all of which have results for
-	 * the race in question.
+	 * @return A RaceClassificationEngine object holding the race's
+	 * classifications.
+	 * @throws IDNotRecognisedException If a ranked rider is not recognised.
 	 *
 	 */
-	private ArrayList<Rider> getRidersInRace(Race race) {
-		// Initalises a list to hold the riders in the race
-		ArrayList<Rider> ridersInRace = new ArrayList<Rider>();
-		for (Stage stage : race.getStages()) {
-			// Forms a list of riders in each stage
-			ArrayList<Rider> ridersInStage = getRidersInStage(stage);
-			for (Rider rider : ridersInStage) {
-				// Adds any new rider found into the final list
-				if (!ridersInRace.contains(rider)) {
-					ridersInRace.add(rider);
+	private RaceClassificationEngine getRaceClassification(Race race) throws IDNotRecognisedException {
+		PortalEvents.RaceClassificationEvent event = new PortalEvents.RaceClassificationEvent();
+		event.begin();
+		Stage[] stages = race.getStages();
+		StageRanking[] stageRankings = getStageRankings(stages);
+		int[][] stagePoints = new int[stages.length][];
+		int[][] stageMountainPoints = new int[stages.length][];
+		for (int i=0; i<stages.length; i++) {
+			stagePoints[i] = getStagePoints(stages[i]);
+			stageMountainPoints[i] = getStageMountainPoints(stages[i]);
+		}
+		RaceClassificationEngine engine = new RaceClassificationEngine(stageRankings, stagePoints,
+				stageMountainPoints);
+		event.end();
+		if (event.shouldCommit()) {
+			event.raceId = race.getId();
+			event.classification = "ALL";
+			event.stages = stages.length;
+			event.riders = engine.size();
+			event.commit();
+		}
+		return engine;
+	}
+
+	/**
+	 * Private method to rank every rider in a stage.
+	 * <p>
+	 *     Reads the stage's riders and their adjusted elapsed times in a
+	 *     single pass over the stage's index, which is kept in order as
+	 *     results are registered and deleted, so the stage is never sorted.
+	 *     The ranking is cached on the stage and reused until the stage's
+	 *     results or segments next change.
+	 * </p>
+	 *
+	 * @param stage The stage to be ranked.
+	 * @return A StageRanking object holding the stage's ranked riders, their
+	 * adjusted elapsed times and their positions.
+	 *
+	 */
+	private StageRanking getStageRanking(Stage stage) {
+		StageRanking ranking = stage.getCachedRanking();
+		if (ranking == null) {
+			// The stage has changed since it was last ranked, so it is ranked again
+			PortalEvents.StageRankingEvent event = new PortalEvents.StageRankingEvent();
+			event.begin();
+			ranking = new StageRanking(stage);
+			stage.cacheRanking(ranking);
+			event.end();
+			if (event.shouldCommit()) {
+				event.stageId = stage.getId();
+				event.riders = ranking.size();
+				event.segments = stage.getNoOfSegments();
+				event.commit();
+			}
+		}
+		return ranking;
+	}
+
+	/**
+	 * Private method to get the index of a race's general classification,
+	 * building it if it has not been built or no longer reflects the race's
+	 * stages.
+	 *
+	 * @param race The race in question.
+	 * @return The GeneralStandings of the race.
+	 *
+	 */
+	private GeneralStandings getGeneralStandings(Race race) {
+		Stage[] stages = race.getStages();
+		GeneralStandings standings = race.getGeneralStandings();
+		if (standings == null || !standings.isCurrent(stages)) {
+			standings = new GeneralStandings(stages);
+			race.setGeneralStandings(standings);
+		}
+		return standings;
+	}
+
+	/**
+	 * Private method to get the index of a race's points or mountain
+	 * classification, building it if it has not been built or no longer
+	 * reflects the race's stages.
+	 *
+	 * @param race The race in question.
+	 * @param classification The classification, which must be POINTS or
+	 *                       MOUNTAIN.
+	 * @return The PointsStandings of the classification.
+	 *
+	 */
+	private PointsStandings getPointsStandings(Race race, Classification classification) {
+		Stage[] stages = race.getStages();
+		PointsStandings standings = race.getPointsStandings(classification);
+		if (standings == null || !standings.isCurrent(stages)) {
+			// Each rider's points are added up from the points cached with each stage's ranking
+			HashMap<Integer, Integer> points = new HashMap<>();
+			for (Stage stage : stages) {
+				StageRanking ranking = getStageRanking(stage);
+				int[] stagePoints = classification == Classification.POINTS ? getStagePoints(stage)
+						: getStageMountainPoints(stage);
+				for (int i=0; i<stagePoints.length; i++) {
+					if (stagePoints[i] != 0) {
+						points.merge(ranking.getRiderId(i), stagePoints[i], Integer::sum);
+					}
+				}
+			}
+			standings = new PointsStandings(stages, getGeneralStandings(race).getLeaderboard(), points);
+			race.setPointsStandings(classification, standings);
+		}
+		return standings;
+	}
+
+	/**
+	 * Private method to add a result to a stage, keeping the race's indexes
+	 * up to date and publishing the changes to its standings.
+	 *
+	 * @param stage The stage the result is for.
+	 * @param riderId The ID of the rider the result belongs to.
+	 * @param elapsedNanos The rider's elapsed time in the stage.
+	 * @param add Adds the result to the stage, given the ID allocated to it.
+	 * @return The StageResult object added to the stage.
+	 * @throws IDNotRecognisedException If the stage is not in any race.
+	 *
+	 */
+	private StageResult addResultToStage(Stage stage, int riderId, long elapsedNanos,
+			IntFunction<StageResult> add) throws IDNotRecognisedException {
+		return changeResultInStage(stage, riderId, elapsedNanos, true,
+				() -> add.apply(ids.allocate(IdAllocator.Kind.RESULT)));
+	}
+
+	/**
+	 * Private method to register or delete a single result in a stage,
+	 * keeping the race's indexes up to date and publishing the changes to
+	 * the standings of the stage and its race.
+	 * <p>
+	 *     Only the riders in the bunches either side of the result can have
+	 *     their adjusted time changed, so their adjusted times are read from
+	 *     the stage's index before and after the change. The stage's feed is
+	 *     sent the result entering or leaving the standings, and the riders
+	 *     of those bunches whose adjusted time changed. The race's general
+	 *     classification moves the same riders, and the points and mountain
+	 *     classifications move them along with the riders whose points in the
+	 *     stage changed, each publishing the riders it moved. A feed whose
+	 *     index could not follow the change is marked stale, to be resent.
+	 * </p>
+	 *
+	 * @param stage The stage the result is in.
+	 * @param riderId The ID of the rider the result belongs to.
+	 * @param elapsedNanos The rider's elapsed time in the stage.
+	 * @param registering true if the result is being registered, false if it
+	 *                    is being deleted.
+	 * @param change Registers or deletes the result.
+	 * @param <T> The type of the change's result.
+	 * @return The result of the change.
+	 * @throws IDNotRecognisedException If the stage is not in any race.
+	 *
+	 */
+	private <T> T changeResultInStage(Stage stage, int riderId, long elapsedNanos, boolean registering,
+			Supplier<T> change) throws IDNotRecognisedException {
+		Race race = getRaceByStageId(stage.getId());
+		GeneralStandings standings = race.getGeneralStandings();
+		StandingsFeed stageFeed = stageFeeds.get(stage.getId());
+		int oldVersion = stage.getVersion();
+		int position = 0;
+		int from = 0;
+		int to = -1;
+		HashMap<Integer, Long> before = null;
+		if (standings != null || stageFeed != null) {
+			RankIndex index = stage.getStandings();
+			if (registering) {
+				position = index.countBefore(elapsedNanos, riderId);
+				from = position > 0 ? index.getBunchStart(position-1) : 0;
+				to = position < index.size() ? index.getBunchEnd(position) : index.size()-1;
+			} else {
+				position = index.getPosition(elapsedNanos, riderId);
+				from = index.getBunchStart(position);
+				to = index.getBunchEnd(position);
+			}
+			before = getAdjustedTimes(index, from, to);
+		}
+		// The points each classification with a feed gave in the stage are noted, as only
+		// the riders whose points changed move in it, besides those moved in the general one
+		EnumMap<Classification, HashMap<Integer, Integer>> pointsBefore = new EnumMap<>(Classification.class);
+		if (standings != null) {
+			for (Classification classification : POINTS_CLASSIFICATIONS) {
+				if (raceFeeds.get(classification).containsKey(race.getId())
+						&& race.getPointsStandings(classification) != null) {
+					pointsBefore.put(classification, getScoredPoints(stage, classification));
+				}
+			}
+		}
+
+		T result = change.get();
+
+		boolean followed = false;
+		if (before != null) {
+			// The same riders, now with or without the result, are read again
+			RankIndex index = stage.getStandings();
+			int last = registering ? to+1 : to-1;
+			HashMap<Integer, Long> after = getAdjustedTimes(index, from, last);
+			if (stageFeed != null) {
+				ArrayList<RankChange> changes = new ArrayList<>();
+				changes.add(registering
+						? new RankChange(riderId, 0, position+1, index.getAdjustedTime(position), 0)
+						: new RankChange(riderId, position+1, 0, -1, 0));
+				for (int p=from; p<=last; p++) {
+					// Riders whose adjusted time changed stay in place, as the stage is ranked by elapsed time
+					int id = index.getRiderId(p);
+					Long oldTime = before.get(id);
+					if (oldTime != null && oldTime != index.getAdjustedTime(p)) {
+						changes.add(new RankChange(id, p+1, p+1, index.getAdjustedTime(p), 0));
+					}
+				}
+				stageFeed.publish(changes);
+			}
+			if (standings != null) {
+				followed = standings.update(stage, oldVersion, before, after,
+						raceFeeds.get(Classification.GENERAL).get(race.getId()));
+			}
+			if (followed) {
+				HashSet<Integer> moved = new HashSet<>(before.keySet());
+				moved.addAll(after.keySet());
+				for (Entry<Classification, HashMap<Integer, Integer>> entry : pointsBefore.entrySet()) {
+					StandingsFeed feed = raceFeeds.get(entry.getKey()).get(race.getId());
+					PointsStandings points = race.getPointsStandings(entry.getKey());
+					if (feed == null) {
+						continue;
+					}
+					HashMap<Integer, Integer> delta = getScoredPoints(stage, entry.getKey());
+					for (Entry<Integer, Integer> old : entry.getValue().entrySet()) {
+						delta.merge(old.getKey(), -old.getValue(), Integer::sum);
+					}
+					if (points == null || !points.update(stage, oldVersion, delta, moved, standings, feed)) {
+						feed.invalidate();
+					}
+				}
+			}
+		}
+		if (!followed) {
+			// The race's classifications could not be followed, so their feeds are resent
+			for (Classification classification : Classification.values()) {
+				StandingsFeed feed = raceFeeds.get(classification).get(race.getId());
+				if (feed != null) {
+					feed.invalidate();
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Private method to find the points each rider with a result earned in
+	 * a stage, in the points or mountain classification.
+	 * <p>
+	 *     Only the riders given points are read: the first 15 in the stage's
+	 *     index, and the first riders with a result at each sprint or climb,
+	 *     read from the order the segment was reached in. This costs
+	 *     O(log n) for each rider read, rather than ranking the stage.
+	 * </p>
+	 *
+	 * @param stage The stage in question.
+	 * @param classification The classification, which must be POINTS or
+	 *                       MOUNTAIN.
+	 * @return A HashMap of rider ID : points, holding only the riders given
+	 * points.
+	 *
+	 */
+	private HashMap<Integer, Integer> getScoredPoints(Stage stage, Classification classification) {
+		HashMap<Integer, Integer> points = new HashMap<>();
+		if (classification == Classification.POINTS) {
+			StageType type = stage.getType();
+			int[] rank = {0};
+			stage.getStandings().forEach(15, (riderId, time, adjustedTime) ->
+					points.merge(riderId, getFinishPoints(type, rank[0]++), Integer::sum));
+		}
+		Segment[] segments = stage.getSegments();
+		for (int i=0; i<segments.length; i++) {
+			boolean sprint = segments[i].getType() == SegmentType.SPRINT;
+			if (sprint != (classification == Classification.POINTS)) {
+				continue;
+			}
+			// Riders still on the course have reached the segment, but earn nothing until they finish
+			RankIndex order = stage.getArrivals().getOrder(i);
+			int rank = 0;
+			for (int p=0; p<order.size() && rank<(sprint ? 15 : 8); p++) {
+				int riderId = order.getRiderId(p);
+				if (stage.hasResult(riderId)) {
+					points.merge(riderId, getSegmentPoints(segments[i].getType(), rank++), Integer::sum);
 				}
 			}
 		}
-		return ridersInRace;
+		return points;
+	}
+
+	/**
+	 * Private method to find the points earned by the rider in a position at
+	 * the finish of a stage.
+	 *
+	 * @param type The type of the stage.
+	 * @param rank The position of the rider in the stage (from 0), which
+	 *             must be less than 15.
+	 * @return The points for the position.
+	 *
+	 */
+	private int getFinishPoints(StageType type, int rank) {
+		// Looks up points table attribute to assign points
+		switch (type) {
+			case FLAT:
+				return pointsTable[0][rank];
+			case MEDIUM_MOUNTAIN:
+				return pointsTable[1][rank];
+			default: // HIGH_MOUNTAIN or TT
+				return pointsTable[2][rank];
+		}
+	}
+
+	/**
+	 * Private method to find the points earned by the rider in a position at
+	 * a segment.
+	 *
+	 * @param type The type of the segment.
+	 * @param rank The position of the rider at the segment (from 0).
+	 * @return The intermediate sprint points for a sprint, or the mountain
+	 * points for a climb.
+	 *
+	 */
+	private int getSegmentPoints(SegmentType type, int rank) {
+		if (type == SegmentType.SPRINT) {
+			// Adds no points if the rider reaches the segment 16th or more
+			return rank < 15 ? pointsTable[2][rank] : 0;
+		}
+		// Climbs only give points to the first 8 riders, in the column for their category
+		return rank < 8 ? mountainPointsTable[rank][type.ordinal()-1] : 0;
+	}
+
+	/**
+	 * Private method to read the adjusted elapsed times of a range of riders
+	 * in a stage's index.
+	 *
+	 * @param index The stage's index.
+	 * @param from The position of the first rider.
+	 * @param to The position of the last rider.
+	 * @return A HashMap of rider ID : adjusted elapsed time, in nanoseconds.
+	 *
+	 */
+	private HashMap<Integer, Long> getAdjustedTimes(RankIndex index, int from, int to) {
+		HashMap<Integer, Long> adjustedTimes = new HashMap<>();
+		for (int position=from; position<=to; position++) {
+			adjustedTimes.put(index.getRiderId(position), index.getAdjustedTime(position));
+		}
+		return adjustedTimes;
+	}
+
+	/**
+	 * Private method to rank every stage in an array of stages.
+	 *
+	 * @param stages The stages to be ranked.
+	 * @return An array of StageRanking objects, one for each stage in the
+	 * same order.
+	 *
+	 */
+	private StageRanking[] getStageRankings(Stage[] stages) {
+		StageRanking[] stageRankings = new StageRanking[stages.length];
+		for (int i=0; i<stages.length; i++) {
+			stageRankings[i] = getStageRanking(stages[i]);
+		}
+		return stageRankings;
 	}
 }
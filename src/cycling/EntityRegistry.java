@@ -0,0 +1,404 @@
+package cycling;
+
+import java.io.Serializable;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * EntityRegistry class.<br>
+ * Indexes every race, stage, segment, team and rider in the CyclingPortal by
+ * its unique ID, along with a back-reference from each stage, segment and
+ * rider to the entity which contains it, so that any of them can be found in
+ * constant time.<br>
+ * Races, stages and teams are also indexed by their name, which is unique
+ * among entities of the same kind, so that names can be checked and races
+ * found by name in constant time. Names are matched exactly, including
+ * case.<br>
+ * The indexes are concurrent maps, so that lookups are safe while another
+ * thread registers or removes an entity.
+ *
+ * @author Joey Griffiths and Alexander Cairns
+ *
+ */
+class EntityRegistry implements Serializable {
+
+    /**
+     * Maps the ID of each race to its Race object.
+     */
+    private final ConcurrentHashMap<Integer, Race> races = new ConcurrentHashMap<>();
+
+    /**
+     * Maps the ID of each stage to its Stage object.
+     */
+    private final ConcurrentHashMap<Integer, Stage> stages = new ConcurrentHashMap<>();
+
+    /**
+     * Maps the ID of each segment to its Segment object.
+     */
+    private final ConcurrentHashMap<Integer, Segment> segments = new ConcurrentHashMap<>();
+
+    /**
+     * Maps the ID of each team to its Team object.
+     */
+    private final ConcurrentHashMap<Integer, Team> teams = new ConcurrentHashMap<>();
+
+    /**
+     * Maps the ID of each rider to its Rider object.
+     */
+    private final ConcurrentHashMap<Integer, Rider> riders = new ConcurrentHashMap<>();
+
+    /**
+     * Maps the ID of each stage to the Race which contains it.
+     */
+    private final ConcurrentHashMap<Integer, Race> raceOfStage = new ConcurrentHashMap<>();
+
+    /**
+     * Maps the ID of each segment to the Stage which contains it.
+     */
+    private final ConcurrentHashMap<Integer, Stage> stageOfSegment = new ConcurrentHashMap<>();
+
+    /**
+     * Maps the ID of each rider to the Team which contains it.
+     */
+    private final ConcurrentHashMap<Integer, Team> teamOfRider = new ConcurrentHashMap<>();
+
+    /**
+     * Maps the name of each race to its Race object.
+     */
+    private final ConcurrentHashMap<String, Race> raceByName = new ConcurrentHashMap<>();
+
+    /**
+     * Maps the name of each stage, in any race, to its Stage object.
+     */
+    private final ConcurrentHashMap<String, Stage> stageByName = new ConcurrentHashMap<>();
+
+    /**
+     * Maps the name of each team to its Team object.
+     */
+    private final ConcurrentHashMap<String, Team> teamByName = new ConcurrentHashMap<>();
+
+    /**
+     * Registers a race, along with any stages and segments it already
+     * contains.
+     *
+     * @param race The Race object to register.
+     */
+    public void addRace(Race race) {
+        races.put(race.getId(), race);
+        raceByName.putIfAbsent(race.getName(), race);
+        for (Stage stage : race.getStages()) {
+            addStage(race, stage);
+        }
+    }
+
+    /**
+     * Deregisters a race, along with all of its stages and segments.
+     *
+     * @param race The Race object to deregister.
+     */
+    public void removeRace(Race race) {
+        for (Stage stage : race.getStages()) {
+            removeStage(stage);
+        }
+        races.remove(race.getId());
+        // The name is only freed if it still belongs to this race
+        raceByName.remove(race.getName(), race);
+    }
+
+    /**
+     * Registers a stage as belonging to a race, along with any segments it
+     * already contains.
+     *
+     * @param race The Race object the stage belongs to.
+     * @param stage The Stage object to register.
+     */
+    public void addStage(Race race, Stage stage) {
+        stages.put(stage.getId(), stage);
+        raceOfStage.put(stage.getId(), race);
+        stageByName.putIfAbsent(stage.getName(), stage);
+        for (Segment segment : stage.getSegments()) {
+            addSegment(stage, segment);
+        }
+    }
+
+    /**
+     * Deregisters a stage, along with all of its segments.
+     *
+     * @param stage The Stage object to deregister.
+     */
+    public void removeStage(Stage stage) {
+        for (Segment segment : stage.getSegments()) {
+            removeSegment(segment);
+        }
+        stages.remove(stage.getId());
+        raceOfStage.remove(stage.getId());
+        stageByName.remove(stage.getName(), stage);
+    }
+
+    /**
+     * Registers a segment as belonging to a stage.
+     *
+     * @param stage The Stage object the segment belongs to.
+     * @param segment The Segment object to register.
+     */
+    public void addSegment(Stage stage, Segment segment) {
+        segments.put(segment.getId(), segment);
+        stageOfSegment.put(segment.getId(), stage);
+    }
+
+    /**
+     * Deregisters a segment.
+     *
+     * @param segment The Segment object to deregister.
+     */
+    public void removeSegment(Segment segment) {
+        segments.remove(segment.getId());
+        stageOfSegment.remove(segment.getId());
+    }
+
+    /**
+     * Registers a team, along with any riders it already contains.
+     *
+     * @param team The Team object to register.
+     */
+    public void addTeam(Team team) {
+        teams.put(team.getId(), team);
+        teamByName.putIfAbsent(team.getName(), team);
+        for (Rider rider : team.getRiders()) {
+            addRider(team, rider);
+        }
+    }
+
+    /**
+     * Deregisters a team, along with all of its riders.
+     *
+     * @param team The Team object to deregister.
+     */
+    public void removeTeam(Team team) {
+        for (Rider rider : team.getRiders()) {
+            removeRider(rider);
+        }
+        teams.remove(team.getId());
+        teamByName.remove(team.getName(), team);
+    }
+
+    /**
+     * Registers a rider as belonging to a team.
+     *
+     * @param team The Team object the rider belongs to.
+     * @param rider The Rider object to register.
+     */
+    public void addRider(Team team, Rider rider) {
+        riders.put(rider.getId(), rider);
+        teamOfRider.put(rider.getId(), team);
+    }
+
+    /**
+     * Deregisters a rider.
+     *
+     * @param rider The Rider object to deregister.
+     */
+    public void removeRider(Rider rider) {
+        riders.remove(rider.getId());
+        teamOfRider.remove(rider.getId());
+    }
+
+    /**
+     * Empties the registry of all entities.
+     */
+    public void clear() {
+        races.clear();
+        stages.clear();
+        segments.clear();
+        teams.clear();
+        riders.clear();
+        raceOfStage.clear();
+        stageOfSegment.clear();
+        teamOfRider.clear();
+        raceByName.clear();
+        stageByName.clear();
+        teamByName.clear();
+    }
+
+    /**
+     * Empties the registry and re-registers every entity contained in the
+     * given races and teams.<br>
+     * Used when the contents of the CyclingPortal are replaced wholesale,
+     * such as when a portal is loaded from a file.
+     *
+     * @param raceList The races to register.
+     * @param teamList The teams to register.
+     */
+    public void rebuild(List<Race> raceList, List<Team> teamList) {
+        clear();
+        for (Race race : raceList) {
+            addRace(race);
+        }
+        for (Team team : teamList) {
+            addTeam(team);
+        }
+    }
+
+    /**
+     * Method to find a Race object based on its unique ID.
+     *
+     * @param id The ID of the race to be found.
+     * @return The Race object with this ID.
+     * @throws IDNotRecognisedException If the ID does not match any race.
+     */
+    public Race getRace(int id) throws IDNotRecognisedException {
+        Race race = races.get(id);
+        if (race == null) {
+            throw new IDNotRecognisedException("No race with an ID of " + id + " exists");
+        }
+        return race;
+    }
+
+    /**
+     * Method to find a Stage object based on its unique ID.
+     *
+     * @param id The ID of the stage to be found.
+     * @return The Stage object with this ID.
+     * @throws IDNotRecognisedException If the ID does not match any stage.
+     */
+    public Stage getStage(int id) throws IDNotRecognisedException {
+        Stage stage = stages.get(id);
+        if (stage == null) {
+            throw new IDNotRecognisedException("No stage with an ID of " + id + " exists");
+        }
+        return stage;
+    }
+
+    /**
+     * Method to find a Segment object based on its unique ID.
+     *
+     * @param id The ID of the segment to be found.
+     * @return The Segment object with this ID.
+     * @throws IDNotRecognisedException If the ID does not match any segment.
+     */
+    public Segment getSegment(int id) throws IDNotRecognisedException {
+        Segment segment = segments.get(id);
+        if (segment == null) {
+            throw new IDNotRecognisedException("No segment with an ID of " + id + " exists");
+        }
+        return segment;
+    }
+
+    /**
+     * Method to find a Team object based on its unique ID.
+     *
+     * @param id The ID of the team to be found.
+     * @return The Team object with this ID.
+     * @throws IDNotRecognisedException If the ID does not match any team.
+     */
+    public Team getTeam(int id) throws IDNotRecognisedException {
+        Team team = teams.get(id);
+        if (team == null) {
+            throw new IDNotRecognisedException("No team with an ID of " + id + " exists");
+        }
+        return team;
+    }
+
+    /**
+     * Method to find a Rider object based on its unique ID.
+     *
+     * @param id The ID of the rider to be found.
+     * @return The Rider object with this ID.
+     * @throws IDNotRecognisedException If the ID does not match any rider.
+     */
+    public Rider getRider(int id) throws IDNotRecognisedException {
+        Rider rider = riders.get(id);
+        if (rider == null) {
+            throw new IDNotRecognisedException("No rider with an ID of " + id + " exists");
+        }
+        return rider;
+    }
+
+    /**
+     * Method to find a Rider object based on its unique ID, without
+     * throwing an exception if it does not exist.<br>
+     * Used where the rider is already known to be registered, such as when
+     * following a stage's results back to their riders.
+     *
+     * @param id The ID of the rider to be found.
+     * @return The Rider object with this ID, or null if there is none.
+     */
+    public Rider findRider(int id) {
+        return riders.get(id);
+    }
+
+    /**
+     * Method to find a Race object based on its name.
+     *
+     * @param name The name of the race to be found.
+     * @return The Race object with this name, or null if there is none.
+     */
+    public Race findRaceByName(String name) {
+        return name == null ? null : raceByName.get(name);
+    }
+
+    /**
+     * Method to check whether any race has a stage with a particular name.
+     *
+     * @param name The name of the stage.
+     * @return true if a stage with this name exists, false otherwise.
+     */
+    public boolean hasStageNamed(String name) {
+        return stageByName.containsKey(name);
+    }
+
+    /**
+     * Method to check whether a team with a particular name exists.
+     *
+     * @param name The name of the team.
+     * @return true if a team with this name exists, false otherwise.
+     */
+    public boolean hasTeamNamed(String name) {
+        return teamByName.containsKey(name);
+    }
+
+    /**
+     * Method to find the Race which contains a particular stage.
+     *
+     * @param stageId The ID of the stage contained in the race.
+     * @return The Race object containing the stage.
+     * @throws IDNotRecognisedException If the ID does not match any stage.
+     */
+    public Race getRaceOfStage(int stageId) throws IDNotRecognisedException {
+        Race race = raceOfStage.get(stageId);
+        if (race == null) {
+            throw new IDNotRecognisedException("No stage with an ID of " + stageId + " exists");
+        }
+        return race;
+    }
+
+    /**
+     * Method to find the Stage which contains a particular segment.
+     *
+     * @param segmentId The ID of the segment contained in the stage.
+     * @return The Stage object containing the segment.
+     * @throws IDNotRecognisedException If the ID does not match any segment.
+     */
+    public Stage getStageOfSegment(int segmentId) throws IDNotRecognisedException {
+        Stage stage = stageOfSegment.get(segmentId);
+        if (stage == null) {
+            throw new IDNotRecognisedException("No segment with an ID of " + segmentId + " exists");
+        }
+        return stage;
+    }
+
+    /**
+     * Method to find the Team which contains a particular rider.
+     *
+     * @param riderId The ID of the rider contained in the team.
+     * @return The Team object containing the rider.
+     * @throws IDNotRecognisedException If the ID does not match any rider.
+     */
+    public Team getTeamOfRider(int riderId) throws IDNotRecognisedException {
+        Team team = teamOfRider.get(riderId);
+        if (team == null) {
+            throw new IDNotRecognisedException("No rider with an ID of " + riderId + " exists");
+        }
+        return team;
+    }
+}
@@ -0,0 +1,217 @@
+package cycling;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * GeneralStandings class.<br>
+ * An index of the riders in a race ordered by general classification, that
+ * is, by their total adjusted elapsed time over the race's stages, so that
+ * a single rider's position and total time are found in O(log n) time.<br>
+ * The standings record the version of each stage they reflect. When a
+ * result is registered or deleted, only the riders whose adjusted time in
+ * that stage changed are moved; any other change to a stage leaves the
+ * standings out of date, and they are rebuilt when next needed.<br>
+ * Each rider moved is published as a {@link RankChange} to the feed of the
+ * race's general classification, if it has one.<br>
+ * Results in different stages of the race may be registered at the same
+ * time, so every method is synchronized.
+ *
+ * @author Joey Griffiths and Alexander Cairns
+ *
+ */
+final class GeneralStandings {
+
+    /**
+     * The riders of the race, ordered by total adjusted elapsed time.
+     */
+    private final RankIndex index = new RankIndex(0);
+
+    /**
+     * Maps the ID of each rider in the race to their total adjusted elapsed
+     * time, in nanoseconds, and the number of stages they have a result in.
+     */
+    private final HashMap<Integer, long[]> totals = new HashMap<>();
+
+    /**
+     * The IDs of the race's stages, in order.
+     */
+    private final int[] stageIds;
+
+    /**
+     * The version of each stage reflected by the standings, in the same
+     * order as 'stageIds', or -1 once a stage has changed in a way the
+     * standings could not follow.
+     */
+    private final int[] stageVersions;
+
+    /**
+     * GeneralStandings class constructor.<br>
+     * Builds the standings from every stage of a race.
+     *
+     * @param stages The stages of the race.
+     */
+    GeneralStandings(Stage[] stages) {
+        stageIds = new int[stages.length];
+        stageVersions = new int[stages.length];
+        for (int s=0; s<stages.length; s++) {
+            stageIds[s] = stages[s].getId();
+            stageVersions[s] = stages[s].getVersion();
+            stages[s].getStandings().forEach((riderId, time, adjustedTime) -> {
+                long[] total = totals.computeIfAbsent(riderId, id -> new long[2]);
+                total[0] += adjustedTime;
+                total[1]++;
+            });
+        }
+        for (Map.Entry<Integer, long[]> entry : totals.entrySet()) {
+            index.insert(entry.getValue()[0], entry.getKey());
+        }
+    }
+
+    /**
+     * Method to check whether the standings reflect the current state of
+     * every stage in a race.
+     *
+     * @param stages The stages of the race.
+     * @return true if the standings are up to date, false if they must be
+     * rebuilt.
+     */
+    public synchronized boolean isCurrent(Stage[] stages) {
+        if (stages.length != stageIds.length) {
+            return false;
+        }
+        for (int s=0; s<stages.length; s++) {
+            if (stages[s].getId() != stageIds[s] || stages[s].getVersion() != stageVersions[s]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Method to update the standings after a result in one of the race's
+     * stages has been registered or deleted, publishing each rider moved to
+     * the feed of the general classification.<br>
+     * Does nothing to the riders if the standings did not reflect the stage
+     * as it was before the change, in which case they stay out of date.
+     *
+     * @param stage The stage which changed.
+     * @param oldVersion The version of the stage before the change.
+     * @param before The adjusted elapsed time, in nanoseconds, of each
+     *               rider who may have been affected, before the change.
+     * @param after The adjusted elapsed time of the same riders after the
+     *              change. A rider missing from 'before' had their result
+     *              registered, and a rider missing from 'after' had their
+     *              result deleted.
+     * @param feed The feed of the race's general classification, or null if
+     *             it has none.
+     * @return true if the standings were updated, false if they are out of
+     * date.
+     */
+    public synchronized boolean update(Stage stage, int oldVersion, Map<Integer, Long> before,
+                                       Map<Integer, Long> after, StandingsFeed feed) {
+        int s = 0;
+        while (s < stageIds.length && stageIds[s] != stage.getId()) {
+            s++;
+        }
+        if (s == stageIds.length || stageVersions[s] != oldVersion) {
+            return false;
+        }
+        ArrayList<RankChange> changes = feed == null ? null : new ArrayList<>();
+        for (Map.Entry<Integer, Long> entry : before.entrySet()) {
+            Long newTime = after.get(entry.getKey());
+            if (newTime == null) {
+                move(entry.getKey(), -entry.getValue(), -1, changes);
+            } else if (newTime.longValue() != entry.getValue()) {
+                move(entry.getKey(), newTime - entry.getValue(), 0, changes);
+            }
+        }
+        for (Map.Entry<Integer, Long> entry : after.entrySet()) {
+            if (!before.containsKey(entry.getKey())) {
+                move(entry.getKey(), entry.getValue(), 1, changes);
+            }
+        }
+        stageVersions[s] = stage.getVersion();
+        if (feed != null) {
+            // Published while the standings are locked, so changes from other stages stay in order
+            feed.publish(changes);
+        }
+        return true;
+    }
+
+    /**
+     * Private method to change a rider's total time and number of stages,
+     * moving them to their new position.
+     *
+     * @param riderId The ID of the rider.
+     * @param nanos The change to the rider's total time, in nanoseconds.
+     * @param stages The change to the number of stages the rider has a
+     *               result in.
+     * @param changes The list the rider's change in the standings is added
+     *                to, or null if it is not wanted.
+     */
+    private void move(int riderId, long nanos, int stages, ArrayList<RankChange> changes) {
+        long[] total = totals.computeIfAbsent(riderId, id -> new long[2]);
+        int oldPosition = -1;
+        if (total[1] > 0) {
+            oldPosition = index.getPosition(total[0], riderId);
+            index.remove(total[0], riderId);
+        }
+        total[0] += nanos;
+        total[1] += stages;
+        int newPosition = -1;
+        if (total[1] > 0) {
+            index.insert(total[0], riderId);
+            newPosition = index.getPosition(total[0], riderId);
+        } else {
+            totals.remove(riderId);
+        }
+        if (changes != null) {
+            changes.add(new RankChange(riderId, oldPosition + 1, newPosition + 1,
+                    newPosition == -1 ? -1 : total[0], 0));
+        }
+    }
+
+    /**
+     * Method to get the position of a rider in the general classification.
+     *
+     * @param riderId The ID of the rider.
+     * @return The position of the rider (0 being the leader), or -1 if the
+     * rider has no result in the race.
+     */
+    public synchronized int getPosition(int riderId) {
+        long[] total = totals.get(riderId);
+        return total == null ? -1 : index.getPosition(total[0], riderId);
+    }
+
+    /**
+     * Method to get the total adjusted elapsed time of a rider in the race.
+     *
+     * @param riderId The ID of the rider.
+     * @return The rider's total time, in nanoseconds, or -1 if the rider has
+     * no result in the race.
+     */
+    public synchronized long getTotalNanos(int riderId) {
+        long[] total = totals.get(riderId);
+        return total == null ? -1 : total[0];
+    }
+
+    /**
+     * Method to copy the general classification into a Leaderboard.
+     *
+     * @return A Leaderboard of every rider in the race, in order, with their
+     * total adjusted elapsed times.
+     */
+    public synchronized Leaderboard getLeaderboard() {
+        int[] riderIds = new int[index.size()];
+        long[] nanos = new long[index.size()];
+        int[] position = {0};
+        index.forEach((riderId, time, adjustedTime) -> {
+            riderIds[position[0]] = riderId;
+            nanos[position[0]] = time;
+            position[0]++;
+        });
+        return new Leaderboard(riderIds, nanos, null);
+    }
+}
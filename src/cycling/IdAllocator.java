@@ -0,0 +1,136 @@
+package cycling;
+
+import java.io.Serializable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * IdAllocator class.<br>
+ * Allocates the IDs of every entity in a single CyclingPortal, so that
+ * several portals can be used in the same program without sharing IDs.<br>
+ * Results are registered from many threads at once, so each thread reserves
+ * a block of result IDs at a time and allocates from it without touching
+ * the shared counter. Result IDs are therefore unique but may have gaps,
+ * while the IDs of races, stages, segments, teams and riders, which are
+ * seen by users of the portal, are always consecutive.
+ *
+ * @author Joey Griffiths and Alexander Cairns
+ *
+ */
+final class IdAllocator implements Serializable {
+
+    /**
+     * The kinds of entity which are given IDs, each of which has its own
+     * sequence of IDs.<br>
+     * Snapshots store the next ID of each kind in this order.
+     */
+    enum Kind {
+        RACE, STAGE, SEGMENT, TEAM, RIDER, RESULT
+    }
+
+    /**
+     * The number of result IDs reserved by a thread at a time.
+     */
+    private static final int BLOCK_SIZE = 64;
+
+    /**
+     * The next ID to be allocated (or, for results, reserved) for each kind
+     * of entity, indexed by the ordinal of its {@link Kind}.
+     */
+    private final AtomicInteger[] next = new AtomicInteger[Kind.values().length];
+
+    /**
+     * Incremented whenever the result counter is moved, so that threads
+     * know to discard the blocks they reserved before.
+     */
+    private transient volatile int generation = 0;
+
+    /**
+     * The block of result IDs reserved by each thread, as the next ID in
+     * the block, the end of the block, and the generation it was reserved
+     * in.
+     */
+    private final transient ThreadLocal<int[]> resultBlock = ThreadLocal.withInitial(() -> new int[] {0, 0, -1});
+
+    /**
+     * IdAllocator class constructor.<br>
+     * Creates an allocator where every kind of entity's IDs start from 0.
+     */
+    IdAllocator() {
+        for (int i=0; i<next.length; i++) {
+            next[i] = new AtomicInteger();
+        }
+    }
+
+    /**
+     * Method to allocate a new ID for an entity.
+     *
+     * @param kind The kind of entity the ID is for.
+     * @return The ID allocated.
+     */
+    public int allocate(Kind kind) {
+        if (kind != Kind.RESULT) {
+            return next[kind.ordinal()].getAndIncrement();
+        }
+        int[] block = resultBlock.get();
+        if (block[0] == block[1] || block[2] != generation) {
+            // A new block is reserved from the shared counter
+            block[2] = generation;
+            block[0] = next[Kind.RESULT.ordinal()].getAndAdd(BLOCK_SIZE);
+            block[1] = block[0] + BLOCK_SIZE;
+        }
+        return block[0]++;
+    }
+
+    /**
+     * Method to get the next ID which has not been allocated, or reserved
+     * by any thread, for a kind of entity.<br>
+     * Used to save the state of the allocator.
+     *
+     * @param kind The kind of entity.
+     * @return The next unused ID.
+     */
+    public int getNext(Kind kind) {
+        return next[kind.ordinal()].get();
+    }
+
+    /**
+     * Method to set the next ID to be allocated for a kind of entity.<br>
+     * Used to restore the state of the allocator, or to give an entity a
+     * particular ID when replaying a change.<br>
+     * Must not be called while other threads are allocating IDs.
+     *
+     * @param kind The kind of entity.
+     * @param id The next ID to be allocated.
+     */
+    public void setNext(Kind kind, int id) {
+        next[kind.ordinal()].set(id);
+        if (kind == Kind.RESULT) {
+            generation++;
+        }
+    }
+
+    /**
+     * Method to reset the allocator so that every kind of entity's IDs
+     * start from 0 again.
+     */
+    public void reset() {
+        for (Kind kind : Kind.values()) {
+            setNext(kind, 0);
+        }
+    }
+
+    /**
+     * Method to replace an allocator which has been deserialized with a new
+     * one continuing from the same IDs, as blocks of result IDs reserved by
+     * threads are not serialized.
+     *
+     * @return The allocator to be used in place of the deserialized one.
+     */
+    private Object readResolve() {
+        IdAllocator allocator = new IdAllocator();
+        for (Kind kind : Kind.values()) {
+            allocator.setNext(kind, getNext(kind));
+        }
+        return allocator;
+    }
+}
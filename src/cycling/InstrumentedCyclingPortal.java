@@ -0,0 +1,753 @@
+package cycling;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+
+/**
+ * InstrumentedCyclingPortal class which implements CyclingPortalInterface.
+ * <p>
+ *     Passes every call on to another portal, recording in its
+ *     {@link PortalMetrics} how long each call took and which exception, if
+ *     any, it threw. Any portal can be wrapped, such as a
+ *     {@link ConcurrentCyclingPortal} shared by several timing feeds, and the
+ *     portal behaves exactly as before, returning the same values and
+ *     throwing the same exceptions.
+ * </p>
+ * <p>
+ *     Recording a call takes two reads of {@link System#nanoTime()} and a
+ *     few uncontended additions, without locking or creating any objects, so
+ *     the metrics can be left on while races are run. They are read with
+ *     {@link #getMetrics()}, or over JMX once registered with
+ *     {@link PortalMetrics#registerMBean(String)}.
+ * </p>
+ *
+ * @author Joey Griffiths and Alexander Cairns
+ *
+ */
+public class InstrumentedCyclingPortal implements CyclingPortalInterface {
+
+	/**
+	 * The portal every call is passed on to.
+	 */
+	private final CyclingPortalInterface portal;
+
+	/**
+	 * The calls made to every method of the portal.<br>
+	 * Each method's calls are recorded in its own MethodMetrics object below,
+	 * so no lookup is needed on each call.
+	 */
+	private final PortalMetrics metrics = new PortalMetrics();
+
+	/**
+	 * The calls made to {@link #getRaceIds}.
+	 */
+	private final PortalMetrics.MethodMetrics getRaceIdsMetrics = metrics.addMethod("getRaceIds");
+
+	/**
+	 * The calls made to {@link #createRace}.
+	 */
+	private final PortalMetrics.MethodMetrics createRaceMetrics = metrics.addMethod("createRace");
+
+	/**
+	 * The calls made to {@link #viewRaceDetails}.
+	 */
+	private final PortalMetrics.MethodMetrics viewRaceDetailsMetrics = metrics.addMethod("viewRaceDetails");
+
+	/**
+	 * The calls made to {@link #removeRaceById}.
+	 */
+	private final PortalMetrics.MethodMetrics removeRaceByIdMetrics = metrics.addMethod("removeRaceById");
+
+	/**
+	 * The calls made to {@link #getNumberOfStages}.
+	 */
+	private final PortalMetrics.MethodMetrics getNumberOfStagesMetrics = metrics.addMethod("getNumberOfStages");
+
+	/**
+	 * The calls made to {@link #addStageToRace}.
+	 */
+	private final PortalMetrics.MethodMetrics addStageToRaceMetrics = metrics.addMethod("addStageToRace");
+
+	/**
+	 * The calls made to {@link #getRaceStages}.
+	 */
+	private final PortalMetrics.MethodMetrics getRaceStagesMetrics = metrics.addMethod("getRaceStages");
+
+	/**
+	 * The calls made to {@link #getStageLength}.
+	 */
+	private final PortalMetrics.MethodMetrics getStageLengthMetrics = metrics.addMethod("getStageLength");
+
+	/**
+	 * The calls made to {@link #removeStageById}.
+	 */
+	private final PortalMetrics.MethodMetrics removeStageByIdMetrics = metrics.addMethod("removeStageById");
+
+	/**
+	 * The calls made to {@link #addCategorizedClimbToStage}.
+	 */
+	private final PortalMetrics.MethodMetrics addCategorizedClimbToStageMetrics = metrics.addMethod("addCategorizedClimbToStage");
+
+	/**
+	 * The calls made to {@link #addIntermediateSprintToStage}.
+	 */
+	private final PortalMetrics.MethodMetrics addIntermediateSprintToStageMetrics = metrics.addMethod("addIntermediateSprintToStage");
+
+	/**
+	 * The calls made to {@link #removeSegment}.
+	 */
+	private final PortalMetrics.MethodMetrics removeSegmentMetrics = metrics.addMethod("removeSegment");
+
+	/**
+	 * The calls made to {@link #concludeStagePreparation}.
+	 */
+	private final PortalMetrics.MethodMetrics concludeStagePreparationMetrics = metrics.addMethod("concludeStagePreparation");
+
+	/**
+	 * The calls made to {@link #getStageSegments}.
+	 */
+	private final PortalMetrics.MethodMetrics getStageSegmentsMetrics = metrics.addMethod("getStageSegments");
+
+	/**
+	 * The calls made to {@link #createTeam}.
+	 */
+	private final PortalMetrics.MethodMetrics createTeamMetrics = metrics.addMethod("createTeam");
+
+	/**
+	 * The calls made to {@link #removeTeam}.
+	 */
+	private final PortalMetrics.MethodMetrics removeTeamMetrics = metrics.addMethod("removeTeam");
+
+	/**
+	 * The calls made to {@link #getTeams}.
+	 */
+	private final PortalMetrics.MethodMetrics getTeamsMetrics = metrics.addMethod("getTeams");
+
+	/**
+	 * The calls made to {@link #getTeamRiders}.
+	 */
+	private final PortalMetrics.MethodMetrics getTeamRidersMetrics = metrics.addMethod("getTeamRiders");
+
+	/**
+	 * The calls made to {@link #createRider}.
+	 */
+	private final PortalMetrics.MethodMetrics createRiderMetrics = metrics.addMethod("createRider");
+
+	/**
+	 * The calls made to {@link #removeRider}.
+	 */
+	private final PortalMetrics.MethodMetrics removeRiderMetrics = metrics.addMethod("removeRider");
+
+	/**
+	 * The calls made to {@link #registerRiderResultsInStage}.
+	 */
+	private final PortalMetrics.MethodMetrics registerRiderResultsInStageMetrics = metrics.addMethod("registerRiderResultsInStage");
+
+	/**
+	 * The calls made to {@link #getRiderResultsInStage}.
+	 */
+	private final PortalMetrics.MethodMetrics getRiderResultsInStageMetrics = metrics.addMethod("getRiderResultsInStage");
+
+	/**
+	 * The calls made to {@link #getRiderAdjustedElapsedTimeInStage}.
+	 */
+	private final PortalMetrics.MethodMetrics getRiderAdjustedElapsedTimeInStageMetrics = metrics.addMethod("getRiderAdjustedElapsedTimeInStage");
+
+	/**
+	 * The calls made to {@link #deleteRiderResultsInStage}.
+	 */
+	private final PortalMetrics.MethodMetrics deleteRiderResultsInStageMetrics = metrics.addMethod("deleteRiderResultsInStage");
+
+	/**
+	 * The calls made to {@link #getRidersRankInStage}.
+	 */
+	private final PortalMetrics.MethodMetrics getRidersRankInStageMetrics = metrics.addMethod("getRidersRankInStage");
+
+	/**
+	 * The calls made to {@link #getRankedAdjustedElapsedTimesInStage}.
+	 */
+	private final PortalMetrics.MethodMetrics getRankedAdjustedElapsedTimesInStageMetrics = metrics.addMethod("getRankedAdjustedElapsedTimesInStage");
+
+	/**
+	 * The calls made to {@link #getRidersPointsInStage}.
+	 */
+	private final PortalMetrics.MethodMetrics getRidersPointsInStageMetrics = metrics.addMethod("getRidersPointsInStage");
+
+	/**
+	 * The calls made to {@link #getRidersMountainPointsInStage}.
+	 */
+	private final PortalMetrics.MethodMetrics getRidersMountainPointsInStageMetrics = metrics.addMethod("getRidersMountainPointsInStage");
+
+	/**
+	 * The calls made to {@link #eraseCyclingPortal}.
+	 */
+	private final PortalMetrics.MethodMetrics eraseCyclingPortalMetrics = metrics.addMethod("eraseCyclingPortal");
+
+	/**
+	 * The calls made to {@link #saveCyclingPortal}.
+	 */
+	private final PortalMetrics.MethodMetrics saveCyclingPortalMetrics = metrics.addMethod("saveCyclingPortal");
+
+	/**
+	 * The calls made to {@link #loadCyclingPortal}.
+	 */
+	private final PortalMetrics.MethodMetrics loadCyclingPortalMetrics = metrics.addMethod("loadCyclingPortal");
+
+	/**
+	 * The calls made to {@link #removeRaceByName}.
+	 */
+	private final PortalMetrics.MethodMetrics removeRaceByNameMetrics = metrics.addMethod("removeRaceByName");
+
+	/**
+	 * The calls made to {@link #getGeneralClassificationTimesInRace}.
+	 */
+	private final PortalMetrics.MethodMetrics getGeneralClassificationTimesInRaceMetrics = metrics.addMethod("getGeneralClassificationTimesInRace");
+
+	/**
+	 * The calls made to {@link #getRidersPointsInRace}.
+	 */
+	private final PortalMetrics.MethodMetrics getRidersPointsInRaceMetrics = metrics.addMethod("getRidersPointsInRace");
+
+	/**
+	 * The calls made to {@link #getRidersMountainPointsInRace}.
+	 */
+	private final PortalMetrics.MethodMetrics getRidersMountainPointsInRaceMetrics = metrics.addMethod("getRidersMountainPointsInRace");
+
+	/**
+	 * The calls made to {@link #getRidersGeneralClassificationRank}.
+	 */
+	private final PortalMetrics.MethodMetrics getRidersGeneralClassificationRankMetrics = metrics.addMethod("getRidersGeneralClassificationRank");
+
+	/**
+	 * The calls made to {@link #getRidersPointClassificationRank}.
+	 */
+	private final PortalMetrics.MethodMetrics getRidersPointClassificationRankMetrics = metrics.addMethod("getRidersPointClassificationRank");
+
+	/**
+	 * The calls made to {@link #getRidersMountainPointClassificationRank}.
+	 */
+	private final PortalMetrics.MethodMetrics getRidersMountainPointClassificationRankMetrics = metrics.addMethod("getRidersMountainPointClassificationRank");
+
+	/**
+	 * InstrumentedCyclingPortal class constructor.
+	 *
+	 * @param portal The portal every call is passed on to.
+	 *
+	 */
+	public InstrumentedCyclingPortal(CyclingPortalInterface portal) {
+		this.portal = portal;
+	}
+
+	/**
+	 * Public getter method to return the calls made to the portal.
+	 *
+	 * @return The PortalMetrics object recording the calls.
+	 *
+	 */
+	public PortalMetrics getMetrics() {
+		return metrics;
+	}
+
+	@Override
+	public int[] getRaceIds() {
+		long start = System.nanoTime();
+		try {
+			return portal.getRaceIds();
+		} catch (Exception e) {
+			getRaceIdsMetrics.recordException(e);
+			throw e;
+		} finally {
+			getRaceIdsMetrics.record(start);
+		}
+	}
+
+	@Override
+	public int createRace(String name, String description) throws IllegalNameException, InvalidNameException {
+		long start = System.nanoTime();
+		try {
+			return portal.createRace(name, description);
+		} catch (Exception e) {
+			createRaceMetrics.recordException(e);
+			throw e;
+		} finally {
+			createRaceMetrics.record(start);
+		}
+	}
+
+	@Override
+	public String viewRaceDetails(int raceId) throws IDNotRecognisedException {
+		long start = System.nanoTime();
+		try {
+			return portal.viewRaceDetails(raceId);
+		} catch (Exception e) {
+			viewRaceDetailsMetrics.recordException(e);
+			throw e;
+		} finally {
+			viewRaceDetailsMetrics.record(start);
+		}
+	}
+
+	@Override
+	public void removeRaceById(int raceId) throws IDNotRecognisedException {
+		long start = System.nanoTime();
+		try {
+			portal.removeRaceById(raceId);
+		} catch (Exception e) {
+			removeRaceByIdMetrics.recordException(e);
+			throw e;
+		} finally {
+			removeRaceByIdMetrics.record(start);
+		}
+	}
+
+	@Override
+	public int getNumberOfStages(int raceId) throws IDNotRecognisedException {
+		long start = System.nanoTime();
+		try {
+			return portal.getNumberOfStages(raceId);
+		} catch (Exception e) {
+			getNumberOfStagesMetrics.recordException(e);
+			throw e;
+		} finally {
+			getNumberOfStagesMetrics.record(start);
+		}
+	}
+
+	@Override
+	public int addStageToRace(int raceId, String stageName, String description, double length,
+			LocalDateTime startTime, StageType type) throws IDNotRecognisedException, IllegalNameException,
+			InvalidNameException, InvalidLengthException {
+		long start = System.nanoTime();
+		try {
+			return portal.addStageToRace(raceId, stageName, description, length, startTime, type);
+		} catch (Exception e) {
+			addStageToRaceMetrics.recordException(e);
+			throw e;
+		} finally {
+			addStageToRaceMetrics.record(start);
+		}
+	}
+
+	@Override
+	public int[] getRaceStages(int raceId) throws IDNotRecognisedException {
+		long start = System.nanoTime();
+		try {
+			return portal.getRaceStages(raceId);
+		} catch (Exception e) {
+			getRaceStagesMetrics.recordException(e);
+			throw e;
+		} finally {
+			getRaceStagesMetrics.record(start);
+		}
+	}
+
+	@Override
+	public double getStageLength(int stageId) throws IDNotRecognisedException {
+		long start = System.nanoTime();
+		try {
+			return portal.getStageLength(stageId);
+		} catch (Exception e) {
+			getStageLengthMetrics.recordException(e);
+			throw e;
+		} finally {
+			getStageLengthMetrics.record(start);
+		}
+	}
+
+	@Override
+	public void removeStageById(int stageId) throws IDNotRecognisedException {
+		long start = System.nanoTime();
+		try {
+			portal.removeStageById(stageId);
+		} catch (Exception e) {
+			removeStageByIdMetrics.recordException(e);
+			throw e;
+		} finally {
+			removeStageByIdMetrics.record(start);
+		}
+	}
+
+	@Override
+	public int addCategorizedClimbToStage(int stageId, Double location, SegmentType type, Double averageGradient,
+			Double length) throws IDNotRecognisedException, InvalidLocationException, InvalidStageStateException,
+			InvalidStageTypeException {
+		long start = System.nanoTime();
+		try {
+			return portal.addCategorizedClimbToStage(stageId, location, type, averageGradient, length);
+		} catch (Exception e) {
+			addCategorizedClimbToStageMetrics.recordException(e);
+			throw e;
+		} finally {
+			addCategorizedClimbToStageMetrics.record(start);
+		}
+	}
+
+	@Override
+	public int addIntermediateSprintToStage(int stageId, double location) throws IDNotRecognisedException,
+			InvalidLocationException, InvalidStageStateException, InvalidStageTypeException {
+		long start = System.nanoTime();
+		try {
+			return portal.addIntermediateSprintToStage(stageId, location);
+		} catch (Exception e) {
+			addIntermediateSprintToStageMetrics.recordException(e);
+			throw e;
+		} finally {
+			addIntermediateSprintToStageMetrics.record(start);
+		}
+	}
+
+	@Override
+	public void removeSegment(int segmentId) throws IDNotRecognisedException, InvalidStageStateException {
+		long start = System.nanoTime();
+		try {
+			portal.removeSegment(segmentId);
+		} catch (Exception e) {
+			removeSegmentMetrics.recordException(e);
+			throw e;
+		} finally {
+			removeSegmentMetrics.record(start);
+		}
+	}
+
+	@Override
+	public void concludeStagePreparation(int stageId) throws IDNotRecognisedException, InvalidStageStateException {
+		long start = System.nanoTime();
+		try {
+			portal.concludeStagePreparation(stageId);
+		} catch (Exception e) {
+			concludeStagePreparationMetrics.recordException(e);
+			throw e;
+		} finally {
+			concludeStagePreparationMetrics.record(start);
+		}
+	}
+
+	@Override
+	public int[] getStageSegments(int stageId) throws IDNotRecognisedException {
+		long start = System.nanoTime();
+		try {
+			return portal.getStageSegments(stageId);
+		} catch (Exception e) {
+			getStageSegmentsMetrics.recordException(e);
+			throw e;
+		} finally {
+			getStageSegmentsMetrics.record(start);
+		}
+	}
+
+	@Override
+	public int createTeam(String name, String description) throws IllegalNameException, InvalidNameException {
+		long start = System.nanoTime();
+		try {
+			return portal.createTeam(name, description);
+		} catch (Exception e) {
+			createTeamMetrics.recordException(e);
+			throw e;
+		} finally {
+			createTeamMetrics.record(start);
+		}
+	}
+
+	@Override
+	public void removeTeam(int teamId) throws IDNotRecognisedException {
+		long start = System.nanoTime();
+		try {
+			portal.removeTeam(teamId);
+		} catch (Exception e) {
+			removeTeamMetrics.recordException(e);
+			throw e;
+		} finally {
+			removeTeamMetrics.record(start);
+		}
+	}
+
+	@Override
+	public int[] getTeams() {
+		long start = System.nanoTime();
+		try {
+			return portal.getTeams();
+		} catch (Exception e) {
+			getTeamsMetrics.recordException(e);
+			throw e;
+		} finally {
+			getTeamsMetrics.record(start);
+		}
+	}
+
+	@Override
+	public int[] getTeamRiders(int teamId) throws IDNotRecognisedException {
+		long start = System.nanoTime();
+		try {
+			return portal.getTeamRiders(teamId);
+		} catch (Exception e) {
+			getTeamRidersMetrics.recordException(e);
+			throw e;
+		} finally {
+			getTeamRidersMetrics.record(start);
+		}
+	}
+
+	@Override
+	public int createRider(int teamID, String name, int yearOfBirth)
+			throws IDNotRecognisedException, IllegalArgumentException {
+		long start = System.nanoTime();
+		try {
+			return portal.createRider(teamID, name, yearOfBirth);
+		} catch (Exception e) {
+			createRiderMetrics.recordException(e);
+			throw e;
+		} finally {
+			createRiderMetrics.record(start);
+		}
+	}
+
+	@Override
+	public void removeRider(int riderId) throws IDNotRecognisedException {
+		long start = System.nanoTime();
+		try {
+			portal.removeRider(riderId);
+		} catch (Exception e) {
+			removeRiderMetrics.recordException(e);
+			throw e;
+		} finally {
+			removeRiderMetrics.record(start);
+		}
+	}
+
+	@Override
+	public void registerRiderResultsInStage(int stageId, int riderId, LocalTime... checkpoints)
+			throws IDNotRecognisedException, DuplicatedResultException, InvalidCheckpointsException,
+			InvalidStageStateException {
+		long start = System.nanoTime();
+		try {
+			portal.registerRiderResultsInStage(stageId, riderId, checkpoints);
+		} catch (Exception e) {
+			registerRiderResultsInStageMetrics.recordException(e);
+			throw e;
+		} finally {
+			registerRiderResultsInStageMetrics.record(start);
+		}
+	}
+
+	@Override
+	public LocalTime[] getRiderResultsInStage(int stageId, int riderId) throws IDNotRecognisedException {
+		long start = System.nanoTime();
+		try {
+			return portal.getRiderResultsInStage(stageId, riderId);
+		} catch (Exception e) {
+			getRiderResultsInStageMetrics.recordException(e);
+			throw e;
+		} finally {
+			getRiderResultsInStageMetrics.record(start);
+		}
+	}
+
+	@Override
+	public LocalTime getRiderAdjustedElapsedTimeInStage(int stageId, int riderId) throws IDNotRecognisedException {
+		long start = System.nanoTime();
+		try {
+			return portal.getRiderAdjustedElapsedTimeInStage(stageId, riderId);
+		} catch (Exception e) {
+			getRiderAdjustedElapsedTimeInStageMetrics.recordException(e);
+			throw e;
+		} finally {
+			getRiderAdjustedElapsedTimeInStageMetrics.record(start);
+		}
+	}
+
+	@Override
+	public void deleteRiderResultsInStage(int stageId, int riderId) throws IDNotRecognisedException {
+		long start = System.nanoTime();
+		try {
+			portal.deleteRiderResultsInStage(stageId, riderId);
+		} catch (Exception e) {
+			deleteRiderResultsInStageMetrics.recordException(e);
+			throw e;
+		} finally {
+			deleteRiderResultsInStageMetrics.record(start);
+		}
+	}
+
+	@Override
+	public int[] getRidersRankInStage(int stageId) throws IDNotRecognisedException {
+		long start = System.nanoTime();
+		try {
+			return portal.getRidersRankInStage(stageId);
+		} catch (Exception e) {
+			getRidersRankInStageMetrics.recordException(e);
+			throw e;
+		} finally {
+			getRidersRankInStageMetrics.record(start);
+		}
+	}
+
+	@Override
+	public LocalTime[] getRankedAdjustedElapsedTimesInStage(int stageId) throws IDNotRecognisedException {
+		long start = System.nanoTime();
+		try {
+			return portal.getRankedAdjustedElapsedTimesInStage(stageId);
+		} catch (Exception e) {
+			getRankedAdjustedElapsedTimesInStageMetrics.recordException(e);
+			throw e;
+		} finally {
+			getRankedAdjustedElapsedTimesInStageMetrics.record(start);
+		}
+	}
+
+	@Override
+	public int[] getRidersPointsInStage(int stageId) throws IDNotRecognisedException {
+		long start = System.nanoTime();
+		try {
+			return portal.getRidersPointsInStage(stageId);
+		} catch (Exception e) {
+			getRidersPointsInStageMetrics.recordException(e);
+			throw e;
+		} finally {
+			getRidersPointsInStageMetrics.record(start);
+		}
+	}
+
+	@Override
+	public int[] getRidersMountainPointsInStage(int stageId) throws IDNotRecognisedException {
+		long start = System.nanoTime();
+		try {
+			return portal.getRidersMountainPointsInStage(stageId);
+		} catch (Exception e) {
+			getRidersMountainPointsInStageMetrics.recordException(e);
+			throw e;
+		} finally {
+			getRidersMountainPointsInStageMetrics.record(start);
+		}
+	}
+
+	@Override
+	public void eraseCyclingPortal() {
+		long start = System.nanoTime();
+		try {
+			portal.eraseCyclingPortal();
+		} catch (Exception e) {
+			eraseCyclingPortalMetrics.recordException(e);
+			throw e;
+		} finally {
+			eraseCyclingPortalMetrics.record(start);
+		}
+	}
+
+	@Override
+	public void saveCyclingPortal(String filename) throws IOException {
+		long start = System.nanoTime();
+		try {
+			portal.saveCyclingPortal(filename);
+		} catch (Exception e) {
+			saveCyclingPortalMetrics.recordException(e);
+			throw e;
+		} finally {
+			saveCyclingPortalMetrics.record(start);
+		}
+	}
+
+	@Override
+	public void loadCyclingPortal(String filename) throws IOException, ClassNotFoundException {
+		long start = System.nanoTime();
+		try {
+			portal.loadCyclingPortal(filename);
+		} catch (Exception e) {
+			loadCyclingPortalMetrics.recordException(e);
+			throw e;
+		} finally {
+			loadCyclingPortalMetrics.record(start);
+		}
+	}
+
+	@Override
+	public void removeRaceByName(String name) throws NameNotRecognisedException {
+		long start = System.nanoTime();
+		try {
+			portal.removeRaceByName(name);
+		} catch (Exception e) {
+			removeRaceByNameMetrics.recordException(e);
+			throw e;
+		} finally {
+			removeRaceByNameMetrics.record(start);
+		}
+	}
+
+	@Override
+	public LocalTime[] getGeneralClassificationTimesInRace(int raceId) throws IDNotRecognisedException {
+		long start = System.nanoTime();
+		try {
+			return portal.getGeneralClassificationTimesInRace(raceId);
+		} catch (Exception e) {
+			getGeneralClassificationTimesInRaceMetrics.recordException(e);
+			throw e;
+		} finally {
+			getGeneralClassificationTimesInRaceMetrics.record(start);
+		}
+	}
+
+	@Override
+	public int[] getRidersPointsInRace(int raceId) throws IDNotRecognisedException {
+		long start = System.nanoTime();
+		try {
+			return portal.getRidersPointsInRace(raceId);
+		} catch (Exception e) {
+			getRidersPointsInRaceMetrics.recordException(e);
+			throw e;
+		} finally {
+			getRidersPointsInRaceMetrics.record(start);
+		}
+	}
+
+	@Override
+	public int[] getRidersMountainPointsInRace(int raceId) throws IDNotRecognisedException {
+		long start = System.nanoTime();
+		try {
+			return portal.getRidersMountainPointsInRace(raceId);
+		} catch (Exception e) {
+			getRidersMountainPointsInRaceMetrics.recordException(e);
+			throw e;
+		} finally {
+			getRidersMountainPointsInRaceMetrics.record(start);
+		}
+	}
+
+	@Override
+	public int[] getRidersGeneralClassificationRank(int raceId) throws IDNotRecognisedException {
+		long start = System.nanoTime();
+		try {
+			return portal.getRidersGeneralClassificationRank(raceId);
+		} catch (Exception e) {
+			getRidersGeneralClassificationRankMetrics.recordException(e);
+			throw e;
+		} finally {
+			getRidersGeneralClassificationRankMetrics.record(start);
+		}
+	}
+
+	@Override
+	public int[] getRidersPointClassificationRank(int raceId) throws IDNotRecognisedException {
+		long start = System.nanoTime();
+		try {
+			return portal.getRidersPointClassificationRank(raceId);
+		} catch (Exception e) {
+			getRidersPointClassificationRankMetrics.recordException(e);
+			throw e;
+		} finally {
+			getRidersPointClassificationRankMetrics.record(start);
+		}
+	}
+
+	@Override
+	public int[] getRidersMountainPointClassificationRank(int raceId) throws IDNotRecognisedException {
+		long start = System.nanoTime();
+		try {
+			return portal.getRidersMountainPointClassificationRank(raceId);
+		} catch (Exception e) {
+			getRidersMountainPointClassificationRankMetrics.recordException(e);
+			throw e;
+		} finally {
+			getRidersMountainPointClassificationRankMetrics.record(start);
+		}
+	}
+}
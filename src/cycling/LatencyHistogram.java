@@ -0,0 +1,209 @@
+package cycling;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * LatencyHistogram class.<br>
+ * Counts how many calls took each length of time, so the percentiles of the
+ * times can be found afterwards.<br>
+ * Times below {@link #SUB_BUCKETS} * 2 nanoseconds are counted exactly, and
+ * longer times in buckets whose width doubles with each power of two, so
+ * every time is counted to within 1/{@link #SUB_BUCKETS} (about 3%) of its
+ * value, however long. Each bucket is a {@link LongAdder}, created the first
+ * time a call lands in it, so threads recording times at once never block
+ * each other and only the buckets actually used take up memory.<br>
+ * Times are recorded without any lock, so a histogram read while calls are
+ * being recorded may include some of those calls in its count but not yet
+ * in its buckets.
+ *
+ * @author Joey Griffiths and Alexander Cairns
+ *
+ */
+final class LatencyHistogram {
+
+    /**
+     * The number of bits of each time, after its highest bit, which decide
+     * its bucket.
+     */
+    private static final int SUB_BUCKET_BITS = 5;
+
+    /**
+     * The number of buckets for each power of two.
+     */
+    static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    /**
+     * The highest bit a time can have and still be counted in its own
+     * bucket, about 73 minutes in nanoseconds. Longer times are counted in
+     * the last bucket.
+     */
+    private static final int MAX_EXPONENT = 42;
+
+    /**
+     * The number of buckets.
+     */
+    private static final int BUCKETS = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+
+    /**
+     * The number of times counted in each bucket, or null for each bucket
+     * which has not yet been used.
+     */
+    private final AtomicReferenceArray<LongAdder> buckets = new AtomicReferenceArray<>(BUCKETS);
+
+    /**
+     * The number of times recorded.
+     */
+    private final LongAdder count = new LongAdder();
+
+    /**
+     * The sum of the times recorded, in nanoseconds.
+     */
+    private final LongAdder total = new LongAdder();
+
+    /**
+     * The longest time recorded, in nanoseconds.
+     */
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    /**
+     * Method to record the time taken by a call.
+     *
+     * @param nanos The time taken, in nanoseconds.
+     */
+    public void record(long nanos) {
+        nanos = Math.max(nanos, 0);
+        int index = bucketOf(nanos);
+        LongAdder bucket = buckets.get(index);
+        if (bucket == null) {
+            // If another thread creates the bucket first, its adder is used instead
+            buckets.compareAndSet(index, null, new LongAdder());
+            bucket = buckets.get(index);
+        }
+        bucket.increment();
+        count.increment();
+        total.add(nanos);
+        max.accumulate(nanos);
+    }
+
+    /**
+     * Method to get the number of times recorded.
+     *
+     * @return The number of times.
+     */
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * Method to get the mean of the times recorded.
+     *
+     * @return The mean time, in nanoseconds, or 0 if none have been
+     * recorded.
+     */
+    public long getMean() {
+        long calls = count.sum();
+        return calls == 0 ? 0 : total.sum() / calls;
+    }
+
+    /**
+     * Method to get the longest time recorded.
+     *
+     * @return The longest time, in nanoseconds, or 0 if none have been
+     * recorded.
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Method to get the times at several percentiles at once, from a single
+     * reading of the buckets.
+     *
+     * @param percentiles The percentiles, each from 0 to 100, in ascending
+     *                    order.
+     * @return The time at each percentile, in nanoseconds, which is the
+     * longest time in the bucket it falls in, or 0 for each if no times have
+     * been recorded.
+     */
+    public long[] getValuesAtPercentiles(double... percentiles) {
+        long[] counts = new long[BUCKETS];
+        long recorded = 0;
+        for (int i=0; i<BUCKETS; i++) {
+            LongAdder bucket = buckets.get(i);
+            if (bucket != null) {
+                counts[i] = bucket.sum();
+                recorded += counts[i];
+            }
+        }
+
+        long[] values = new long[percentiles.length];
+        if (recorded == 0) {
+            return values;
+        }
+        long longest = max.get();
+        long cumulative = 0;
+        int index = 0;
+        for (int p=0; p<percentiles.length; p++) {
+            // The time at a percentile is the shortest with at least that share of times at or below it
+            long target = Math.max(1, (long) Math.ceil(percentiles[p] / 100 * recorded));
+            while (cumulative + counts[index] < target && index < BUCKETS - 1) {
+                cumulative += counts[index];
+                index++;
+            }
+            values[p] = Math.min(highestInBucket(index), longest);
+        }
+        return values;
+    }
+
+    /**
+     * Method to forget every time recorded.<br>
+     * Times recorded during the reset may be only partly forgotten.
+     */
+    public void reset() {
+        for (int i=0; i<BUCKETS; i++) {
+            LongAdder bucket = buckets.get(i);
+            if (bucket != null) {
+                bucket.reset();
+            }
+        }
+        count.reset();
+        total.reset();
+        max.reset();
+    }
+
+    /**
+     * Method to find the bucket a time is counted in.
+     *
+     * @param nanos The time, in nanoseconds, which is not negative.
+     * @return The index of the bucket.
+     */
+    static int bucketOf(long nanos) {
+        if (nanos < SUB_BUCKETS) {
+            return (int) nanos;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+        if (exponent > MAX_EXPONENT) {
+            return BUCKETS - 1;
+        }
+        // Each power of two is split into buckets by the bits following its highest
+        int subBucket = (int) (nanos >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * Method to find the longest time counted in a bucket.
+     *
+     * @param index The index of the bucket.
+     * @return The longest time, in nanoseconds.
+     */
+    static long highestInBucket(int index) {
+        if (index < 2 * SUB_BUCKETS) {
+            return index;
+        }
+        int shift = index / SUB_BUCKETS - 1;
+        long lowest = (long) (SUB_BUCKETS + index % SUB_BUCKETS) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+}
@@ -0,0 +1,136 @@
+package cycling;
+
+import java.time.LocalTime;
+
+/**
+ * Leaderboard class.<br>
+ * Holds the first few riders of a stage or race classification, along with
+ * their times and, for the points and mountain classifications, their
+ * points.
+ *
+ * @author Joey Griffiths and Alexander Cairns
+ *
+ */
+public final class Leaderboard {
+
+	/**
+	 * The IDs of the riders on the leaderboard, in order of rank.
+	 */
+	private final int[] riderIds;
+
+	/**
+	 * The time of each rider, in nanoseconds, in the same order as
+	 * 'riderIds'.
+	 */
+	private final long[] nanos;
+
+	/**
+	 * The points of each rider, in the same order as 'riderIds', or null if
+	 * the classification is not ranked by points.
+	 */
+	private final int[] points;
+
+	/**
+	 * Leaderboard class constructor.
+	 *
+	 * @param riderIds The IDs of the riders, in order of rank.
+	 * @param nanos The time of each rider, in nanoseconds.
+	 * @param points The points of each rider, or null if the classification
+	 *               is not ranked by points.
+	 *
+	 */
+	Leaderboard(int[] riderIds, long[] nanos, int[] points) {
+		this.riderIds = riderIds;
+		this.nanos = nanos;
+		this.points = points;
+	}
+
+	/**
+	 * Public getter method to return the number of riders on the
+	 * leaderboard.
+	 *
+	 * @return The number of riders, which is fewer than the number asked for
+	 * if fewer riders have results.
+	 *
+	 */
+	public int size() {
+		return riderIds.length;
+	}
+
+	/**
+	 * Method to get the ID of the rider at a position on the leaderboard,
+	 * without copying the leaderboard.
+	 *
+	 * @param position The position (from 0) of the rider.
+	 * @return The ID of the rider.
+	 *
+	 */
+	int getRiderId(int position) {
+		return riderIds[position];
+	}
+
+	/**
+	 * Method to get the time of the rider at a position on the leaderboard,
+	 * without copying the leaderboard.
+	 *
+	 * @param position The position (from 0) of the rider.
+	 * @return The rider's time, in nanoseconds.
+	 *
+	 */
+	long getNanos(int position) {
+		return nanos[position];
+	}
+
+	/**
+	 * Method to get the points of the rider at a position on the
+	 * leaderboard, without copying the leaderboard.
+	 *
+	 * @param position The position (from 0) of the rider.
+	 * @return The rider's points, or 0 if the leaderboard is not ranked by
+	 * points.
+	 *
+	 */
+	int getPoints(int position) {
+		return points == null ? 0 : points[position];
+	}
+
+	/**
+	 * Public getter method to return the IDs of the riders on the
+	 * leaderboard.
+	 *
+	 * @return An array of rider IDs, the first being the leader.
+	 *
+	 */
+	public int[] getRiderIds() {
+		return riderIds.clone();
+	}
+
+	/**
+	 * Public getter method to return the times of the riders on the
+	 * leaderboard: their adjusted elapsed times in a stage, or their total
+	 * adjusted elapsed times in a race.
+	 *
+	 * @return An array of times, matching the order of {@link #getRiderIds()}.
+	 *
+	 */
+	public LocalTime[] getTimes() {
+		LocalTime[] times = new LocalTime[nanos.length];
+		for (int i=0; i<times.length; i++) {
+			times[i] = Timing.toLocalTime(nanos[i]);
+		}
+		return times;
+	}
+
+	/**
+	 * Public getter method to return the points of the riders on the
+	 * leaderboard, in the classification it was ranked by.
+	 *
+	 * @return An array of points, matching the order of
+	 * {@link #getRiderIds()}, or null if the leaderboard is not ranked by
+	 * points.
+	 *
+	 */
+	public int[] getPoints() {
+		return points == null ? null : points.clone();
+	}
+}
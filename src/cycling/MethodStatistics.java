@@ -0,0 +1,240 @@
+package cycling;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.TabularData;
+
+/**
+ * MethodStatistics class.<br>
+ * Holds the number of calls made to one method of a portal, how many of
+ * them threw an exception, and the distribution of the time they took, as
+ * read at one moment by {@link PortalMetrics}.<br>
+ * Over JMX it is seen as a composite of its getters' values, and is
+ * rebuilt from one by {@link #from(CompositeData)}.
+ *
+ * @author Joey Griffiths and Alexander Cairns
+ *
+ */
+public final class MethodStatistics {
+
+	/**
+	 * The name of the method.
+	 */
+	private final String name;
+
+	/**
+	 * The number of calls made to the method.
+	 */
+	private final long calls;
+
+	/**
+	 * The number of calls which threw an exception.
+	 */
+	private final long exceptions;
+
+	/**
+	 * Maps the simple name of each type of exception thrown to the number of
+	 * calls which threw it.
+	 */
+	private final Map<String, Long> exceptionCounts;
+
+	/**
+	 * The mean time taken by a call, in nanoseconds.
+	 */
+	private final long meanNanos;
+
+	/**
+	 * The median time taken by a call, in nanoseconds.
+	 */
+	private final long p50Nanos;
+
+	/**
+	 * The time taken by the slowest 10% of calls, in nanoseconds.
+	 */
+	private final long p90Nanos;
+
+	/**
+	 * The time taken by the slowest 1% of calls, in nanoseconds.
+	 */
+	private final long p99Nanos;
+
+	/**
+	 * The time taken by the slowest 0.1% of calls, in nanoseconds.
+	 */
+	private final long p999Nanos;
+
+	/**
+	 * The longest time taken by a call, in nanoseconds.
+	 */
+	private final long maxNanos;
+
+	/**
+	 * MethodStatistics class constructor.
+	 *
+	 * @param name The name of the method.
+	 * @param calls The number of calls made to the method.
+	 * @param exceptions The number of calls which threw an exception.
+	 * @param exceptionCounts The number of calls which threw each type of
+	 *                        exception, by its simple name.
+	 * @param meanNanos The mean time taken, in nanoseconds.
+	 * @param p50Nanos The median time taken, in nanoseconds.
+	 * @param p90Nanos The 90th percentile of the time taken, in nanoseconds.
+	 * @param p99Nanos The 99th percentile of the time taken, in nanoseconds.
+	 * @param p999Nanos The 99.9th percentile of the time taken, in
+	 *                  nanoseconds.
+	 * @param maxNanos The longest time taken, in nanoseconds.
+	 *
+	 */
+	MethodStatistics(String name, long calls, long exceptions, Map<String, Long> exceptionCounts, long meanNanos,
+			long p50Nanos, long p90Nanos, long p99Nanos, long p999Nanos, long maxNanos) {
+		this.name = name;
+		this.calls = calls;
+		this.exceptions = exceptions;
+		this.exceptionCounts = Collections.unmodifiableMap(new TreeMap<>(exceptionCounts));
+		this.meanNanos = meanNanos;
+		this.p50Nanos = p50Nanos;
+		this.p90Nanos = p90Nanos;
+		this.p99Nanos = p99Nanos;
+		this.p999Nanos = p999Nanos;
+		this.maxNanos = maxNanos;
+	}
+
+	/**
+	 * Method to rebuild the statistics of a method from their form over JMX,
+	 * as used by MXBean proxies.
+	 *
+	 * @param data The composite holding the statistics.
+	 * @return The MethodStatistics object.
+	 *
+	 */
+	public static MethodStatistics from(CompositeData data) {
+		// Maps are sent over JMX as a table of rows holding each key and value
+		Map<String, Long> exceptionCounts = new TreeMap<>();
+		TabularData table = (TabularData) data.get("exceptionCounts");
+		for (Object row : table.values()) {
+			CompositeData entry = (CompositeData) row;
+			exceptionCounts.put((String) entry.get("key"), (Long) entry.get("value"));
+		}
+		return new MethodStatistics((String) data.get("name"), (Long) data.get("calls"),
+				(Long) data.get("exceptions"), exceptionCounts, (Long) data.get("meanNanos"),
+				(Long) data.get("p50Nanos"), (Long) data.get("p90Nanos"), (Long) data.get("p99Nanos"),
+				(Long) data.get("p999Nanos"), (Long) data.get("maxNanos"));
+	}
+
+	/**
+	 * Public getter method to return the name of the method.
+	 *
+	 * @return The name of the method.
+	 *
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Public getter method to return the number of calls made to the method.
+	 *
+	 * @return The number of calls, including those which threw an exception.
+	 *
+	 */
+	public long getCalls() {
+		return calls;
+	}
+
+	/**
+	 * Public getter method to return the number of calls which threw an
+	 * exception.
+	 *
+	 * @return The number of calls which threw an exception.
+	 *
+	 */
+	public long getExceptions() {
+		return exceptions;
+	}
+
+	/**
+	 * Public getter method to return the number of calls which threw each
+	 * type of exception.
+	 *
+	 * @return An unmodifiable map from the simple name of each type of
+	 * exception thrown, such as IDNotRecognisedException, to the number of
+	 * calls which threw it.
+	 *
+	 */
+	public Map<String, Long> getExceptionCounts() {
+		return exceptionCounts;
+	}
+
+	/**
+	 * Public getter method to return the mean time taken by a call.
+	 *
+	 * @return The mean time, in nanoseconds.
+	 *
+	 */
+	public long getMeanNanos() {
+		return meanNanos;
+	}
+
+	/**
+	 * Public getter method to return the median time taken by a call.
+	 *
+	 * @return The median time, in nanoseconds.
+	 *
+	 */
+	public long getP50Nanos() {
+		return p50Nanos;
+	}
+
+	/**
+	 * Public getter method to return the time within which 90% of calls
+	 * returned.
+	 *
+	 * @return The 90th percentile of the time taken, in nanoseconds.
+	 *
+	 */
+	public long getP90Nanos() {
+		return p90Nanos;
+	}
+
+	/**
+	 * Public getter method to return the time within which 99% of calls
+	 * returned.
+	 *
+	 * @return The 99th percentile of the time taken, in nanoseconds.
+	 *
+	 */
+	public long getP99Nanos() {
+		return p99Nanos;
+	}
+
+	/**
+	 * Public getter method to return the time within which 99.9% of calls
+	 * returned.
+	 *
+	 * @return The 99.9th percentile of the time taken, in nanoseconds.
+	 *
+	 */
+	public long getP999Nanos() {
+		return p999Nanos;
+	}
+
+	/**
+	 * Public getter method to return the longest time taken by a call.
+	 *
+	 * @return The longest time, in nanoseconds.
+	 *
+	 */
+	public long getMaxNanos() {
+		return maxNanos;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s: %d calls, %d exceptions %s, mean %d ns, p50 %d ns, p90 %d ns, p99 %d ns, "
+				+ "p99.9 %d ns, max %d ns", name, calls, exceptions, exceptionCounts, meanNanos, p50Nanos, p90Nanos,
+				p99Nanos, p999Nanos, maxNanos);
+	}
+}
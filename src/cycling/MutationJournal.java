@@ -0,0 +1,876 @@
+package cycling;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * MutationJournal class.<br>
+ * An append-only log of every change made to a CyclingPortal since its last
+ * snapshot, so that the portal can be made durable without saving the whole
+ * of it after every change.<br>
+ * The journal is kept in a file next to the snapshot it continues from,
+ * named after the snapshot with ".journal" appended. It starts with a
+ * header holding the magic number "CYCJ", the format version and the
+ * generation of that snapshot, followed by one record per change. Each
+ * record is written as its length, the record itself, and a CRC-32 of the
+ * record, so that a record torn by a crash can be detected and
+ * discarded.<br>
+ * Records hold the IDs allocated by the change, so that replaying them
+ * recreates every entity with the same ID.<br>
+ * Records are buffered and only forced to the disk once every
+ * 'syncInterval' records (group commit), or once the oldest of them has
+ * waited 'MAX_SYNC_DELAY_MILLIS' if fewer follow it, and once every
+ * 'compactionInterval' records the portal is saved as a new snapshot and
+ * the journal is emptied.
+ *
+ * @author Joey Griffiths and Alexander Cairns
+ *
+ */
+final class MutationJournal implements AutoCloseable {
+
+    /**
+     * The magic number at the start of every journal file, "CYCJ" in ASCII.
+     */
+    static final int MAGIC = 0x4359434A;
+
+    /**
+     * The version of the journal format written by this class.
+     */
+    static final int FORMAT_VERSION = 1;
+
+    /**
+     * The size of the buffer used to read and write journal files.
+     */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * The longest time, in milliseconds, a record may wait to be forced to
+     * the disk when fewer than 'syncInterval' records follow it.
+     */
+    static final long MAX_SYNC_DELAY_MILLIS = 100;
+
+    /**
+     * Forces journals to the disk once records have waited
+     * 'MAX_SYNC_DELAY_MILLIS', on a single daemon thread so that it never
+     * keeps the program running.
+     */
+    private static final ScheduledExecutorService DELAYED_SYNCS = Executors.newSingleThreadScheduledExecutor(
+            runnable -> {
+                Thread thread = new Thread(runnable, "journal-sync");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    /**
+     * The size of the journal header: the magic number, the format version
+     * and the generation.
+     */
+    private static final int HEADER_SIZE = 4 + 1 + 8;
+
+    /**
+     * The record types, one for each change made to a portal.
+     */
+    private static final int CREATE_RACE = 1;
+    private static final int ADD_STAGE = 2;
+    private static final int ADD_CLIMB = 3;
+    private static final int ADD_SPRINT = 4;
+    private static final int REMOVE_SEGMENT = 5;
+    private static final int CONCLUDE_STAGE = 6;
+    private static final int REMOVE_STAGE = 7;
+    private static final int CREATE_TEAM = 8;
+    private static final int REMOVE_TEAM = 9;
+    private static final int CREATE_RIDER = 10;
+    private static final int REMOVE_RIDER = 11;
+    private static final int REGISTER_RESULT = 12;
+    private static final int DELETE_RESULT = 13;
+    private static final int REMOVE_RACE = 14;
+    private static final int ERASE = 15;
+
+    /**
+     * A change to be written to a journal.<br>
+     * Used by the CyclingPortal to record a change only if it has a journal.
+     */
+    @FunctionalInterface
+    interface Write {
+
+        /**
+         * Method to write the change to a journal.
+         *
+         * @param journal The journal to write to.
+         * @throws IOException If the journal cannot be written.
+         */
+        void to(MutationJournal journal) throws IOException;
+    }
+
+    /**
+     * Location of the snapshot file the journal continues from.
+     */
+    private final String snapshotFilename;
+
+    /**
+     * The channel of the journal file.
+     */
+    private final FileChannel channel;
+
+    /**
+     * The records written but not yet forced to the disk.
+     */
+    private final BinaryWriter out;
+
+    /**
+     * The record currently being written.
+     */
+    private final BinaryWriter record = new BinaryWriter(256);
+
+    /**
+     * Used to compute the checksum of each record.
+     */
+    private final CRC32 crc = new CRC32();
+
+    /**
+     * The number of records written between each time the journal is forced
+     * to the disk.
+     */
+    private final int syncInterval;
+
+    /**
+     * The number of records written between each compaction of the journal
+     * into a new snapshot, or 0 if the journal is only compacted on request.
+     */
+    private final int compactionInterval;
+
+    /**
+     * The generation of the snapshot the journal continues from.
+     */
+    private long generation;
+
+    /**
+     * The number of records written since the journal was last forced to
+     * the disk.
+     */
+    private int unsynced = 0;
+
+    /**
+     * The number of times the journal has been forced to the disk, so that
+     * a delayed sync can tell whether the records it was scheduled for have
+     * already been forced.
+     */
+    private long noOfSyncs = 0;
+
+    /**
+     * The error from a delayed sync, which every later record and sync
+     * fails with, as the journal may have lost records; or null.
+     */
+    private IOException syncFailure = null;
+
+    /**
+     * The number of records in the journal.
+     */
+    private int noOfRecords = 0;
+
+    /**
+     * Private constructor, used once the journal file has been opened.
+     *
+     * @param snapshotFilename Location of the snapshot file.
+     * @param channel The channel of the journal file, positioned at its end.
+     * @param generation The generation of the snapshot.
+     * @param noOfRecords The number of records already in the journal.
+     * @param syncInterval The number of records between each sync.
+     * @param compactionInterval The number of records between each
+     *                           compaction, or 0.
+     */
+    private MutationJournal(String snapshotFilename, FileChannel channel, long generation, int noOfRecords,
+                            int syncInterval, int compactionInterval) {
+        this.snapshotFilename = snapshotFilename;
+        this.channel = channel;
+        this.generation = generation;
+        this.noOfRecords = noOfRecords;
+        this.syncInterval = syncInterval;
+        this.compactionInterval = compactionInterval;
+        out = new BinaryWriter(channel, BUFFER_SIZE);
+    }
+
+    /**
+     * Opens the journal of a snapshot, replaying any records it holds onto a
+     * portal which has just been restored from that snapshot.<br>
+     * A journal left over from an earlier generation was already compacted
+     * into the snapshot, so it is emptied rather than replayed. A torn
+     * record at the end of the journal is discarded.
+     *
+     * @param snapshotFilename Location of the snapshot file.
+     * @param generation The generation of the snapshot the portal was
+     *                   restored from.
+     * @param syncInterval The number of records between each sync, at least 1.
+     * @param compactionInterval The number of records between each
+     *                           compaction, or 0 to only compact on request.
+     * @param portal The portal to replay the journal onto.
+     * @return The journal, ready for further records to be written.
+     * @throws IOException If the journal cannot be opened, or a record
+     *                     cannot be replayed.
+     */
+    static MutationJournal open(String snapshotFilename, long generation, int syncInterval,
+                                int compactionInterval, CyclingPortal portal) throws IOException {
+        Path path = Paths.get(snapshotFilename + ".journal");
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        try {
+            int noOfRecords = 0;
+            long end = 0;
+            if (channel.size() >= HEADER_SIZE) {
+                BinaryReader in = new BinaryReader(channel, BUFFER_SIZE);
+                if (in.readInt() != MAGIC) {
+                    throw new IOException(path + " is not a cycling portal journal.");
+                }
+                int formatVersion = in.readVarInt();
+                if (formatVersion != FORMAT_VERSION) {
+                    throw new IOException("Journal format version " + formatVersion + " is not supported.");
+                }
+                if (in.readLong() == generation) {
+                    end = in.position();
+                    // Records are replayed until the end of the journal or the
+                    // first record which was not completely written
+                    while (in.hasMore()) {
+                        byte[] bytes = readRecord(in, channel.size());
+                        if (bytes == null) {
+                            break;
+                        }
+                        replay(new BinaryReader(bytes, 0, bytes.length), portal, end);
+                        end = in.position();
+                        noOfRecords++;
+                    }
+                }
+            }
+
+            MutationJournal journal = new MutationJournal(snapshotFilename, channel, generation, noOfRecords,
+                    syncInterval, compactionInterval);
+            if (end == 0) {
+                // The journal is new, or continues from an older snapshot
+                journal.restart(generation);
+                PortalSnapshot.syncDirectory(path);
+            } else {
+                channel.truncate(end);
+                channel.position(end);
+            }
+            return journal;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Private method to read the next record from a journal.
+     *
+     * @param in The reader of the journal.
+     * @param size The size of the journal file.
+     * @return The bytes of the record, or null if the record is torn.
+     * @throws IOException If the journal cannot be read.
+     */
+    private static byte[] readRecord(BinaryReader in, long size) throws IOException {
+        try {
+            int length = in.readVarInt();
+            if (length > size - in.position()) {
+                return null;
+            }
+            byte[] bytes = new byte[length];
+            in.readBytes(bytes);
+            int checksum = in.readInt();
+            CRC32 crc = new CRC32();
+            crc.update(bytes, 0, bytes.length);
+            return checksum == (int)crc.getValue() ? bytes : null;
+        } catch (IOException e) {
+            // The journal ends part of the way through the record
+            return null;
+        }
+    }
+
+    /**
+     * Private method to apply a record to a portal, allocating the same IDs
+     * as when the record was written.
+     *
+     * @param in The reader of the record.
+     * @param portal The portal to apply the record to.
+     * @param position The position of the record in the journal.
+     * @throws IOException If the record cannot be applied.
+     */
+    private static void replay(BinaryReader in, CyclingPortal portal, long position) throws IOException {
+        IdAllocator ids = portal.getIdAllocator();
+        int type = in.readByte();
+        try {
+            switch (type) {
+                case CREATE_RACE:
+                    ids.setNext(IdAllocator.Kind.RACE, in.readVarInt());
+                    portal.createRace(readNullableString(in), readNullableString(in));
+                    break;
+                case ADD_STAGE: {
+                    int raceId = in.readVarInt();
+                    ids.setNext(IdAllocator.Kind.STAGE, in.readVarInt());
+                    String name = readNullableString(in);
+                    String description = readNullableString(in);
+                    double length = in.readDouble();
+                    LocalDateTime startTime = readStartTime(in);
+                    StageType stageType = StageType.values()[in.readByte()];
+                    portal.addStageToRace(raceId, name, description, length, startTime, stageType);
+                    break;
+                }
+                case ADD_CLIMB: {
+                    int stageId = in.readVarInt();
+                    ids.setNext(IdAllocator.Kind.SEGMENT, in.readVarInt());
+                    double location = in.readDouble();
+                    SegmentType segmentType = SegmentType.values()[in.readByte()];
+                    double averageGradient = in.readDouble();
+                    double length = in.readDouble();
+                    portal.addCategorizedClimbToStage(stageId, location, segmentType, averageGradient, length);
+                    break;
+                }
+                case ADD_SPRINT: {
+                    int stageId = in.readVarInt();
+                    ids.setNext(IdAllocator.Kind.SEGMENT, in.readVarInt());
+                    portal.addIntermediateSprintToStage(stageId, in.readDouble());
+                    break;
+                }
+                case REMOVE_SEGMENT:
+                    portal.removeSegment(in.readVarInt());
+                    break;
+                case CONCLUDE_STAGE:
+                    portal.concludeStagePreparation(in.readVarInt());
+                    break;
+                case REMOVE_STAGE:
+                    portal.removeStageById(in.readVarInt());
+                    break;
+                case CREATE_TEAM:
+                    ids.setNext(IdAllocator.Kind.TEAM, in.readVarInt());
+                    portal.createTeam(readNullableString(in), readNullableString(in));
+                    break;
+                case REMOVE_TEAM:
+                    portal.removeTeam(in.readVarInt());
+                    break;
+                case CREATE_RIDER: {
+                    int teamId = in.readVarInt();
+                    ids.setNext(IdAllocator.Kind.RIDER, in.readVarInt());
+                    String name = readNullableString(in);
+                    portal.createRider(teamId, name, (int)in.readSignedVarLong());
+                    break;
+                }
+                case REMOVE_RIDER:
+                    portal.removeRider(in.readVarInt());
+                    break;
+                case REGISTER_RESULT: {
+                    int stageId = in.readVarInt();
+                    int riderId = in.readVarInt();
+                    int resultId = in.readVarInt();
+                    // Results in different stages may be journalled out of the order their
+                    // IDs were allocated, so the counter is never moved backwards
+                    int nextResultId = Math.max(ids.getNext(IdAllocator.Kind.RESULT), resultId + 1);
+                    ids.setNext(IdAllocator.Kind.RESULT, resultId);
+                    LocalTime[] checkpoints = new LocalTime[in.readVarInt()];
+                    long time = 0;
+                    for (int i=0; i<checkpoints.length; i++) {
+                        time += in.readSignedVarLong();
+                        checkpoints[i] = LocalTime.ofNanoOfDay(time);
+                    }
+                    portal.registerRiderResultsInStage(stageId, riderId, checkpoints);
+                    ids.setNext(IdAllocator.Kind.RESULT, nextResultId);
+                    break;
+                }
+                case DELETE_RESULT:
+                    portal.deleteRiderResultsInStage(in.readVarInt(), in.readVarInt());
+                    break;
+                case REMOVE_RACE:
+                    portal.removeRaceById(in.readVarInt());
+                    break;
+                case ERASE:
+                    portal.eraseCyclingPortal();
+                    break;
+                default:
+                    throw new IOException("Journal record at position " + position + " has unknown type " + type + ".");
+            }
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException("Journal record at position " + position + " could not be replayed.", e);
+        }
+    }
+
+    /**
+     * Method to get the generation of the snapshot the journal continues
+     * from.
+     *
+     * @return The generation of the snapshot.
+     */
+    public synchronized long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Method to get the number of records in the journal.
+     *
+     * @return The number of records written since the last compaction.
+     */
+    public synchronized int getNoOfRecords() {
+        return noOfRecords;
+    }
+
+    /**
+     * Method to check whether enough records have been written for the
+     * journal to be compacted.
+     *
+     * @return true if the journal should be compacted.
+     */
+    public synchronized boolean isCompactionDue() {
+        return compactionInterval > 0 && noOfRecords >= compactionInterval;
+    }
+
+    /**
+     * Method to force every record written to the disk.
+     *
+     * @throws IOException If the journal cannot be written.
+     */
+    public synchronized void sync() throws IOException {
+        if (syncFailure != null) {
+            throw new IOException("The journal could not be forced to the disk.", syncFailure);
+        }
+        out.flush();
+        channel.force(false);
+        unsynced = 0;
+        noOfSyncs++;
+    }
+
+    /**
+     * Private method to force the journal to the disk once a record has
+     * waited 'MAX_SYNC_DELAY_MILLIS', unless it has been forced since the
+     * record was written or has been closed.
+     *
+     * @param syncsBefore The number of syncs when the record was written.
+     */
+    private synchronized void syncIfNotSince(long syncsBefore) {
+        if (noOfSyncs != syncsBefore || !channel.isOpen() || syncFailure != null) {
+            return;
+        }
+        try {
+            sync();
+        } catch (IOException e) {
+            // There is no caller to throw to, so the error is kept for the next one
+            syncFailure = e;
+        }
+    }
+
+    /**
+     * Method to save a portal's races and teams as the next generation of
+     * snapshot, and then empty the journal.<br>
+     * The journal is only emptied once the snapshot and the rename of it
+     * into place have both been forced to the disk, so a crash cannot lose
+     * the records it holds without the snapshot having them.<br>
+     * If this fails part of the way through, the journal no longer matches
+     * the generation of the new snapshot, so it is discarded when next
+     * opened rather than replayed twice.
+     *
+     * @param races The races of the portal.
+     * @param teams The teams of the portal.
+     * @param ids The ID allocator of the portal.
+     * @throws IOException If the snapshot or the journal cannot be written.
+     */
+    public synchronized void compact(List<Race> races, List<Team> teams, IdAllocator ids) throws IOException {
+        PortalSnapshot.save(races, teams, ids, snapshotFilename, generation + 1);
+        restart(generation + 1);
+    }
+
+    /**
+     * Private method to empty the journal and write a new header.
+     *
+     * @param newGeneration The generation of the snapshot the journal now
+     *                      continues from.
+     * @throws IOException If the journal cannot be written.
+     */
+    private void restart(long newGeneration) throws IOException {
+        out.flush();
+        channel.truncate(0);
+        channel.position(0);
+        generation = newGeneration;
+        noOfRecords = 0;
+        out.writeInt(MAGIC);
+        out.writeVarInt(FORMAT_VERSION);
+        out.writeLong(generation);
+        sync();
+    }
+
+    /**
+     * Method to force every record written to the disk and close the
+     * journal.
+     *
+     * @throws IOException If the journal cannot be written.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            sync();
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Private method to start writing a record.
+     *
+     * @param type The type of the record.
+     * @throws IOException If the record cannot be written.
+     */
+    private void begin(int type) throws IOException {
+        record.reset();
+        record.writeByte(type);
+    }
+
+    /**
+     * Private method to append the record currently being written to the
+     * journal, forcing the journal to the disk if 'syncInterval' records
+     * have been written since it last was, or otherwise making sure it is
+     * forced within 'MAX_SYNC_DELAY_MILLIS'.
+     *
+     * @throws IOException If the journal cannot be written.
+     */
+    private void commit() throws IOException {
+        if (syncFailure != null) {
+            throw new IOException("The journal could not be forced to the disk.", syncFailure);
+        }
+        crc.reset();
+        crc.update(record.array(), 0, record.size());
+        out.writeVarInt(record.size());
+        out.writeBytes(record.array(), 0, record.size());
+        out.writeInt((int)crc.getValue());
+        noOfRecords++;
+        if (++unsynced >= syncInterval) {
+            sync();
+        } else if (unsynced == 1) {
+            // Only the first record waiting to be forced needs a deadline, as the
+            // records after it are forced along with it
+            long syncsBefore = noOfSyncs;
+            DELAYED_SYNCS.schedule(() -> syncIfNotSince(syncsBefore), MAX_SYNC_DELAY_MILLIS,
+                    TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Method to record a race being created.
+     *
+     * @param raceId The ID allocated to the race.
+     * @param name The name of the race.
+     * @param description The description of the race.
+     * @throws IOException If the journal cannot be written.
+     */
+    public synchronized void recordCreateRace(int raceId, String name, String description) throws IOException {
+        begin(CREATE_RACE);
+        record.writeVarInt(raceId);
+        writeNullableString(record, name);
+        writeNullableString(record, description);
+        commit();
+    }
+
+    /**
+     * Method to record a stage being added to a race.
+     *
+     * @param raceId The ID of the race.
+     * @param stageId The ID allocated to the stage.
+     * @param name The name of the stage.
+     * @param description The description of the stage.
+     * @param length The length of the stage.
+     * @param startTime The start time of the stage.
+     * @param type The type of the stage.
+     * @throws IOException If the journal cannot be written.
+     */
+    public synchronized void recordAddStage(int raceId, int stageId, String name, String description, double length,
+                                            LocalDateTime startTime, StageType type) throws IOException {
+        begin(ADD_STAGE);
+        record.writeVarInt(raceId);
+        record.writeVarInt(stageId);
+        writeNullableString(record, name);
+        writeNullableString(record, description);
+        record.writeDouble(length);
+        writeStartTime(record, startTime);
+        record.writeByte(type.ordinal());
+        commit();
+    }
+
+    /**
+     * Method to record a categorized climb being added to a stage.
+     *
+     * @param stageId The ID of the stage.
+     * @param segmentId The ID allocated to the segment.
+     * @param location The location of the climb in the stage.
+     * @param type The type of the climb.
+     * @param averageGradient The average gradient of the climb.
+     * @param length The length of the climb.
+     * @throws IOException If the journal cannot be written.
+     */
+    public synchronized void recordAddClimb(int stageId, int segmentId, double location, SegmentType type,
+                                            double averageGradient, double length) throws IOException {
+        begin(ADD_CLIMB);
+        record.writeVarInt(stageId);
+        record.writeVarInt(segmentId);
+        record.writeDouble(location);
+        record.writeByte(type.ordinal());
+        record.writeDouble(averageGradient);
+        record.writeDouble(length);
+        commit();
+    }
+
+    /**
+     * Method to record a intermediate sprint being added to a stage.
+     *
+     * @param stageId The ID of the stage.
+     * @param segmentId The ID allocated to the segment.
+     * @param location The location of the sprint in the stage.
+     * @throws IOException If the journal cannot be written.
+     */
+    public synchronized void recordAddSprint(int stageId, int segmentId, double location) throws IOException {
+        begin(ADD_SPRINT);
+        record.writeVarInt(stageId);
+        record.writeVarInt(segmentId);
+        record.writeDouble(location);
+        commit();
+    }
+
+    /**
+     * Method to record a segment being removed.
+     *
+     * @param segmentId The ID of the segment.
+     * @throws IOException If the journal cannot be written.
+     */
+    public synchronized void recordRemoveSegment(int segmentId) throws IOException {
+        recordId(REMOVE_SEGMENT, segmentId);
+    }
+
+    /**
+     * Method to record a stage's preparation being concluded.
+     *
+     * @param stageId The ID of the stage.
+     * @throws IOException If the journal cannot be written.
+     */
+    public synchronized void recordConcludeStage(int stageId) throws IOException {
+        recordId(CONCLUDE_STAGE, stageId);
+    }
+
+    /**
+     * Method to record a stage being removed.
+     *
+     * @param stageId The ID of the stage.
+     * @throws IOException If the journal cannot be written.
+     */
+    public synchronized void recordRemoveStage(int stageId) throws IOException {
+        recordId(REMOVE_STAGE, stageId);
+    }
+
+    /**
+     * Method to record a team being created.
+     *
+     * @param teamId The ID allocated to the team.
+     * @param name The name of the team.
+     * @param description The description of the team.
+     * @throws IOException If the journal cannot be written.
+     */
+    public synchronized void recordCreateTeam(int teamId, String name, String description) throws IOException {
+        begin(CREATE_TEAM);
+        record.writeVarInt(teamId);
+        writeNullableString(record, name);
+        writeNullableString(record, description);
+        commit();
+    }
+
+    /**
+     * Method to record a team being removed.
+     *
+     * @param teamId The ID of the team.
+     * @throws IOException If the journal cannot be written.
+     */
+    public synchronized void recordRemoveTeam(int teamId) throws IOException {
+        recordId(REMOVE_TEAM, teamId);
+    }
+
+    /**
+     * Method to record a rider being created.
+     *
+     * @param teamId The ID of the rider's team.
+     * @param riderId The ID allocated to the rider.
+     * @param name The name of the rider.
+     * @param yearOfBirth The year of birth of the rider.
+     * @throws IOException If the journal cannot be written.
+     */
+    public synchronized void recordCreateRider(int teamId, int riderId, String name, int yearOfBirth)
+            throws IOException {
+        begin(CREATE_RIDER);
+        record.writeVarInt(teamId);
+        record.writeVarInt(riderId);
+        writeNullableString(record, name);
+        record.writeSignedVarLong(yearOfBirth);
+        commit();
+    }
+
+    /**
+     * Method to record a rider being removed.
+     *
+     * @param riderId The ID of the rider.
+     * @throws IOException If the journal cannot be written.
+     */
+    public synchronized void recordRemoveRider(int riderId) throws IOException {
+        recordId(REMOVE_RIDER, riderId);
+    }
+
+    /**
+     * Method to record a result being registered.<br>
+     * The checkpoints are written as the difference from the previous
+     * checkpoint's time of day, so most take only a few bytes.
+     *
+     * @param stageId The ID of the stage.
+     * @param riderId The ID of the rider.
+     * @param resultId The ID allocated to the result.
+     * @param checkpoints The times the rider reached each checkpoint.
+     * @throws IOException If the journal cannot be written.
+     */
+    public synchronized void recordRegisterResult(int stageId, int riderId, int resultId, LocalTime[] checkpoints)
+            throws IOException {
+        long[] times = new long[checkpoints.length];
+        for (int i=0; i<checkpoints.length; i++) {
+            times[i] = Timing.toNanos(checkpoints[i]);
+        }
+        recordRegisterResult(stageId, riderId, resultId, times);
+    }
+
+    /**
+     * Method to record a result being registered, with its checkpoint times
+     * given in nanoseconds since midnight.
+     *
+     * @param stageId The ID of the stage.
+     * @param riderId The ID of the rider.
+     * @param resultId The ID allocated to the result.
+     * @param checkpoints The times of the checkpoints, in nanoseconds since
+     *                    midnight.
+     * @throws IOException If the journal cannot be written.
+     */
+    public synchronized void recordRegisterResult(int stageId, int riderId, int resultId, long[] checkpoints)
+            throws IOException {
+        begin(REGISTER_RESULT);
+        record.writeVarInt(stageId);
+        record.writeVarInt(riderId);
+        record.writeVarInt(resultId);
+        record.writeVarInt(checkpoints.length);
+        long previous = 0;
+        for (long time : checkpoints) {
+            record.writeSignedVarLong(time - previous);
+            previous = time;
+        }
+        commit();
+    }
+
+    /**
+     * Method to record a result being deleted.
+     *
+     * @param stageId The ID of the stage.
+     * @param riderId The ID of the rider.
+     * @throws IOException If the journal cannot be written.
+     */
+    public synchronized void recordDeleteResult(int stageId, int riderId) throws IOException {
+        begin(DELETE_RESULT);
+        record.writeVarInt(stageId);
+        record.writeVarInt(riderId);
+        commit();
+    }
+
+    /**
+     * Method to record a race being removed.
+     *
+     * @param raceId The ID of the race.
+     * @throws IOException If the journal cannot be written.
+     */
+    public synchronized void recordRemoveRace(int raceId) throws IOException {
+        recordId(REMOVE_RACE, raceId);
+    }
+
+    /**
+     * Method to record a portal being erased.
+     *
+     * @throws IOException If the journal cannot be written.
+     */
+    public synchronized void recordErase() throws IOException {
+        begin(ERASE);
+        commit();
+    }
+
+    /**
+     * Private method to record a change which only needs the ID of the
+     * entity changed.
+     *
+     * @param type The type of the record.
+     * @param id The ID of the entity.
+     * @throws IOException If the journal cannot be written.
+     */
+    private void recordId(int type, int id) throws IOException {
+        begin(type);
+        record.writeVarInt(id);
+        commit();
+    }
+
+    /**
+     * Private method to write a string which may be null.
+     *
+     * @param out The writer to write to.
+     * @param value The string to be written.
+     * @throws IOException If the string cannot be written.
+     */
+    private static void writeNullableString(BinaryWriter out, String value) throws IOException {
+        out.writeByte(value == null ? 0 : 1);
+        if (value != null) {
+            out.writeString(value);
+        }
+    }
+
+    /**
+     * Private method to read a string which may be null.
+     *
+     * @param in The reader to read from.
+     * @return The string read.
+     * @throws IOException If the string cannot be read.
+     */
+    private static String readNullableString(BinaryReader in) throws IOException {
+        return in.readByte() == 0 ? null : in.readString();
+    }
+
+    /**
+     * Private method to write the start time of a stage, which may be null.
+     *
+     * @param out The writer to write to.
+     * @param startTime The start time to be written.
+     * @throws IOException If the start time cannot be written.
+     */
+    private static void writeStartTime(BinaryWriter out, LocalDateTime startTime) throws IOException {
+        out.writeByte(startTime == null ? 0 : 1);
+        if (startTime != null) {
+            out.writeSignedVarLong(startTime.toLocalDate().toEpochDay());
+            out.writeVarLong(startTime.toLocalTime().toNanoOfDay());
+        }
+    }
+
+    /**
+     * Private method to read the start time of a stage, which may be null.
+     *
+     * @param in The reader to read from.
+     * @return The start time read.
+     * @throws IOException If the start time cannot be read.
+     */
+    private static LocalDateTime readStartTime(BinaryReader in) throws IOException {
+        if (in.readByte() == 0) {
+            return null;
+        }
+        LocalDate date = LocalDate.ofEpochDay(in.readSignedVarLong());
+        return LocalDateTime.of(date, LocalTime.ofNanoOfDay(in.readVarLong()));
+    }
+}
@@ -0,0 +1,176 @@
+package cycling;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+
+/**
+ * PointsStandings class.<br>
+ * An index of the riders in a race ordered by their points in the points
+ * or mountain classification, with ties broken by general classification,
+ * so that the classification is kept in order as results are registered
+ * and deleted, for the classification's feed to be published from.<br>
+ * As with {@link GeneralStandings}, the standings record the version of
+ * each stage they reflect, and any change to a stage they could not follow
+ * leaves them out of date, to be rebuilt when next needed.<br>
+ * Results in different stages of the race may be registered at the same
+ * time, so every method is synchronized.
+ *
+ * @author Joey Griffiths and Alexander Cairns
+ *
+ */
+final class PointsStandings {
+
+    /**
+     * The riders of the race, ordered by most points, then by total
+     * adjusted elapsed time.
+     */
+    private final RankIndex index = new RankIndex(0);
+
+    /**
+     * Maps the ID of each rider in the race to their points and their total
+     * adjusted elapsed time, in nanoseconds.
+     */
+    private final HashMap<Integer, long[]> riders = new HashMap<>();
+
+    /**
+     * The IDs of the race's stages, in order.
+     */
+    private final int[] stageIds;
+
+    /**
+     * The version of each stage reflected by the standings, in the same
+     * order as 'stageIds'.
+     */
+    private final int[] stageVersions;
+
+    /**
+     * PointsStandings class constructor.<br>
+     * Builds the standings from the general classification of a race and
+     * the points of its riders.
+     *
+     * @param stages The stages of the race.
+     * @param general The race's general classification.
+     * @param points Maps the ID of each rider with points to their points
+     *               in the classification.
+     */
+    PointsStandings(Stage[] stages, Leaderboard general, Map<Integer, Integer> points) {
+        stageIds = new int[stages.length];
+        stageVersions = new int[stages.length];
+        for (int s=0; s<stages.length; s++) {
+            stageIds[s] = stages[s].getId();
+            stageVersions[s] = stages[s].getVersion();
+        }
+        for (int i=0; i<general.size(); i++) {
+            int riderId = general.getRiderId(i);
+            long[] rider = {points.getOrDefault(riderId, 0), general.getNanos(i)};
+            riders.put(riderId, rider);
+            index.insert(-rider[0], rider[1], riderId);
+        }
+    }
+
+    /**
+     * Method to check whether the standings reflect the current state of
+     * every stage in a race.
+     *
+     * @param stages The stages of the race.
+     * @return true if the standings are up to date, false if they must be
+     * rebuilt.
+     */
+    public synchronized boolean isCurrent(Stage[] stages) {
+        if (stages.length != stageIds.length) {
+            return false;
+        }
+        for (int s=0; s<stages.length; s++) {
+            if (stages[s].getId() != stageIds[s] || stages[s].getVersion() != stageVersions[s]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Method to update the standings after a result in one of the race's
+     * stages has been registered or deleted, and the race's general
+     * classification updated, publishing each rider moved to the
+     * classification's feed.<br>
+     * Does nothing to the riders if the standings did not reflect the stage
+     * as it was before the change, in which case they stay out of date.
+     *
+     * @param stage The stage which changed.
+     * @param oldVersion The version of the stage before the change.
+     * @param points Maps the ID of each rider whose points in the stage
+     *               changed to the change in their points.
+     * @param moved The IDs of the riders who may have moved in the general
+     *              classification.
+     * @param general The race's general classification, already updated.
+     * @param feed The feed of the classification.
+     * @return true if the standings were updated, false if they are out of
+     * date.
+     */
+    public synchronized boolean update(Stage stage, int oldVersion, Map<Integer, Integer> points,
+                                       Iterable<Integer> moved, GeneralStandings general, StandingsFeed feed) {
+        int s = 0;
+        while (s < stageIds.length && stageIds[s] != stage.getId()) {
+            s++;
+        }
+        if (s == stageIds.length || stageVersions[s] != oldVersion) {
+            return false;
+        }
+        HashSet<Integer> affected = new HashSet<>(points.keySet());
+        for (int riderId : moved) {
+            affected.add(riderId);
+        }
+        ArrayList<RankChange> changes = new ArrayList<>();
+        for (int riderId : affected) {
+            long[] rider = riders.get(riderId);
+            long newPoints = (rider == null ? 0 : rider[0]) + points.getOrDefault(riderId, 0);
+            long newTotal = general.getTotalNanos(riderId);
+            if (rider == null ? newTotal == -1 : rider[0] == newPoints && rider[1] == newTotal) {
+                // The rider is neither in the classification nor moving in it
+                continue;
+            }
+            int oldPosition = -1;
+            if (rider != null) {
+                oldPosition = index.getPosition(-rider[0], rider[1], riderId);
+                index.remove(-rider[0], rider[1], riderId);
+            }
+            int newPosition = -1;
+            if (newTotal == -1) {
+                // The rider has no result left in the race
+                riders.remove(riderId);
+            } else {
+                riders.put(riderId, new long[] {newPoints, newTotal});
+                index.insert(-newPoints, newTotal, riderId);
+                newPosition = index.getPosition(-newPoints, newTotal, riderId);
+            }
+            changes.add(new RankChange(riderId, oldPosition + 1, newPosition + 1, newTotal,
+                    newPosition == -1 ? 0 : (int) newPoints));
+        }
+        stageVersions[s] = stage.getVersion();
+        feed.publish(changes);
+        return true;
+    }
+
+    /**
+     * Method to copy the classification into a Leaderboard.
+     *
+     * @return A Leaderboard of every rider in the race, in order, with their
+     * total adjusted elapsed times and points.
+     */
+    public synchronized Leaderboard getLeaderboard() {
+        int[] riderIds = new int[index.size()];
+        long[] nanos = new long[index.size()];
+        int[] points = new int[index.size()];
+        int[] position = {0};
+        index.forEach((riderId, time, adjustedTime) -> {
+            long[] rider = riders.get(riderId);
+            riderIds[position[0]] = riderId;
+            nanos[position[0]] = rider[1];
+            points[position[0]] = (int) rider[0];
+            position[0]++;
+        });
+        return new Leaderboard(riderIds, nanos, points);
+    }
+}
@@ -0,0 +1,195 @@
+package cycling;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * PortalEvents class.<br>
+ * Holds the Java Flight Recorder events emitted around the portal's most
+ * expensive work, so that a recording shows which stage or race a slow call
+ * was working on rather than only the collections it was using.<br>
+ * Each event is timed from when its work starts to when it ends, and only
+ * filled in and committed if it is enabled in the recording, so while no
+ * recording is running the events cost next to nothing.
+ *
+ * @author Joey Griffiths and Alexander Cairns
+ *
+ */
+final class PortalEvents {
+
+    /**
+     * The category every event of the portal is listed under.
+     */
+    private static final String CATEGORY = "Cycling Portal";
+
+    /**
+     * A stage being ranked again after its results or segments changed.
+     */
+    @Name("cycling.StageRanking")
+    @Label("Stage Ranking")
+    @Category(CATEGORY)
+    @Description("A stage ranked again after its results or segments changed")
+    static final class StageRankingEvent extends Event {
+
+        /**
+         * The ID of the stage.
+         */
+        @Label("Stage ID")
+        int stageId;
+
+        /**
+         * The number of riders ranked.
+         */
+        @Label("Riders")
+        int riders;
+
+        /**
+         * The number of segments in the stage.
+         */
+        @Label("Segments")
+        int segments;
+    }
+
+    /**
+     * The classifications of a race being computed from its stages.
+     */
+    @Name("cycling.RaceClassification")
+    @Label("Race Classification")
+    @Category(CATEGORY)
+    @Description("The classifications of a race computed from the rankings and points of its stages")
+    static final class RaceClassificationEvent extends Event {
+
+        /**
+         * The ID of the race.
+         */
+        @Label("Race ID")
+        int raceId;
+
+        /**
+         * The classification computed, or "ALL" when every classification
+         * is computed at once.
+         */
+        @Label("Classification")
+        String classification;
+
+        /**
+         * The number of stages in the race.
+         */
+        @Label("Stages")
+        int stages;
+
+        /**
+         * The number of riders classified.
+         */
+        @Label("Riders")
+        int riders;
+    }
+
+    /**
+     * Results being registered in a stage.
+     */
+    @Name("cycling.ResultRegistration")
+    @Label("Result Registration")
+    @Category(CATEGORY)
+    @Description("Riders' results registered in a stage, one at a time or in a batch")
+    static final class ResultRegistrationEvent extends Event {
+
+        /**
+         * The ID of the stage.
+         */
+        @Label("Stage ID")
+        int stageId;
+
+        /**
+         * The number of results given, which is 1 unless they were given
+         * in a batch.
+         */
+        @Label("Batch Size")
+        int batchSize;
+
+        /**
+         * The number of results which were rejected.
+         */
+        @Label("Rejected")
+        int rejected;
+    }
+
+    /**
+     * The contents of the portal being saved to, or loaded from, a
+     * snapshot.
+     */
+    @Category(CATEGORY)
+    abstract static class SnapshotEvent extends Event {
+
+        /**
+         * The location of the snapshot file.
+         */
+        @Label("File")
+        String file;
+
+        /**
+         * The size of the snapshot file.
+         */
+        @Label("Size")
+        @DataAmount
+        long bytes;
+
+        /**
+         * The number of races in the snapshot.
+         */
+        @Label("Races")
+        int races;
+
+        /**
+         * The number of stages in the snapshot.
+         */
+        @Label("Stages")
+        int stages;
+
+        /**
+         * The number of teams in the snapshot.
+         */
+        @Label("Teams")
+        int teams;
+
+        /**
+         * The number of riders in the snapshot.
+         */
+        @Label("Riders")
+        int riders;
+
+        /**
+         * The number of results in the snapshot.
+         */
+        @Label("Results")
+        int results;
+    }
+
+    /**
+     * The contents of the portal being saved to a snapshot.
+     */
+    @Name("cycling.SnapshotSave")
+    @Label("Snapshot Save")
+    @Description("The contents of the portal saved to a snapshot file")
+    static final class SnapshotSaveEvent extends SnapshotEvent {
+    }
+
+    /**
+     * The contents of the portal being loaded from a snapshot.
+     */
+    @Name("cycling.SnapshotLoad")
+    @Label("Snapshot Load")
+    @Description("The contents of a portal loaded from a snapshot file")
+    static final class SnapshotLoadEvent extends SnapshotEvent {
+    }
+
+    /**
+     * Private constructor, as this class only holds the events.
+     */
+    private PortalEvents() {
+    }
+}
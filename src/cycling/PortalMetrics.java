@@ -0,0 +1,212 @@
+package cycling;
+
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * PortalMetrics class which implements PortalMetricsMXBean.
+ * <p>
+ *     Records the calls made to each method of an
+ *     {@link InstrumentedCyclingPortal}: how many there were, how many threw
+ *     each type of exception, and the distribution of the time they took.
+ * </p>
+ * <p>
+ *     Every count is a {@link LongAdder}, and every distribution a
+ *     {@link LatencyHistogram}, so calls made by many threads at once are
+ *     recorded without locking and without contending with each other. The
+ *     statistics can be read at any time, from any thread, or over JMX once
+ *     registered with {@link #registerMBean(String)}.
+ * </p>
+ *
+ * @author Joey Griffiths and Alexander Cairns
+ *
+ */
+public class PortalMetrics implements PortalMetricsMXBean {
+
+	/**
+	 * The calls made to a single method of the portal.
+	 */
+	static final class MethodMetrics {
+
+		/**
+		 * The name of the method.
+		 */
+		private final String name;
+
+		/**
+		 * The time taken by each call to the method.
+		 */
+		private final LatencyHistogram latency = new LatencyHistogram();
+
+		/**
+		 * The number of calls which threw an exception.
+		 */
+		private final LongAdder exceptions = new LongAdder();
+
+		/**
+		 * Maps each type of exception thrown to the number of calls which
+		 * threw it.
+		 */
+		private final ConcurrentHashMap<Class<?>, LongAdder> exceptionCounts = new ConcurrentHashMap<>();
+
+		/**
+		 * MethodMetrics class constructor.
+		 *
+		 * @param name The name of the method.
+		 */
+		private MethodMetrics(String name) {
+			this.name = name;
+		}
+
+		/**
+		 * Method to record a call to the method returning or throwing.
+		 *
+		 * @param start The value of {@link System#nanoTime()} when the call
+		 *              was made.
+		 */
+		void record(long start) {
+			latency.record(System.nanoTime() - start);
+		}
+
+		/**
+		 * Method to record a call to the method throwing an exception.
+		 *
+		 * @param e The exception thrown.
+		 */
+		void recordException(Throwable e) {
+			exceptions.increment();
+			exceptionCounts.computeIfAbsent(e.getClass(), type -> new LongAdder()).increment();
+		}
+
+		/**
+		 * Method to read the statistics of the method.
+		 *
+		 * @return The statistics as they stand.
+		 */
+		MethodStatistics getStatistics() {
+			Map<String, Long> counts = new LinkedHashMap<>();
+			exceptionCounts.forEach((type, count) -> counts.put(type.getSimpleName(), count.sum()));
+			long[] percentiles = latency.getValuesAtPercentiles(50, 90, 99, 99.9);
+			return new MethodStatistics(name, latency.getCount(), exceptions.sum(), counts, latency.getMean(),
+					percentiles[0], percentiles[1], percentiles[2], percentiles[3], latency.getMax());
+		}
+
+		/**
+		 * Method to forget every call made to the method.
+		 */
+		void reset() {
+			latency.reset();
+			exceptions.reset();
+			exceptionCounts.clear();
+		}
+	}
+
+	/**
+	 * Maps the name of each method of the portal to the calls made to it, in
+	 * the order the methods were added.<br>
+	 * Only changed while the portal is being created, so it is only read
+	 * once calls can be made.
+	 */
+	private final LinkedHashMap<String, MethodMetrics> methods = new LinkedHashMap<>();
+
+	/**
+	 * The name this object is registered under as an MBean, or null if it
+	 * is not registered.
+	 */
+	private ObjectName objectName;
+
+	/**
+	 * Method to add a method of the portal whose calls are recorded.
+	 *
+	 * @param name The name of the method.
+	 * @return The MethodMetrics object to record the method's calls with.
+	 */
+	MethodMetrics addMethod(String name) {
+		MethodMetrics method = new MethodMetrics(name);
+		methods.put(name, method);
+		return method;
+	}
+
+	@Override
+	public long getTotalCalls() {
+		long calls = 0;
+		for (MethodMetrics method : methods.values()) {
+			calls += method.latency.getCount();
+		}
+		return calls;
+	}
+
+	@Override
+	public long getTotalExceptions() {
+		long exceptions = 0;
+		for (MethodMetrics method : methods.values()) {
+			exceptions += method.exceptions.sum();
+		}
+		return exceptions;
+	}
+
+	@Override
+	public Map<String, MethodStatistics> getMethodStatistics() {
+		Map<String, MethodStatistics> statistics = new LinkedHashMap<>();
+		for (MethodMetrics method : methods.values()) {
+			// Methods which have never been called are left out, as there is nothing to show
+			if (method.latency.getCount() > 0) {
+				statistics.put(method.name, method.getStatistics());
+			}
+		}
+		return statistics;
+	}
+
+	@Override
+	public MethodStatistics getStatisticsOf(String name) {
+		MethodMetrics method = methods.get(name);
+		return method == null ? null : method.getStatistics();
+	}
+
+	@Override
+	public void reset() {
+		for (MethodMetrics method : methods.values()) {
+			method.reset();
+		}
+	}
+
+	/**
+	 * Method to register these metrics with the platform MBean server, so
+	 * they can be read over JMX.
+	 *
+	 * @param name The name of the portal, used to tell apart the metrics of
+	 *             several portals in the same JVM.
+	 * @return The name the MBean was registered under, of the form
+	 * {@code cycling:type=PortalMetrics,name=<name>}.
+	 * @throws JMException If the name is not valid, or an MBean is already
+	 *                     registered under it.
+	 */
+	public synchronized ObjectName registerMBean(String name) throws JMException {
+		if (objectName != null) {
+			unregisterMBean();
+		}
+		ObjectName newName = new ObjectName("cycling:type=PortalMetrics,name=" + ObjectName.quote(name));
+		ManagementFactory.getPlatformMBeanServer().registerMBean(this, newName);
+		objectName = newName;
+		return objectName;
+	}
+
+	/**
+	 * Method to unregister these metrics from the platform MBean server, if
+	 * they are registered.
+	 *
+	 * @throws JMException If the MBean server fails to unregister them.
+	 */
+	public synchronized void unregisterMBean() throws JMException {
+		if (objectName != null) {
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+			objectName = null;
+		}
+	}
+}
@@ -0,0 +1,54 @@
+package cycling;
+
+import java.util.Map;
+
+/**
+ * PortalMetricsMXBean interface.<br>
+ * The management interface of {@link PortalMetrics}, through which the
+ * calls made to an {@link InstrumentedCyclingPortal} can be watched over
+ * JMX, for example from JConsole, while races are being run.
+ *
+ * @author Joey Griffiths and Alexander Cairns
+ *
+ */
+public interface PortalMetricsMXBean {
+
+	/**
+	 * Get the number of calls made to every method of the portal.
+	 *
+	 * @return The total number of calls.
+	 */
+	long getTotalCalls();
+
+	/**
+	 * Get the number of calls to every method of the portal which threw an
+	 * exception.
+	 *
+	 * @return The total number of calls which threw an exception.
+	 */
+	long getTotalExceptions();
+
+	/**
+	 * Get the statistics of every method of the portal which has been
+	 * called.
+	 *
+	 * @return A map from the name of each method called to its statistics.
+	 */
+	Map<String, MethodStatistics> getMethodStatistics();
+
+	/**
+	 * Get the statistics of a single method of the portal.
+	 *
+	 * @param name The name of the method, such as
+	 *             getRidersGeneralClassificationRank.
+	 * @return The statistics of the method, or null if the portal has no
+	 *         method of that name.
+	 */
+	MethodStatistics getStatisticsOf(String name);
+
+	/**
+	 * Forget every call made so far, so that the statistics only cover calls
+	 * made from now on.
+	 */
+	void reset();
+}
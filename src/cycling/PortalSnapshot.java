@@ -0,0 +1,552 @@
+package cycling;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * PortalSnapshot class.<br>
+ * Saves and loads the contents of a CyclingPortal in a compact binary
+ * format, rather than by Java serialisation.<br>
+ * A snapshot file is laid out as:
+ * <ol>
+ *     <li>A header: the magic number "CYCP", the format version and the
+ *     generation of the snapshot.</li>
+ *     <li>The next ID to be allocated to each kind of entity.</li>
+ *     <li>A string table holding every distinct name and description once,
+ *     which entities refer to by index.</li>
+ *     <li>Every race, with its stages, their segments and their results.</li>
+ *     <li>Every team, with its riders.</li>
+ * </ol>
+ * IDs, counts and times are written as variable length integers, and the
+ * checkpoint times of each result are written as the difference from the
+ * previous checkpoint, so that most take only a few bytes.
+ *
+ * @author Joey Griffiths and Alexander Cairns
+ *
+ */
+final class PortalSnapshot {
+
+    /**
+     * The magic number at the start of every snapshot file, "CYCP" in ASCII.
+     */
+    static final int MAGIC = 0x43594350;
+
+    /**
+     * The version of the snapshot format written by this class.<br>
+     * Must be incremented whenever the layout of the file changes.
+     */
+    static final int FORMAT_VERSION = 2;
+
+    /**
+     * The size of the buffer used to read and write snapshot files.
+     */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Flag set on a stage which is prepared.
+     */
+    private static final int FLAG_PREPARED = 1;
+
+    /**
+     * Flag set on a stage which has a start time.
+     */
+    private static final int FLAG_START_TIME = 2;
+
+    /**
+     * The races loaded from the snapshot.
+     */
+    private final ArrayList<Race> races;
+
+    /**
+     * The teams loaded from the snapshot.
+     */
+    private final ArrayList<Team> teams;
+
+    /**
+     * The next ID to be allocated to each kind of entity, in the order
+     * races, stages, segments, teams, riders, results.
+     */
+    private final int[] counters;
+
+    /**
+     * The generation of the snapshot.<br>
+     * Incremented each time a {@link MutationJournal} is compacted into a
+     * new snapshot, so that a journal is only replayed onto the snapshot it
+     * continues from. Snapshots saved outside of a journal are generation 0.
+     */
+    private final long generation;
+
+    /**
+     * Private constructor, used when a snapshot has been loaded.
+     *
+     * @param races The races loaded.
+     * @param teams The teams loaded.
+     * @param counters The ID counters loaded.
+     * @param generation The generation of the snapshot.
+     */
+    private PortalSnapshot(ArrayList<Race> races, ArrayList<Team> teams, int[] counters, long generation) {
+        this.races = races;
+        this.teams = teams;
+        this.counters = counters;
+        this.generation = generation;
+    }
+
+    /**
+     * Method to get the races loaded from the snapshot.
+     *
+     * @return The list of races, in the order they were saved.
+     */
+    public ArrayList<Race> getRaces() {
+        return races;
+    }
+
+    /**
+     * Method to get the teams loaded from the snapshot.
+     *
+     * @return The list of teams, in the order they were saved.
+     */
+    public ArrayList<Team> getTeams() {
+        return teams;
+    }
+
+    /**
+     * Method to get the generation of the snapshot.
+     *
+     * @return The generation, 0 if the snapshot was not saved by a journal.
+     */
+    public long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Method to restore an ID allocator to the state it had when the
+     * snapshot was saved.
+     *
+     * @param ids The ID allocator to be restored.
+     */
+    public void restoreCounters(IdAllocator ids) {
+        for (IdAllocator.Kind kind : IdAllocator.Kind.values()) {
+            ids.setNext(kind, counters[kind.ordinal()]);
+        }
+    }
+
+    /**
+     * Saves races and teams, along with the state of their ID allocator, to
+     * a snapshot file of generation 0.
+     *
+     * @param races The races to be saved.
+     * @param teams The teams to be saved.
+     * @param ids The ID allocator of the portal being saved.
+     * @param filename Location of the file to be saved.
+     * @throws IOException If the file cannot be written.
+     */
+    static void save(List<Race> races, List<Team> teams, IdAllocator ids, String filename) throws IOException {
+        save(races, teams, ids, filename, 0);
+    }
+
+    /**
+     * Saves races and teams, along with the state of their ID allocator, to
+     * a snapshot file of a particular generation.<br>
+     * The snapshot is written to a temporary file which then replaces the
+     * target, so an existing file is left intact if the save fails. The
+     * temporary file is forced to the disk before it is renamed, and the
+     * directory after, so once this returns the new snapshot survives a
+     * crash.
+     *
+     * @param races The races to be saved.
+     * @param teams The teams to be saved.
+     * @param ids The ID allocator of the portal being saved.
+     * @param filename Location of the file to be saved.
+     * @param generation The generation of the snapshot.
+     * @throws IOException If the file cannot be written.
+     */
+    static void save(List<Race> races, List<Team> teams, IdAllocator ids, String filename,
+                     long generation) throws IOException {
+        PortalEvents.SnapshotSaveEvent event = new PortalEvents.SnapshotSaveEvent();
+        event.begin();
+        Path target = Paths.get(filename);
+        Path temp = Paths.get(filename + ".tmp");
+
+        // Every distinct string is given an index, with 0 reserved for null
+        LinkedHashMap<String, Integer> strings = new LinkedHashMap<>();
+        for (Race race : races) {
+            intern(strings, race.getName());
+            intern(strings, race.getDesc());
+            for (Stage stage : race.getStages()) {
+                intern(strings, stage.getName());
+                intern(strings, stage.getDescription());
+            }
+        }
+        for (Team team : teams) {
+            intern(strings, team.getName());
+            intern(strings, team.getDescription());
+            for (Rider rider : team.getRiders()) {
+                intern(strings, rider.getName());
+            }
+        }
+
+        try (BinaryWriter out = new BinaryWriter(FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING), BUFFER_SIZE)) {
+            out.writeInt(MAGIC);
+            out.writeVarInt(FORMAT_VERSION);
+            out.writeVarLong(generation);
+
+            for (IdAllocator.Kind kind : IdAllocator.Kind.values()) {
+                out.writeVarInt(ids.getNext(kind));
+            }
+
+            out.writeVarInt(strings.size());
+            for (String string : strings.keySet()) {
+                out.writeString(string);
+            }
+
+            out.writeVarInt(races.size());
+            for (Race race : races) {
+                out.writeVarInt(race.getId());
+                out.writeVarInt(strings.get(race.getName()));
+                out.writeVarInt(indexOf(strings, race.getDesc()));
+                Stage[] stages = race.getStages();
+                out.writeVarInt(stages.length);
+                for (Stage stage : stages) {
+                    writeStage(out, strings, stage);
+                }
+            }
+
+            out.writeVarInt(teams.size());
+            for (Team team : teams) {
+                out.writeVarInt(team.getId());
+                out.writeVarInt(strings.get(team.getName()));
+                out.writeVarInt(indexOf(strings, team.getDescription()));
+                Rider[] riders = team.getRiders();
+                out.writeVarInt(riders.length);
+                for (Rider rider : riders) {
+                    out.writeVarInt(rider.getId());
+                    out.writeVarInt(strings.get(rider.getName()));
+                    out.writeSignedVarLong(rider.getYearOfBirth());
+                }
+            }
+            // The contents must reach the disk before the rename does, or a crash could leave
+            // the target replaced by an empty or partial file
+            out.sync();
+        } catch (IOException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+
+        try {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+        syncDirectory(target);
+        event.end();
+        if (event.shouldCommit()) {
+            // The contents are only counted when the event is recorded
+            for (Race race : races) {
+                for (Stage stage : race.getStages()) {
+                    event.stages++;
+                    event.results += stage.getNoOfResults();
+                }
+            }
+            for (Team team : teams) {
+                event.riders += team.getRiders().length;
+            }
+            event.file = filename;
+            event.bytes = Files.size(target);
+            event.races = races.size();
+            event.teams = teams.size();
+            event.commit();
+        }
+    }
+
+    /**
+     * Forces the directory holding a file to the disk, so that a file just
+     * created in it or renamed into it survives a crash.<br>
+     * Does nothing on platforms where a directory cannot be opened to be
+     * forced, such as Windows, whose renames are durable without it.
+     *
+     * @param file The file whose directory is to be forced.
+     * @throws IOException If the directory cannot be forced.
+     */
+    static void syncDirectory(Path file) throws IOException {
+        Path directory = file.toAbsolutePath().getParent();
+        FileChannel channel;
+        try {
+            channel = FileChannel.open(directory, StandardOpenOption.READ);
+        } catch (AccessDeniedException e) {
+            return;
+        }
+        try {
+            channel.force(true);
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Private method to write a stage, its segments and its results.
+     *
+     * @param out The output to write to.
+     * @param strings The index of each string in the string table.
+     * @param stage The stage to be written.
+     * @throws IOException If the stage cannot be written.
+     */
+    private static void writeStage(BinaryWriter out, LinkedHashMap<String, Integer> strings, Stage stage)
+            throws IOException {
+        out.writeVarInt(stage.getId());
+        out.writeVarInt(strings.get(stage.getName()));
+        out.writeVarInt(indexOf(strings, stage.getDescription()));
+        out.writeDouble(stage.getLength());
+        out.writeByte(stage.getType().ordinal());
+        LocalDateTime startTime = stage.getStartTime();
+        int flags = (stage.isPrepared() ? FLAG_PREPARED : 0) | (startTime != null ? FLAG_START_TIME : 0);
+        out.writeByte(flags);
+        if (startTime != null) {
+            out.writeSignedVarLong(startTime.toLocalDate().toEpochDay());
+            out.writeVarLong(startTime.toLocalTime().toNanoOfDay());
+        }
+
+        Segment[] segments = stage.getSegments();
+        out.writeVarInt(segments.length);
+        for (Segment segment : segments) {
+            out.writeVarInt(segment.getId());
+            out.writeDouble(segment.getLocation());
+            out.writeByte(segment.getType().ordinal());
+            out.writeDouble(segment.getAverageGradient());
+            out.writeDouble(segment.getLength());
+        }
+
+        StageResultStore store = stage.getResultStore();
+        out.writeVarInt(store.size());
+        if (store.size() > 0) {
+            int width = store.getWidth();
+            out.writeVarInt(width);
+            for (int row=0; row<store.size(); row++) {
+                out.writeVarInt(store.getRiderId(row));
+                out.writeVarInt(store.getResultId(row));
+                out.writeVarLong(store.getStartNanos(row));
+                // Each checkpoint is written as the time since the previous one
+                for (int c=1; c<width; c++) {
+                    out.writeSignedVarLong(store.getSplitNanos(row, c) - store.getSplitNanos(row, c-1));
+                }
+            }
+        }
+    }
+
+    /**
+     * Loads races and teams from a snapshot file.<br>
+     * Nothing outside of the returned snapshot is modified, so the ID
+     * counters are only restored by calling {@link #restoreCounters(IdAllocator)}.
+     *
+     * @param filename Location of the file to be loaded.
+     * @return The contents of the snapshot.
+     * @throws IOException If the file cannot be read, or is not a snapshot
+     *                     in a supported format.
+     */
+    static PortalSnapshot load(String filename) throws IOException {
+        PortalEvents.SnapshotLoadEvent event = new PortalEvents.SnapshotLoadEvent();
+        event.begin();
+        try (BinaryReader in = new BinaryReader(FileChannel.open(Paths.get(filename), StandardOpenOption.READ),
+                BUFFER_SIZE)) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException(filename + " is not a cycling portal snapshot.");
+            }
+            int formatVersion = in.readVarInt();
+            if (formatVersion < 1 || formatVersion > FORMAT_VERSION) {
+                throw new IOException("Snapshot format version " + formatVersion + " is not supported.");
+            }
+            // Version 1 snapshots were written before the journal existed
+            long generation = formatVersion >= 2 ? in.readVarLong() : 0;
+
+            int[] counters = new int[IdAllocator.Kind.values().length];
+            for (int i=0; i<counters.length; i++) {
+                counters[i] = in.readVarInt();
+            }
+
+            String[] strings = new String[in.readVarInt() + 1];
+            for (int i=1; i<strings.length; i++) {
+                strings[i] = in.readString();
+            }
+
+            int noOfRaces = in.readVarInt();
+            ArrayList<Race> races = new ArrayList<>(noOfRaces);
+            ArrayList<Stage> stages = new ArrayList<>();
+            for (int r=0; r<noOfRaces; r++) {
+                Race race = new Race(in.readVarInt(), readString(in, strings), readString(in, strings));
+                int noOfStages = in.readVarInt();
+                for (int s=0; s<noOfStages; s++) {
+                    Stage stage = readStage(in, strings);
+                    race.addStage(stage);
+                    stages.add(stage);
+                }
+                races.add(race);
+            }
+
+            int noOfTeams = in.readVarInt();
+            ArrayList<Team> teams = new ArrayList<>(noOfTeams);
+            HashMap<Integer, Rider> riders = new HashMap<>();
+            for (int t=0; t<noOfTeams; t++) {
+                Team team = new Team(in.readVarInt(), readString(in, strings), readString(in, strings));
+                int noOfRiders = in.readVarInt();
+                for (int i=0; i<noOfRiders; i++) {
+                    Rider rider = new Rider(in.readVarInt(), readString(in, strings),
+                            (int)in.readSignedVarLong());
+                    team.addRider(rider);
+                    riders.put(rider.getId(), rider);
+                }
+                teams.add(team);
+            }
+
+            // Each rider is given a view of their results once every rider is known
+            int noOfResults = 0;
+            for (Stage stage : stages) {
+                for (int riderId : stage.getRiderIds()) {
+                    Rider rider = riders.get(riderId);
+                    if (rider == null) {
+                        throw new IOException("Snapshot has a result for unknown rider " + riderId + ".");
+                    }
+                    rider.addResult(stage.getResult(riderId));
+                    noOfResults++;
+                }
+            }
+            event.end();
+            if (event.shouldCommit()) {
+                event.file = filename;
+                event.bytes = Files.size(Paths.get(filename));
+                event.races = noOfRaces;
+                event.stages = stages.size();
+                event.teams = noOfTeams;
+                event.riders = riders.size();
+                event.results = noOfResults;
+                event.commit();
+            }
+            return new PortalSnapshot(races, teams, counters, generation);
+        }
+    }
+
+    /**
+     * Private method to read a stage, its segments and its results.
+     *
+     * @param in The input to read from.
+     * @param strings The string table.
+     * @return The stage read.
+     * @throws IOException If the stage cannot be read.
+     */
+    private static Stage readStage(BinaryReader in, String[] strings) throws IOException {
+        int id = in.readVarInt();
+        String name = readString(in, strings);
+        String description = readString(in, strings);
+        double length = in.readDouble();
+        StageType type = readEnum(in, StageType.values());
+        int flags = in.readByte();
+        LocalDateTime startTime = null;
+        if ((flags & FLAG_START_TIME) != 0) {
+            LocalDate date = LocalDate.ofEpochDay(in.readSignedVarLong());
+            startTime = LocalDateTime.of(date, LocalTime.ofNanoOfDay(in.readVarLong()));
+        }
+        Stage stage = new Stage(id, name, description, length, startTime, type);
+        if ((flags & FLAG_PREPARED) != 0) {
+            stage.prepare();
+        }
+
+        int noOfSegments = in.readVarInt();
+        Segment[] segments = new Segment[noOfSegments];
+        for (int i=0; i<noOfSegments; i++) {
+            segments[i] = new Segment(in.readVarInt(), in.readDouble(), readEnum(in, SegmentType.values()),
+                    in.readDouble(), in.readDouble());
+        }
+        // Segments are added last to first, as a stage places each segment in
+        // front of any at the same location, which keeps the saved order
+        for (int i=noOfSegments-1; i>=0; i--) {
+            stage.addSegment(segments[i]);
+        }
+
+        int noOfResults = in.readVarInt();
+        if (noOfResults > 0) {
+            stage.getResultStore().ensureCapacity(noOfResults);
+            int width = in.readVarInt();
+            long[] splits = new long[width];
+            for (int row=0; row<noOfResults; row++) {
+                int riderId = in.readVarInt();
+                int resultId = in.readVarInt();
+                long start = in.readVarLong();
+                for (int c=1; c<width; c++) {
+                    splits[c] = splits[c-1] + in.readSignedVarLong();
+                }
+                stage.restoreResult(riderId, resultId, start, splits);
+            }
+        }
+        return stage;
+    }
+
+    /**
+     * Private method to add a string to the string table, if it is not null
+     * and not already in it.
+     *
+     * @param strings The index of each string in the string table.
+     * @param string The string to be added.
+     */
+    private static void intern(LinkedHashMap<String, Integer> strings, String string) {
+        if (string != null && !strings.containsKey(string)) {
+            strings.put(string, strings.size() + 1);
+        }
+    }
+
+    /**
+     * Private method to get the index of a string in the string table.
+     *
+     * @param strings The index of each string in the string table.
+     * @param string The string in question, which may be null.
+     * @return The index of the string, or 0 if it is null.
+     */
+    private static int indexOf(LinkedHashMap<String, Integer> strings, String string) {
+        return string == null ? 0 : strings.get(string);
+    }
+
+    /**
+     * Private method to read a reference into the string table.
+     *
+     * @param in The input to read from.
+     * @param strings The string table.
+     * @return The string referred to, or null for index 0.
+     * @throws IOException If the index is not in the string table.
+     */
+    private static String readString(BinaryReader in, String[] strings) throws IOException {
+        int index = in.readVarInt();
+        if (index >= strings.length) {
+            throw new IOException("Snapshot refers to unknown string " + index + ".");
+        }
+        return strings[index];
+    }
+
+    /**
+     * Private method to read an enum constant written by its ordinal.
+     *
+     * @param in The input to read from.
+     * @param values The constants of the enum.
+     * @param <E> The enum type.
+     * @return The constant read.
+     * @throws IOException If the ordinal is not a constant of the enum.
+     */
+    private static <E extends Enum<E>> E readEnum(BinaryReader in, E[] values) throws IOException {
+        int ordinal = in.readByte();
+        if (ordinal >= values.length) {
+            throw new IOException("Snapshot has an unknown " + values[0].getDeclaringClass().getSimpleName() + ".");
+        }
+        return values[ordinal];
+    }
+}
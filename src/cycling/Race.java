@@ -12,13 +12,6 @@ import java.io.Serializable;
  */
 class Race implements Serializable {
     
-    /**
-     * The number of instances of Race, automatically incremented when the
-     * constructor is called.<br>
-     * Used for allocation of IDs.
-     */
-    private static int numberOfRaces = 0;
-
     /**
      * The ID of the Race.
      */
@@ -40,25 +33,37 @@ class Race implements Serializable {
     private ArrayList<Stage> stages = new ArrayList<>();
 
     /**
-     * Race class constructor. Initialises a new race with a name and description,
-     * and automatically assigns an ID using the number of instances of Race.
+     * An index of the riders in the race's general classification, or null
+     * if it has not been needed since the race was loaded.<br>
+     * Volatile, as several readers of the race may build it at once.
+     */
+    private transient volatile GeneralStandings generalStandings;
+
+    /**
+     * An index of the riders in the race's points classification, or null
+     * if it has not been needed since the race was loaded.
+     */
+    private transient volatile PointsStandings pointsStandings;
+
+    /**
+     * An index of the riders in the race's mountain classification, or null
+     * if it has not been needed since the race was loaded.
+     */
+    private transient volatile PointsStandings mountainStandings;
+
+    /**
+     * Race class constructor. Initialises a race with a name, a description
+     * and an ID allocated by the portal's {@link IdAllocator}.
      *
+     * @param id The ID of the race.
      * @param name The name of the race.
      * @param description The race description.
-     * 
+     *
      */
-    Race(String name, String description) {
+    Race(int id, String name, String description) {
         this.name = name;
         this.description = description;
-        id = numberOfRaces++;
-    }
-
-    /**
-     * Resets the static variable numberOfRaces.<br>
-     * Used to reset the CyclingPortal so that IDs start from 0 again.
-     */
-    public static void resetNoOfRaces() {
-        numberOfRaces = 0;
+        this.id = id;
     }
 
     /**
@@ -133,6 +138,56 @@ class Race implements Serializable {
         return stageArr;
     }
 
+    /**
+     * Method to get the most recently built index of the race's general
+     * classification.
+     *
+     * @return The GeneralStandings of the race, which may no longer be
+     * current, or null if none has been built.
+     */
+    public GeneralStandings getGeneralStandings() {
+        return generalStandings;
+    }
+
+    /**
+     * Method to store a newly built index of the race's general
+     * classification.
+     *
+     * @param generalStandings The GeneralStandings built for the race.
+     */
+    public void setGeneralStandings(GeneralStandings generalStandings) {
+        this.generalStandings = generalStandings;
+    }
+
+    /**
+     * Method to get the most recently built index of the race's points or
+     * mountain classification.
+     *
+     * @param classification The classification, which must be POINTS or
+     *                       MOUNTAIN.
+     * @return The PointsStandings of the classification, which may no
+     * longer be current, or null if none has been built.
+     */
+    public PointsStandings getPointsStandings(Classification classification) {
+        return classification == Classification.MOUNTAIN ? mountainStandings : pointsStandings;
+    }
+
+    /**
+     * Method to store a newly built index of the race's points or mountain
+     * classification.
+     *
+     * @param classification The classification, which must be POINTS or
+     *                       MOUNTAIN.
+     * @param standings The PointsStandings built for the classification.
+     */
+    public void setPointsStandings(Classification classification, PointsStandings standings) {
+        if (classification == Classification.MOUNTAIN) {
+            mountainStandings = standings;
+        } else {
+            pointsStandings = standings;
+        }
+    }
+
     /**
      * Private method to compute the total length of the race, that is,
      * the sum of all the lengths of each stage in the race.
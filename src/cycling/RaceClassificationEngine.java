@@ -0,0 +1,181 @@
+package cycling;
+
+import java.time.LocalTime;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * RaceClassificationEngine class.<br>
+ * Computes every classification of a race from a single evaluation of its
+ * stages: each stage's ranking and points are read once, aggregated into
+ * per-rider totals, and the general, points and mountain classifications
+ * are then ranked from those totals.
+ *
+ * @author Joey Griffiths and Alexander Cairns
+ *
+ */
+class RaceClassificationEngine {
+
+    /**
+     * The total time and points of every rider in the race.
+     */
+    private final RaceTotals totals;
+
+    /**
+     * The indexes (into 'totals') of the riders, sorted by general
+     * classification.
+     */
+    private final int[] generalOrder;
+
+    /**
+     * The indexes (into 'totals') of the riders, sorted by points
+     * classification.
+     */
+    private final int[] pointsOrder;
+
+    /**
+     * The indexes (into 'totals') of the riders, sorted by mountain
+     * classification.
+     */
+    private final int[] mountainOrder;
+
+    /**
+     * RaceClassificationEngine class constructor.<br>
+     * Aggregates the results of every stage in the race and ranks each of
+     * the race's classifications.
+     *
+     * @param stageRankings The ranking of each stage in the race.
+     * @param stagePoints The points of each stage in the race, each array
+     *                    matching the order of its stage's ranking.
+     * @param stageMountainPoints The mountain points of each stage in the
+     *                            race, each array matching the order of its
+     *                            stage's ranking.
+     */
+    RaceClassificationEngine(StageRanking[] stageRankings, int[][] stagePoints, int[][] stageMountainPoints) {
+        totals = new RaceTotals(stageRankings, stagePoints, stageMountainPoints);
+        int n = totals.size();
+
+        // The general classification is ranked by least total time, with ties
+        // broken by rider ID
+        generalOrder = new int[n];
+        RankingKernel.rank(totals.getTotalNanosColumn(), totals.getRiderIdColumn(), n, false, generalOrder);
+        int[] generalPosition = new int[n];
+        for (int i=0; i<n; i++) {
+            generalPosition[generalOrder[i]] = i;
+        }
+
+        // The points classifications are ranked by most points, with ties
+        // broken by general classification position
+        pointsOrder = new int[n];
+        RankingKernel.rank(totals.getTotalPointsColumn(), generalPosition, n, true, pointsOrder);
+        mountainOrder = new int[n];
+        RankingKernel.rank(totals.getTotalMountainPointsColumn(), generalPosition, n, true, mountainOrder);
+    }
+
+    /**
+     * Method to get the number of riders classified.
+     *
+     * @return The number of riders with a result in any stage of the race.
+     */
+    public int size() {
+        return generalOrder.length;
+    }
+
+    /**
+     * Method to get the IDs of the riders in the race, sorted by general
+     * classification.
+     *
+     * @return An array of rider IDs, the first being the rider with the least
+     * total adjusted elapsed time.
+     */
+    public int[] getGeneralClassificationRank() {
+        return idsInOrder(generalOrder);
+    }
+
+    /**
+     * Method to get the total adjusted elapsed times of the riders in the
+     * race, sorted by general classification.
+     *
+     * @return An array of total times, matching the order of
+     * {@link #getGeneralClassificationRank()}.
+     */
+    public LocalTime[] getGeneralClassificationTimes() {
+        LocalTime[] times = new LocalTime[generalOrder.length];
+        for (int i=0; i<times.length; i++) {
+            times[i] = Timing.toLocalTime(totals.getTotalNanos(generalOrder[i]));
+        }
+        return times;
+    }
+
+    /**
+     * Method to get the total points of the riders in the race, sorted by
+     * general classification.
+     *
+     * @return An array of points, matching the order of
+     * {@link #getGeneralClassificationRank()}.
+     */
+    public int[] getPointsInGeneralOrder() {
+        return valuesInOrder(totals::getTotalPoints, generalOrder);
+    }
+
+    /**
+     * Method to get the total mountain points of the riders in the race,
+     * sorted by general classification.
+     *
+     * @return An array of mountain points, matching the order of
+     * {@link #getGeneralClassificationRank()}.
+     */
+    public int[] getMountainPointsInGeneralOrder() {
+        return valuesInOrder(totals::getTotalMountainPoints, generalOrder);
+    }
+
+    /**
+     * Method to get the IDs of the riders in the race, sorted by points
+     * classification.
+     *
+     * @return An array of rider IDs, the first being the rider with the most
+     * points.
+     */
+    public int[] getPointsClassificationRank() {
+        return idsInOrder(pointsOrder);
+    }
+
+    /**
+     * Method to get the IDs of the riders in the race, sorted by mountain
+     * classification.
+     *
+     * @return An array of rider IDs, the first being the rider with the most
+     * mountain points.
+     */
+    public int[] getMountainClassificationRank() {
+        return idsInOrder(mountainOrder);
+    }
+
+    /**
+     * Private method to map an ordering of rider indexes to rider IDs.
+     *
+     * @param order The indexes of the riders, in order.
+     * @return The IDs of the riders, in the same order.
+     */
+    private int[] idsInOrder(int[] order) {
+        int[] ids = new int[order.length];
+        for (int i=0; i<ids.length; i++) {
+            ids[i] = totals.getRiderId(order[i]);
+        }
+        return ids;
+    }
+
+    /**
+     * Private method to reorder a per-rider array of values.
+     *
+     * @param values Gives the value of each rider from their index.
+     * @param order The indexes of the riders, in order.
+     * @return The values of the riders, in the same order.
+     */
+    private static int[] valuesInOrder(IntUnaryOperator values, int[] order) {
+        int[] ordered = new int[order.length];
+        for (int i=0; i<ordered.length; i++) {
+            ordered[i] = values.applyAsInt(order[i]);
+        }
+        return ordered;
+    }
+}
@@ -0,0 +1,190 @@
+package cycling;
+
+import java.util.HashMap;
+
+/**
+ * RaceTotals class.<br>
+ * Holds the total adjusted elapsed time, points and mountain points of every
+ * rider in a race, aggregated from the rankings and points of its stages,
+ * without ranking the riders by any of them.
+ *
+ * @author Joey Griffiths and Alexander Cairns
+ *
+ */
+class RaceTotals {
+
+    /**
+     * The IDs of every rider in the race, in the order they were first
+     * found in the race's stages.
+     */
+    private final int[] riderIds;
+
+    /**
+     * The sum of each rider's adjusted elapsed times, in nanoseconds, in
+     * the same order as 'riderIds'.
+     */
+    private final long[] totalNanos;
+
+    /**
+     * The sum of each rider's points, in the same order as 'riderIds'.
+     */
+    private final int[] totalPoints;
+
+    /**
+     * The sum of each rider's mountain points, in the same order as
+     * 'riderIds'.
+     */
+    private final int[] totalMountainPoints;
+
+    /**
+     * RaceTotals class constructor.<br>
+     * Adds up each rider's times and points over every stage in the race.
+     *
+     * @param stageRankings The ranking of each stage in the race.
+     * @param stagePoints The points of each stage in the race, each array
+     *                    matching the order of its stage's ranking, or null
+     *                    if the points are not needed.
+     * @param stageMountainPoints The mountain points of each stage in the
+     *                            race, each array matching the order of its
+     *                            stage's ranking, or null if the mountain
+     *                            points are not needed.
+     */
+    RaceTotals(StageRanking[] stageRankings, int[][] stagePoints, int[][] stageMountainPoints) {
+        // Every rider in the race is assigned an index the first time they are found
+        HashMap<Integer, Integer> indexes = new HashMap<>();
+        for (StageRanking ranking : stageRankings) {
+            for (int position=0; position<ranking.size(); position++) {
+                indexes.putIfAbsent(ranking.getRiderId(position), indexes.size());
+            }
+        }
+        int n = indexes.size();
+        riderIds = new int[n];
+        for (HashMap.Entry<Integer, Integer> entry : indexes.entrySet()) {
+            riderIds[entry.getValue()] = entry.getKey();
+        }
+
+        // Each stage's times and points are added to the totals of its riders
+        totalNanos = new long[n];
+        totalPoints = new int[n];
+        totalMountainPoints = new int[n];
+        for (int s=0; s<stageRankings.length; s++) {
+            StageRanking ranking = stageRankings[s];
+            for (int position=0; position<ranking.size(); position++) {
+                int index = indexes.get(ranking.getRiderId(position));
+                totalNanos[index] += ranking.getAdjustedNanos(position);
+                if (stagePoints != null) {
+                    totalPoints[index] += stagePoints[s][position];
+                }
+                if (stageMountainPoints != null) {
+                    totalMountainPoints[index] += stageMountainPoints[s][position];
+                }
+            }
+        }
+    }
+
+    /**
+     * Method to get the number of riders in the race.
+     *
+     * @return The number of riders with a result in any of the race's
+     * stages.
+     */
+    public int size() {
+        return riderIds.length;
+    }
+
+    /**
+     * Method to get the ID of a rider.
+     *
+     * @param index The index of the rider.
+     * @return The ID of the rider.
+     */
+    public int getRiderId(int index) {
+        return riderIds[index];
+    }
+
+    /**
+     * Method to get the total adjusted elapsed time of a rider.
+     *
+     * @param index The index of the rider.
+     * @return The rider's total time, in nanoseconds.
+     */
+    public long getTotalNanos(int index) {
+        return totalNanos[index];
+    }
+
+    /**
+     * Method to get the total points of a rider.
+     *
+     * @param index The index of the rider.
+     * @return The rider's total points.
+     */
+    public int getTotalPoints(int index) {
+        return totalPoints[index];
+    }
+
+    /**
+     * Method to get the total mountain points of a rider.
+     *
+     * @param index The index of the rider.
+     * @return The rider's total mountain points.
+     */
+    public int getTotalMountainPoints(int index) {
+        return totalMountainPoints[index];
+    }
+
+    /**
+     * Method to get the IDs of every rider in the race.<br>
+     * The array is shared with the totals, so it must not be modified.
+     *
+     * @return The IDs of the riders, indexed by rider index.
+     */
+    public int[] getRiderIdColumn() {
+        return riderIds;
+    }
+
+    /**
+     * Method to get the total adjusted elapsed time of every rider.<br>
+     * The array is shared with the totals, so it must not be modified.
+     *
+     * @return The riders' total times, in nanoseconds, indexed by rider
+     * index.
+     */
+    public long[] getTotalNanosColumn() {
+        return totalNanos;
+    }
+
+    /**
+     * Method to get the total points of every rider.<br>
+     * The array is shared with the totals, so it must not be modified.
+     *
+     * @return The riders' total points, indexed by rider index.
+     */
+    public int[] getTotalPointsColumn() {
+        return totalPoints;
+    }
+
+    /**
+     * Method to get the total mountain points of every rider.<br>
+     * The array is shared with the totals, so it must not be modified.
+     *
+     * @return The riders' total mountain points, indexed by rider index.
+     */
+    public int[] getTotalMountainPointsColumn() {
+        return totalMountainPoints;
+    }
+
+    /**
+     * Method to compare two riders by general classification, where the
+     * rider with the least total time ranks first, with ties broken by
+     * rider ID.
+     *
+     * @param a The index of the first rider.
+     * @param b The index of the second rider.
+     * @return A negative number if the first rider ranks before the second,
+     * or a positive number if they rank after.
+     */
+    public int compareGeneral(int a, int b) {
+        int byTime = Long.compare(totalNanos[a], totalNanos[b]);
+        return byTime != 0 ? byTime : Integer.compare(riderIds[a], riderIds[b]);
+    }
+}
@@ -0,0 +1,162 @@
+package cycling;
+
+import java.time.LocalTime;
+
+/**
+ * RankChange class.<br>
+ * Describes a change to a single rider's place in the standings of a stage
+ * or race, as published to subscribers of its standings.<br>
+ * Positions start from 1 for the leader, and 0 means the rider is not
+ * ranked, so a rider entering the standings has an old position of 0 and a
+ * rider leaving them has a new position of 0.<br>
+ * Each change is applied to the standings as a list: the rider is removed
+ * from their old position, and inserted at their new one, which moves
+ * every rider between the two positions by one place without a change
+ * being sent for them. A rider whose time or points changed without them
+ * moving has the same old and new position.<br>
+ * A reset, for which {@link #isReset()} returns true, tells the subscriber
+ * to empty its standings, as every rider is about to be sent again.
+ *
+ * @author Joey Griffiths and Alexander Cairns
+ *
+ */
+public final class RankChange {
+
+	/**
+	 * The ID of the rider whose place changed.
+	 */
+	private final int riderId;
+
+	/**
+	 * The rider's position before the change, or 0 if they were not ranked.
+	 */
+	private final int oldPosition;
+
+	/**
+	 * The rider's position after the change, or 0 if they are no longer
+	 * ranked.
+	 */
+	private final int newPosition;
+
+	/**
+	 * The rider's time after the change, in nanoseconds, or -1 if they are
+	 * no longer ranked.
+	 */
+	private final long nanos;
+
+	/**
+	 * The rider's points after the change, or 0 if the standings are not
+	 * ranked by points.
+	 */
+	private final int points;
+
+	/**
+	 * RankChange class constructor.
+	 *
+	 * @param riderId The ID of the rider.
+	 * @param oldPosition The rider's position before the change, or 0.
+	 * @param newPosition The rider's position after the change, or 0.
+	 * @param nanos The rider's time after the change, in nanoseconds, or -1.
+	 * @param points The rider's points after the change, or 0.
+	 *
+	 */
+	RankChange(int riderId, int oldPosition, int newPosition, long nanos, int points) {
+		this.riderId = riderId;
+		this.oldPosition = oldPosition;
+		this.newPosition = newPosition;
+		this.nanos = nanos;
+		this.points = points;
+	}
+
+	/**
+	 * Method to create a reset, telling a subscriber that every rider in the
+	 * standings is about to be sent again.
+	 *
+	 * @return A RankChange for which {@link #isReset()} returns true.
+	 *
+	 */
+	static RankChange reset() {
+		return new RankChange(0, 0, 0, -1, 0);
+	}
+
+	/**
+	 * Public method to check whether this change is a reset, rather than a
+	 * change to a rider.
+	 *
+	 * @return true if the subscriber is to empty its standings, false
+	 * otherwise.
+	 *
+	 */
+	public boolean isReset() {
+		return oldPosition == 0 && newPosition == 0;
+	}
+
+	/**
+	 * Public getter method to return the ID of the rider whose place
+	 * changed.
+	 *
+	 * @return The ID of the rider.
+	 *
+	 */
+	public int getRiderId() {
+		return riderId;
+	}
+
+	/**
+	 * Public getter method to return the rider's position before the change.
+	 *
+	 * @return The rider's old position, 1 being the leader, or 0 if they were
+	 * not ranked.
+	 *
+	 */
+	public int getOldPosition() {
+		return oldPosition;
+	}
+
+	/**
+	 * Public getter method to return the rider's position after the change.
+	 *
+	 * @return The rider's new position, 1 being the leader, or 0 if they are
+	 * no longer ranked.
+	 *
+	 */
+	public int getNewPosition() {
+		return newPosition;
+	}
+
+	/**
+	 * Public getter method to return the rider's time after the change: their
+	 * adjusted elapsed time in a stage, or their total adjusted elapsed time
+	 * in a race.
+	 *
+	 * @return The rider's time, or null if they are no longer ranked.
+	 *
+	 */
+	public LocalTime getTime() {
+		return nanos == -1 ? null : Timing.toLocalTime(nanos);
+	}
+
+	/**
+	 * Method to get the rider's time after the change, without converting
+	 * it.
+	 *
+	 * @return The rider's time, in nanoseconds, or -1 if they are no longer
+	 * ranked.
+	 *
+	 */
+	long getNanos() {
+		return nanos;
+	}
+
+	/**
+	 * Public getter method to return the rider's points after the change, in
+	 * the classification the standings are ranked by.
+	 *
+	 * @return The rider's points, or 0 if the standings are not ranked by
+	 * points.
+	 *
+	 */
+	public int getPoints() {
+		return points;
+	}
+}
@@ -0,0 +1,623 @@
+package cycling;
+
+/**
+ * RankIndex class.<br>
+ * An order-statistic tree of riders, ordered by a time (with ties broken by
+ * rider ID), which finds the position of a rider or the rider at a position
+ * in O(log n) time, and is updated one rider at a time as results are
+ * registered and deleted.<br>
+ * Riders may also be given a second key, which orders riders with equal
+ * times before their IDs do, such as the total time which orders riders on
+ * equal points.<br>
+ * The index also tracks which riders start a bunch, that is, finish at
+ * least a bunch gap after the rider before them, so that a rider's adjusted
+ * time (the time of the rider at the front of their bunch) is found in
+ * O(log n) time as well.<br>
+ * The tree is a treap: each node is given a priority by hashing its rider
+ * ID, and the tree is kept ordered by key as a binary search tree and by
+ * priority as a heap, which keeps it balanced in expectation.
+ *
+ * @author Joey Griffiths and Alexander Cairns
+ *
+ */
+final class RankIndex {
+
+    /**
+     * Visits the riders of an index in order.
+     */
+    interface Visitor {
+
+        /**
+         * Method called for each rider in the index, in order.
+         *
+         * @param riderId The ID of the rider.
+         * @param time The rider's time, in nanoseconds.
+         * @param adjustedTime The time of the rider at the front of the
+         *                     rider's bunch, in nanoseconds.
+         */
+        void visit(int riderId, long time, long adjustedTime);
+    }
+
+    /**
+     * A single rider in the tree.
+     */
+    private static final class Node {
+
+        /**
+         * The rider's time, in nanoseconds.
+         */
+        private final long time;
+
+        /**
+         * The rider's second key, which orders riders with equal times.
+         */
+        private final long tie;
+
+        /**
+         * The ID of the rider.
+         */
+        private final int riderId;
+
+        /**
+         * The priority of the node, which is never lower than that of its
+         * children.
+         */
+        private final int priority;
+
+        /**
+         * The subtree of riders ranked before this one.
+         */
+        private Node left;
+
+        /**
+         * The subtree of riders ranked after this one.
+         */
+        private Node right;
+
+        /**
+         * The number of riders in the subtree rooted at this node.
+         */
+        private int size = 1;
+
+        /**
+         * Whether this rider starts a bunch.
+         */
+        private boolean bunchStart = true;
+
+        /**
+         * The number of riders starting a bunch in the subtree rooted at
+         * this node.
+         */
+        private int bunchStarts = 1;
+
+        /**
+         * Node class constructor.
+         *
+         * @param time The rider's time, in nanoseconds.
+         * @param tie The rider's second key.
+         * @param riderId The ID of the rider.
+         */
+        private Node(long time, long tie, int riderId) {
+            this.time = time;
+            this.tie = tie;
+            this.riderId = riderId;
+            // The ID is mixed so that riders registered in order of ID do not
+            // unbalance the tree
+            int h = riderId * 0x9E3779B9;
+            priority = h ^ (h >>> 16);
+        }
+
+        /**
+         * Method to recompute the size and number of bunch starts of the
+         * subtree from its children.
+         */
+        private void update() {
+            size = 1 + size(left) + size(right);
+            bunchStarts = (bunchStart ? 1 : 0) + bunchStarts(left) + bunchStarts(right);
+        }
+    }
+
+    /**
+     * The maximum gap, in nanoseconds, between two consecutive riders for
+     * them to be in the same bunch, or 0 if riders are not grouped into
+     * bunches.
+     */
+    private final long bunchGap;
+
+    /**
+     * The root of the tree, or null if the index is empty.
+     */
+    private Node root;
+
+    /**
+     * RankIndex class constructor.<br>
+     * Creates an empty index.
+     *
+     * @param bunchGap The maximum gap, in nanoseconds, between two
+     *                 consecutive riders for them to be in the same bunch, or
+     *                 0 if riders are not grouped into bunches.
+     */
+    RankIndex(long bunchGap) {
+        this.bunchGap = bunchGap;
+    }
+
+    /**
+     * Private method to get the size of a subtree.
+     *
+     * @param node The root of the subtree, or null.
+     * @return The number of riders in the subtree.
+     */
+    private static int size(Node node) {
+        return node == null ? 0 : node.size;
+    }
+
+    /**
+     * Private method to get the number of bunch starts in a subtree.
+     *
+     * @param node The root of the subtree, or null.
+     * @return The number of riders starting a bunch in the subtree.
+     */
+    private static int bunchStarts(Node node) {
+        return node == null ? 0 : node.bunchStarts;
+    }
+
+    /**
+     * Private method to compare a time, second key and rider ID with those
+     * of a node.
+     *
+     * @param time The time.
+     * @param tie The second key.
+     * @param riderId The rider ID.
+     * @param node The node to compare with.
+     * @return A negative number if the time, second key and rider ID rank
+     * before the node, 0 if they are the node's, or a positive number
+     * otherwise.
+     */
+    private static int compare(long time, long tie, int riderId, Node node) {
+        int byTime = Long.compare(time, node.time);
+        if (byTime != 0) {
+            return byTime;
+        }
+        int byTie = Long.compare(tie, node.tie);
+        return byTie != 0 ? byTie : Integer.compare(riderId, node.riderId);
+    }
+
+    /**
+     * Method to get the number of riders in the index.
+     *
+     * @return The number of riders.
+     */
+    public int size() {
+        return size(root);
+    }
+
+    /**
+     * Method to add a rider to the index.
+     *
+     * @param time The rider's time, in nanoseconds.
+     * @param riderId The ID of the rider, who must not already be in the
+     *                index.
+     */
+    public void insert(long time, int riderId) {
+        insert(time, 0, riderId);
+    }
+
+    /**
+     * Method to add a rider with a second key to the index.
+     *
+     * @param time The rider's time, in nanoseconds.
+     * @param tie The rider's second key.
+     * @param riderId The ID of the rider, who must not already be in the
+     *                index.
+     */
+    public void insert(long time, long tie, int riderId) {
+        root = insert(root, new Node(time, tie, riderId));
+        // The new rider, and the rider after them, may start or stop starting
+        // a bunch
+        int position = getPosition(time, tie, riderId);
+        refreshBunchStart(position);
+        if (position + 1 < size()) {
+            refreshBunchStart(position + 1);
+        }
+    }
+
+    /**
+     * Private method to insert a node into a subtree.
+     *
+     * @param subtree The root of the subtree, or null.
+     * @param node The node to be inserted.
+     * @return The new root of the subtree.
+     */
+    private static Node insert(Node subtree, Node node) {
+        if (subtree == null) {
+            return node;
+        }
+        if (compare(node.time, node.tie, node.riderId, subtree) < 0) {
+            subtree.left = insert(subtree.left, node);
+            if (subtree.left.priority > subtree.priority) {
+                subtree = rotateRight(subtree);
+            }
+        } else {
+            subtree.right = insert(subtree.right, node);
+            if (subtree.right.priority > subtree.priority) {
+                subtree = rotateLeft(subtree);
+            }
+        }
+        subtree.update();
+        return subtree;
+    }
+
+    /**
+     * Method to remove a rider from the index.
+     *
+     * @param time The rider's time, in nanoseconds.
+     * @param riderId The ID of the rider.
+     * @return true if the rider was removed, false if they were not in the
+     * index.
+     */
+    public boolean remove(long time, int riderId) {
+        return remove(time, 0, riderId);
+    }
+
+    /**
+     * Method to remove a rider with a second key from the index.
+     *
+     * @param time The rider's time, in nanoseconds.
+     * @param tie The rider's second key.
+     * @param riderId The ID of the rider.
+     * @return true if the rider was removed, false if they were not in the
+     * index.
+     */
+    public boolean remove(long time, long tie, int riderId) {
+        int position = getPosition(time, tie, riderId);
+        if (position == -1) {
+            return false;
+        }
+        root = remove(root, time, tie, riderId);
+        // The rider who followed the removed rider may now start a bunch
+        if (position < size()) {
+            refreshBunchStart(position);
+        }
+        return true;
+    }
+
+    /**
+     * Private method to remove a node from a subtree.
+     *
+     * @param subtree The root of the subtree, which contains the node.
+     * @param time The time of the node.
+     * @param tie The second key of the node.
+     * @param riderId The rider ID of the node.
+     * @return The new root of the subtree.
+     */
+    private static Node remove(Node subtree, long time, long tie, int riderId) {
+        int comparison = compare(time, tie, riderId, subtree);
+        if (comparison == 0) {
+            return merge(subtree.left, subtree.right);
+        }
+        if (comparison < 0) {
+            subtree.left = remove(subtree.left, time, tie, riderId);
+        } else {
+            subtree.right = remove(subtree.right, time, tie, riderId);
+        }
+        subtree.update();
+        return subtree;
+    }
+
+    /**
+     * Private method to join two subtrees, where every rider in the first
+     * ranks before every rider in the second.
+     *
+     * @param left The first subtree, or null.
+     * @param right The second subtree, or null.
+     * @return The root of the joined subtree.
+     */
+    private static Node merge(Node left, Node right) {
+        if (left == null) {
+            return right;
+        }
+        if (right == null) {
+            return left;
+        }
+        if (left.priority > right.priority) {
+            left.right = merge(left.right, right);
+            left.update();
+            return left;
+        }
+        right.left = merge(left, right.left);
+        right.update();
+        return right;
+    }
+
+    /**
+     * Private method to rotate a subtree so that its left child becomes its
+     * root.
+     *
+     * @param node The root of the subtree.
+     * @return The new root of the subtree.
+     */
+    private static Node rotateRight(Node node) {
+        Node left = node.left;
+        node.left = left.right;
+        left.right = node;
+        node.update();
+        left.update();
+        return left;
+    }
+
+    /**
+     * Private method to rotate a subtree so that its right child becomes its
+     * root.
+     *
+     * @param node The root of the subtree.
+     * @return The new root of the subtree.
+     */
+    private static Node rotateLeft(Node node) {
+        Node right = node.right;
+        node.right = right.left;
+        right.left = node;
+        node.update();
+        right.update();
+        return right;
+    }
+
+    /**
+     * Private method to recompute whether the rider at a position starts a
+     * bunch, after the rider before them has changed.
+     *
+     * @param position The position of the rider.
+     */
+    private void refreshBunchStart(int position) {
+        boolean bunchStart = position == 0 || getTime(position) - getTime(position - 1) >= bunchGap;
+        setBunchStart(root, position, bunchStart);
+    }
+
+    /**
+     * Private method to set whether the rider at a position in a subtree
+     * starts a bunch, updating the counts of every subtree containing them.
+     *
+     * @param subtree The root of the subtree.
+     * @param position The position of the rider within the subtree.
+     * @param bunchStart Whether the rider starts a bunch.
+     */
+    private static void setBunchStart(Node subtree, int position, boolean bunchStart) {
+        int leftSize = size(subtree.left);
+        if (position < leftSize) {
+            setBunchStart(subtree.left, position, bunchStart);
+        } else if (position > leftSize) {
+            setBunchStart(subtree.right, position - leftSize - 1, bunchStart);
+        } else {
+            subtree.bunchStart = bunchStart;
+        }
+        subtree.update();
+    }
+
+    /**
+     * Private method to find the node at a position.
+     *
+     * @param position The position, from 0.
+     * @return The node at this position.
+     */
+    private Node select(int position) {
+        Node node = root;
+        while (true) {
+            int leftSize = size(node.left);
+            if (position < leftSize) {
+                node = node.left;
+            } else if (position > leftSize) {
+                position -= leftSize + 1;
+                node = node.right;
+            } else {
+                return node;
+            }
+        }
+    }
+
+    /**
+     * Method to get the position of a rider in the index.
+     *
+     * @param time The rider's time, in nanoseconds.
+     * @param riderId The ID of the rider.
+     * @return The position of the rider (0 being the first), or -1 if they
+     * are not in the index.
+     */
+    public int getPosition(long time, int riderId) {
+        return getPosition(time, 0, riderId);
+    }
+
+    /**
+     * Method to get the position of a rider with a second key in the index.
+     *
+     * @param time The rider's time, in nanoseconds.
+     * @param tie The rider's second key.
+     * @param riderId The ID of the rider.
+     * @return The position of the rider (0 being the first), or -1 if they
+     * are not in the index.
+     */
+    public int getPosition(long time, long tie, int riderId) {
+        Node node = root;
+        int position = 0;
+        while (node != null) {
+            int comparison = compare(time, tie, riderId, node);
+            if (comparison < 0) {
+                node = node.left;
+            } else if (comparison > 0) {
+                position += size(node.left) + 1;
+                node = node.right;
+            } else {
+                return position + size(node.left);
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Method to count the riders in the index ranked before a time and rider
+     * ID, which is the position the rider has, or would have if added.
+     *
+     * @param time The rider's time, in nanoseconds.
+     * @param riderId The ID of the rider.
+     * @return The number of riders ranked before the rider.
+     */
+    public int countBefore(long time, int riderId) {
+        Node node = root;
+        int count = 0;
+        while (node != null) {
+            if (compare(time, 0, riderId, node) <= 0) {
+                node = node.left;
+            } else {
+                count += size(node.left) + 1;
+                node = node.right;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Method to get the ID of the rider at a position.
+     *
+     * @param position The position, from 0.
+     * @return The ID of the rider at this position.
+     */
+    public int getRiderId(int position) {
+        return select(position).riderId;
+    }
+
+    /**
+     * Method to get the time of the rider at a position.
+     *
+     * @param position The position, from 0.
+     * @return The time of the rider at this position, in nanoseconds.
+     */
+    public long getTime(int position) {
+        return select(position).time;
+    }
+
+    /**
+     * Method to get the position of the rider at the front of the bunch
+     * containing a position.
+     *
+     * @param position The position, from 0.
+     * @return The position of the first rider in the bunch.
+     */
+    public int getBunchStart(int position) {
+        // The bunch is started by the last of the bunch starts up to and
+        // including this position
+        return selectBunchStart(countBunchStarts(position + 1) - 1);
+    }
+
+    /**
+     * Method to get the position of the last rider in the bunch containing a
+     * position.
+     *
+     * @param position The position, from 0.
+     * @return The position of the last rider in the bunch.
+     */
+    public int getBunchEnd(int position) {
+        int next = countBunchStarts(position + 1);
+        return next == bunchStarts(root) ? size() - 1 : selectBunchStart(next) - 1;
+    }
+
+    /**
+     * Method to get the adjusted time of the rider at a position, which is
+     * the time of the rider at the front of their bunch.
+     *
+     * @param position The position, from 0.
+     * @return The adjusted time of the rider, in nanoseconds.
+     */
+    public long getAdjustedTime(int position) {
+        return getTime(getBunchStart(position));
+    }
+
+    /**
+     * Private method to count the riders starting a bunch among the first
+     * riders in the index.
+     *
+     * @param count The number of riders at the front of the index to look at.
+     * @return The number of them starting a bunch.
+     */
+    private int countBunchStarts(int count) {
+        Node node = root;
+        int starts = 0;
+        while (node != null && count > 0) {
+            int leftSize = size(node.left);
+            if (count <= leftSize) {
+                node = node.left;
+            } else {
+                starts += bunchStarts(node.left) + (node.bunchStart ? 1 : 0);
+                count -= leftSize + 1;
+                node = node.right;
+            }
+        }
+        return starts;
+    }
+
+    /**
+     * Private method to find the position of the nth rider starting a bunch.
+     *
+     * @param n The number of riders starting a bunch before the one wanted.
+     * @return The position of the rider.
+     */
+    private int selectBunchStart(int n) {
+        Node node = root;
+        int position = 0;
+        while (true) {
+            int leftStarts = bunchStarts(node.left);
+            if (n < leftStarts) {
+                node = node.left;
+            } else if (n == leftStarts && node.bunchStart) {
+                return position + size(node.left);
+            } else {
+                n -= leftStarts + (node.bunchStart ? 1 : 0);
+                position += size(node.left) + 1;
+                node = node.right;
+            }
+        }
+    }
+
+    /**
+     * Method to visit every rider in the index in order, along with their
+     * adjusted time, in O(n) time.
+     *
+     * @param visitor The visitor to call for each rider.
+     */
+    public void forEach(Visitor visitor) {
+        forEach(size(), visitor);
+    }
+
+    /**
+     * Method to visit the first riders in the index in order, along with
+     * their adjusted time, in O(limit + log n) time.
+     *
+     * @param limit The number of riders to visit.
+     * @param visitor The visitor to call for each rider.
+     */
+    public void forEach(int limit, Visitor visitor) {
+        visit(root, visitor, new long[] {0, limit});
+    }
+
+    /**
+     * Private method to visit the riders in a subtree in order, until the
+     * limit is reached.
+     *
+     * @param node The root of the subtree, or null.
+     * @param visitor The visitor to call for each rider.
+     * @param state Holds the time of the rider at the front of the current
+     *              bunch, and the number of riders still to be visited.
+     */
+    private static void visit(Node node, Visitor visitor, long[] state) {
+        if (node == null || state[1] <= 0) {
+            return;
+        }
+        visit(node.left, visitor, state);
+        if (state[1] <= 0) {
+            return;
+        }
+        if (node.bunchStart) {
+            state[0] = node.time;
+        }
+        visitor.visit(node.riderId, node.time, state[0]);
+        state[1]--;
+        visit(node.right, visitor, state);
+    }
+}
@@ -0,0 +1,302 @@
+package cycling;
+
+import java.util.Arrays;
+
+/**
+ * RankingKernel class.<br>
+ * Ranks riders by a primitive key without boxing them or comparing them
+ * through a comparator.<br>
+ * Each rider's key is packed together with their index into a single long,
+ * so that sorting the longs ranks the riders. Fewer than
+ * {@link #RADIX_THRESHOLD} riders are sorted with {@link Arrays#sort(long[], int, int)},
+ * and more with a radix sort, which only looks at the bits the keys
+ * actually use. Keys too far apart to share a long with the index are
+ * radix sorted alongside it instead. Riders with equal keys are put in
+ * order of a second value given for each rider, such as their ID, so the
+ * ranking never depends on the order the riders were found in. Where it
+ * fits, this tie value is packed into the long between the key and the
+ * index, so a single sort orders both; otherwise each run of equal keys is
+ * sorted by its tie values afterwards.<br>
+ * The buffers used while ranking are kept for each thread and reused, so
+ * once they are big enough ranking riders allocates nothing.
+ *
+ * @author Joey Griffiths and Alexander Cairns
+ *
+ */
+final class RankingKernel {
+
+    /**
+     * The number of riders from which a radix sort is used rather than
+     * {@link Arrays#sort(long[], int, int)}.
+     */
+    static final int RADIX_THRESHOLD = 10000;
+
+    /**
+     * The number of bits of the keys sorted in each pass of the radix sort.
+     */
+    private static final int RADIX_BITS = 8;
+
+    /**
+     * The number of buckets in each pass of the radix sort.
+     */
+    private static final int RADIX = 1 << RADIX_BITS;
+
+    /**
+     * The length of a run of equal keys above which it is ordered by tie
+     * value with {@link Arrays#sort(long[], int, int)} rather than by
+     * insertion.
+     */
+    private static final int INSERTION_RUN_LIMIT = 32;
+
+    /**
+     * The buffers of each thread, so that threads ranking riders at once do
+     * not share them.
+     */
+    private static final ThreadLocal<RankingKernel> BUFFERS = ThreadLocal.withInitial(RankingKernel::new);
+
+    /**
+     * The keys being ranked, packed together with the index of their rider
+     * where they fit.
+     */
+    private long[] keys = new long[0];
+
+    /**
+     * The keys being moved by the current pass of the radix sort.
+     */
+    private long[] keyBuffer = new long[0];
+
+    /**
+     * The index of the rider of each key, when the keys do not fit together
+     * with them.
+     */
+    private int[] indexes = new int[0];
+
+    /**
+     * The indexes being moved by the current pass of the radix sort.
+     */
+    private int[] indexBuffer = new int[0];
+
+    /**
+     * The number of keys in each bucket of the current pass of the radix
+     * sort, then the position of the next key in each bucket.
+     */
+    private final int[] counts = new int[RADIX];
+
+    /**
+     * Private constructor, as the buffers are only created for each thread.
+     */
+    private RankingKernel() {
+    }
+
+    /**
+     * Method to rank riders by a key of type long.
+     *
+     * @param keys The key of each rider, indexed from 0 to n-1.
+     * @param ties A value for each rider used to order riders with equal
+     *             keys, lowest first, or null to order them by index.
+     * @param n The number of riders.
+     * @param descending Whether riders with the highest key rank first,
+     *                   rather than those with the lowest.
+     * @param order Filled with the indexes of the riders, in order of rank.
+     */
+    static void rank(long[] keys, int[] ties, int n, boolean descending, int[] order) {
+        RankingKernel kernel = BUFFERS.get();
+        kernel.ensureCapacity(n);
+        for (int i=0; i<n; i++) {
+            // Inverting every bit reverses the order of the keys without overflowing
+            kernel.keys[i] = descending ? ~keys[i] : keys[i];
+        }
+        kernel.sort(ties, n, order);
+    }
+
+    /**
+     * Method to rank riders by a key of type int.
+     *
+     * @param keys The key of each rider, indexed from 0 to n-1.
+     * @param ties A value for each rider used to order riders with equal
+     *             keys, lowest first, or null to order them by index.
+     * @param n The number of riders.
+     * @param descending Whether riders with the highest key rank first,
+     *                   rather than those with the lowest.
+     * @param order Filled with the indexes of the riders, in order of rank.
+     */
+    static void rank(int[] keys, int[] ties, int n, boolean descending, int[] order) {
+        RankingKernel kernel = BUFFERS.get();
+        kernel.ensureCapacity(n);
+        for (int i=0; i<n; i++) {
+            kernel.keys[i] = descending ? ~(long) keys[i] : keys[i];
+        }
+        kernel.sort(ties, n, order);
+    }
+
+    /**
+     * Private method to make sure the buffers can hold a number of keys.
+     *
+     * @param n The number of keys.
+     */
+    private void ensureCapacity(int n) {
+        if (keys.length < n) {
+            keys = new long[n];
+            keyBuffer = new long[n];
+            indexes = new int[n];
+            indexBuffer = new int[n];
+        }
+    }
+
+    /**
+     * Private method to rank the keys held in 'keys'.
+     *
+     * @param ties A value for each rider used to order riders with equal
+     *             keys, or null to order them by index.
+     * @param n The number of keys.
+     * @param order Filled with the indexes of the riders, in order of rank.
+     */
+    private void sort(int[] ties, int n, int[] order) {
+        if (n == 0) {
+            return;
+        }
+        // Keys are stored relative to the lowest, so only the bits they differ in are sorted
+        long min = keys[0];
+        long max = keys[0];
+        for (int i=1; i<n; i++) {
+            min = Math.min(min, keys[i]);
+            max = Math.max(max, keys[i]);
+        }
+        int keyBits = 64 - Long.numberOfLeadingZeros(max - min);
+        int indexBits = 32 - Integer.numberOfLeadingZeros(n - 1);
+
+        // Tie values are likewise stored relative to the lowest
+        long tieMin = 0;
+        int tieBits = 0;
+        if (ties != null) {
+            long tieMax = ties[0];
+            tieMin = ties[0];
+            for (int i=1; i<n; i++) {
+                tieMin = Math.min(tieMin, ties[i]);
+                tieMax = Math.max(tieMax, ties[i]);
+            }
+            tieBits = 64 - Long.numberOfLeadingZeros(tieMax - tieMin);
+        }
+        boolean tiesPacked = ties != null && keyBits + tieBits + indexBits <= 63;
+        int packedBits = keyBits + (tiesPacked ? tieBits : 0) + indexBits;
+
+        if (packedBits <= 63) {
+            // Each key is packed above its tie value, where it fits, and its index, so
+            // sorting the longs sorts the riders
+            for (int i=0; i<n; i++) {
+                long packed = keys[i] - min;
+                if (tiesPacked) {
+                    packed = packed << tieBits | (ties[i] - tieMin);
+                }
+                keys[i] = packed << indexBits | i;
+            }
+            if (n < RADIX_THRESHOLD) {
+                Arrays.sort(keys, 0, n);
+            } else {
+                radixSort(n, packedBits, false);
+            }
+            long indexMask = (1L << indexBits) - 1;
+            for (int i=0; i<n; i++) {
+                order[i] = (int) (keys[i] & indexMask);
+                // The index is dropped, leaving the key to find riders with equal keys
+                keys[i] >>>= indexBits;
+            }
+        } else {
+            // The keys are too far apart to share a long with the index, so the
+            // indexes are moved alongside them
+            for (int i=0; i<n; i++) {
+                keys[i] -= min;
+                indexes[i] = i;
+            }
+            radixSort(n, keyBits, true);
+            System.arraycopy(indexes, 0, order, 0, n);
+        }
+        if (ties != null && !tiesPacked) {
+            breakTies(ties, n, order);
+        }
+    }
+
+    /**
+     * Private method to sort the keys held in 'keys' as unsigned numbers,
+     * keeping keys which are equal in the order they were in.
+     *
+     * @param n The number of keys.
+     * @param bits The number of low bits the keys can differ in.
+     * @param withIndexes Whether 'indexes' is to be moved alongside the keys.
+     */
+    private void radixSort(int n, int bits, boolean withIndexes) {
+        for (int shift=0; shift<bits; shift+=RADIX_BITS) {
+            Arrays.fill(counts, 0);
+            for (int i=0; i<n; i++) {
+                counts[(int) (keys[i] >>> shift) & (RADIX - 1)]++;
+            }
+            // Each bucket's count becomes the position of its first key
+            int position = 0;
+            for (int bucket=0; bucket<RADIX; bucket++) {
+                int count = counts[bucket];
+                counts[bucket] = position;
+                position += count;
+            }
+            for (int i=0; i<n; i++) {
+                int target = counts[(int) (keys[i] >>> shift) & (RADIX - 1)]++;
+                keyBuffer[target] = keys[i];
+                if (withIndexes) {
+                    indexBuffer[target] = indexes[i];
+                }
+            }
+            // The buffers are swapped rather than copied back after each pass
+            long[] swappedKeys = keys;
+            keys = keyBuffer;
+            keyBuffer = swappedKeys;
+            if (withIndexes) {
+                int[] swappedIndexes = indexes;
+                indexes = indexBuffer;
+                indexBuffer = swappedIndexes;
+            }
+        }
+    }
+
+    /**
+     * Private method to order each run of riders with equal keys by their
+     * tie values, then by index.<br>
+     * Short runs are sorted by insertion. Longer runs, such as the many
+     * riders without any points, have each rider's tie value packed above
+     * their index and sorted as longs, in 'keyBuffer', which is free once
+     * the keys are sorted.
+     *
+     * @param ties The tie value of each rider.
+     * @param n The number of riders.
+     * @param order The indexes of the riders, sorted by key, whose sorted
+     *              keys are held in 'keys'.
+     */
+    private void breakTies(int[] ties, int n, int[] order) {
+        int start = 0;
+        while (start < n) {
+            int end = start + 1;
+            while (end < n && keys[end] == keys[start]) {
+                end++;
+            }
+            if (end - start > INSERTION_RUN_LIMIT) {
+                // The tie value fills the high half of the long, so sorts with its sign
+                for (int i=start; i<end; i++) {
+                    keyBuffer[i] = (long) ties[order[i]] << 32 | order[i];
+                }
+                Arrays.sort(keyBuffer, start, end);
+                for (int i=start; i<end; i++) {
+                    order[i] = (int) keyBuffer[i];
+                }
+            } else {
+                for (int i=start+1; i<end; i++) {
+                    int index = order[i];
+                    int j = i - 1;
+                    while (j >= start && ties[order[j]] > ties[index]) {
+                        order[j+1] = order[j];
+                        j--;
+                    }
+                    order[j+1] = index;
+                }
+            }
+            start = end;
+        }
+    }
+}
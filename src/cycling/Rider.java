@@ -1,6 +1,6 @@
 package cycling;
 
-import java.util.ArrayList;
+import java.util.concurrent.ConcurrentHashMap;
 import java.io.Serializable;
 
 /**
@@ -12,13 +12,6 @@ import java.io.Serializable;
  */
 class Rider implements Serializable {
 
-    /**
-     * The number of instances of Rider, automatically incremented when the
-     * constructor is called.<br>
-     * Used for allocation of IDs.
-     */
-    private static int noOfRiders = 0;
-
     /**
      * The ID of the Rider.
      */
@@ -35,30 +28,35 @@ class Rider implements Serializable {
     private final int yearOfBirth;
 
     /**
-     * The ArrayList of StageResult objects that the rider contains.
+     * Maps the ID of each stage the rider has a result in to the
+     * StageResult object for that stage.<br>
+     * A concurrent map, as results in different stages may be registered at
+     * the same time.
+     */
+    private ConcurrentHashMap<Integer, StageResult> results = new ConcurrentHashMap<>();
+
+    /**
+     * Maps the ID of each stage the rider is still on the course in, having
+     * reached some of its checkpoints but not the finish, to the Stage
+     * object.<br>
+     * Kept so that the rider's checkpoints can be discarded when they are
+     * removed, without searching every stage.
      */
-    private ArrayList<StageResult> results = new ArrayList<>();
+    private ConcurrentHashMap<Integer, Stage> stagesOnCourse = new ConcurrentHashMap<>();
 
     /**
      * Rider class constructor.<br>
-     * Assigns a name, year of birth and automatically assigns an ID using
-     * the number of instances of rider.
+     * Assigns an ID allocated by the portal's {@link IdAllocator}, a name
+     * and a year of birth.
      *
+     * @param id The ID of the rider.
      * @param name The name of the rider.
      * @param yearOfBirth The year of birth of the rider.
      */
-    Rider(String name, int yearOfBirth) {
+    Rider(int id, String name, int yearOfBirth) {
         this.name = name;
         this.yearOfBirth = yearOfBirth;
-        id = noOfRiders++;
-    }
-
-    /**
-     * Method to reset the static variable noOfRiders.<br>
-     * Used to reset the CyclingPortal so that IDs start from 0 again.
-     */
-    public static void resetNoOfRiders() {
-        noOfRiders = 0;
+        this.id = id;
     }
 
     /**
@@ -89,35 +87,77 @@ class Rider implements Serializable {
     }
 
     /**
-     * Method to add a StageResult object to the 'results' ArrayList.
+     * Method to add a StageResult object to the 'results' map, keyed by
+     * the ID of the result's stage.
      *
      * @param result StageResult object representing the result that the
      *               rider achieved in a stage.
      */
     public void addResult(StageResult result) {
-        results.add(result);
+        results.put(result.getStage().getId(), result);
     }
 
     /**
-     * Method to remove a StageResult object from the 'results' ArrayList.
+     * Method to remove a StageResult object from the 'results' map.
      *
      * @param result StageResult object representing the result that the
      *               rider achieved in a stage.
      */
     public void removeResult(StageResult result) {
-        results.remove(result);
+        results.remove(result.getStage().getId());
+    }
+
+    /**
+     * Method to get the rider's StageResult object for a particular stage.
+     *
+     * @param stageId The ID of the stage the result refers to.
+     * @return The StageResult object for the stage, or null if the rider has
+     * no result in the stage.
+     */
+    public StageResult getResult(int stageId) {
+        return results.get(stageId);
+    }
+
+    /**
+     * Method to note that the rider has started a stage, and is on the
+     * course until they finish it or their checkpoints are discarded.
+     *
+     * @param stage The Stage object the rider has started.
+     */
+    public void addStageOnCourse(Stage stage) {
+        stagesOnCourse.put(stage.getId(), stage);
+    }
+
+    /**
+     * Method to note that the rider is no longer on the course in a stage.
+     *
+     * @param stage The Stage object the rider has finished, or whose
+     *              checkpoints for the rider have been discarded.
+     */
+    public void removeStageOnCourse(Stage stage) {
+        stagesOnCourse.remove(stage.getId());
+    }
+
+    /**
+     * Method to get the stages the rider is still on the course in.
+     *
+     * @return An array of the Stage objects the rider has reached some of
+     * the checkpoints of, but not the finish.
+     */
+    public Stage[] getStagesOnCourse() {
+        return stagesOnCourse.values().toArray(new Stage[0]);
     }
 
     /**
      * Method to get an array of all the StageResult objects stored in the
-     * 'results' ArrayList.
+     * 'results' map.
      *
      * @return An array of StageResult objects stored in the 'results'
-     * ArrayList.
+     * map.
      */
     public StageResult[] getResults() {
         StageResult[] resultArr = new StageResult[results.size()];
-        resultArr = results.toArray(resultArr);
+        resultArr = results.values().toArray(resultArr);
         return resultArr;
     }
 }
@@ -11,13 +11,6 @@ import java.io.Serializable;
  */
 class Segment implements Serializable {
 
-    /**
-     * The number of instances of Segment, automatically incremented when the
-     * constructor is called.<br>
-     * Used for allocation of IDs.
-     */
-    private static int noOfSegments = 0;
-
     /**
      * The ID of the segment.
      */
@@ -47,42 +40,35 @@ class Segment implements Serializable {
 
     /**
      * Segment class constructor.<br>
-     * Assigns a location, a type, an average gradient, a length, and an
-     * automatic ID using the number of instances of Segment.
+     * Assigns an ID allocated by the portal's {@link IdAllocator}, a
+     * location, a type, an average gradient and a length.
      *
+     * @param id The ID of the segment.
      * @param location The location of the segment in the stage.
      * @param type The type that this segment is.
      * @param averageGradient The average gradient of the segment.
      * @param length The length of the segment.
      */
-    Segment(double location, SegmentType type, double averageGradient, double length) {
+    Segment(int id, double location, SegmentType type, double averageGradient, double length) {
         this.location = location;
         this.type = type;
         this.averageGradient = averageGradient;
         this.length = length;
-        id = noOfSegments++;
+        this.id = id;
     }
 
     /**
      * Segment class constructor.<br>
-     * Assigns a location, a type, and an automatic ID using the number of
-     * instances of Segment.
+     * Assigns an ID allocated by the portal's {@link IdAllocator}, a
+     * location and a type, for a segment with no gradient or length such as
+     * an intermediate sprint.
      *
+     * @param id The ID of the segment.
      * @param location The location of the segment in the stage.
      * @param type The type that this segment is.
      */
-    Segment(double location, SegmentType type) {
-        this.location = location;
-        this.type = type;
-        id = noOfSegments++;
-    }
-
-    /**
-     * Method to reset the static variable noOfSegments.<br>
-     * Used to reset the CyclingPortal so that IDs start from 0 again.
-     */
-    public static void resetNoOfSegments() {
-        noOfSegments = 0;
+    Segment(int id, double location, SegmentType type) {
+        this(id, location, type, 0, 0);
     }
 
     /**
@@ -0,0 +1,227 @@
+package cycling;
+
+import java.util.HashMap;
+
+/**
+ * SegmentArrivals class.<br>
+ * Holds the order in which riders reached each segment of a stage, along
+ * with the checkpoints of riders who are still on the course.<br>
+ * Each segment has a {@link RankIndex} of the riders who have reached it,
+ * ordered by the time taken to reach it from their start, with ties broken
+ * by rider ID. Riders are added to a segment's order as soon as they reach
+ * it, whether their result is complete or not, so the segment can be ranked
+ * while the stage is still being ridden.
+ *
+ * @author Joey Griffiths and Alexander Cairns
+ *
+ */
+final class SegmentArrivals {
+
+    /**
+     * The checkpoints a rider has reached so far in a stage they have not
+     * yet finished.
+     */
+    static final class Partial {
+
+        /**
+         * The time the rider started the stage, in nanoseconds since
+         * midnight.
+         */
+        private final long start;
+
+        /**
+         * The time taken to reach each checkpoint from the start, in
+         * nanoseconds, filled in as each is reached.
+         */
+        private final long[] splits;
+
+        /**
+         * The number of checkpoints reached so far.
+         */
+        private int reached = 1;
+
+        /**
+         * Partial class constructor.
+         *
+         * @param start The time the rider started the stage.
+         * @param noOfCheckpoints The number of checkpoints in the stage.
+         */
+        private Partial(long start, int noOfCheckpoints) {
+            this.start = start;
+            splits = new long[noOfCheckpoints];
+        }
+
+        /**
+         * Method to get the time the rider started the stage.
+         *
+         * @return The start time, in nanoseconds since midnight.
+         */
+        public long getStart() {
+            return start;
+        }
+
+        /**
+         * Method to get the time taken to reach each checkpoint.
+         *
+         * @return The splits of the rider, in nanoseconds, with 0 for each
+         * checkpoint not yet reached.
+         */
+        public long[] getSplits() {
+            return splits;
+        }
+    }
+
+    /**
+     * The order in which riders reached each segment, indexed by the
+     * segment's position in the stage.
+     */
+    private final RankIndex[] orders;
+
+    /**
+     * Maps the ID of each rider on the course to the checkpoints they have
+     * reached.
+     */
+    private final HashMap<Integer, Partial> partials = new HashMap<>();
+
+    /**
+     * SegmentArrivals class constructor.<br>
+     * Orders the riders with a complete result in a stage at each of its
+     * segments.
+     *
+     * @param store The results of the stage.
+     * @param noOfSegments The number of segments in the stage.
+     */
+    SegmentArrivals(StageResultStore store, int noOfSegments) {
+        orders = new RankIndex[noOfSegments];
+        for (int s=0; s<noOfSegments; s++) {
+            orders[s] = new RankIndex(0);
+            for (int row=0; row<store.size(); row++) {
+                orders[s].insert(store.getSplitNanos(row, s+1), store.getRiderId(row));
+            }
+        }
+    }
+
+    /**
+     * Method to add a complete result to the order of each segment.
+     *
+     * @param riderId The ID of the rider the result belongs to.
+     * @param splits The time taken to reach each checkpoint, in nanoseconds.
+     */
+    public void addResult(int riderId, long[] splits) {
+        for (int s=0; s<orders.length; s++) {
+            orders[s].insert(splits[s+1], riderId);
+        }
+    }
+
+    /**
+     * Method to remove a complete result from the order of each segment.
+     *
+     * @param riderId The ID of the rider the result belongs to.
+     * @param splits The time taken to reach each checkpoint, in nanoseconds.
+     */
+    public void removeResult(int riderId, long[] splits) {
+        for (int s=0; s<orders.length; s++) {
+            orders[s].remove(splits[s+1], riderId);
+        }
+    }
+
+    /**
+     * Method to get the number of checkpoints a rider on the course has
+     * reached.
+     *
+     * @param riderId The ID of the rider.
+     * @return The number of checkpoints reached, or 0 if the rider has not
+     * started.
+     */
+    public int getNoOfCheckpointsReached(int riderId) {
+        Partial partial = partials.get(riderId);
+        return partial == null ? 0 : partial.reached;
+    }
+
+    /**
+     * Method to record a rider reaching their next checkpoint, adding them
+     * to the order of the segment at that checkpoint.
+     *
+     * @param riderId The ID of the rider.
+     * @param checkpoint The index of the checkpoint, which must be the next
+     *                   one the rider has not reached, and not the finish.
+     * @param time The time the checkpoint was reached, in nanoseconds since
+     *             midnight.
+     */
+    public void addCheckpoint(int riderId, int checkpoint, long time) {
+        if (checkpoint == 0) {
+            partials.put(riderId, new Partial(time, orders.length + 2));
+            return;
+        }
+        Partial partial = partials.get(riderId);
+        partial.splits[checkpoint] = Timing.between(partial.start, time);
+        partial.reached++;
+        orders[checkpoint-1].insert(partial.splits[checkpoint], riderId);
+    }
+
+    /**
+     * Method to get the riders still on the course.
+     *
+     * @return The IDs of the riders who have reached some checkpoints but
+     * not the finish.
+     */
+    public int[] getRidersOnCourse() {
+        int[] riderIds = new int[partials.size()];
+        int i = 0;
+        for (int riderId : partials.keySet()) {
+            riderIds[i++] = riderId;
+        }
+        return riderIds;
+    }
+
+    /**
+     * Method to get the checkpoints of a rider on the course.
+     *
+     * @param riderId The ID of the rider.
+     * @return The checkpoints the rider has reached, or null if they have
+     * not started.
+     */
+    public Partial getPartial(int riderId) {
+        return partials.get(riderId);
+    }
+
+    /**
+     * Method to stop tracking a rider on the course once they have
+     * finished, leaving them in the order of each segment, where they stay
+     * as part of their complete result.
+     *
+     * @param riderId The ID of the rider.
+     * @return The checkpoints the rider reached.
+     */
+    public Partial finish(int riderId) {
+        return partials.remove(riderId);
+    }
+
+    /**
+     * Method to discard the checkpoints of a rider on the course, removing
+     * them from the order of each segment they reached.
+     *
+     * @param riderId The ID of the rider.
+     * @return true if the rider was on the course, false otherwise.
+     */
+    public boolean discard(int riderId) {
+        Partial partial = partials.remove(riderId);
+        if (partial == null) {
+            return false;
+        }
+        for (int checkpoint=1; checkpoint<partial.reached; checkpoint++) {
+            orders[checkpoint-1].remove(partial.splits[checkpoint], riderId);
+        }
+        return true;
+    }
+
+    /**
+     * Method to get the order in which riders reached a segment.
+     *
+     * @param segment The position of the segment in the stage.
+     * @return A RankIndex of the riders who have reached the segment.
+     */
+    public RankIndex getOrder(int segment) {
+        return orders[segment];
+    }
+}
@@ -1,6 +1,7 @@
 package cycling;
 
 import java.time.LocalDateTime;
+import java.time.LocalTime;
 import java.util.ArrayList;
 import java.io.Serializable;
 
@@ -13,13 +14,6 @@ import java.io.Serializable;
  */
 class Stage implements Serializable {
 
-    /**
-     * The number of instances of Stage, automatically incremented when the
-     * constructor is called.<br>
-     * Used for allocation of IDs.
-     */
-    private static int noOfStages = 0;
-
     /**
      * The ID of the stage.
      */
@@ -61,33 +55,68 @@ class Stage implements Serializable {
      */
     private boolean prepared = false;
 
+    /**
+     * The results of every rider in the stage, stored in columns.
+     */
+    private StageResultStore results = new StageResultStore();
+
+    /**
+     * The modification counter of the stage, incremented whenever its
+     * results or segments change.<br>
+     * Used to tell whether a cached ranking of the stage is still valid.
+     */
+    private int version = 0;
+
+    /**
+     * The most recently computed ranking of the stage, or null if it has not
+     * been ranked since being loaded.<br>
+     * Volatile, as several readers of the stage may rank it at once.
+     */
+    private transient volatile StageRanking ranking;
+
+    /**
+     * An index of the riders in the stage ordered by elapsed time, kept up to
+     * date as results are added and removed, or null if it has not been
+     * needed since the stage was loaded.<br>
+     * Volatile, as several readers of a loaded stage may build it at once.
+     */
+    private transient volatile RankIndex standings = new RankIndex(StageRanking.BUNCH_GAP_NANOS);
+
+    /**
+     * The order in which riders reached each segment, along with the
+     * checkpoints of riders still on the course, or null if neither has been
+     * needed since the stage was created or loaded.<br>
+     * Riders' checkpoints are not saved with the stage, so a rider who has
+     * not finished when the portal is saved must be registered again.
+     */
+    private transient volatile SegmentArrivals arrivals;
+
+    /**
+     * The checkpoint and mountain points column of each climb in the stage,
+     * or null if they have not been needed since the segments last changed.
+     */
+    private transient volatile int[][] climbs;
+
     /**
      * Stage class constructor.<br>
-     * Assigns a name, a description, a length, a start time, a type and an
-     * automatic ID using the number of instances of stage.
+     * Assigns an ID allocated by the portal's {@link IdAllocator}, a name, a
+     * description, a length, a start time and a type.
      *
+     * @param id The ID of the stage.
      * @param name The name of the stage.
      * @param description The description of the stage.
      * @param length The length of the stage.
      * @param startTime The start time of the stage.
      * @param type The stage's type.
      */
-    Stage(String name, String description, double length,
+    Stage(int id, String name, String description, double length,
           LocalDateTime startTime, StageType type) {
         this.name = name;
         this.description = description;
         this.length = length;
         this.startTime = startTime;
         this.type = type;
-        id = noOfStages++;
-    }
-
-    /**
-     * Resets the static variable noOfStages.<br>
-     * Used to reset the CyclingPortal so that IDs start from 0 again.
-     */
-    public static void resetNoOfStages() {
-        noOfStages = 0;
+        this.id = id;
     }
 
     /**
@@ -167,12 +196,18 @@ class Stage implements Serializable {
                 // Checks all segments and if the segment to add is not further in the stage,
                 // the segment is added behind this segment in the list
                 segments.add(i, segmentToAdd);
+                version++;
+                arrivals = null;
+                climbs = null;
                 return;
             }
             i++;
         }
         // If the segment to add is the furthest in the stage, it is added to the end
         segments.add(segmentToAdd);
+        version++;
+        arrivals = null;
+        climbs = null;
     }
 
     /**
@@ -182,6 +217,9 @@ class Stage implements Serializable {
      */
     public void removeSegment(Segment segment) {
         segments.remove(segment);
+        version++;
+        arrivals = null;
+        climbs = null;
     }
 
     /**
@@ -195,6 +233,353 @@ class Stage implements Serializable {
         return segmentArr;
     }
 
+    /**
+     * Method to get the number of segments in the stage, without copying
+     * them into an array.
+     *
+     * @return The number of segments in the stage.
+     */
+    public int getNoOfSegments() {
+        return segments.size();
+    }
+
+    /**
+     * Method to get a table of the climbs in the stage, in the order they
+     * are reached.<br>
+     * Each row holds the index of the climb's checkpoint (from 1) followed
+     * by the column of its category in the mountain points table, which
+     * runs from C4 to HC. The table is built once and reused until the
+     * stage's segments change.
+     *
+     * @return A 2D array of {checkpoint, column} for each climb.
+     */
+    public int[][] getClimbs() {
+        int[][] table = climbs;
+        if (table == null) {
+            ArrayList<int[]> rows = new ArrayList<>();
+            for (int i=0; i<segments.size(); i++) {
+                SegmentType type = segments.get(i).getType();
+                if (type != SegmentType.SPRINT) {
+                    // The categories follow SPRINT in SegmentType, from C4 to HC
+                    rows.add(new int[] {i+1, type.ordinal()-1});
+                }
+            }
+            table = rows.toArray(new int[0][]);
+            climbs = table;
+        }
+        return table;
+    }
+
+    /**
+     * Method to add a rider's result to the stage.
+     *
+     * @param riderId The ID of the rider the result belongs to.
+     * @param resultId The ID allocated to the result.
+     * @param checkpoints The times the rider reached each checkpoint in the
+     *                    stage.
+     * @return A StageResult object representing the rider's result in the
+     * stage.
+     */
+    public StageResult addResult(int riderId, int resultId, LocalTime... checkpoints) {
+        // Checkpoints are stored as the time taken to reach them from the start
+        long start = Timing.toNanos(checkpoints[0]);
+        long[] splits = new long[checkpoints.length];
+        for (int i=1; i<checkpoints.length; i++) {
+            splits[i] = Timing.between(start, Timing.toNanos(checkpoints[i]));
+        }
+        results.add(riderId, resultId, start, splits);
+        if (standings != null) {
+            standings.insert(splits[splits.length-1], riderId);
+        }
+        if (arrivals != null) {
+            arrivals.addResult(riderId, splits);
+        }
+        version++;
+        return new StageResult(this, riderId);
+    }
+
+    /**
+     * Method to add a batch of results to the stage, which have already been
+     * validated.<br>
+     * The stage's version is only changed once, so any cached ranking is
+     * invalidated once for the whole batch.
+     *
+     * @param riderIds The ID of the rider each result belongs to.
+     * @param resultIds The ID allocated to each result.
+     * @param checkpoints The times each rider reached each checkpoint in the
+     *                    stage, in nanoseconds since midnight.
+     * @param count The number of results in the batch, which may be fewer
+     *              than the length of the arrays.
+     */
+    public void addResults(int[] riderIds, int[] resultIds, long[][] checkpoints, int count) {
+        results.ensureCapacity(results.size() + count);
+        for (int r=0; r<count; r++) {
+            // Checkpoints are stored as the time taken to reach them from the start
+            long[] times = checkpoints[r];
+            long start = times[0];
+            long[] splits = new long[times.length];
+            for (int i=1; i<times.length; i++) {
+                splits[i] = Timing.between(start, times[i]);
+            }
+            results.add(riderIds[r], resultIds[r], start, splits);
+            if (standings != null) {
+                standings.insert(splits[splits.length-1], riderIds[r]);
+            }
+            if (arrivals != null) {
+                arrivals.addResult(riderIds[r], splits);
+            }
+        }
+        version++;
+    }
+
+    /**
+     * Method to add a result read from a snapshot to the stage, without
+     * changing the stage's version.
+     *
+     * @param riderId The ID of the rider the result belongs to.
+     * @param resultId The ID of the result.
+     * @param start The time the rider started the stage, in nanoseconds since
+     *              midnight.
+     * @param splits The time taken to reach each checkpoint from the start,
+     *               in nanoseconds.
+     */
+    public void restoreResult(int riderId, int resultId, long start, long[] splits) {
+        results.add(riderId, resultId, start, splits);
+        if (standings != null) {
+            standings.insert(splits[splits.length-1], riderId);
+        }
+        if (arrivals != null) {
+            arrivals.addResult(riderId, splits);
+        }
+    }
+
+    /**
+     * Method to remove a rider's result from the stage.
+     *
+     * @param riderId The ID of the rider whose result is to be removed.
+     * @return true if a result was removed, false if the rider had no result
+     * in the stage.
+     */
+    public boolean removeResult(int riderId) {
+        int row = results.getRow(riderId);
+        if (standings != null && row != -1) {
+            standings.remove(getElapsedNanos(riderId), riderId);
+        }
+        if (arrivals != null && row != -1) {
+            long[] splits = new long[results.getWidth()];
+            for (int i=1; i<splits.length; i++) {
+                splits[i] = results.getSplitNanos(row, i);
+            }
+            arrivals.removeResult(riderId, splits);
+        }
+        version++;
+        return results.remove(riderId);
+    }
+
+    /**
+     * Method to get the order in which riders reached each segment of the
+     * stage, building it from the stage's results the first time it is
+     * needed.
+     *
+     * @return The SegmentArrivals object of the stage.
+     */
+    public SegmentArrivals getArrivals() {
+        SegmentArrivals current = arrivals;
+        if (current == null) {
+            current = new SegmentArrivals(results, segments.size());
+            arrivals = current;
+        }
+        return current;
+    }
+
+    /**
+     * Method to get the number of checkpoints a rider still on the course
+     * has reached.
+     *
+     * @param riderId The ID of the rider in question.
+     * @return The number of checkpoints reached, or 0 if the rider has not
+     * started the stage or has already finished it.
+     */
+    public int getNoOfCheckpointsReached(int riderId) {
+        SegmentArrivals current = arrivals;
+        return current == null ? 0 : current.getNoOfCheckpointsReached(riderId);
+    }
+
+    /**
+     * Method to record a rider still on the course reaching their next
+     * checkpoint, other than the finish.<br>
+     * The stage's version is not changed, as its results are not.
+     *
+     * @param riderId The ID of the rider.
+     * @param checkpoint The index of the checkpoint reached, which has been
+     *                   validated as the next one the rider has not reached.
+     * @param time The time the checkpoint was reached.
+     */
+    public void addCheckpoint(int riderId, int checkpoint, LocalTime time) {
+        getArrivals().addCheckpoint(riderId, checkpoint, Timing.toNanos(time));
+    }
+
+    /**
+     * Method to add the result of a rider reaching the finish, made up of
+     * the checkpoints they have already reached, which are kept as they are
+     * rather than being worked out again.
+     *
+     * @param riderId The ID of the rider, who has reached every other
+     *                checkpoint.
+     * @param resultId The ID allocated to the result.
+     * @param finish The time the rider reached the finish.
+     * @return A StageResult object representing the rider's result in the
+     * stage.
+     */
+    public StageResult finishResult(int riderId, int resultId, LocalTime finish) {
+        SegmentArrivals.Partial partial = arrivals.finish(riderId);
+        long[] splits = partial.getSplits();
+        splits[splits.length-1] = Timing.between(partial.getStart(), Timing.toNanos(finish));
+        results.add(riderId, resultId, partial.getStart(), splits);
+        if (standings != null) {
+            standings.insert(splits[splits.length-1], riderId);
+        }
+        version++;
+        return new StageResult(this, riderId);
+    }
+
+    /**
+     * Method to discard the checkpoints of a rider still on the course.
+     *
+     * @param riderId The ID of the rider.
+     * @return true if the rider had reached any checkpoints, false otherwise.
+     */
+    public boolean removeCheckpoints(int riderId) {
+        SegmentArrivals current = arrivals;
+        return current != null && current.discard(riderId);
+    }
+
+    /**
+     * Method to get the riders still on the course in the stage.
+     *
+     * @return The IDs of the riders who have reached some checkpoints but
+     * not the finish.
+     */
+    public int[] getRidersOnCourse() {
+        SegmentArrivals current = arrivals;
+        return current == null ? new int[0] : current.getRidersOnCourse();
+    }
+
+    /**
+     * Method to check whether a rider has a result in the stage.
+     *
+     * @param riderId The ID of the rider in question.
+     * @return true if the rider has a result in the stage.
+     */
+    public boolean hasResult(int riderId) {
+        return results.getRow(riderId) != -1;
+    }
+
+    /**
+     * Method to get the elapsed time of a rider in the stage, which is the
+     * time taken to reach the final checkpoint.
+     *
+     * @param riderId The ID of a rider with a result in the stage.
+     * @return The rider's elapsed time, in nanoseconds.
+     */
+    public long getElapsedNanos(int riderId) {
+        return results.getSplitNanos(results.getRow(riderId), results.getWidth()-1);
+    }
+
+    /**
+     * Method to get an index of the riders in the stage ordered by elapsed
+     * time.<br>
+     * The index is updated as each result is added or removed, rather than
+     * being rebuilt. It is not saved with the stage, so a loaded stage
+     * builds it from its results the first time it is needed.
+     *
+     * @return The RankIndex of the stage.
+     */
+    public RankIndex getStandings() {
+        RankIndex index = standings;
+        if (index == null) {
+            index = new RankIndex(StageRanking.BUNCH_GAP_NANOS);
+            for (int row=0; row<results.size(); row++) {
+                index.insert(results.getSplitNanos(row, results.getWidth()-1), results.getRiderId(row));
+            }
+            standings = index;
+        }
+        return index;
+    }
+
+    /**
+     * Method to get a rider's StageResult object in the stage.
+     *
+     * @param riderId The ID of the rider whose result is to be found.
+     * @return A StageResult object viewing the rider's result, or null if
+     * the rider has no result in the stage.
+     */
+    public StageResult getResult(int riderId) {
+        if (results.getRow(riderId) == -1) {
+            return null;
+        }
+        return new StageResult(this, riderId);
+    }
+
+    /**
+     * Method to get the IDs of every rider with a result in the stage.
+     *
+     * @return An array of rider IDs.
+     */
+    public int[] getRiderIds() {
+        return results.getRiderIds();
+    }
+
+    /**
+     * Method to get the number of riders with a result in the stage.
+     *
+     * @return The number of results registered in the stage.
+     */
+    public int getNoOfResults() {
+        return results.size();
+    }
+
+    /**
+     * Method to get the store holding every result in the stage.
+     *
+     * @return The stage's StageResultStore object.
+     */
+    public StageResultStore getResultStore() {
+        return results;
+    }
+
+    /**
+     * Method to get the modification counter of the stage.
+     *
+     * @return The number of times the stage's results or segments have
+     * changed.
+     */
+    public int getVersion() {
+        return version;
+    }
+
+    /**
+     * Method to get the cached ranking of the stage, if it is still valid.
+     *
+     * @return The cached StageRanking object, or null if the stage has not
+     * been ranked or has been modified since it was last ranked.
+     */
+    public StageRanking getCachedRanking() {
+        if (ranking != null && ranking.getVersion() == version) {
+            return ranking;
+        }
+        return null;
+    }
+
+    /**
+     * Method to cache a ranking of the stage.
+     *
+     * @param ranking The StageRanking object computed for the stage.
+     */
+    public void cacheRanking(StageRanking ranking) {
+        this.ranking = ranking;
+    }
+
     /**
      * Method to set the status of the stage to prepared.
      */
@@ -0,0 +1,260 @@
+package cycling;
+
+import java.time.LocalTime;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * StageRanking class.<br>
+ * Represents the classification of every rider with a result in a stage,
+ * read in a single pass from the stage's {@link RankIndex}, which keeps the
+ * riders ordered by elapsed time and marks where each bunch starts as
+ * results are registered and deleted, so no sorting is needed.<br>
+ * A ranking is stamped with the version of the stage it was computed from,
+ * so that it can be cached on the stage until the stage is next modified.
+ *
+ * @author Joey Griffiths and Alexander Cairns
+ *
+ */
+class StageRanking {
+
+    /**
+     * The maximum gap, in nanoseconds, between two consecutive riders for
+     * them to be considered part of the same bunch.
+     */
+    static final long BUNCH_GAP_NANOS = Timing.NANOS_PER_SECOND;
+
+    /**
+     * The version of the stage this ranking was computed from.
+     */
+    private final int version;
+
+    /**
+     * The IDs of the riders in the stage, sorted by elapsed time.
+     */
+    private final int[] riderIds;
+
+    /**
+     * The elapsed time of each rider, in nanoseconds, in the same order as
+     * 'riderIds'.
+     */
+    private final long[] elapsedNanos;
+
+    /**
+     * The adjusted elapsed time of each rider, in nanoseconds, in the same
+     * order as 'riderIds'.
+     */
+    private final long[] adjustedNanos;
+
+    /**
+     * Maps the ID of each rider to their position (from 0) in 'riderIds'.
+     */
+    private final HashMap<Integer, Integer> positions;
+
+    /**
+     * The points each rider received in the stage, in the same order as
+     * 'riderIds', or null if they have not yet been computed.<br>
+     * Volatile, as several readers of the stage may compute them at once.
+     */
+    private volatile int[] points;
+
+    /**
+     * The mountain points each rider received in the stage, in the same
+     * order as 'riderIds', or null if they have not yet been computed.<br>
+     * Volatile, as several readers of the stage may compute them at once.
+     */
+    private volatile int[] mountainPoints;
+
+    /**
+     * StageRanking class constructor.<br>
+     * Reads every rider with a result in the stage, and their adjusted
+     * elapsed times, in order from the stage's index.
+     *
+     * @param stage The stage to be ranked.
+     */
+    StageRanking(Stage stage) {
+        version = stage.getVersion();
+        RankIndex index = stage.getStandings();
+        int n = index.size();
+        riderIds = new int[n];
+        elapsedNanos = new long[n];
+        adjustedNanos = new long[n];
+        positions = new HashMap<>();
+
+        // The index already orders riders by elapsed time, with ties broken
+        // by rider ID, and gives every rider the elapsed time of the rider at
+        // the front of their bunch
+        int[] position = {0};
+        index.forEach((riderId, time, adjustedTime) -> {
+            int i = position[0]++;
+            riderIds[i] = riderId;
+            elapsedNanos[i] = time;
+            adjustedNanos[i] = adjustedTime;
+            positions.put(riderId, i);
+        });
+    }
+
+    /**
+     * Method to rank only the first riders in a stage, without ranking every
+     * rider.<br>
+     * A rider's adjusted elapsed time only depends on the riders who finished
+     * ahead of them, so only the first n riders of the stage's index are
+     * read.
+     *
+     * @param stage The stage to be ranked.
+     * @param n The number of riders wanted.
+     * @return A Leaderboard of the first n riders in the stage.
+     */
+    static Leaderboard rankTop(Stage stage, int n) {
+        RankIndex index = stage.getStandings();
+        int k = Math.max(0, Math.min(n, index.size()));
+        int[] topRiderIds = new int[k];
+        long[] topAdjustedNanos = new long[k];
+        int[] position = {0};
+        index.forEach(k, (riderId, time, adjustedTime) -> {
+            topRiderIds[position[0]] = riderId;
+            topAdjustedNanos[position[0]++] = adjustedTime;
+        });
+        return new Leaderboard(topRiderIds, topAdjustedNanos, null);
+    }
+
+    /**
+     * Method to get the first riders of the ranking.
+     *
+     * @param n The number of riders wanted.
+     * @return A Leaderboard of the first n riders in the stage.
+     */
+    public Leaderboard getTop(int n) {
+        int k = Math.min(n, riderIds.length);
+        return new Leaderboard(Arrays.copyOf(riderIds, k), Arrays.copyOf(adjustedNanos, k), null);
+    }
+
+    /**
+     * Method to get the version of the stage this ranking was computed from.
+     *
+     * @return The stage's modification counter at the time of ranking.
+     */
+    public int getVersion() {
+        return version;
+    }
+
+    /**
+     * Method to get the number of riders ranked in the stage.
+     *
+     * @return The number of riders with a result in the stage.
+     */
+    public int size() {
+        return riderIds.length;
+    }
+
+    /**
+     * Method to get the IDs of the riders in the stage, in order of rank.
+     *
+     * @return An array of rider IDs sorted by elapsed time.
+     */
+    public int[] getRiderIds() {
+        return riderIds.clone();
+    }
+
+    /**
+     * Method to get the ID of the rider at a particular position.
+     *
+     * @param position The position (from 0) of the rider in the stage.
+     * @return The ID of the rider at this position.
+     */
+    public int getRiderId(int position) {
+        return riderIds[position];
+    }
+
+    /**
+     * Method to get the adjusted elapsed time, in nanoseconds, of the rider
+     * at a particular position.
+     *
+     * @param position The position (from 0) of the rider in the stage.
+     * @return The adjusted elapsed time of the rider at this position.
+     */
+    public long getAdjustedNanos(int position) {
+        return adjustedNanos[position];
+    }
+
+    /**
+     * Method to get the adjusted elapsed times of the riders in the stage,
+     * in order of rank.
+     *
+     * @return An array of adjusted elapsed times, matching the order of
+     * {@link #getRiderIds()}.
+     */
+    public LocalTime[] getAdjustedTimes() {
+        LocalTime[] adjustedTimes = new LocalTime[adjustedNanos.length];
+        for (int i=0; i<adjustedTimes.length; i++) {
+            adjustedTimes[i] = Timing.toLocalTime(adjustedNanos[i]);
+        }
+        return adjustedTimes;
+    }
+
+    /**
+     * Method to get the position of a rider in the stage.
+     *
+     * @param riderId The ID of the rider in question.
+     * @return The position of the rider (0 being the winner), or -1 if the
+     * rider has no result in the stage.
+     */
+    public int getPosition(int riderId) {
+        Integer position = positions.get(riderId);
+        return position == null ? -1 : position;
+    }
+
+    /**
+     * Method to get the adjusted elapsed time of a rider in the stage.
+     *
+     * @param riderId The ID of the rider in question.
+     * @return The rider's adjusted elapsed time, or null if the rider has no
+     * result in the stage.
+     */
+    public LocalTime getAdjustedTime(int riderId) {
+        Integer position = positions.get(riderId);
+        return position == null ? null : Timing.toLocalTime(adjustedNanos[position]);
+    }
+
+    /**
+     * Method to get the points each rider received in the stage, if they
+     * have been computed for this ranking.
+     *
+     * @return An array of points matching the order of
+     * {@link #getRiderIds()}, or null if they have not been computed.
+     */
+    public int[] getPoints() {
+        return points == null ? null : points.clone();
+    }
+
+    /**
+     * Method to store the points each rider received in the stage.
+     *
+     * @param points An array of points matching the order of
+     *               {@link #getRiderIds()}.
+     */
+    public void setPoints(int[] points) {
+        this.points = points.clone();
+    }
+
+    /**
+     * Method to get the mountain points each rider received in the stage, if
+     * they have been computed for this ranking.
+     *
+     * @return An array of mountain points matching the order of
+     * {@link #getRiderIds()}, or null if they have not been computed.
+     */
+    public int[] getMountainPoints() {
+        return mountainPoints == null ? null : mountainPoints.clone();
+    }
+
+    /**
+     * Method to store the mountain points each rider received in the stage.
+     *
+     * @param mountainPoints An array of mountain points matching the order
+     *                       of {@link #getRiderIds()}.
+     */
+    public void setMountainPoints(int[] mountainPoints) {
+        this.mountainPoints = mountainPoints.clone();
+    }
+}
@@ -5,56 +5,47 @@ import java.time.LocalTime;
 
 /**
  * StageResult class.<br>
- * Represents a single StageResult in the cycling competition.
+ * Represents a single StageResult in the cycling competition.<br>
+ * The result's times are held in its stage's {@link StageResultStore}, so a
+ * StageResult is only a lightweight view onto a rider's row in that store.
  *
  * @author Joey Griffiths and Alexander Cairns
  *
  */
 class StageResult implements Serializable {
 
-    /**
-     * The number of instances of StageResult, automatically incremented when
-     * the constructor is called.<br>
-     * Used for allocation of IDs.
-     */
-    private static int totalResults = 0;
-
-    /**
-     * The ID of the stage result.
-     */
-    private final int id;
-
     /**
      * The Stage object that this stage result is associated with.
      */
     private final Stage stage;
 
     /**
-     * An array of checkpoints in the stage result (time at end of each
-     * segment.)
+     * The ID of the rider that this stage result belongs to.
      */
-    private final LocalTime[] checkpoints;
+    private final int riderId;
 
     /**
      * StageResult class constructor.<br>
-     * Assigns a stage, a list of checkpoints, and an automatic ID using the
-     * number of instances of stageResult.
+     * Creates a view onto a rider's result stored in a stage.
      *
      * @param stage The stage that this stage result is associated with.
-     * @param checkpoints The list of checkpoints in the stage result.
+     * @param riderId The ID of the rider the result belongs to.
      */
-    StageResult(Stage stage, LocalTime... checkpoints) {
+    StageResult(Stage stage, int riderId) {
         this.stage = stage;
-        this.checkpoints = checkpoints;
-        this.id = totalResults++;
+        this.riderId = riderId;
     }
 
     /**
-     * Resets the static variable totalResults.<br>
-     * Used to reset the CyclingPortal so that IDs start from 0 again.
+     * Private method to find the row holding this result in its stage's
+     * store.
+     *
+     * @return The row of the result.
      */
-    public static void resetTotalResults() {
-        totalResults = 0;
+    private int getRow() {
+        int row = stage.getResultStore().getRow(riderId);
+        assert (row != -1);
+        return row;
     }
 
     /**
@@ -63,7 +54,7 @@ class StageResult implements Serializable {
      * @return The ID of the stage result.
      */
     public int getId() {
-        return id;
+        return stage.getResultStore().getResultId(getRow());
     }
 
     /**
@@ -75,12 +66,58 @@ class StageResult implements Serializable {
         return stage;
     }
 
+    /**
+     * Method to get the ID of the rider that this stage result belongs to.
+     *
+     * @return The ID of the rider.
+     */
+    public int getRiderId() {
+        return riderId;
+    }
+
     /**
      * Method to get an array of the checkpoints stored in the stage result.
      *
      * @return The array of checkpoints.
      */
     public LocalTime[] getCheckpoints() {
+        StageResultStore store = stage.getResultStore();
+        int row = getRow();
+        long start = store.getStartNanos(row);
+        LocalTime[] checkpoints = new LocalTime[store.getWidth()];
+        for (int i=0; i<checkpoints.length; i++) {
+            checkpoints[i] = Timing.toLocalTime(start + store.getSplitNanos(row, i));
+        }
         return checkpoints;
     }
+
+    /**
+     * Method to get the number of checkpoints stored in the stage result.
+     *
+     * @return The number of checkpoints.
+     */
+    public int getNoOfCheckpoints() {
+        return stage.getResultStore().getWidth();
+    }
+
+    /**
+     * Method to get the time taken to reach a checkpoint from the start of
+     * the stage.
+     *
+     * @param checkpoint The index of the checkpoint.
+     * @return The time taken to reach the checkpoint, in nanoseconds.
+     */
+    public long getSplitNanos(int checkpoint) {
+        return stage.getResultStore().getSplitNanos(getRow(), checkpoint);
+    }
+
+    /**
+     * Method to get the elapsed time of the stage result, that is, the time
+     * between the first and last checkpoints.
+     *
+     * @return The elapsed time, in nanoseconds.
+     */
+    public long getElapsedNanos() {
+        return getSplitNanos(getNoOfCheckpoints()-1);
+    }
 }
@@ -0,0 +1,238 @@
+package cycling;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * StageResultStore class.<br>
+ * Stores every result in a stage in columns of primitives rather than as
+ * separate objects: one row per rider, holding the rider's ID, the ID of
+ * the result, the time of day the rider started, and one column for each
+ * further checkpoint holding the time taken to reach it, in nanoseconds.<br>
+ * Rankings of the finish or of a segment can then be computed by scanning a
+ * single contiguous array.
+ *
+ * @author Joey Griffiths and Alexander Cairns
+ *
+ */
+class StageResultStore implements Serializable {
+
+    /**
+     * The number of rows allocated when the store is first used.
+     */
+    private static final int INITIAL_CAPACITY = 16;
+
+    /**
+     * The number of results stored.
+     */
+    private int size = 0;
+
+    /**
+     * The number of checkpoints in each result.
+     */
+    private int width = 0;
+
+    /**
+     * The ID of the rider each row belongs to.
+     */
+    private int[] riderIds = new int[0];
+
+    /**
+     * The ID of the result stored in each row.
+     */
+    private int[] resultIds = new int[0];
+
+    /**
+     * The time of day of each rider's first checkpoint, in nanoseconds since
+     * midnight.
+     */
+    private long[] startNanos = new long[0];
+
+    /**
+     * The time taken to reach each checkpoint after the first, in
+     * nanoseconds.<br>
+     * To use: splitNanos[checkpoint - 1][row]
+     */
+    private long[][] splitNanos = new long[0][];
+
+    /**
+     * Maps the ID of each rider with a result to the row holding it.
+     */
+    private HashMap<Integer, Integer> rowOfRider = new HashMap<>();
+
+    /**
+     * Method to add a result to the store.
+     *
+     * @param riderId The ID of the rider the result belongs to.
+     * @param resultId The ID of the result.
+     * @param start The time of day of the first checkpoint, in nanoseconds
+     *              since midnight.
+     * @param splits The time taken to reach each checkpoint, in nanoseconds,
+     *               where the first element (the start) is 0.
+     */
+    public void add(int riderId, int resultId, long start, long[] splits) {
+        if (size == 0 && width != splits.length) {
+            // The number of checkpoints is fixed by the first result stored
+            width = splits.length;
+            splitNanos = new long[width-1][riderIds.length];
+        }
+        assert (splits.length == width);
+        if (size == riderIds.length) {
+            grow(Math.max(INITIAL_CAPACITY, riderIds.length * 2));
+        }
+        riderIds[size] = riderId;
+        resultIds[size] = resultId;
+        startNanos[size] = start;
+        for (int c=1; c<width; c++) {
+            splitNanos[c-1][size] = splits[c];
+        }
+        rowOfRider.put(riderId, size);
+        size++;
+    }
+
+    /**
+     * Method to remove a rider's result from the store.<br>
+     * The last row is moved into the removed row, so that the columns stay
+     * packed.
+     *
+     * @param riderId The ID of the rider whose result is to be removed.
+     * @return true if a result was removed, false if the rider had none.
+     */
+    public boolean remove(int riderId) {
+        Integer row = rowOfRider.remove(riderId);
+        if (row == null) {
+            return false;
+        }
+        int last = --size;
+        if (row != last) {
+            riderIds[row] = riderIds[last];
+            resultIds[row] = resultIds[last];
+            startNanos[row] = startNanos[last];
+            for (long[] column : splitNanos) {
+                column[row] = column[last];
+            }
+            rowOfRider.put(riderIds[row], row);
+        }
+        return true;
+    }
+
+    /**
+     * Method to make sure that a number of rows are allocated in each
+     * column, so that a batch of results can be added without the columns
+     * being copied more than once.
+     *
+     * @param rows The number of rows needed.
+     */
+    public void ensureCapacity(int rows) {
+        if (rows > riderIds.length) {
+            grow(Math.max(rows, riderIds.length * 2));
+        }
+    }
+
+    /**
+     * Private method to increase the number of rows allocated in each
+     * column.
+     *
+     * @param capacity The new number of rows.
+     */
+    private void grow(int capacity) {
+        riderIds = Arrays.copyOf(riderIds, capacity);
+        resultIds = Arrays.copyOf(resultIds, capacity);
+        startNanos = Arrays.copyOf(startNanos, capacity);
+        for (int c=0; c<splitNanos.length; c++) {
+            splitNanos[c] = Arrays.copyOf(splitNanos[c], capacity);
+        }
+    }
+
+    /**
+     * Method to get the number of results stored.
+     *
+     * @return The number of rows in the store.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Method to get the number of checkpoints in each result.
+     *
+     * @return The number of checkpoints, or 0 if no result has been stored.
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Method to get the row holding a rider's result.
+     *
+     * @param riderId The ID of the rider in question.
+     * @return The row of the rider's result, or -1 if the rider has none.
+     */
+    public int getRow(int riderId) {
+        Integer row = rowOfRider.get(riderId);
+        return row == null ? -1 : row;
+    }
+
+    /**
+     * Method to get the ID of the rider whose result is in a row.
+     *
+     * @param row The row in question.
+     * @return The ID of the rider.
+     */
+    public int getRiderId(int row) {
+        return riderIds[row];
+    }
+
+    /**
+     * Method to get the ID of the result in a row.
+     *
+     * @param row The row in question.
+     * @return The ID of the result.
+     */
+    public int getResultId(int row) {
+        return resultIds[row];
+    }
+
+    /**
+     * Method to get the time of day of the first checkpoint in a row.
+     *
+     * @param row The row in question.
+     * @return The time of day, in nanoseconds since midnight.
+     */
+    public long getStartNanos(int row) {
+        return startNanos[row];
+    }
+
+    /**
+     * Method to get the time taken to reach a checkpoint in a row.
+     *
+     * @param row The row in question.
+     * @param checkpoint The index of the checkpoint.
+     * @return The time taken to reach the checkpoint, in nanoseconds.
+     */
+    public long getSplitNanos(int row, int checkpoint) {
+        return checkpoint == 0 ? 0 : splitNanos[checkpoint-1][row];
+    }
+
+    /**
+     * Method to get the column of times taken to reach a checkpoint.<br>
+     * The column is shared with the store and only its first
+     * {@link #size()} elements are in use, so it must not be modified.
+     *
+     * @param checkpoint The index of the checkpoint, from 1.
+     * @return The column of times, in nanoseconds, indexed by row.
+     */
+    public long[] getSplitColumn(int checkpoint) {
+        return splitNanos[checkpoint-1];
+    }
+
+    /**
+     * Method to get the IDs of every rider with a result in the store.
+     *
+     * @return An array of rider IDs, in row order.
+     */
+    public int[] getRiderIds() {
+        return Arrays.copyOf(riderIds, size);
+    }
+}
@@ -0,0 +1,521 @@
+package cycling;
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * StandingsFeed class.<br>
+ * Publishes the changes to the standings of a single stage or race
+ * classification to its subscribers, as {@link RankChange} objects.<br>
+ * The changes are worked out by the indexes of the stage or race as each
+ * result is registered or deleted: only the rider whose result changed and
+ * the riders whose time or points changed with it are sent, as the riders
+ * they move past are moved by the subscriber applying the change. The feed
+ * keeps its own copy of the standings, with every change published applied
+ * to it, from which a new subscriber is first sent a reset followed by
+ * every rider, and then the changes published since.<br>
+ * Changes are delivered on an executor, never on the thread publishing
+ * them, so a slow subscriber cannot hold up the registration of results.
+ * A subscriber with more changes waiting than its buffer holds has them
+ * discarded, and is instead sent the feed's copy of the standings again,
+ * from a reset, once it next asks for changes.<br>
+ * If the indexes of the stage or race could not follow a change, the feed
+ * is marked stale and ignores the changes published to it until it is
+ * reset to the current standings, which only resends them to subscribers
+ * if they differ from its copy.<br>
+ * Once its last subscription is cancelled, fails or completes, the feed
+ * goes idle: it is detached from its stage or race, which stops publishing
+ * to it, and it never takes another subscriber, so a new feed is started
+ * from the current standings instead.
+ *
+ * @author Joey Griffiths and Alexander Cairns
+ *
+ */
+final class StandingsFeed {
+
+    /**
+     * The executor changes are delivered on: the common pool if it has more
+     * than one thread, as for {@link java.util.concurrent.SubmissionPublisher},
+     * or a new thread for each delivery otherwise.
+     */
+    private static final Executor EXECUTOR = ForkJoinPool.getCommonPoolParallelism() > 1
+            ? ForkJoinPool.commonPool() : runnable -> new Thread(runnable).start();
+
+    /**
+     * The current subscriptions to the feed.
+     */
+    private final CopyOnWriteArrayList<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+
+    /**
+     * The feed's copy of the standings, with every change published applied
+     * to it.
+     */
+    private StandingsList standings;
+
+    /**
+     * Whether the standings are ranked by points, so riders' points are
+     * sent.
+     */
+    private final boolean withPoints;
+
+    /**
+     * Whether a change could not be published, so the feed's copy of the
+     * standings is out of date until it is reset.
+     */
+    private volatile boolean stale = false;
+
+    /**
+     * Whether the stage or race has been removed, so no more changes will be
+     * published.
+     */
+    private boolean closed = false;
+
+    /**
+     * Whether the feed has gone idle after losing its last subscription, so
+     * no more changes will be published to it.
+     */
+    private boolean idle = false;
+
+    /**
+     * Detaches the feed from its stage or race once it goes idle, or null if
+     * there is nothing to detach it from.
+     */
+    private final Consumer<StandingsFeed> onIdle;
+
+    /**
+     * StandingsFeed class constructor.
+     *
+     * @param standings The current standings of the stage or race.
+     * @param withPoints Whether the standings are ranked by points.
+     * @param onIdle Detaches the feed from its stage or race once its last
+     *               subscription ends, or null.
+     */
+    StandingsFeed(Leaderboard standings, boolean withPoints, Consumer<StandingsFeed> onIdle) {
+        this.standings = new StandingsList(standings);
+        this.withPoints = withPoints;
+        this.onIdle = onIdle;
+    }
+
+    /**
+     * Method to subscribe to the feed.
+     *
+     * @param subscriber The subscriber.
+     * @param bufferCapacity The number of changes which may wait to be
+     *                       delivered to the subscriber.
+     * @return true if the subscriber subscribed, false if the feed has gone
+     * idle, in which case the subscriber is to subscribe to a new feed.
+     */
+    public synchronized boolean subscribe(Flow.Subscriber<? super RankChange> subscriber, int bufferCapacity) {
+        if (idle) {
+            return false;
+        }
+        Subscription subscription = new Subscription(this, subscriber, bufferCapacity);
+        if (closed) {
+            subscription.close();
+        } else {
+            subscriptions.add(subscription);
+        }
+        subscription.schedule();
+        return true;
+    }
+
+    /**
+     * Private method to remove a subscription which has ended, detaching the
+     * feed if it was the last one.
+     *
+     * @param subscription The subscription which has ended.
+     */
+    private synchronized void unsubscribe(Subscription subscription) {
+        if (subscriptions.remove(subscription) && subscriptions.isEmpty() && !closed) {
+            // With nobody left to send them to, the standings stop being published
+            idle = true;
+            if (onIdle != null) {
+                onIdle.accept(this);
+            }
+        }
+    }
+
+    /**
+     * Method to check whether the feed has any subscribers.
+     *
+     * @return true if the feed has at least one subscription which has not
+     * been cancelled.
+     */
+    public boolean hasSubscribers() {
+        return !subscriptions.isEmpty();
+    }
+
+    /**
+     * Method to publish changes to the standings, applying them to the
+     * feed's copy and sending them to every subscriber.<br>
+     * Does nothing while the feed is stale.
+     *
+     * @param changes The changes, in the order they are to be applied.
+     */
+    public synchronized void publish(List<RankChange> changes) {
+        if (closed || stale || changes.isEmpty()) {
+            return;
+        }
+        for (RankChange change : changes) {
+            standings.apply(change);
+        }
+        for (Subscription subscription : subscriptions) {
+            subscription.offer(changes);
+        }
+    }
+
+    /**
+     * Method to mark the feed stale, after a change to its stage or race
+     * which could not be published.
+     */
+    public void invalidate() {
+        stale = true;
+    }
+
+    /**
+     * Method to check whether the feed is stale, so it must be reset.
+     *
+     * @return true if the feed's copy of the standings may be out of date.
+     */
+    public boolean isStale() {
+        return stale;
+    }
+
+    /**
+     * Method to reset the feed to the current standings, after it was made
+     * stale or its stage or race changed in a way no change describes.<br>
+     * If the standings differ from the feed's copy, every subscriber is
+     * sent them again, from a reset.
+     *
+     * @param newStandings The current standings of the stage or race.
+     */
+    public synchronized void reset(Leaderboard newStandings) {
+        stale = false;
+        if (closed || standings.matches(newStandings)) {
+            return;
+        }
+        standings = new StandingsList(newStandings);
+        for (Subscription subscription : subscriptions) {
+            subscription.resync();
+        }
+    }
+
+    /**
+     * Private method to start sending a subscriber the feed's copy of the
+     * standings, discarding any changes waiting to be delivered to it, as
+     * they are already applied to the copy.
+     *
+     * @param subscription The subscription to be sent the standings.
+     */
+    private synchronized void sendStandings(Subscription subscription) {
+        // The feed's lock is always taken before the subscription's, as when publishing
+        subscription.startSnapshot(standings.toLeaderboard(withPoints));
+    }
+
+    /**
+     * Method to close the feed once its stage or race has been removed,
+     * completing every subscription.
+     */
+    public synchronized void close() {
+        closed = true;
+        for (Subscription subscription : subscriptions) {
+            subscription.close();
+            subscription.schedule();
+        }
+        subscriptions.clear();
+    }
+
+    /**
+     * A single subscriber's subscription to the feed.<br>
+     * Every signal to the subscriber is sent by a single task at a time on
+     * the executor, so the subscriber is never called concurrently.
+     */
+    private static final class Subscription implements Flow.Subscription {
+
+        /**
+         * The feed subscribed to.
+         */
+        private final StandingsFeed feed;
+
+        /**
+         * The subscriber.
+         */
+        private final Flow.Subscriber<? super RankChange> subscriber;
+
+        /**
+         * The number of changes which may wait to be delivered.
+         */
+        private final int capacity;
+
+        /**
+         * The number of times the delivery task has been asked to run, so
+         * that only one runs at a time.
+         */
+        private final AtomicInteger scheduled = new AtomicInteger();
+
+        /**
+         * Whether the subscriber is to be sent the feed's copy of the
+         * standings before any more changes, as it has just subscribed or
+         * fell too far behind.
+         */
+        private boolean resync = true;
+
+        /**
+         * Whether a reset is to be sent before the rest of 'snapshot'.
+         */
+        private boolean sendReset = false;
+
+        /**
+         * The standings being sent to the subscriber, or null once every
+         * rider in them has been sent.
+         */
+        private Leaderboard snapshot;
+
+        /**
+         * The position (from 0) of the next rider in 'snapshot' to be sent.
+         */
+        private int snapshotPosition = 0;
+
+        /**
+         * The changes published since 'snapshot' was taken which are
+         * waiting to be delivered, in order.
+         */
+        private final ArrayDeque<RankChange> pending = new ArrayDeque<>();
+
+        /**
+         * The number of changes requested by the subscriber and not yet
+         * delivered.
+         */
+        private long demand = 0;
+
+        /**
+         * Whether the subscriber has been sent this subscription.
+         */
+        private boolean started = false;
+
+        /**
+         * Whether the feed has been closed, so the subscriber is to be
+         * completed.
+         */
+        private boolean completed = false;
+
+        /**
+         * The error to be sent to the subscriber, or null if there is none.
+         */
+        private Throwable error;
+
+        /**
+         * Whether the subscription has been cancelled, or the subscriber
+         * sent its final signal.
+         */
+        private boolean cancelled = false;
+
+        /**
+         * Subscription class constructor.
+         *
+         * @param feed The feed subscribed to.
+         * @param subscriber The subscriber.
+         * @param capacity The number of changes which may wait to be
+         *                 delivered.
+         */
+        private Subscription(StandingsFeed feed, Flow.Subscriber<? super RankChange> subscriber, int capacity) {
+            this.feed = feed;
+            this.subscriber = subscriber;
+            this.capacity = capacity;
+        }
+
+        @Override
+        public void request(long n) {
+            synchronized (this) {
+                if (n <= 0) {
+                    error = new IllegalArgumentException("Number of changes requested must be positive");
+                } else {
+                    demand = demand + n < 0 ? Long.MAX_VALUE : demand + n;
+                }
+            }
+            schedule();
+        }
+
+        @Override
+        public void cancel() {
+            synchronized (this) {
+                cancelled = true;
+                resync = false;
+                snapshot = null;
+                pending.clear();
+            }
+            feed.unsubscribe(this);
+        }
+
+        /**
+         * Method to add changes to the buffer.<br>
+         * If there are more changes waiting than the buffer holds, they are
+         * all discarded, and the subscriber is sent the feed's copy of the
+         * standings instead, which already has them applied. Changes
+         * published until then are discarded too.
+         *
+         * @param changes The changes to be delivered.
+         */
+        private void offer(List<RankChange> changes) {
+            synchronized (this) {
+                if (cancelled || resync) {
+                    return;
+                }
+                if (pending.size() + changes.size() > capacity) {
+                    // The subscriber has fallen too far behind to be caught up by changes
+                    discard();
+                } else {
+                    pending.addAll(changes);
+                }
+            }
+            schedule();
+        }
+
+        /**
+         * Method to discard the changes and standings waiting to be
+         * delivered, so the subscriber is sent the feed's copy of the
+         * standings once it next asks for changes.
+         */
+        private void resync() {
+            synchronized (this) {
+                discard();
+            }
+            schedule();
+        }
+
+        /**
+         * Private method to discard the changes and standings waiting to be
+         * delivered, marking the subscription to be sent the standings
+         * again. The subscription's lock must be held.
+         */
+        private void discard() {
+            resync = true;
+            sendReset = false;
+            snapshot = null;
+            pending.clear();
+        }
+
+        /**
+         * Method to start sending the subscriber some standings, from a
+         * reset.
+         *
+         * @param standings The feed's copy of the standings.
+         */
+        private synchronized void startSnapshot(Leaderboard standings) {
+            if (!resync || cancelled) {
+                return;
+            }
+            resync = false;
+            sendReset = true;
+            snapshot = standings.size() == 0 ? null : standings;
+            snapshotPosition = 0;
+            pending.clear();
+        }
+
+        /**
+         * Method to complete the subscription once the feed has been closed,
+         * discarding any changes still waiting.
+         */
+        private synchronized void close() {
+            completed = true;
+            resync = false;
+            snapshot = null;
+            pending.clear();
+        }
+
+        /**
+         * Method to run the delivery task, unless it is already running, in
+         * which case it runs again once it finishes.
+         */
+        private void schedule() {
+            if (scheduled.getAndIncrement() == 0) {
+                EXECUTOR.execute(this::deliver);
+            }
+        }
+
+        /**
+         * Private method to send the subscriber every signal it can be sent,
+         * until nothing is left or the subscriber asks for nothing more.
+         */
+        private void deliver() {
+            int runs = 1;
+            do {
+                while (deliverNext()) {
+                    // Signals are sent until there are none left to send
+                }
+                runs = scheduled.addAndGet(-runs);
+            } while (runs != 0);
+        }
+
+        /**
+         * Private method to send the subscriber its next signal, if it has
+         * one to be sent.
+         *
+         * @return true if a signal was sent, false if there was none.
+         */
+        private boolean deliverNext() {
+            RankChange next = null;
+            Throwable failure = null;
+            boolean complete = false;
+            boolean copy = false;
+            synchronized (this) {
+                if (cancelled) {
+                    return false;
+                }
+                if (!started) {
+                    started = true;
+                } else if (error != null) {
+                    failure = error;
+                    cancelled = true;
+                } else if (completed) {
+                    complete = true;
+                    cancelled = true;
+                } else if (demand > 0 && resync) {
+                    // The standings are only copied once the subscriber can take them
+                    copy = true;
+                } else if (demand > 0 && sendReset) {
+                    next = RankChange.reset();
+                    sendReset = false;
+                    demand--;
+                } else if (demand > 0 && snapshot != null) {
+                    int position = snapshotPosition++;
+                    next = new RankChange(snapshot.getRiderId(position), 0, position + 1,
+                            snapshot.getNanos(position), snapshot.getPoints(position));
+                    if (snapshotPosition == snapshot.size()) {
+                        snapshot = null;
+                    }
+                    demand--;
+                } else if (demand > 0 && !pending.isEmpty()) {
+                    next = pending.poll();
+                    demand--;
+                } else {
+                    return false;
+                }
+            }
+            try {
+                if (failure != null) {
+                    feed.unsubscribe(this);
+                    subscriber.onError(failure);
+                } else if (complete) {
+                    subscriber.onComplete();
+                } else if (next != null) {
+                    subscriber.onNext(next);
+                } else if (copy) {
+                    feed.sendStandings(this);
+                } else {
+                    subscriber.onSubscribe(this);
+                }
+            } catch (RuntimeException e) {
+                // A subscriber which throws is treated as having cancelled
+                cancel();
+            }
+            return true;
+        }
+    }
+}
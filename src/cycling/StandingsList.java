@@ -0,0 +1,251 @@
+package cycling;
+
+/**
+ * StandingsList class.<br>
+ * A list of riders in the order of a stage's or race's standings, with each
+ * rider's time and points, which is kept by a {@link StandingsFeed} as its
+ * own copy of the standings it has published.<br>
+ * Riders are inserted and removed by position, as a {@link RankChange}
+ * describes them, in O(log n) time, so a change is applied without the
+ * riders after it being renumbered.<br>
+ * The list is a treap ordered by position, in which each node holds the
+ * size of its subtree rather than a key, and is given a priority by hashing
+ * its rider ID, as in a {@link RankIndex}.
+ *
+ * @author Joey Griffiths and Alexander Cairns
+ *
+ */
+final class StandingsList {
+
+    /**
+     * A single rider in the tree.
+     */
+    private static final class Node {
+
+        /**
+         * The ID of the rider.
+         */
+        private final int riderId;
+
+        /**
+         * The rider's time, in nanoseconds.
+         */
+        private final long nanos;
+
+        /**
+         * The rider's points.
+         */
+        private final int points;
+
+        /**
+         * The priority of the node, which is never lower than that of its
+         * children.
+         */
+        private final int priority;
+
+        /**
+         * The subtree of riders before this one.
+         */
+        private Node left;
+
+        /**
+         * The subtree of riders after this one.
+         */
+        private Node right;
+
+        /**
+         * The number of riders in the subtree rooted at this node.
+         */
+        private int size = 1;
+
+        /**
+         * Node class constructor.
+         *
+         * @param riderId The ID of the rider.
+         * @param nanos The rider's time, in nanoseconds.
+         * @param points The rider's points.
+         */
+        private Node(int riderId, long nanos, int points) {
+            this.riderId = riderId;
+            this.nanos = nanos;
+            this.points = points;
+            int h = riderId * 0x9E3779B9;
+            priority = h ^ (h >>> 16);
+        }
+
+        /**
+         * Method to recompute the size of the subtree from its children.
+         */
+        private void update() {
+            size = 1 + size(left) + size(right);
+        }
+    }
+
+    /**
+     * The root of the tree, or null if the list is empty.
+     */
+    private Node root;
+
+    /**
+     * StandingsList class constructor.<br>
+     * Copies the riders of some standings.
+     *
+     * @param standings The standings to be copied.
+     */
+    StandingsList(Leaderboard standings) {
+        for (int i=0; i<standings.size(); i++) {
+            root = merge(root, new Node(standings.getRiderId(i), standings.getNanos(i), standings.getPoints(i)));
+        }
+    }
+
+    /**
+     * Private method to get the size of a subtree.
+     *
+     * @param node The root of the subtree, or null.
+     * @return The number of riders in the subtree.
+     */
+    private static int size(Node node) {
+        return node == null ? 0 : node.size;
+    }
+
+    /**
+     * Method to get the number of riders in the list.
+     *
+     * @return The number of riders.
+     */
+    public int size() {
+        return size(root);
+    }
+
+    /**
+     * Method to apply a change to the list, removing the rider from their
+     * old position and inserting them at their new one.
+     *
+     * @param change The change to be applied, whose positions must be
+     *               within the list.
+     */
+    public void apply(RankChange change) {
+        if (change.getOldPosition() > 0) {
+            Node[] parts = split(root, change.getOldPosition() - 1);
+            Node[] rest = split(parts[1], 1);
+            root = merge(parts[0], rest[1]);
+        }
+        if (change.getNewPosition() > 0) {
+            Node[] parts = split(root, change.getNewPosition() - 1);
+            Node node = new Node(change.getRiderId(), change.getNanos(), change.getPoints());
+            root = merge(merge(parts[0], node), parts[1]);
+        }
+    }
+
+    /**
+     * Private method to split a subtree into the riders before a position
+     * and the riders from it on.
+     *
+     * @param subtree The root of the subtree, or null.
+     * @param position The number of riders to be put in the first part.
+     * @return The roots of the two parts, either of which may be null.
+     */
+    private static Node[] split(Node subtree, int position) {
+        if (subtree == null) {
+            return new Node[2];
+        }
+        if (size(subtree.left) >= position) {
+            Node[] parts = split(subtree.left, position);
+            subtree.left = parts[1];
+            subtree.update();
+            parts[1] = subtree;
+            return parts;
+        }
+        Node[] parts = split(subtree.right, position - size(subtree.left) - 1);
+        subtree.right = parts[0];
+        subtree.update();
+        parts[0] = subtree;
+        return parts;
+    }
+
+    /**
+     * Private method to join two subtrees, every rider of the first coming
+     * before every rider of the second.
+     *
+     * @param left The root of the first subtree, or null.
+     * @param right The root of the second subtree, or null.
+     * @return The root of the joined subtree.
+     */
+    private static Node merge(Node left, Node right) {
+        if (left == null) {
+            return right;
+        }
+        if (right == null) {
+            return left;
+        }
+        if (left.priority > right.priority) {
+            left.right = merge(left.right, right);
+            left.update();
+            return left;
+        }
+        right.left = merge(left, right.left);
+        right.update();
+        return right;
+    }
+
+    /**
+     * Method to copy the list into a Leaderboard.
+     *
+     * @param withPoints Whether the standings are ranked by points, so the
+     *                   riders' points are copied too.
+     * @return A Leaderboard of every rider in the list, in order.
+     */
+    public Leaderboard toLeaderboard(boolean withPoints) {
+        int size = size();
+        int[] riderIds = new int[size];
+        long[] nanos = new long[size];
+        int[] points = withPoints ? new int[size] : null;
+        copy(root, 0, riderIds, nanos, points);
+        return new Leaderboard(riderIds, nanos, points);
+    }
+
+    /**
+     * Private method to copy the riders of a subtree into arrays, in order.
+     *
+     * @param subtree The root of the subtree, or null.
+     * @param position The position of the subtree's first rider.
+     * @param riderIds The array of rider IDs.
+     * @param nanos The array of times.
+     * @param points The array of points, or null if points are not copied.
+     */
+    private static void copy(Node subtree, int position, int[] riderIds, long[] nanos, int[] points) {
+        if (subtree == null) {
+            return;
+        }
+        copy(subtree.left, position, riderIds, nanos, points);
+        position += size(subtree.left);
+        riderIds[position] = subtree.riderId;
+        nanos[position] = subtree.nanos;
+        if (points != null) {
+            points[position] = subtree.points;
+        }
+        copy(subtree.right, position + 1, riderIds, nanos, points);
+    }
+
+    /**
+     * Method to check whether the list holds the same riders, times and
+     * points as some standings.
+     *
+     * @param standings The standings to be compared with.
+     * @return true if every rider is in the same position with the same time
+     * and points, false otherwise.
+     */
+    public boolean matches(Leaderboard standings) {
+        if (standings.size() != size()) {
+            return false;
+        }
+        Leaderboard copy = toLeaderboard(true);
+        for (int i=0; i<copy.size(); i++) {
+            if (copy.getRiderId(i) != standings.getRiderId(i) || copy.getNanos(i) != standings.getNanos(i)
+                    || copy.getPoints(i) != standings.getPoints(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
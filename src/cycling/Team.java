@@ -11,13 +11,6 @@ import java.util.ArrayList;
  */
 class Team implements Serializable {
 
-    /**
-     * The number of instances of Team, automatically incremented when
-     * the constructor is called.<br>
-     * Used for allocation of IDs.
-     */
-    private static int noOfTeams = 0;
-
     /**
      * The ID of the team.
      */
@@ -40,24 +33,17 @@ class Team implements Serializable {
 
     /**
      * Team class constructor.<br>
-     * Assigns a name, a description and an automatic ID using the number of
-     * isntances of team.
+     * Assigns an ID allocated by the portal's {@link IdAllocator}, a name
+     * and a description.
      *
+     * @param id The team's ID.
      * @param name The team's name.
      * @param description The team's description.
      */
-    Team(String name, String description) {
+    Team(int id, String name, String description) {
         this.name = name;
         this.description = description;
-        id = noOfTeams++;
-    }
-
-    /**
-     * Resets the static variable noOfTeams.<br>
-     * Used to reset the CyclingPortal so that IDs start from 0 again.
-     */
-    public static void resetNoOfTeams() {
-        noOfTeams = 0;
+        this.id = id;
     }
 
     /**
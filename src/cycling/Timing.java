@@ -0,0 +1,71 @@
+package cycling;
+
+import java.time.LocalTime;
+
+/**
+ * Timing class.<br>
+ * Holds the constants and conversions used to represent times internally as
+ * primitive nanosecond counts, so that LocalTime objects only need to be
+ * created when times are passed in or out of the CyclingPortal.
+ *
+ * @author Joey Griffiths and Alexander Cairns
+ *
+ */
+final class Timing {
+
+    /**
+     * The number of nanoseconds in a millisecond.
+     */
+    static final long NANOS_PER_MILLI = 1000000L;
+
+    /**
+     * The number of nanoseconds in a second.
+     */
+    static final long NANOS_PER_SECOND = 1000000000L;
+
+    /**
+     * The number of nanoseconds in a day.
+     */
+    static final long NANOS_PER_DAY = 86400L * NANOS_PER_SECOND;
+
+    /**
+     * Private constructor, as this class only contains static members.
+     */
+    private Timing() {
+    }
+
+    /**
+     * Converts a time of day into the number of nanoseconds since midnight.
+     *
+     * @param time The time of day to convert.
+     * @return The number of nanoseconds since midnight.
+     */
+    static long toNanos(LocalTime time) {
+        return time.toNanoOfDay();
+    }
+
+    /**
+     * Converts a number of nanoseconds into a LocalTime object.<br>
+     * A LocalTime can only represent a single day, so durations of a day or
+     * more wrap around past midnight.
+     *
+     * @param nanos The number of nanoseconds to convert.
+     * @return A LocalTime object representing the nanoseconds since midnight.
+     */
+    static LocalTime toLocalTime(long nanos) {
+        return LocalTime.ofNanoOfDay(Math.floorMod(nanos, NANOS_PER_DAY));
+    }
+
+    /**
+     * Calculates the time between two times of day, in nanoseconds.<br>
+     * If the second time is earlier than the first, it is taken to be on
+     * the following day.
+     *
+     * @param fromNanos The earlier time of day, in nanoseconds since midnight.
+     * @param toNanos The later time of day, in nanoseconds since midnight.
+     * @return The number of nanoseconds from the first time to the second.
+     */
+    static long between(long fromNanos, long toNanos) {
+        return Math.floorMod(toNanos - fromNanos, NANOS_PER_DAY);
+    }
+}
@@ -0,0 +1,107 @@
+package cycling;
+
+import java.util.function.IntBinaryOperator;
+
+/**
+ * TopNSelector class.<br>
+ * Selects the first few items of a ranking without sorting every item,
+ * using a heap bounded to the number of items wanted. Items are identified
+ * by their index, and compared by a comparator on those indexes so that no
+ * item needs to be boxed.<br>
+ * Selecting k of n items takes O(n log k) time and O(k) space.
+ *
+ * @author Joey Griffiths and Alexander Cairns
+ *
+ */
+final class TopNSelector {
+
+    /**
+     * Private constructor, as this class only contains static members.
+     */
+    private TopNSelector() {
+    }
+
+    /**
+     * Method to select the first items of a ranking, in order.
+     *
+     * @param n The number of items, indexed from 0 to n-1.
+     * @param k The number of items wanted.
+     * @param comparator Compares two items by their indexes, returning a
+     *                   negative number if the first ranks before the second.
+     *                   It must not consider any two different items equal.
+     * @return The indexes of the first min(n, k) items, in order of rank.
+     */
+    static int[] select(int n, int k, IntBinaryOperator comparator) {
+        k = Math.max(0, Math.min(n, k));
+        // A max-heap of the best items found so far, with the worst of them
+        // at the root, so that it is the one replaced by a better item
+        int[] heap = new int[k];
+        int size = 0;
+        for (int i=0; i<n; i++) {
+            if (size < k) {
+                heap[size] = i;
+                siftUp(heap, size++, comparator);
+            } else if (k > 0 && comparator.applyAsInt(i, heap[0]) < 0) {
+                heap[0] = i;
+                siftDown(heap, size, comparator);
+            }
+        }
+        // The worst remaining item is repeatedly moved to the end of the heap
+        for (int end=size-1; end>0; end--) {
+            int worst = heap[0];
+            heap[0] = heap[end];
+            heap[end] = worst;
+            siftDown(heap, end, comparator);
+        }
+        return heap;
+    }
+
+    /**
+     * Private method to move an item up the heap until it ranks before its
+     * parent.
+     *
+     * @param heap The heap.
+     * @param position The position of the item in the heap.
+     * @param comparator Compares two items by their indexes.
+     */
+    private static void siftUp(int[] heap, int position, IntBinaryOperator comparator) {
+        int item = heap[position];
+        while (position > 0) {
+            int parent = (position - 1) / 2;
+            if (comparator.applyAsInt(item, heap[parent]) <= 0) {
+                break;
+            }
+            heap[position] = heap[parent];
+            position = parent;
+        }
+        heap[position] = item;
+    }
+
+    /**
+     * Private method to move the root of the heap down until both of its
+     * children rank before it.
+     *
+     * @param heap The heap.
+     * @param size The number of items in the heap.
+     * @param comparator Compares two items by their indexes.
+     */
+    private static void siftDown(int[] heap, int size, IntBinaryOperator comparator) {
+        int item = heap[0];
+        int position = 0;
+        while (true) {
+            int child = 2 * position + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && comparator.applyAsInt(heap[child + 1], heap[child]) > 0) {
+                child++;
+            }
+            if (comparator.applyAsInt(heap[child], item) <= 0) {
+                break;
+            }
+            heap[position] = heap[child];
+            position = child;
+        }
+        heap[position] = item;
+    }
+}